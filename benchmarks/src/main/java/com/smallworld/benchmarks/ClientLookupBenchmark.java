@@ -0,0 +1,115 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call latency of the per-client questions the compliance UI asks, answered through the client
+ * indexes versus the full scan each call used to do. The batch benchmarks answer both questions for
+ * {@value #LOOKUP_NAMES} clients, in one call against one call per client and question
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class ClientLookupBenchmark {
+    private static final int LOOKUP_NAMES = 1024;
+
+    @Param({"1000000", "10000000"})
+    private int rows;
+
+    @Param({"100000"})
+    private int clients;
+
+    @Param({"0.1"})
+    private double issueRatio;
+
+    private TransactionStore store;
+    private TransactionSnapshot snapshot;
+    private String[] names;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new SyntheticTransactions(clients, issueRatio).generate(rows, builder);
+        store = builder.build();
+        snapshot = TransactionSnapshot.of(store);
+        SplittableRandom random = new SplittableRandom(7);
+        names = new String[LOOKUP_NAMES];
+        for (int i = 0; i < LOOKUP_NAMES; i++) {
+            // a new instance each time, as a name arriving in a request would be
+            names[i] = new String(SyntheticTransactions.clientName(random.nextInt(clients)));
+        }
+    }
+
+    @Benchmark
+    public long totalAmountSentBy() {
+        return snapshot.getTotalAmountCentsSentBy(nextName());
+    }
+
+    @Benchmark
+    public List<ClientSummary> summarizeBatch() {
+        return snapshot.summarize(Arrays.asList(names));
+    }
+
+    @Benchmark
+    public long perCallBatch() {
+        long result = 0;
+        for (String name : names) {
+            result += snapshot.getTotalAmountCentsSentBy(name) + (snapshot.hasOpenIssues(name) ? 1 : 0);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public boolean hasOpenIssues() {
+        return snapshot.hasOpenIssues(nextName());
+    }
+
+    @Benchmark
+    public double sumTransactionsOfClient() {
+        double sum = 0;
+        for (Transaction transaction : snapshot.getTransactionsOfClient(nextName())) {
+            sum += transaction.getAmount();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long totalAmountSentByFullScan() {
+        String name = nextName();
+        long sum = 0;
+        for (int row = 0; row < store.size(); row++) {
+            if (name.equals(store.getSenderFullName(row))) {
+                sum += store.getAmountCents(row);
+            }
+        }
+        return sum;
+    }
+
+    private String nextName() {
+        return names[next++ & (LOOKUP_NAMES - 1)];
+    }
+}
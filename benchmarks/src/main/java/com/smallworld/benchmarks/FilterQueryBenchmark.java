@@ -0,0 +1,82 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import com.smallworld.snapshot.TransactionSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composite filters answered from the bitmap indexes against the equivalent stream scan over the rows:
+ * unsolved issues of senders aged 18 to 25 sending over 1000, and transactions with solved issues only
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FilterQueryBenchmark {
+    private static final TransactionFilter YOUNG_SENDERS_WITH_OPEN_ISSUES = TransactionFilter.hasOpenIssue()
+            .and(TransactionFilter.senderAgeBetween(18, 25))
+            .and(TransactionFilter.amountAbove(1000));
+    private static final TransactionFilter SOLVED_ISSUES_ONLY = TransactionFilter.hasSolvedIssue()
+            .and(TransactionFilter.hasOpenIssue().not());
+
+    @Param({"1000000"})
+    private int rows;
+
+    private List<Transaction> transactions;
+    private TransactionSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder();
+        new SyntheticTransactions(100_000, 0.1).generate(rows, builder);
+        snapshot = builder.build();
+        transactions = snapshot.getTransactions();
+        // the indexes are built by the first filtered query, not measured here
+        snapshot.aggregate(TransactionFilter.all());
+    }
+
+    @Benchmark
+    public FilterAggregate youngSendersWithOpenIssuesBitmap() {
+        return snapshot.aggregate(YOUNG_SENDERS_WITH_OPEN_ISSUES);
+    }
+
+    @Benchmark
+    public double youngSendersWithOpenIssuesScan() {
+        return transactions.stream()
+                .filter(transaction -> Boolean.FALSE.equals(transaction.getIssueSolved()))
+                .filter(transaction -> transaction.getSenderAge() >= 18 && transaction.getSenderAge() <= 25)
+                .filter(transaction -> transaction.getAmount() > 1000)
+                .mapToDouble(Transaction::getAmount)
+                .sum();
+    }
+
+    @Benchmark
+    public FilterAggregate solvedIssuesOnlyBitmap() {
+        return snapshot.aggregate(SOLVED_ISSUES_ONLY);
+    }
+
+    @Benchmark
+    public long solvedIssuesOnlyScan() {
+        return transactions.stream()
+                .filter(transaction -> transaction.getIssueId() != null && Boolean.TRUE.equals(transaction.getIssueSolved()))
+                .count();
+    }
+}
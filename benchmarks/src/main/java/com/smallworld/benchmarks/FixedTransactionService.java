@@ -0,0 +1,28 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.service.TransactionService;
+import com.smallworld.snapshot.TransactionSnapshot;
+
+import java.util.List;
+
+/**
+ * Hands out a snapshot prepared up front, so the benchmarks measure the queries and not the loading
+ */
+final class FixedTransactionService implements TransactionService {
+    private final TransactionSnapshot snapshot;
+
+    FixedTransactionService(TransactionSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public List<Transaction> getAllTransaction() {
+        return snapshot.getTransactions();
+    }
+
+    @Override
+    public TransactionSnapshot getTransactionSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,167 @@
+package com.smallworld.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed loop load test against the query endpoints of a locally running application. Every worker thread
+ * sends one request at a time, cycling through the endpoints, and the latencies are reported per endpoint
+ * as p50, p99 and max together with the achieved request rate.
+ * <p>
+ * Arguments, all optional: base url (default {@code http://localhost:8085}), concurrent workers (64),
+ * measured seconds (30), warmup seconds (10) and {@code revalidate} to send the last ETag back as
+ * If-None-Match, which measures the 304 path instead of full payloads
+ */
+public final class HttpLoadTest {
+    private static final String CLIENT = URLEncoder.encode("Tom Shelby", StandardCharsets.UTF_8);
+    private static final String[] ENDPOINTS = {
+            "/transactions/total-amount",
+            "/transactions/total-amount-sent?sender=" + CLIENT,
+            "/transactions/max-amount",
+            "/transactions/unique-clients",
+            "/transactions/open-compliance-issues?client=" + CLIENT,
+            "/transactions/by-beneficiary",
+            "/transactions/unsolved-issue-ids",
+            "/transactions/solved-issue-messages",
+            "/transactions/top?n=3",
+            "/transactions/top-sender"
+    };
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8085";
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        boolean revalidate = args.length > 4 && args[4].equals("revalidate");
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(4))
+                .build();
+        System.out.printf("warming up for %d s with %d workers%n", warmupSeconds, workers);
+        run(client, baseUrl, workers, warmupSeconds, revalidate);
+        System.out.printf("measuring for %d s with %d workers%s%n", seconds, workers, revalidate ? ", revalidating" : "");
+        Latencies[] latencies = run(client, baseUrl, workers, seconds, revalidate);
+
+        System.out.printf("%-60s %10s %10s %10s %10s %8s%n", "endpoint", "requests", "p50 ms", "p99 ms", "max ms", "errors");
+        long total = 0;
+        for (int i = 0; i < ENDPOINTS.length; i++) {
+            Latencies endpoint = latencies[i];
+            total += endpoint.count;
+            System.out.printf(Locale.ROOT, "%-60s %10d %10.3f %10.3f %10.3f %8d%n", ENDPOINTS[i], endpoint.count,
+                    endpoint.percentileMillis(0.50), endpoint.percentileMillis(0.99), endpoint.percentileMillis(1.0),
+                    endpoint.errors);
+        }
+        System.out.printf(Locale.ROOT, "%d requests, %.0f requests/s%n", total, (double) total / seconds);
+        System.exit(0);
+    }
+
+    private static Latencies[] run(HttpClient client, String baseUrl, int workers, int seconds, boolean revalidate)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<Latencies[]>> results = new ArrayList<>();
+        for (int worker = 0; worker < workers; worker++) {
+            int firstEndpoint = worker % ENDPOINTS.length;
+            results.add(executor.submit(() -> {
+                start.await();
+                return work(client, baseUrl, firstEndpoint, deadline, revalidate);
+            }));
+        }
+        start.countDown();
+        Latencies[] merged = new Latencies[ENDPOINTS.length];
+        Arrays.setAll(merged, i -> new Latencies());
+        for (Future<Latencies[]> result : results) {
+            Latencies[] worker = result.get();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i].addAll(worker[i]);
+            }
+        }
+        executor.shutdown();
+        return merged;
+    }
+
+    private static Latencies[] work(HttpClient client, String baseUrl, int firstEndpoint, long deadline,
+                                    boolean revalidate) throws InterruptedException {
+        Latencies[] latencies = new Latencies[ENDPOINTS.length];
+        Arrays.setAll(latencies, i -> new Latencies());
+        String[] etags = new String[ENDPOINTS.length];
+        int endpoint = firstEndpoint;
+        while (System.nanoTime() < deadline) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + ENDPOINTS[endpoint]));
+            if (revalidate && etags[endpoint] != null) {
+                request.header("If-None-Match", etags[endpoint]);
+            }
+            long begin = System.nanoTime();
+            try {
+                HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                latencies[endpoint].add(System.nanoTime() - begin);
+                if (response.statusCode() != 200 && response.statusCode() != 304) {
+                    latencies[endpoint].errors++;
+                }
+                etags[endpoint] = response.headers().firstValue("ETag").orElse(null);
+            } catch (IOException e) {
+                latencies[endpoint].errors++;
+            }
+            endpoint = (endpoint + 1) % ENDPOINTS.length;
+        }
+        return latencies;
+    }
+
+    /**
+     * Growable array of latencies in nanoseconds, sorted once when percentiles are asked for
+     */
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int count;
+        private long errors;
+        private boolean sorted;
+
+        void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+            sorted = false;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.values[i]);
+            }
+            errors += other.errors;
+        }
+
+        double percentileMillis(double percentile) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            if (!sorted) {
+                Arrays.sort(values, 0, count);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return values[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.snapshot.ParallelAggregator;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot aggregation over a column store, sequential against the fork-join aggregator at growing
+ * parallelism. Speedup is bounded by the cores available to the fork
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelAggregationBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private TransactionStore store;
+    private ForkJoinPool pool;
+    private ParallelAggregator aggregator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new SyntheticTransactions(100_000, 0.1).generate(rows, builder);
+        store = builder.build();
+        pool = new ForkJoinPool(parallelism);
+        aggregator = new ParallelAggregator(pool, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public TransactionSnapshot sequential() {
+        return TransactionSnapshot.of(store);
+    }
+
+    @Benchmark
+    public TransactionSnapshot parallel() {
+        return aggregator.aggregate(store);
+    }
+}
@@ -0,0 +1,124 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.partition.LocalShardClient;
+import com.smallworld.partition.PartitionCoordinator;
+import com.smallworld.partition.Partitioning;
+import com.smallworld.partition.ShardClient;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetcher queries answered by a {@link PartitionCoordinator} as the shard count grows, with the shards as
+ * in-JVM workers so the numbers are the fan-out and merge cost without the network. Setup prints the bytes
+ * the column store of each shard retains, the memory a worker needs for its share of the rows.
+ * {@code totalAmount} and {@code top10} merge a few values per shard; {@code summarizeBatch} sends
+ * {@value #BATCH_CLIENTS} clients to every shard; {@code uniqueClients} and {@code topSender} merge the
+ * names and per-sender totals of every shard, which grow with the clients rather than the rows, unless
+ * {@code approximate} merges the client sketches of the shards instead
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class PartitionedQueryBenchmark {
+    private static final int BATCH_CLIENTS = 1024;
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"1", "2", "4", "8"})
+    private int shards;
+
+    @Param({"100000"})
+    private int clients;
+
+    @Param({"false", "true"})
+    private boolean approximate;
+
+    private PartitionCoordinator coordinator;
+    private TransactionDataFetcher fetcher;
+    private List<String> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<TransactionStore.Builder> builders = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            builders.add(new TransactionStore.Builder());
+        }
+        new SyntheticTransactions(clients, 0.1).generate(rows, transaction ->
+                builders.get(Partitioning.shardOf(transaction.getMtn(), shards)).accept(transaction));
+        List<ShardClient> workers = new ArrayList<>();
+        long largest = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            TransactionStore store = builders.get(shard).build();
+            largest = Math.max(largest, store.estimatedSizeInBytes());
+            TransactionSnapshot snapshot = TransactionSnapshot.of(store);
+            if (approximate) {
+                snapshot = snapshot.withGeneration(1, snapshot.sketchClients(0.01, 0.001));
+            }
+            workers.add(new LocalShardClient(new FixedTransactionService(snapshot), new Partitioning(shards, shard)));
+        }
+        System.out.printf("%n%d shards of %d rows, largest shard retains %d bytes%n", shards, rows, largest);
+        coordinator = new PartitionCoordinator(workers, approximate);
+        fetcher = new TransactionDataFetcher(coordinator);
+        SplittableRandom random = new SplittableRandom(7);
+        batch = new ArrayList<>(BATCH_CLIENTS);
+        for (int i = 0; i < BATCH_CLIENTS; i++) {
+            batch.add(SyntheticTransactions.clientName(random.nextInt(clients)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        coordinator.close();
+    }
+
+    @Benchmark
+    public BigDecimal totalAmount() {
+        return fetcher.getTotalTransactionAmount();
+    }
+
+    @Benchmark
+    public List<Object> top10() {
+        return fetcher.getTopNTransactionsByAmount(10);
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> summarizeBatch() {
+        return fetcher.getTotalTransactionAmountSentBy(batch);
+    }
+
+    @Benchmark
+    public long uniqueClients() {
+        return fetcher.countUniqueClients();
+    }
+
+    @Benchmark
+    public Optional<Object> topSender() {
+        return fetcher.getTopSender();
+    }
+}
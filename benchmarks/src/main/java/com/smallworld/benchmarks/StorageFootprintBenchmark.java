@@ -0,0 +1,120 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How much of a loaded snapshot lives on the heap for each storage, and what the collector spends on it while
+ * queries run. Setup prints the heap and direct memory in use after a full collection; teardown prints the
+ * collections and their time during the measured queries. {@code offheap} moves the columns out of the heap
+ * the collector traces, leaving the dictionaries and the snapshot's per-client aggregates
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+public class StorageFootprintBenchmark {
+    private static final int LOOKUP_NAMES = 1024;
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"100000"})
+    private int clients;
+
+    @Param({"heap", "columnar", "offheap"})
+    private String storage;
+
+    private TransactionDataFetcher fetcher;
+    private String[] names;
+    private int next;
+    private long collections;
+    private long collectionMillis;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticTransactions generator = new SyntheticTransactions(clients, 0.1);
+        TransactionSnapshot snapshot;
+        if ("heap".equals(storage)) {
+            TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder();
+            generator.generate(rows, builder);
+            snapshot = builder.build();
+        } else {
+            TransactionStore.Builder builder = new TransactionStore.Builder();
+            generator.generate(rows, builder);
+            snapshot = TransactionSnapshot.of("offheap".equals(storage) ? builder.buildOffHeap() : builder.build());
+        }
+        fetcher = new TransactionDataFetcher(new FixedTransactionService(snapshot));
+        SplittableRandom random = new SplittableRandom(7);
+        names = new String[LOOKUP_NAMES];
+        for (int i = 0; i < LOOKUP_NAMES; i++) {
+            names[i] = SyntheticTransactions.clientName(random.nextInt(clients));
+        }
+        System.gc();
+        System.out.printf("%n%s storage of %d rows: %d bytes used on heap, %d bytes in direct buffers%n", storage,
+                rows, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), directMemoryUsed());
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        collections = -collectionCount();
+        collectionMillis = -collectionTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        System.out.printf("%n%d collections taking %d ms%n", collections + collectionCount(),
+                collectionMillis + collectionTime());
+    }
+
+    @Benchmark
+    public void queryMix(Blackhole blackhole) {
+        String name = names[next++ & (LOOKUP_NAMES - 1)];
+        blackhole.consume(fetcher.getTotalTransactionAmountSentBy(name));
+        blackhole.consume(fetcher.hasOpenComplianceIssues(name));
+        blackhole.consume(fetcher.getTopNTransactionsByAmount(100));
+        blackhole.consume(fetcher.getMaxTransactionAmount());
+    }
+
+    private static long directMemoryUsed() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> "direct".equals(pool.getName()))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+
+    private static long collectionCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .sum();
+    }
+
+    private static long collectionTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .sum();
+    }
+}
@@ -0,0 +1,111 @@
+package com.smallworld.benchmarks;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.smallworld.loader.TransactionSink;
+import com.smallworld.model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of transaction rows shaped like the production exports: a transaction with issues
+ * is repeated once per issue, names are drawn from a fixed pool of clients and the same seed always yields
+ * the same rows
+ */
+public final class SyntheticTransactions {
+    public static final long DEFAULT_SEED = 42L;
+    private static final String[] ISSUE_MESSAGES = {"Looks like money laundering", "Never gonna give you up",
+            "Something's fishy", "Don't let this transaction happen", "Never gonna let you down"};
+    private static final int MAX_ISSUES_PER_TRANSACTION = 3;
+
+    private final int distinctClients;
+    private final double issueRatio;
+    private final long seed;
+
+    /**
+     * @param distinctClients size of the pool senders and beneficiaries are drawn from
+     * @param issueRatio      share of transactions with at least one issue, between 0 and 1
+     */
+    public SyntheticTransactions(int distinctClients, double issueRatio, long seed) {
+        if (distinctClients <= 0) {
+            throw new IllegalArgumentException("distinctClients must be positive");
+        }
+        if (issueRatio < 0 || issueRatio > 1) {
+            throw new IllegalArgumentException("issueRatio must be between 0 and 1");
+        }
+        this.distinctClients = distinctClients;
+        this.issueRatio = issueRatio;
+        this.seed = seed;
+    }
+
+    public SyntheticTransactions(int distinctClients, double issueRatio) {
+        this(distinctClients, issueRatio, DEFAULT_SEED);
+    }
+
+    public static String clientName(int client) {
+        return "Client " + client;
+    }
+
+    /**
+     * Emits exactly {@code rows} rows into the sink. Every row is a fresh object, as it would be when parsed
+     */
+    public void generate(int rows, TransactionSink sink) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int mtn = 1;
+        int issueId = 1;
+        int emitted = 0;
+        while (emitted < rows) {
+            int sender = random.nextInt(distinctClients);
+            int beneficiary = random.nextInt(distinctClients);
+            double amount = random.nextInt(1, 1_000_000) / 100.0;
+            int senderAge = random.nextInt(18, 90);
+            int beneficiaryAge = random.nextInt(18, 90);
+            int issues = random.nextDouble() < issueRatio ? random.nextInt(1, MAX_ISSUES_PER_TRANSACTION + 1) : 0;
+            for (int issue = 0; issue < Math.max(1, issues) && emitted < rows; issue++, emitted++) {
+                Transaction transaction = new Transaction();
+                transaction.setMtn(mtn);
+                transaction.setAmount(amount);
+                transaction.setSenderFullName(clientName(sender));
+                transaction.setSenderAge(senderAge);
+                transaction.setBeneficiaryFullName(clientName(beneficiary));
+                transaction.setBeneficiaryAge(beneficiaryAge);
+                if (issues > 0) {
+                    transaction.setIssueId(issueId++);
+                    transaction.setIssueSolved(random.nextBoolean());
+                    transaction.setIssueMessage(ISSUE_MESSAGES[random.nextInt(ISSUE_MESSAGES.length)]);
+                } else {
+                    transaction.setIssueSolved(true);
+                }
+                sink.accept(transaction);
+            }
+            mtn++;
+        }
+    }
+
+    /**
+     * Writes the same rows {@link #generate} emits as a JSON array, in the layout of {@code transactions.json}
+     */
+    public void writeJson(int rows, Path file) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            try {
+                generate(rows, transaction -> {
+                    try {
+                        mapper.writeValue(generator, transaction);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TopAmountHeap;
+import com.smallworld.store.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Top-N by amount: the bounded heap over the amount column against the previous distinct + full sort
+ * over the list of transactions, plus the cost of answering from the rows ranked at load time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TopTransactionsBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"10", "100", "1000"})
+    private int n;
+
+    private List<Transaction> transactions;
+    private TransactionStore store;
+    private TransactionSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactions = new ArrayList<>(rows);
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new SyntheticTransactions(100_000, 0.1).generate(rows, builder.andThen(transactions::add));
+        store = builder.build();
+        snapshot = TransactionSnapshot.of(store);
+    }
+
+    @Benchmark
+    public int[] boundedHeap() {
+        TopAmountHeap heap = new TopAmountHeap(n);
+        for (int row = 0; row < store.size(); row++) {
+            heap.offer(row, store.getMtn(row), store.getAmountCents(row));
+        }
+        return heap.rowsDescending();
+    }
+
+    @Benchmark
+    public List<Transaction> distinctAndSort() {
+        List<Transaction> unique = transactions.stream().filter(distinctByKey(Transaction::getMtn)).toList();
+        return unique.stream().sorted(Comparator.comparing(Transaction::getAmount).reversed()).limit(n).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Transaction> precomputed() {
+        return snapshot.getTopTransactions(n);
+    }
+
+    private static <T> Predicate<T> distinctByKey(Function<? super T, ?> keyExtractor) {
+        Set<Object> seen = ConcurrentHashMap.newKeySet();
+        return t -> seen.add(keyExtractor.apply(t));
+    }
+}
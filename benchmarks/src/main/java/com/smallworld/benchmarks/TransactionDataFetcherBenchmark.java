@@ -0,0 +1,136 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every public query of {@link TransactionDataFetcher} over synthetic data, for each storage.
+ * Run with {@code -prof gc} to see the allocation rate of each query next to its latency
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TransactionDataFetcherBenchmark {
+    private static final int LOOKUP_NAMES = 1024;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"100000"})
+    private int clients;
+
+    @Param({"0.1"})
+    private double issueRatio;
+
+    @Param({"heap", "columnar", "offheap"})
+    private String storage;
+
+    private TransactionDataFetcher fetcher;
+    private String[] names;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticTransactions generator = new SyntheticTransactions(clients, issueRatio);
+        TransactionSnapshot snapshot;
+        if ("columnar".equals(storage) || "offheap".equals(storage)) {
+            TransactionStore.Builder builder = new TransactionStore.Builder();
+            generator.generate(rows, builder);
+            snapshot = TransactionSnapshot.of("offheap".equals(storage) ? builder.buildOffHeap() : builder.build());
+        } else {
+            TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder();
+            generator.generate(rows, builder);
+            snapshot = builder.build();
+        }
+        fetcher = new TransactionDataFetcher(new FixedTransactionService(snapshot));
+        SplittableRandom random = new SplittableRandom(7);
+        names = new String[LOOKUP_NAMES];
+        for (int i = 0; i < LOOKUP_NAMES; i++) {
+            names[i] = new String(SyntheticTransactions.clientName(random.nextInt(clients)));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal getTotalTransactionAmount() {
+        return fetcher.getTotalTransactionAmount();
+    }
+
+    @Benchmark
+    public BigDecimal getTotalTransactionAmountSentBy() {
+        return fetcher.getTotalTransactionAmountSentBy(nextName());
+    }
+
+    @Benchmark
+    public BigDecimal getMaxTransactionAmount() {
+        return fetcher.getMaxTransactionAmount();
+    }
+
+    @Benchmark
+    public long countUniqueClients() {
+        return fetcher.countUniqueClients();
+    }
+
+    @Benchmark
+    public boolean hasOpenComplianceIssues() {
+        return fetcher.hasOpenComplianceIssues(nextName());
+    }
+
+    @Benchmark
+    public Map<String, Object> getTransactionsByBeneficiaryName() {
+        return fetcher.getTransactionsByBeneficiaryName();
+    }
+
+    @Benchmark
+    public Set<Integer> getUnsolvedIssueIds() {
+        return fetcher.getUnsolvedIssueIds();
+    }
+
+    @Benchmark
+    public List<String> getAllSolvedIssueMessages() {
+        return fetcher.getAllSolvedIssueMessages();
+    }
+
+    @Benchmark
+    public List<Object> getTop3TransactionsByAmount() {
+        return fetcher.getTop3TransactionsByAmount();
+    }
+
+    @Benchmark
+    public List<Object> getTopNTransactionsByAmount() {
+        return fetcher.getTopNTransactionsByAmount(100);
+    }
+
+    @Benchmark
+    public Optional<Object> getTopSender() {
+        return fetcher.getTopSender();
+    }
+
+    private String nextName() {
+        return names[next++ & (LOOKUP_NAMES - 1)];
+    }
+}
@@ -0,0 +1,103 @@
+package com.smallworld.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.loader.TransactionJsonReader;
+import com.smallworld.model.Transaction;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import com.smallworld.store.TransactionStoreConverter;
+import com.smallworld.store.TransactionStoreFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a JSON export into a queryable snapshot, the way {@code TransactionServiceImpl} and
+ * {@code ColumnarTransactionServiceImpl} do it, against binding the whole file to a list first, and opening
+ * its memory-mapped binary copy the way {@code MappedTransactionServiceImpl} does on later starts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TransactionLoadBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"100000"})
+    private int clients;
+
+    @Param({"0.1"})
+    private double issueRatio;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Path file;
+    private Path binaryFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("transactions", ".json");
+        new SyntheticTransactions(clients, issueRatio).writeJson(rows, file);
+        binaryFile = TransactionStoreConverter.defaultTarget(file);
+        TransactionStoreConverter.convert(file, binaryFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(binaryFile);
+    }
+
+    @Benchmark
+    public TransactionSnapshot streamIntoHeapSnapshot() throws IOException {
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder();
+        new TransactionJsonReader(mapper).read(file.toFile(), builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public TransactionSnapshot streamIntoColumnarSnapshot() throws IOException {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new TransactionJsonReader(mapper).read(file.toFile(), builder);
+        return TransactionSnapshot.of(builder.build());
+    }
+
+    @Benchmark
+    public TransactionStore openMappedStore() throws IOException {
+        return TransactionStoreFile.open(binaryFile, true);
+    }
+
+    @Benchmark
+    public TransactionSnapshot openMappedSnapshot() throws IOException {
+        return TransactionSnapshot.of(TransactionStoreFile.open(binaryFile, true));
+    }
+
+    @Benchmark
+    public TransactionSnapshot readValueIntoList() throws IOException {
+        File source = file.toFile();
+        List<Transaction> transactions = mapper.readValue(source, new TypeReference<List<Transaction>>() {
+        });
+        return TransactionSnapshot.of(transactions);
+    }
+}
@@ -0,0 +1,80 @@
+package com.smallworld.benchmarks;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.wal.TransactionLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Appends to the write-ahead log from 16 concurrent writers, the way the ingestion endpoints do, at different
+ * group commit sizes. {@code maxBatch=1} forces every append on its own; larger groups share one force between
+ * the appends queued behind it. {@code recordsPerAppend} is the size of each {@code POST /transactions/batch}.
+ * Records per second are the reported operations times {@code recordsPerAppend}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class TransactionLogBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    private int maxBatch;
+
+    @Param({"1", "64"})
+    private int recordsPerAppend;
+
+    @Param({"true", "false"})
+    private boolean sync;
+
+    private Path directory;
+    private TransactionLog log;
+    private List<Transaction> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("transaction-log");
+        log = new TransactionLog(directory.resolve("transactions.wal"), sync, maxBatch, Duration.ZERO);
+        batch = new ArrayList<>(recordsPerAppend);
+        new SyntheticTransactions(100_000, 0.1).generate(recordsPerAppend, batch::add);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return log.append(batch);
+    }
+}
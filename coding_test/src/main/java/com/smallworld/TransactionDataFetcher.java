@@ -1,79 +1,162 @@
 package com.smallworld;
 
+import com.smallworld.cache.QueryCache;
+import com.smallworld.cache.QueryCacheStatistics;
 import com.smallworld.exception.ServiceException;
-import com.smallworld.model.Transaction;
+import com.smallworld.metrics.QueryMetrics;
+import com.smallworld.model.Money;
+import com.smallworld.partition.PartitionCoordinator;
 import com.smallworld.service.TransactionService;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import com.smallworld.snapshot.TransactionSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.util.CollectionUtils;
+import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
+/**
+ * Answers queries over the current transactions. Queries taking a filter or a size, and those building
+ * collections, are cached per data generation in the {@link QueryCache}; per-client queries are lookups in the
+ * client indexes and are not. Every query that
+ * returns is timed through {@link QueryMetrics}. Amounts are summed exactly in cents and returned as {@link BigDecimal}
+ * at {@link Money#SCALE} decimals.
+ * <p>
+ * Served by a {@link PartitionCoordinator}, the queries with a partial form are merged from the answers of every
+ * shard instead of read from a snapshot, and are not cached: each of them asks the workers again. The map of all
+ * beneficiaries and filtered pages in load order have none, and are rejected there
+ */
+@Component
 public class TransactionDataFetcher {
+    // clients answered per task of a batch
+    public static final int CLIENT_BATCH_CHUNK = 4096;
+
+    private final TransactionService transactionService;
+    // set when the transactions are partitioned over workers
+    private final PartitionCoordinator partitions;
+    private final QueryCache queryCache;
+    private final QueryMetrics queryMetrics;
+    private final QueryMetrics.Probe totalAmountProbe;
+    private final QueryMetrics.Probe totalAmountSentByProbe;
+    private final QueryMetrics.Probe maxAmountProbe;
+    private final QueryMetrics.Probe uniqueClientsProbe;
+    private final QueryMetrics.Probe openIssuesProbe;
+    private final QueryMetrics.Probe byBeneficiaryProbe;
+    private final QueryMetrics.Probe beneficiaryPageProbe;
+    private final QueryMetrics.Probe unsolvedIssueIdsProbe;
+    private final QueryMetrics.Probe solvedIssueMessagesProbe;
+    private final QueryMetrics.Probe top3Probe;
+    private final QueryMetrics.Probe topNProbe;
+    private final QueryMetrics.Probe aggregateProbe;
+    private final QueryMetrics.Probe filteredTransactionsProbe;
+    private final QueryMetrics.Probe filteredTopNProbe;
+    private final QueryMetrics.Probe topSenderProbe;
+    private final QueryMetrics.Probe summarizeClientsProbe;
+    private final Executor batchExecutor = ForkJoinPool.commonPool();
+
+    public TransactionDataFetcher(TransactionService transactionService) {
+        this(transactionService, QueryCache.disabled(), QueryMetrics.detached());
+    }
+
     @Autowired
-    private TransactionService transactionService;
+    public TransactionDataFetcher(TransactionService transactionService, QueryCache queryCache,
+                                  QueryMetrics queryMetrics) {
+        this.transactionService = transactionService;
+        this.partitions = transactionService instanceof PartitionCoordinator coordinator ? coordinator : null;
+        this.queryCache = queryCache;
+        this.queryMetrics = queryMetrics;
+        this.totalAmountProbe = queryMetrics.probe("getTotalTransactionAmount");
+        this.totalAmountSentByProbe = queryMetrics.probe("getTotalTransactionAmountSentBy");
+        this.maxAmountProbe = queryMetrics.probe("getMaxTransactionAmount");
+        this.uniqueClientsProbe = queryMetrics.probe("countUniqueClients");
+        this.openIssuesProbe = queryMetrics.probe("hasOpenComplianceIssues");
+        this.byBeneficiaryProbe = queryMetrics.probe("getTransactionsByBeneficiaryName");
+        this.beneficiaryPageProbe = queryMetrics.probe("getTransactionsByBeneficiaryNamePage");
+        this.unsolvedIssueIdsProbe = queryMetrics.probe("getUnsolvedIssueIds");
+        this.solvedIssueMessagesProbe = queryMetrics.probe("getAllSolvedIssueMessages");
+        this.top3Probe = queryMetrics.probe("getTop3TransactionsByAmount");
+        this.topNProbe = queryMetrics.probe("getTopNTransactionsByAmount");
+        this.aggregateProbe = queryMetrics.probe("aggregate");
+        this.filteredTransactionsProbe = queryMetrics.probe("getTransactions");
+        this.filteredTopNProbe = queryMetrics.probe("getTopNTransactionsByAmountFiltered");
+        this.topSenderProbe = queryMetrics.probe("getTopSender");
+        this.summarizeClientsProbe = queryMetrics.probe("summarizeClients");
+    }
 
     /**
      * Returns the sum of the amounts of all transactions
      */
-    public double getTotalTransactionAmount() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return 0.0;
-        }
-        return transactions.stream().mapToDouble(Transaction::getAmount).sum();
+    public BigDecimal getTotalTransactionAmount() {
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        BigDecimal total = Money.toBigDecimal(partitions != null ? partitions.getTotalAmountCents()
+                : snapshot().getTotalAmountCents());
+        totalAmountProbe.record(started, allocated);
+        return total;
     }
 
     /**
      * Returns the sum of the amounts of all transactions sent by the specified client
      */
-    public double getTotalTransactionAmountSentBy(String senderFullName) {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return 0.0;
-        }
-        return transactions.stream().filter(transaction -> transaction.getSenderFullName().equals(senderFullName)).mapToDouble(Transaction::getAmount).sum();
+    public BigDecimal getTotalTransactionAmountSentBy(String senderFullName) {
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        BigDecimal total = partitions != null ? summarize(senderFullName).totalAmountSent()
+                : Money.toBigDecimal(snapshot().getTotalAmountCentsSentBy(senderFullName));
+        totalAmountSentByProbe.record(started, allocated);
+        return total;
     }
 
     /**
      * Returns the highest transaction amount
      */
-    public double getMaxTransactionAmount() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return 0.0;
-        }
-        Optional<Transaction> optionalTransaction = transactions.stream().max(Comparator.comparingDouble(Transaction::getAmount));
-        if (optionalTransaction.isPresent()) {
-            return optionalTransaction.get().getAmount();
-        } else {
-            throw new ServiceException("Transaction Object Not Found");
-        }
+    public BigDecimal getMaxTransactionAmount() {
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        BigDecimal max = Money.toBigDecimal(partitions != null ? partitions.getMaxAmountCents()
+                : snapshot().getMaxAmountCents());
+        maxAmountProbe.record(started, allocated);
+        return max;
     }
 
     /**
-     * Counts the number of unique clients that sent or received a transaction
+     * Counts the number of unique clients that sent or received a transaction, estimated when the snapshot
+     * carries client sketches
      */
     public long countUniqueClients() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return 0;
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        long count;
+        if (partitions != null) {
+            count = partitions.getUniqueClientCount();
+        } else {
+            TransactionSnapshot snapshot = snapshot();
+            ClientSketches sketches = snapshot.getClientSketches();
+            count = sketches != null ? sketches.getUniqueClientCount() : snapshot.getUniqueClientCount();
         }
-        long senderCount = transactions.stream().map(Transaction::getSenderFullName).distinct().count();
-        long receiverCount = transactions.stream().map(Transaction::getSenderFullName).distinct().count();
-        return senderCount + receiverCount;
+        uniqueClientsProbe.record(started, allocated);
+        return count;
     }
 
     /**
@@ -81,87 +164,245 @@ public class TransactionDataFetcher {
      * issue that has not been solved
      */
     public boolean hasOpenComplianceIssues(String clientFullName) {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return false;
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        boolean open = partitions != null ? summarize(clientFullName).openComplianceIssues()
+                : snapshot().hasOpenIssues(clientFullName);
+        openIssuesProbe.record(started, allocated);
+        return open;
+    }
+
+    /**
+     * Returns whether each client has at least one transaction with an open compliance issue, answering the
+     * whole batch against the same data
+     */
+    public Map<String, Boolean> hasOpenComplianceIssues(Collection<String> clientFullNames) {
+        Map<String, Boolean> open = new HashMap<>();
+        summarizeClients(clientFullNames, chunk -> chunk.forEach(
+                summary -> open.put(summary.client(), summary.openComplianceIssues())));
+        return open;
+    }
+
+    /**
+     * Returns the sum of the amounts sent by each client, answering the whole batch against the same data
+     */
+    public Map<String, BigDecimal> getTotalTransactionAmountSentBy(Collection<String> senderFullNames) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        summarizeClients(senderFullNames, chunk -> chunk.forEach(
+                summary -> totals.put(summary.client(), summary.totalAmountSent())));
+        return totals;
+    }
+
+    /**
+     * Answers the per-client queries for a batch of clients against one snapshot, each client a lookup in
+     * the client indexes. Batches larger than {@value #CLIENT_BATCH_CHUNK} clients are split into chunks
+     * answered in parallel on the common fork-join pool. Every chunk is handed to the consumer on the calling
+     * thread as soon as it is done, so chunks may arrive out of order; clients keep their order within one
+     */
+    public void summarizeClients(Collection<String> clientFullNames, Consumer<List<ClientSummary>> consumer) {
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        TransactionSnapshot snapshot = partitions != null ? null : snapshot();
+        List<String> names = clientFullNames instanceof List<String> list && list instanceof RandomAccess ? list
+                : new ArrayList<>(clientFullNames);
+        if (partitions != null) {
+            // every shard answers the whole batch, chunked by the workers' own batches rather than here
+            consumer.accept(partitions.summarize(names));
+        } else if (names.size() <= CLIENT_BATCH_CHUNK) {
+            consumer.accept(snapshot.summarize(names));
+        } else {
+            CompletionService<List<ClientSummary>> chunks = new ExecutorCompletionService<>(batchExecutor);
+            List<Future<List<ClientSummary>>> pending = new ArrayList<>();
+            for (int from = 0; from < names.size(); from += CLIENT_BATCH_CHUNK) {
+                List<String> chunk = names.subList(from, Math.min(names.size(), from + CLIENT_BATCH_CHUNK));
+                pending.add(chunks.submit(() -> snapshot.summarize(chunk)));
+            }
+            try {
+                for (int i = 0; i < pending.size(); i++) {
+                    consumer.accept(chunks.take().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServiceException("Client batch was interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new ServiceException("Client batch failed");
+            } finally {
+                // left over when the consumer fails, such as a client disconnecting from a stream
+                pending.forEach(future -> future.cancel(false));
+            }
         }
-        // not checking issue id too as if issue contain no issues then IssueSolved is true
-        return transactions.stream().anyMatch(transaction -> (transaction.getSenderFullName().equals(clientFullName) ||
-                transaction.getBeneficiaryFullName().equals(clientFullName)) && transaction.getIssueSolved().equals(false));
+        summarizeClientsProbe.record(started, allocated, names.size());
     }
 
     /**
      * Returns all transactions indexed by beneficiary name
      */
     public Map<String, Object> getTransactionsByBeneficiaryName() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return Collections.emptyMap();
-        }
-
-        Map<String, List<Transaction>> beneficiaryMap = transactions.stream().collect(Collectors.groupingBy(Transaction::getBeneficiaryFullName));
-
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
         //changing value to required object type from List<Transaction>
-        return new HashMap<>(beneficiaryMap);
+        Map<String, Object> byBeneficiary = cached("transactionsByBeneficiary", null,
+                snapshot -> Collections.unmodifiableMap(snapshot.getTransactionsByBeneficiary()));
+        byBeneficiaryProbe.record(started, allocated, byBeneficiary.size());
+        return byBeneficiary;
+    }
+
+    /**
+     * Returns up to limit beneficiaries named after the given one in name order, with their transactions,
+     * without building the map of all beneficiaries. A null name starts from the first beneficiary
+     */
+    public BeneficiaryPage getTransactionsByBeneficiaryName(String after, int limit) {
+        if (limit < 0) {
+            throw new ServiceException("Limit must not be negative");
+        }
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        BeneficiaryPage page = partitions != null ? partitions.getBeneficiaryPage(after, limit)
+                : snapshot().getBeneficiaryPage(after, limit);
+        beneficiaryPageProbe.record(started, allocated, page.transactionsByBeneficiary().size());
+        return page;
     }
 
     /**
      * Returns the identifiers of all open compliance issues
      */
     public Set<Integer> getUnsolvedIssueIds() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return new HashSet<>();
-        }
-        return transactions.stream().filter(transaction -> transaction.getIssueSolved().equals(false)).map(Transaction::getIssueId).collect(Collectors.toSet());
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        Set<Integer> ids = partitions != null ? partitions.getUnsolvedIssueIds() : cached("unsolvedIssueIds", null,
+                snapshot -> Collections.unmodifiableSet(snapshot.getUnsolvedIssueIds()));
+        unsolvedIssueIdsProbe.record(started, allocated, ids.size());
+        return ids;
     }
 
     /**
      * Returns a list of all solved issue messages
      */
     public List<String> getAllSolvedIssueMessages() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return new ArrayList<>();
-        }
-
-        // checking issue id too as if issue contain no issues then IssueSolved is true
-        return transactions.stream().filter(transaction -> Objects.nonNull(transaction.getIssueId()) &&
-                transaction.getIssueSolved().equals(true)).map(Transaction::getIssueMessage).toList();
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        List<String> messages = partitions != null ? partitions.getSolvedIssueMessages()
+                : cached("solvedIssueMessages", null, TransactionSnapshot::getSolvedIssueMessages);
+        solvedIssueMessagesProbe.record(started, allocated, messages.size());
+        return messages;
     }
 
     /**
      * Returns the 3 transactions with highest amount sorted by amount descending
      */
     public List<Object> getTop3TransactionsByAmount() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
-            return new ArrayList<>();
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        List<Object> top = topTransactions(3);
+        top3Probe.record(started, allocated, top.size());
+        return top;
+    }
+
+    /**
+     * Returns the n transactions with highest amount sorted by amount descending
+     */
+    public List<Object> getTopNTransactionsByAmount(int n) {
+        if (n < 0) {
+            throw new ServiceException("Number of transactions must not be negative");
         }
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        List<Object> top = topTransactions(n);
+        topNProbe.record(started, allocated, top.size());
+        return top;
+    }
+
+    /**
+     * Returns the number, total and highest amount of the transactions matching the filter
+     */
+    public FilterAggregate aggregate(TransactionFilter filter) {
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        FilterAggregate aggregate = partitions != null ? partitions.aggregate(filter)
+                : cached("aggregate", filter, snapshot -> snapshot.aggregate(filter));
+        aggregateProbe.record(started, allocated, aggregate.count());
+        return aggregate;
+    }
 
-        //finding unique transactions as transaction can due to list of issues
-        List<Transaction> uniqueTransaction = transactions.stream().filter(distinctByKey(Transaction::getMtn)).toList();
-        return uniqueTransaction.stream().sorted(Comparator.comparing(Transaction::getAmount).reversed()).limit(3).collect(Collectors.toList());
+    /**
+     * Returns a page of the transactions matching the filter, in load order
+     */
+    public List<Object> getTransactions(TransactionFilter filter, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new ServiceException("Offset and limit must not be negative");
+        }
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        List<Object> page = new ArrayList<>(cached("filteredTransactions", Arrays.asList(filter, offset, limit),
+                snapshot -> snapshot.getTransactions(filter, offset, limit)));
+        filteredTransactionsProbe.record(started, allocated, page.size());
+        return page;
     }
 
     /**
-     * Returns the sender with the most total sent amount
+     * Returns the n transactions matching the filter with highest amount sorted by amount descending
+     */
+    public List<Object> getTopNTransactionsByAmount(TransactionFilter filter, int n) {
+        if (n < 0) {
+            throw new ServiceException("Number of transactions must not be negative");
+        }
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        List<Object> top = new ArrayList<>(partitions != null ? partitions.getTopTransactions(filter, n)
+                : cached("filteredTopTransactions", Arrays.asList(filter, n),
+                snapshot -> snapshot.getTopTransactions(filter, n)));
+        filteredTopNProbe.record(started, allocated, top.size());
+        return top;
+    }
+
+    /**
+     * Returns the sender with the most total sent amount, the one with the highest estimated total when the
+     * snapshot carries client sketches
      */
     public Optional<Object> getTopSender() {
-        List<Transaction> transactions = transactionService.getAllTransaction();
-        if (CollectionUtils.isEmpty(transactions)) {
+        long started = System.nanoTime();
+        long allocated = queryMetrics.allocatedBytes();
+        String sender;
+        if (partitions != null) {
+            sender = partitions.getTopSender();
+        } else {
+            TransactionSnapshot snapshot = snapshot();
+            ClientSketches sketches = snapshot.getClientSketches();
+            sender = sketches != null ? sketches.getTopSender() : snapshot.getTopSender();
+        }
+        if (sender == null && (partitions != null ? partitions.isEmpty() : snapshot().isEmpty())) {
             throw new ServiceException("Transaction object not found");
         }
+        Optional<Object> topSender = Optional.ofNullable(sender);
+        topSenderProbe.record(started, allocated);
+        return topSender;
+    }
+
+    public QueryCacheStatistics getCacheStatistics() {
+        return queryCache.getStatistics();
+    }
+
+    private List<Object> topTransactions(int n) {
+        if (partitions != null) {
+            return new ArrayList<>(partitions.getTopTransactions(n));
+        }
+        return new ArrayList<>(cached("topTransactions", n, snapshot -> snapshot.getTopTransactions(n)));
+    }
+
+    private ClientSummary summarize(String clientFullName) {
+        return partitions.summarize(Collections.singletonList(clientFullName)).get(0);
+    }
 
-        //grouping by sender and using sum as aggregate function. Then from that result finding the sender with max sum
-        Map<String, Double> senderWithTotalAmountMap = transactions.stream().collect(Collectors.groupingBy(Transaction::getSenderFullName,
-                Collectors.summingDouble(Transaction::getAmount)));
-        return Optional.ofNullable(Collections.max(senderWithTotalAmountMap.entrySet(), Map.Entry.comparingByValue()).getKey());
+    private TransactionSnapshot snapshot() {
+        return transactionService.getTransactionSnapshot();
     }
 
-    private static <T> Predicate<T> distinctByKey(Function<? super T, ?> keyExtractor) {
-        Set<Object> seen = ConcurrentHashMap.newKeySet();
-        return t -> seen.add(keyExtractor.apply(t));
+    private <T> T cached(String query, Object argument, Function<TransactionSnapshot, T> compute) {
+        TransactionSnapshot snapshot = snapshot();
+        return queryCache.get(snapshot, query, argument, () -> compute.apply(snapshot));
     }
 
 }
@@ -0,0 +1,12 @@
+package com.smallworld.cache;
+
+public enum EvictionPolicy {
+    /**
+     * Evict the result read least recently
+     */
+    LRU,
+    /**
+     * Evict the result read least often since it was cached, the least recently read one among equals
+     */
+    LFU
+}
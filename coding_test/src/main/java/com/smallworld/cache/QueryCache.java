@@ -0,0 +1,179 @@
+package com.smallworld.cache;
+
+import com.smallworld.snapshot.TransactionSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps query results keyed by query name and argument for one data generation. Results are never expired
+ * by time: the first query against a newer generation, or against another snapshot, drops them all. At most
+ * {@code maximumSize} results are kept, evicting by {@link EvictionPolicy}; a maximum size of 0 disables
+ * caching.
+ * <p>
+ * Queries run outside the lock, so concurrent misses on the same key may compute the result more than once
+ */
+@Component
+public class QueryCache {
+    private final int maximumSize;
+    private final EvictionPolicy policy;
+    // in access order for LRU, so the eldest entry is the least recently read one
+    private final LinkedHashMap<Key, Entry> entries;
+    // LFU only: keys by read count, each set in the order its keys reached that count
+    private final Map<Long, LinkedHashSet<Key>> keysByFrequency = new HashMap<>();
+    private long minimumFrequency;
+
+    private TransactionSnapshot scope;
+    private long generation = Long.MIN_VALUE;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    @Autowired
+    public QueryCache(@Value("${datasource.query-cache.maximum-size:1000}") int maximumSize,
+                      @Value("${datasource.query-cache.eviction:lru}") EvictionPolicy policy) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximumSize must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.policy = policy;
+        this.entries = new LinkedHashMap<>(16, 0.75f, policy == EvictionPolicy.LRU);
+    }
+
+    /**
+     * Returns a cache that computes every query
+     */
+    public static QueryCache disabled() {
+        return new QueryCache(0, EvictionPolicy.LRU);
+    }
+
+    public <T> T get(TransactionSnapshot snapshot, String query, Supplier<T> compute) {
+        return get(snapshot, query, null, compute);
+    }
+
+    /**
+     * Returns the result cached for the query and argument on the generation of the snapshot, computing and
+     * caching it on a miss. The argument must implement equals and hashCode, and the result must not be
+     * modified by callers since it is shared
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(TransactionSnapshot snapshot, String query, Object argument, Supplier<T> compute) {
+        long snapshotGeneration = snapshot.getGeneration();
+        Key key = new Key(query, argument);
+        synchronized (this) {
+            if (!enterScope(snapshot, snapshotGeneration)) {
+                // a reader still holding an older generation than the cache serves, neither read nor cached
+                misses++;
+                return compute.get();
+            }
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                touch(key, entry);
+                return (T) entry.value;
+            }
+            misses++;
+        }
+        T value = compute.get();
+        synchronized (this) {
+            if (maximumSize > 0 && scope == snapshot && generation == snapshotGeneration && !entries.containsKey(key)) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public synchronized QueryCacheStatistics getStatistics() {
+        return new QueryCacheStatistics(hits, misses, evictions, invalidations, entries.size(), maximumSize);
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Moves the cache to the snapshot and generation unless they are older than the ones it serves, dropping
+     * the results of the previous ones. Returns whether the cache serves them afterwards
+     */
+    private boolean enterScope(TransactionSnapshot snapshot, long snapshotGeneration) {
+        if (scope == snapshot && generation == snapshotGeneration) {
+            return true;
+        }
+        // a reload publishes a higher generation than anything appended to the snapshot it replaces
+        if (snapshotGeneration < generation) {
+            return false;
+        }
+        if (!entries.isEmpty()) {
+            invalidations++;
+            entries.clear();
+            keysByFrequency.clear();
+        }
+        scope = snapshot;
+        generation = snapshotGeneration;
+        return true;
+    }
+
+    private void put(Key key, Object value) {
+        if (entries.size() >= maximumSize) {
+            evict();
+        }
+        entries.put(key, new Entry(value));
+        if (policy == EvictionPolicy.LFU) {
+            keysByFrequency.computeIfAbsent(1L, frequency -> new LinkedHashSet<>()).add(key);
+            minimumFrequency = 1;
+        }
+    }
+
+    private void touch(Key key, Entry entry) {
+        if (policy != EvictionPolicy.LFU) {
+            return;
+        }
+        LinkedHashSet<Key> keys = keysByFrequency.get(entry.frequency);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            keysByFrequency.remove(entry.frequency);
+            if (minimumFrequency == entry.frequency) {
+                minimumFrequency++;
+            }
+        }
+        entry.frequency++;
+        keysByFrequency.computeIfAbsent(entry.frequency, frequency -> new LinkedHashSet<>()).add(key);
+    }
+
+    private void evict() {
+        Key evicted;
+        if (policy == EvictionPolicy.LFU) {
+            LinkedHashSet<Key> keys = keysByFrequency.get(minimumFrequency);
+            Iterator<Key> iterator = keys.iterator();
+            evicted = iterator.next();
+            iterator.remove();
+            if (keys.isEmpty()) {
+                keysByFrequency.remove(minimumFrequency);
+            }
+        } else {
+            evicted = entries.keySet().iterator().next();
+        }
+        entries.remove(evicted);
+        evictions++;
+    }
+
+    private record Key(String query, Object argument) {
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private long frequency = 1;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.smallworld.cache;
+
+/**
+ * Counters of a {@link QueryCache} since it was created
+ *
+ * @param hits          queries answered from a cached result
+ * @param misses        queries computed because no result of the current generation was cached
+ * @param evictions     results dropped to stay within the maximum size
+ * @param invalidations times all results were dropped because the data generation changed
+ * @param size          results currently cached
+ * @param maximumSize   results the cache keeps at most
+ */
+public record QueryCacheStatistics(long hits, long misses, long evictions, long invalidations, int size,
+                                   int maximumSize) {
+}
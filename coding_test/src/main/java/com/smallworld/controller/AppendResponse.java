@@ -0,0 +1,7 @@
+package com.smallworld.controller;
+
+/**
+ * Acknowledges appended transactions with the data generation that includes them
+ */
+public record AppendResponse(int accepted, long generation) {
+}
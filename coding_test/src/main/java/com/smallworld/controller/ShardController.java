@@ -0,0 +1,117 @@
+package com.smallworld.controller;
+
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.partition.Partitioning;
+import com.smallworld.partition.ShardClient;
+import com.smallworld.partition.ShardAggregates;
+import com.smallworld.partition.ShardIssues;
+import com.smallworld.service.TransactionService;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the partial answers of this node's shard to a {@link com.smallworld.partition.PartitionCoordinator}.
+ * A node that is not a worker of a partitioned deployment answers as the only shard. Absent on the coordinator
+ */
+@RestController
+@RequestMapping("/shard")
+@ConditionalOnExpression("'${datasource.storage:heap}' != 'partitioned'")
+public class ShardController {
+    private final TransactionService transactionService;
+    private final Partitioning partitioning;
+
+    @Autowired
+    public ShardController(TransactionService transactionService,
+                           @Value("${datasource.partition.shard-count:1}") int shardCount,
+                           @Value("${datasource.partition.shard-index:0}") int shardIndex) {
+        this.transactionService = transactionService;
+        this.partitioning = new Partitioning(shardCount, shardIndex);
+    }
+
+    @GetMapping("/aggregates")
+    public ShardAggregates getAggregates() {
+        return ShardAggregates.of(partitioning, transactionService.getTransactionSnapshot());
+    }
+
+    @GetMapping("/clients")
+    public List<String> getClientNames() {
+        return transactionService.getTransactionSnapshot().getAllClientNames();
+    }
+
+    @GetMapping("/senders")
+    public Map<String, Long> getTotalAmountCentsBySender() {
+        return transactionService.getTransactionSnapshot().getTotalAmountCentsBySender();
+    }
+
+    @GetMapping("/issues")
+    public ShardIssues getIssues() {
+        return ShardIssues.of(transactionService.getTransactionSnapshot());
+    }
+
+    @PostMapping("/issues/mtns")
+    public Map<Integer, Integer> getIssueMtns(@RequestBody Collection<Integer> issueIds) {
+        return transactionService.getTransactionSnapshot().getIssueMtns(issueIds);
+    }
+
+    @GetMapping("/sketches")
+    public ClientSketches getSketches() {
+        return ShardClient.sketchesOf(transactionService.getTransactionSnapshot());
+    }
+
+    @GetMapping("/transactions/top")
+    public List<Transaction> getTopTransactions(@RequestParam int n) {
+        if (n < 0) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Number of transactions must not be negative");
+        }
+        return transactionService.getTransactionSnapshot().getTopTransactions(n);
+    }
+
+    @PostMapping("/transactions/top")
+    public List<Transaction> getTopTransactions(@RequestBody TransactionFilter filter, @RequestParam int n) {
+        if (n < 0) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Number of transactions must not be negative");
+        }
+        return transactionService.getTransactionSnapshot().getTopTransactions(filter, n);
+    }
+
+    @PostMapping("/aggregate")
+    public FilterAggregate aggregate(@RequestBody TransactionFilter filter) {
+        return transactionService.getTransactionSnapshot().aggregate(filter);
+    }
+
+    @GetMapping("/beneficiaries")
+    public BeneficiaryPage getBeneficiaryPage(@RequestParam(required = false) String after, @RequestParam int limit) {
+        if (limit < 0) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Limit must not be negative");
+        }
+        return transactionService.getTransactionSnapshot().getBeneficiaryPage(after, limit);
+    }
+
+    @PostMapping("/clients/summary")
+    public List<ClientSummary> summarizeClients(@RequestBody List<String> clients) {
+        return transactionService.getTransactionSnapshot().summarize(clients);
+    }
+
+    @GetMapping("/transactions")
+    public List<Transaction> getTransactions() {
+        return transactionService.getAllTransaction();
+    }
+}
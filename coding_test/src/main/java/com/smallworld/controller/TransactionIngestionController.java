@@ -0,0 +1,42 @@
+package com.smallworld.controller;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.service.WritableTransactionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Accepts new transactions while the application runs. They are added to the loaded data straight away
+ * and are visible to the next query. With the write-ahead log enabled they are on disk before the response
+ */
+@RestController
+@RequestMapping("/transactions")
+public class TransactionIngestionController {
+    private final WritableTransactionService transactionService;
+
+    @Autowired
+    public TransactionIngestionController(WritableTransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public AppendResponse append(@RequestBody Transaction transaction) {
+        transactionService.append(transaction);
+        return new AppendResponse(1, transactionService.getDataVersion().generation());
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public AppendResponse appendBatch(@RequestBody List<Transaction> transactions) {
+        transactionService.appendBatch(transactions);
+        return new AppendResponse(transactions.size(), transactionService.getDataVersion().generation());
+    }
+}
@@ -0,0 +1,136 @@
+package com.smallworld.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the chosen properties of transactions straight to a {@link JsonGenerator}, in the order and with the
+ * names Jackson uses for a whole {@link Transaction}
+ */
+final class TransactionProjection {
+    private final Set<Field> fields;
+
+    private TransactionProjection(Set<Field> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Returns the projection on the named properties, or on all of them when none are named
+     */
+    static TransactionProjection of(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return new TransactionProjection(EnumSet.allOf(Field.class));
+        }
+        Set<Field> fields = EnumSet.noneOf(Field.class);
+        for (String name : names) {
+            fields.add(Field.named(name));
+        }
+        return new TransactionProjection(fields);
+    }
+
+    void write(JsonGenerator generator, Transaction transaction) throws IOException {
+        generator.writeStartObject();
+        for (Field field : fields) {
+            generator.writeFieldName(field.property);
+            field.write(generator, transaction);
+        }
+        generator.writeEndObject();
+    }
+
+    private enum Field {
+        MTN("mtn") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                writeNumber(generator, transaction.getMtn());
+            }
+        },
+        AMOUNT("amount") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                if (transaction.getAmount() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(transaction.getAmount());
+                }
+            }
+        },
+        SENDER_FULL_NAME("senderFullName") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                generator.writeString(transaction.getSenderFullName());
+            }
+        },
+        SENDER_AGE("senderAge") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                writeNumber(generator, transaction.getSenderAge());
+            }
+        },
+        BENEFICIARY_FULL_NAME("beneficiaryFullName") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                generator.writeString(transaction.getBeneficiaryFullName());
+            }
+        },
+        BENEFICIARY_AGE("beneficiaryAge") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                writeNumber(generator, transaction.getBeneficiaryAge());
+            }
+        },
+        ISSUE_ID("issueId") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                writeNumber(generator, transaction.getIssueId());
+            }
+        },
+        ISSUE_SOLVED("issueSolved") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                if (transaction.getIssueSolved() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeBoolean(transaction.getIssueSolved());
+                }
+            }
+        },
+        ISSUE_MESSAGE("issueMessage") {
+            @Override
+            void write(JsonGenerator generator, Transaction transaction) throws IOException {
+                generator.writeString(transaction.getIssueMessage());
+            }
+        };
+
+        private final String property;
+
+        Field(String property) {
+            this.property = property;
+        }
+
+        abstract void write(JsonGenerator generator, Transaction transaction) throws IOException;
+
+        static Field named(String property) {
+            for (Field field : values()) {
+                if (field.property.equals(property)) {
+                    return field;
+                }
+            }
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Unknown transaction field " + property);
+        }
+
+        private static void writeNumber(JsonGenerator generator, Integer value) throws IOException {
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                generator.writeNumber(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.smallworld.controller;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.cache.QueryCacheStatistics;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.DataVersion;
+import com.smallworld.service.TransactionService;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Serves the {@link TransactionDataFetcher} queries over HTTP. Every response carries an ETag and a
+ * Last-Modified header derived from the data generation, so a client revalidating with If-None-Match or
+ * If-Modified-Since gets a 304 without a body until the data changes
+ */
+@RestController
+@RequestMapping("/transactions")
+public class TransactionQueryController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final TransactionDataFetcher transactionDataFetcher;
+    private final TransactionService transactionService;
+
+    @Autowired
+    public TransactionQueryController(TransactionDataFetcher transactionDataFetcher,
+                                      TransactionService transactionService) {
+        this.transactionDataFetcher = transactionDataFetcher;
+        this.transactionService = transactionService;
+    }
+
+    @GetMapping("/total-amount")
+    public BigDecimal getTotalTransactionAmount(WebRequest request) {
+        return ifModified(request, transactionDataFetcher::getTotalTransactionAmount);
+    }
+
+    @GetMapping("/total-amount-sent")
+    public BigDecimal getTotalTransactionAmountSentBy(@RequestParam String sender, WebRequest request) {
+        return ifModified(request, () -> transactionDataFetcher.getTotalTransactionAmountSentBy(sender));
+    }
+
+    @GetMapping("/max-amount")
+    public BigDecimal getMaxTransactionAmount(WebRequest request) {
+        return ifModified(request, transactionDataFetcher::getMaxTransactionAmount);
+    }
+
+    @GetMapping("/unique-clients")
+    public Long countUniqueClients(WebRequest request) {
+        return ifModified(request, transactionDataFetcher::countUniqueClients);
+    }
+
+    @GetMapping("/open-compliance-issues")
+    public Boolean hasOpenComplianceIssues(@RequestParam String client, WebRequest request) {
+        return ifModified(request, () -> transactionDataFetcher.hasOpenComplianceIssues(client));
+    }
+
+    /**
+     * Streams the per-client answers for a JSON array of client names, one JSON object per client and line.
+     * Chunks of clients are written as soon as they are answered, so lines may come back in another order
+     * than the names were sent in
+     */
+    @PostMapping("/clients/summary")
+    public ResponseEntity<StreamingResponseBody> summarizeClients(@RequestBody List<String> clients) {
+        return ResponseEntity.ok().contentType(NDJSON).body(output -> writeClientSummaries(output, clients));
+    }
+
+    @GetMapping("/by-beneficiary")
+    public Map<String, Object> getTransactionsByBeneficiaryName(WebRequest request) {
+        return ifModified(request, transactionDataFetcher::getTransactionsByBeneficiaryName);
+    }
+
+    /**
+     * Streams one page of beneficiaries in name order with their transactions, one JSON object per beneficiary
+     * and line, or as one JSON document when format is json. The cursor of the next page is sent in the
+     * {@value #NEXT_CURSOR_HEADER} header, and also at the end of the json document; the last page has none.
+     * Fields limits the transaction properties written, all of them by default
+     */
+    @GetMapping("/by-beneficiary/stream")
+    public ResponseEntity<StreamingResponseBody> streamTransactionsByBeneficiaryName(
+            @RequestParam(required = false) String cursor, @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) List<String> fields, @RequestParam(defaultValue = "ndjson") String format,
+            WebRequest request) {
+        boolean ndjson = switch (format) {
+            case "ndjson" -> true;
+            case "json" -> false;
+            default -> throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Format must be ndjson or json");
+        };
+        TransactionProjection projection = TransactionProjection.of(fields);
+        String after = cursor == null ? null : decodeCursor(cursor);
+        BeneficiaryPage page = ifModified(request,
+                () -> transactionDataFetcher.getTransactionsByBeneficiaryName(after, limit));
+        if (page == null) {
+            return null;
+        }
+        String nextCursor = page.nextAfter() == null ? null : encodeCursor(page.nextAfter());
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.body(output -> writePage(output, page, projection, ndjson, nextCursor));
+    }
+
+    @GetMapping("/unsolved-issue-ids")
+    public Set<Integer> getUnsolvedIssueIds(WebRequest request) {
+        return ifModified(request, transactionDataFetcher::getUnsolvedIssueIds);
+    }
+
+    @GetMapping("/solved-issue-messages")
+    public List<String> getAllSolvedIssueMessages(WebRequest request) {
+        return ifModified(request, transactionDataFetcher::getAllSolvedIssueMessages);
+    }
+
+    @GetMapping("/top")
+    public List<Object> getTopNTransactionsByAmount(@RequestParam(defaultValue = "3") int n, WebRequest request) {
+        return ifModified(request, () -> transactionDataFetcher.getTopNTransactionsByAmount(n));
+    }
+
+    @GetMapping("/top-sender")
+    public Object getTopSender(WebRequest request) {
+        return ifModified(request, () -> transactionDataFetcher.getTopSender().orElse(null));
+    }
+
+    /**
+     * Returns the counters of the query result cache. Not cached by clients since they change on every query
+     */
+    @GetMapping("/cache-statistics")
+    public QueryCacheStatistics getCacheStatistics() {
+        return transactionDataFetcher.getCacheStatistics();
+    }
+
+    private static void writePage(OutputStream output, BeneficiaryPage page, TransactionProjection projection,
+                                  boolean ndjson, String nextCursor) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            if (ndjson) {
+                // lines are ended explicitly, not separated by the default space between root values
+                generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("beneficiaries");
+            }
+            for (Map.Entry<String, List<Transaction>> entry : page.transactionsByBeneficiary().entrySet()) {
+                generator.writeStartObject();
+                generator.writeStringField("beneficiary", entry.getKey());
+                generator.writeArrayFieldStart("transactions");
+                for (Transaction transaction : entry.getValue()) {
+                    projection.write(generator, transaction);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+            }
+            if (!ndjson) {
+                generator.writeEndArray();
+                generator.writeStringField("nextCursor", nextCursor);
+                generator.writeEndObject();
+            }
+        }
+    }
+
+    private void writeClientSummaries(OutputStream output, List<String> clients) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.setRootValueSeparator(null);
+            transactionDataFetcher.summarizeClients(clients, chunk -> {
+                try {
+                    for (ClientSummary summary : chunk) {
+                        generator.writeStartObject();
+                        generator.writeStringField("client", summary.client());
+                        generator.writeBooleanField("openComplianceIssues", summary.openComplianceIssues());
+                        generator.writeNumberField("totalAmountSent", summary.totalAmountSent());
+                        generator.writeEndObject();
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Cursors are the last beneficiary of a page, encoded so any name fits in a header and a query parameter
+     */
+    private static String encodeCursor(String beneficiary) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(beneficiary.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Runs the query unless the client already holds the current generation of this process, the entity tag
+     * pairing the two. Returning null after a successful check lets Spring answer 304 with the validators it has
+     * already set
+     */
+    private <T> T ifModified(WebRequest request, Supplier<T> query) {
+        DataVersion version = transactionService.getDataVersion();
+        String etag = "\"" + version.tag() + "\"";
+        if (request.checkNotModified(etag, version.lastModified().toEpochMilli())) {
+            return null;
+        }
+        return query.get();
+    }
+}
@@ -1,12 +1,20 @@
 package com.smallworld.exception;
 
+import org.springframework.http.HttpStatus;
+
 public class ExceptionDecorator {
 
     private ExceptionDecorator() {
     }
 
     public static ExceptionResponse create(Exception e) {
-        return new ExceptionResponse(e.getMessage());
+        if (e instanceof ServiceException serviceException && serviceException.getCode() != null) {
+            HttpStatus status = HttpStatus.resolve(serviceException.getCode());
+            if (status != null) {
+                return ExceptionResponse.of(e.getMessage(), status);
+            }
+        }
+        return ExceptionResponse.of(e.getMessage());
     }
 
 }
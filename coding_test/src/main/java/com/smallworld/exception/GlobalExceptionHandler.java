@@ -1,17 +1,37 @@
 package com.smallworld.exception;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+/**
+ * Turns exceptions into error responses and counts them in {@code transactions.errors} by exception type and
+ * status. Exceptions other than {@link ServiceException} are not expected and are logged with their stack trace
+ */
+@Slf4j
 @RestControllerAdvice
 public class GlobalExceptionHandler {
+    private final MeterRegistry registry;
+
+    @Autowired
+    public GlobalExceptionHandler(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
     @ExceptionHandler(value = Exception.class)
     public ResponseEntity<ExceptionResponse> defaultErrorHandler(
             HttpServletRequest req, HttpServletResponse response, Exception e) {
         ExceptionResponse obj = ExceptionDecorator.create(e);
+        if (!(e instanceof ServiceException)) {
+            log.warn("{} {} failed", req.getMethod(), req.getRequestURI(), e);
+        }
+        registry.counter("transactions.errors", "exception", e.getClass().getSimpleName(),
+                "status", String.valueOf(obj.getStatus().value())).increment();
         return new ResponseEntity<>(obj, obj.getStatus());
     }
 
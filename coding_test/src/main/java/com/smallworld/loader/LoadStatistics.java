@@ -0,0 +1,37 @@
+package com.smallworld.loader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a load in flight, or the totals of a finished one
+ *
+ * @param rows        transactions handed to the sink so far
+ * @param bytesRead   bytes consumed from the source so far
+ * @param totalBytes  size of the source, or -1 when it is not known up front
+ * @param elapsedNanos time spent since the load started
+ */
+public record LoadStatistics(long rows, long bytesRead, long totalBytes, long elapsedNanos) {
+
+    public double rowsPerSecond() {
+        return perSecond(rows);
+    }
+
+    public double bytesPerSecond() {
+        return perSecond(bytesRead);
+    }
+
+    /**
+     * Returns the share of the source consumed so far between 0 and 100, or -1 when the size is unknown
+     */
+    public double percentComplete() {
+        return totalBytes > 0 ? Math.min(100.0, bytesRead * 100.0 / totalBytes) : -1;
+    }
+
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    private double perSecond(long count) {
+        return elapsedNanos > 0 ? count * 1_000_000_000.0 / elapsedNanos : 0.0;
+    }
+}
@@ -0,0 +1,390 @@
+package com.smallworld.loader;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.smallworld.model.Transaction;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the files of a {@link TransactionSource} on several threads and hands the transactions to a
+ * {@link TransactionSink} on the calling thread, in file order and in file position within a file, exactly as a
+ * sequential read would.
+ * <p>
+ * Uncompressed newline-delimited files larger than the split size are cut into byte ranges, each extended to
+ * the end of the line it ends in and parsed on its own. Gzip files are decompressed on a thread of their own
+ * feeding the thread parsing them. Every other file is parsed whole, all of them concurrently. Parsed rows wait
+ * in a few small chunks per part, so parts far ahead of the sink block instead of filling the heap
+ */
+@Slf4j
+public class ParallelTransactionReader {
+    public static final long DEFAULT_SPLIT_SIZE = 32L * 1024 * 1024;
+    private static final int CHUNK_ROWS = 4096;
+    private static final int CHUNKS_PER_PART = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Object END_OF_PART = new Object();
+
+    private final ObjectMapper mapper;
+    private final ObjectReader transactionReader;
+    private final int parallelism;
+    private final long splitSize;
+    private final int progressInterval;
+    private final Consumer<LoadStatistics> progressListener;
+
+    /**
+     * @param parallelism threads parsing, 0 for one per available processor
+     * @param splitSize   bytes of an uncompressed newline-delimited file parsed by one thread
+     */
+    public ParallelTransactionReader(ObjectMapper mapper, int parallelism, long splitSize) {
+        this(mapper, parallelism, splitSize, TransactionJsonReader.DEFAULT_PROGRESS_INTERVAL,
+                TransactionJsonReader::logProgress);
+    }
+
+    public ParallelTransactionReader(ObjectMapper mapper, int parallelism, long splitSize, int progressInterval,
+                                     Consumer<LoadStatistics> progressListener) {
+        if (parallelism < 0 || splitSize <= 0 || progressInterval <= 0) {
+            throw new IllegalArgumentException("parallelism must not be negative, splitSize and progressInterval "
+                    + "must be positive");
+        }
+        this.mapper = mapper;
+        this.transactionReader = mapper.readerFor(Transaction.class);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.splitSize = splitSize;
+        this.progressInterval = progressInterval;
+        this.progressListener = progressListener;
+    }
+
+    public LoadStatistics read(TransactionSource source, TransactionSink sink) throws IOException {
+        List<Path> files = source.files();
+        if (files.isEmpty()) {
+            throw new NoSuchFileException(source.toString());
+        }
+        if (files.size() == 1 && !TransactionSource.isCompressed(files.get(0))
+                && !TransactionSource.isNewlineDelimited(files.get(0))) {
+            // a single JSON array gains nothing from a second thread
+            return new TransactionJsonReader(mapper, progressInterval, progressListener)
+                    .read(files.get(0).toFile(), sink);
+        }
+        List<Part> parts = new ArrayList<>();
+        long totalBytes = 0;
+        for (Path file : files) {
+            long size = Files.size(file);
+            totalBytes += size;
+            if (!TransactionSource.isCompressed(file) && TransactionSource.isNewlineDelimited(file) && size > splitSize) {
+                split(file, size, parts);
+            } else {
+                parts.add(new Part(file, 0, size, true));
+            }
+        }
+        log.info("reading {} files of {} as {} parts on {} threads", files.size(), source, parts.size(), parallelism);
+
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, threads("transaction-parser"));
+        ExecutorService decompressors = Executors.newCachedThreadPool(threads("transaction-decompressor"));
+        long start = System.nanoTime();
+        try {
+            // submitted in order to a FIFO pool, so the part the sink waits for has always started
+            for (Part part : parts) {
+                parsers.execute(() -> parse(part, decompressors));
+            }
+            long rows = 0;
+            long bytesRead = 0;
+            for (Part part : parts) {
+                Object chunk;
+                while ((chunk = part.take()) != END_OF_PART) {
+                    if (chunk instanceof Throwable failure) {
+                        throw failure instanceof IOException e ? e
+                                : new IOException("reading " + part + " failed", failure);
+                    }
+                    for (Object transaction : (List<?>) chunk) {
+                        sink.accept((Transaction) transaction);
+                        if (++rows % progressInterval == 0) {
+                            progressListener.accept(
+                                    new LoadStatistics(rows, bytesRead, totalBytes, System.nanoTime() - start));
+                        }
+                    }
+                }
+                bytesRead += part.end - part.start;
+            }
+            return new LoadStatistics(rows, bytesRead, totalBytes, System.nanoTime() - start);
+        } finally {
+            // stops parts still running after a failure, blocked on their full queue or on the pipe
+            parsers.shutdownNow();
+            decompressors.shutdownNow();
+        }
+    }
+
+    /**
+     * Cuts a newline-delimited file into ranges of about the split size, each ending right after a line feed
+     */
+    private void split(Path file, long size, List<Part> parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long start = 0;
+            while (start < size) {
+                long end = start + splitSize >= size ? size : lineStartFrom(channel, start + splitSize, size, buffer);
+                parts.add(new Part(file, start, end, start == 0 && end == size));
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Returns the position following the first line feed at or after the given one, or the size without one
+     */
+    private static long lineStartFrom(FileChannel channel, long position, long size, ByteBuffer buffer)
+            throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private void parse(Part part, ExecutorService decompressors) {
+        try {
+            if (TransactionSource.isCompressed(part.file)) {
+                try (DecompressingPipe pipe = new DecompressingPipe(part.file, decompressors)) {
+                    parseStream(pipe, part);
+                }
+            } else if (!part.whole) {
+                parseRange(part);
+            } else {
+                try (InputStream input = Files.newInputStream(part.file)) {
+                    parseStream(input, part);
+                }
+            }
+            part.put(END_OF_PART);
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception | StackOverflowError e) {
+            part.fail(e);
+        }
+    }
+
+    /**
+     * Parses a JSON array of transactions or transactions one after the other, as in newline-delimited files
+     */
+    private void parseStream(InputStream input, Part part) throws IOException, InterruptedException {
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            List<Transaction> chunk = new ArrayList<>(CHUNK_ROWS);
+            while (token == JsonToken.START_OBJECT) {
+                chunk = add(part, chunk, transactionReader.readValue(parser));
+                token = parser.nextToken();
+            }
+            if (array ? token != JsonToken.END_ARRAY : token != null) {
+                throw new JsonParseException(parser, "Expected a transaction object but found " + token);
+            }
+            part.put(chunk);
+        }
+    }
+
+    /**
+     * Parses the lines of a range, which starts and ends on line boundaries
+     */
+    private void parseRange(Part part) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(part.file, StandardOpenOption.READ);
+             JsonParser parser = mapper.getFactory().createParser(
+                     new BufferedInputStream(Channels.newInputStream(channel.position(part.start)), BUFFER_SIZE))) {
+            List<Transaction> chunk = new ArrayList<>(CHUNK_ROWS);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null
+                    && part.start + parser.currentTokenLocation().getByteOffset() < part.end) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected a transaction object but found " + token);
+                }
+                chunk = add(part, chunk, transactionReader.readValue(parser));
+            }
+            part.put(chunk);
+        }
+    }
+
+    private static List<Transaction> add(Part part, List<Transaction> chunk, Transaction transaction)
+            throws InterruptedException {
+        chunk.add(transaction);
+        if (chunk.size() < CHUNK_ROWS) {
+            return chunk;
+        }
+        part.put(chunk);
+        return new ArrayList<>(CHUNK_ROWS);
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A file or a byte range of one, with the chunks parsed from it waiting for the sink
+     */
+    private static final class Part {
+        private final Path file;
+        private final long start;
+        private final long end;
+        // the whole file, parsed as a stream rather than as a range
+        private final boolean whole;
+        private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_PART + 1);
+
+        private Part(Path file, long start, long end, boolean whole) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.whole = whole;
+        }
+
+        void put(Object chunk) throws InterruptedException {
+            chunks.put(chunk);
+        }
+
+        Object take() throws IOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while reading " + this);
+            }
+        }
+
+        /**
+         * Reports the failure without blocking, the queue is bounded so the consumer may not be draining it yet
+         */
+        void fail(Throwable failure) {
+            while (!chunks.offer(failure)) {
+                chunks.poll();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file + " [" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Decompressed bytes of a gzip file, inflated on a decompressor thread while the reading thread parses the
+     * bytes inflated before
+     */
+    private static final class DecompressingPipe extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<Object> buffers = new ArrayBlockingQueue<>(16);
+        private final Future<?> decompression;
+        private byte[] current = new byte[0];
+        private int position;
+
+        private DecompressingPipe(Path file, ExecutorService decompressors) {
+            this.decompression = decompressors.submit(() -> inflate(file));
+        }
+
+        private void inflate(Path file) {
+            try (InputStream input = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+                while (true) {
+                    byte[] buffer = input.readNBytes(BUFFER_SIZE);
+                    if (buffer.length == 0) {
+                        break;
+                    }
+                    buffers.put(buffer);
+                }
+                buffers.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                buffers.clear();
+                buffers.offer(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? current[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (current == END) {
+                return false;
+            }
+            while (position == current.length) {
+                Object next;
+                try {
+                    next = buffers.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while decompressing");
+                }
+                if (next instanceof IOException e) {
+                    throw e;
+                }
+                if (next instanceof RuntimeException e) {
+                    throw new IOException("decompressing failed", e);
+                }
+                current = (byte[]) next;
+                position = 0;
+                if (current == END) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            decompression.cancel(true);
+        }
+    }
+}
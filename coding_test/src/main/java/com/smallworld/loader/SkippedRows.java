@@ -0,0 +1,57 @@
+package com.smallworld.loader;
+
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides which rows a load keeps. Amounts are held exactly in cents, see {@link Money}, so a row whose amount
+ * is missing, out of range or has more than {@link Money#SCALE} decimals cannot be loaded: it fails the whole
+ * load like a malformed row, unless {@code datasource.skip-inexact-amounts} is set. Such rows are then skipped
+ * and counted, and the first {@value #LOGGED_ROWS} are logged with their MTN and position among the rows handed
+ * to the builder. Amounts are never rounded. Appends reject such amounts in either case
+ */
+@Slf4j
+public final class SkippedRows {
+    private static final int LOGGED_ROWS = 10;
+
+    private final boolean skipInexactAmounts;
+    private long rows;
+    private long skipped;
+
+    public SkippedRows(boolean skipInexactAmounts) {
+        this.skipInexactAmounts = skipInexactAmounts;
+    }
+
+    /**
+     * Returns whether the row can be loaded, counting and reporting it otherwise
+     *
+     * @throws IllegalArgumentException if the row cannot be loaded and such rows are not skipped
+     */
+    public boolean accept(Transaction transaction) {
+        rows++;
+        Double amount = transaction.getAmount();
+        if (amount != null && Money.isExact(amount)) {
+            return true;
+        }
+        if (!skipInexactAmounts) {
+            throw new IllegalArgumentException("Row " + rows + " of transaction " + transaction.getMtn()
+                    + ": amount " + amount + " is not a whole number of cents in range");
+        }
+        skipped++;
+        if (skipped <= LOGGED_ROWS) {
+            log.warn("skipping row {} of transaction {}: amount {} is not a whole number of cents in range", rows,
+                    transaction.getMtn(), amount);
+        } else if (skipped == LOGGED_ROWS + 1) {
+            log.warn("skipping more rows with amounts that are not whole numbers of cents, only counting them");
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of rows skipped so far
+     */
+    public long count() {
+        return skipped;
+    }
+}
@@ -0,0 +1,90 @@
+package com.smallworld.loader;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.smallworld.model.Transaction;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Reads a JSON array of transactions token by token and hands every element to a {@link TransactionSink}
+ * as soon as it is parsed, so memory use does not grow with the size of the file
+ */
+@Slf4j
+public class TransactionJsonReader {
+    public static final int DEFAULT_PROGRESS_INTERVAL = 100_000;
+
+    private final ObjectMapper mapper;
+    private final ObjectReader transactionReader;
+    private final int progressInterval;
+    private final Consumer<LoadStatistics> progressListener;
+
+    public TransactionJsonReader(ObjectMapper mapper) {
+        this(mapper, DEFAULT_PROGRESS_INTERVAL, TransactionJsonReader::logProgress);
+    }
+
+    /**
+     * @param progressInterval number of rows between two calls to the progress listener
+     * @param progressListener notified with the running statistics every {@code progressInterval} rows
+     */
+    public TransactionJsonReader(ObjectMapper mapper, int progressInterval, Consumer<LoadStatistics> progressListener) {
+        if (progressInterval <= 0) {
+            throw new IllegalArgumentException("progressInterval must be positive");
+        }
+        this.mapper = mapper;
+        this.transactionReader = mapper.readerFor(Transaction.class);
+        this.progressInterval = progressInterval;
+        this.progressListener = progressListener;
+    }
+
+    public LoadStatistics read(File file, TransactionSink sink) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(file)) {
+            return read(parser, file.length(), sink);
+        }
+    }
+
+    public LoadStatistics read(InputStream inputStream, TransactionSink sink) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(inputStream)) {
+            return read(parser, -1, sink);
+        }
+    }
+
+    private LoadStatistics read(JsonParser parser, long totalBytes, TransactionSink sink) throws IOException {
+        long start = System.nanoTime();
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of transactions");
+        }
+        long rows = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            sink.accept(transactionReader.readValue(parser));
+            rows++;
+            if (rows % progressInterval == 0) {
+                progressListener.accept(statistics(parser, rows, totalBytes, start));
+            }
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected a transaction object but found " + token);
+        }
+        return statistics(parser, rows, totalBytes, start);
+    }
+
+    private static LoadStatistics statistics(JsonParser parser, long rows, long totalBytes, long start) {
+        long bytesRead = Math.max(0, parser.currentLocation().getByteOffset());
+        return new LoadStatistics(rows, bytesRead, totalBytes, System.nanoTime() - start);
+    }
+
+    static void logProgress(LoadStatistics statistics) {
+        log.info("loaded {} transactions ({}%) at {} rows/s, {} MB/s", statistics.rows(),
+                String.format("%.1f", statistics.percentComplete()),
+                Math.round(statistics.rowsPerSecond()),
+                String.format("%.1f", statistics.bytesPerSecond() / (1024 * 1024)));
+    }
+}
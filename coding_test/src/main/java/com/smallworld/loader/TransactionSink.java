@@ -0,0 +1,21 @@
+package com.smallworld.loader;
+
+import com.smallworld.model.Transaction;
+
+/**
+ * Receives transactions one at a time while a datasource is being read, so indexers and aggregators
+ * can consume the rows without the loader ever holding them all
+ */
+@FunctionalInterface
+public interface TransactionSink {
+
+    void accept(Transaction transaction);
+
+    default TransactionSink andThen(TransactionSink next) {
+        return transaction -> {
+            accept(transaction);
+            next.accept(transaction);
+        };
+    }
+
+}
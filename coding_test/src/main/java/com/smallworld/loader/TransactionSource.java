@@ -0,0 +1,153 @@
+package com.smallworld.loader;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The files a datasource location names: one file, the transaction files of a directory, or the files
+ * matching a glob in the last path element such as {@code /data/transactions/part-*.ndjson.gz}. Files are read
+ * in name order, so part files numbered with a fixed width keep their order.
+ * <p>
+ * A file holds either a JSON array of transactions or newline-delimited transactions, told apart by the
+ * {@code .ndjson} and {@code .jsonl} extensions, and may be gzip-compressed with a trailing {@code .gz}
+ */
+public final class TransactionSource {
+    private static final String GLOB_CHARACTERS = "*?[{";
+    private static final PathMatcher TRANSACTION_FILES =
+            FileSystems.getDefault().getPathMatcher("glob:*.{json,ndjson,jsonl}{,.gz}");
+
+    private final String description;
+    private final Path location;
+    private final Path directory;
+    // matches file names inside the directory, null when the location is a single file
+    private final PathMatcher matcher;
+
+    private TransactionSource(String description, Path location, Path directory, PathMatcher matcher) {
+        this.description = description;
+        this.location = location;
+        this.directory = directory;
+        this.matcher = matcher;
+    }
+
+    public static TransactionSource of(String location) {
+        int separator = Math.max(location.lastIndexOf('/'), location.lastIndexOf('\\'));
+        String name = location.substring(separator + 1);
+        if (name.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0)) {
+            Path directory = Path.of(separator < 0 ? "." : location.substring(0, separator + 1)).toAbsolutePath();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+            Path standIn = directory.resolve(name.replaceAll("[*?\\[\\]{}]", "_"));
+            return new TransactionSource(location, standIn, directory, matcher);
+        }
+        Path path = Path.of(location).toAbsolutePath();
+        if (Files.isDirectory(path)) {
+            return new TransactionSource(location, path, path, TRANSACTION_FILES);
+        }
+        return new TransactionSource(location, path, path.getParent(), null);
+    }
+
+    public static TransactionSource of(Path file) {
+        return of(file.toString());
+    }
+
+    public boolean isSingleFile() {
+        return matcher == null;
+    }
+
+    /**
+     * Returns the directory holding the files, the one to watch for changes
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Returns whether a file of {@link #directory()} with the given name is part of the source
+     */
+    public boolean contains(Path fileName) {
+        return matcher == null ? location.getFileName().equals(fileName) : matcher.matches(fileName);
+    }
+
+    /**
+     * Returns the files of the source in name order. A missing single file is returned as it is, so reading it
+     * fails with the usual exception
+     */
+    public List<Path> files() throws IOException {
+        if (matcher == null) {
+            return List.of(location);
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory,
+                entry -> matcher.matches(entry.getFileName()) && Files.isRegularFile(entry))) {
+            entries.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    public boolean exists() {
+        try {
+            return matcher == null ? Files.exists(location) : !files().isEmpty();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the total size and latest modification of the files, null when they cannot be read
+     */
+    public Fingerprint fingerprint() {
+        try {
+            long length = 0;
+            long lastModifiedMillis = 0;
+            List<Path> files = files();
+            for (Path file : files) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                length += attributes.size();
+                lastModifiedMillis = Math.max(lastModifiedMillis, attributes.lastModifiedTime().toMillis());
+            }
+            return new Fingerprint(files.size(), length, lastModifiedMillis);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the path standing for the whole source: the file, the directory, or the glob with its special
+     * characters replaced, so it can name files derived from the source
+     */
+    public Path location() {
+        return location;
+    }
+
+    static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    static boolean isNewlineDelimited(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * @param files              number of files in the source
+     * @param length             their total size in bytes
+     * @param lastModifiedMillis latest modification time among them
+     */
+    public record Fingerprint(int files, long length, long lastModifiedMillis) {
+    }
+}
@@ -0,0 +1,107 @@
+package com.smallworld.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the fetcher queries and records the size of their results and the bytes each call allocates.
+ * Meters are registered once per query as {@link Probe}s, so recording a call is a few reads of the clock
+ * and no lookup, string building or boxing.
+ * <p>
+ * Allocations are read from the per-thread counter of HotSpot compatible JVMs, and are not recorded when the
+ * JVM lacks it or {@code datasource.metrics.track-allocations} is false. Percentiles of the
+ * {@value #QUERY_TIMER} timer are configured with the {@code management.metrics.distribution} properties
+ */
+@Component
+public class QueryMetrics {
+    public static final String QUERY_TIMER = "transactions.query";
+    public static final String QUERY_RESULTS = "transactions.query.results";
+    public static final String QUERY_ALLOCATED = "transactions.query.allocated";
+
+    private final MeterRegistry registry;
+    private final com.sun.management.ThreadMXBean threads;
+
+    @Autowired
+    public QueryMetrics(MeterRegistry registry,
+                        @Value("${datasource.metrics.track-allocations:true}") boolean trackAllocations) {
+        this.registry = registry;
+        this.threads = trackAllocations ? allocationCounter() : null;
+    }
+
+    /**
+     * Returns metrics kept in a registry nobody reads, for fetchers created outside the application context
+     */
+    public static QueryMetrics detached() {
+        return new QueryMetrics(new SimpleMeterRegistry(), false);
+    }
+
+    public Probe probe(String query) {
+        Timer timer = Timer.builder(QUERY_TIMER)
+                .description("Time spent answering a fetcher query")
+                .tag("query", query)
+                .register(registry);
+        DistributionSummary results = DistributionSummary.builder(QUERY_RESULTS)
+                .description("Elements in the collection a fetcher query returned, or transactions it matched")
+                .tag("query", query)
+                .register(registry);
+        DistributionSummary allocated = DistributionSummary.builder(QUERY_ALLOCATED)
+                .description("Bytes allocated by the calling thread while answering a fetcher query")
+                .baseUnit("bytes")
+                .tag("query", query)
+                .register(registry);
+        return new Probe(this, timer, results, allocated);
+    }
+
+    /**
+     * Returns the bytes the calling thread has allocated so far, or 0 when they are not tracked
+     */
+    public long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * Meters of one query. A call is recorded by passing the {@link System#nanoTime()} and
+     * {@link #allocatedBytes()} read before it started
+     */
+    public static final class Probe {
+        private final QueryMetrics metrics;
+        private final Timer timer;
+        private final DistributionSummary results;
+        private final DistributionSummary allocated;
+
+        private Probe(QueryMetrics metrics, Timer timer, DistributionSummary results, DistributionSummary allocated) {
+            this.metrics = metrics;
+            this.timer = timer;
+            this.results = results;
+            this.allocated = allocated;
+        }
+
+        public void record(long startNanos, long startAllocatedBytes) {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (metrics.threads != null) {
+                allocated.record(metrics.allocatedBytes() - startAllocatedBytes);
+            }
+        }
+
+        public void record(long startNanos, long startAllocatedBytes, long resultSize) {
+            record(startNanos, startAllocatedBytes);
+            results.record(resultSize);
+        }
+    }
+}
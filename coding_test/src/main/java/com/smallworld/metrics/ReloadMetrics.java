@@ -0,0 +1,86 @@
+package com.smallworld.metrics;
+
+import com.smallworld.loader.LoadStatistics;
+import com.smallworld.service.ReloadStatistics;
+import com.smallworld.service.ReloadableTransactionService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the statistics of the last successful load of the datasource as gauges, read from the service
+ * when the registry is scraped. Parse rates and time stay at 0 for loads from a binary copy
+ */
+@Component
+public class ReloadMetrics implements MeterBinder {
+    private final ReloadableTransactionService transactionService;
+
+    @Autowired
+    public ReloadMetrics(ReloadableTransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("transactions.generation", transactionService,
+                        service -> service.getDataVersion().generation())
+                .description("Generation of the data being served, bumped by every reload and append")
+                .register(registry);
+        gauge(registry, "transactions.load.rows", "Transactions published by the last load", null,
+                ReloadStatistics::rows);
+        gauge(registry, "transactions.load.skipped", "Rows the last load skipped for an amount that is not a whole "
+                + "number of cents", null, ReloadStatistics::skippedRows);
+        TimeGauge.builder("transactions.load.duration", transactionService, TimeUnit.MILLISECONDS,
+                        service -> last(service, ReloadStatistics::durationMillis))
+                .description("Time the last load took from reading the datasource to publishing the data")
+                .register(registry);
+        TimeGauge.builder("transactions.load.parse", transactionService, TimeUnit.NANOSECONDS,
+                        service -> parse(service, LoadStatistics::elapsedNanos))
+                .description("Time the last load spent parsing the JSON file")
+                .register(registry);
+        Gauge.builder("transactions.load.parse.rows.per.second", transactionService,
+                        service -> parse(service, LoadStatistics::rowsPerSecond))
+                .description("Rows per second parsed by the last load")
+                .register(registry);
+        Gauge.builder("transactions.load.parse.bytes.per.second", transactionService,
+                        service -> parse(service, LoadStatistics::bytesPerSecond))
+                .description("Bytes per second parsed by the last load")
+                .register(registry);
+        gauge(registry, "transactions.load.heap.before", "Heap in use before the last load started", "bytes",
+                ReloadStatistics::heapUsedBefore);
+        gauge(registry, "transactions.load.heap.after", "Heap in use once the last load was published", "bytes",
+                ReloadStatistics::heapUsedAfter);
+        FunctionCounter.builder("transactions.load.failures", transactionService,
+                        ReloadableTransactionService::getFailedReloads)
+                .description("Loads that failed and kept the previous data")
+                .register(registry);
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, String baseUnit,
+                       ToDoubleFunction<ReloadStatistics> value) {
+        Gauge.builder(name, transactionService, service -> last(service, value))
+                .description(description)
+                .baseUnit(baseUnit)
+                .register(registry);
+    }
+
+    private static double last(ReloadableTransactionService service, ToDoubleFunction<ReloadStatistics> value) {
+        ReloadStatistics statistics = service.getLastReload();
+        return statistics == null ? Double.NaN : value.applyAsDouble(statistics);
+    }
+
+    private static double parse(ReloadableTransactionService service, ToDoubleFunction<LoadStatistics> value) {
+        ReloadStatistics statistics = service.getLastReload();
+        if (statistics == null) {
+            return Double.NaN;
+        }
+        return statistics.parse() == null ? 0 : value.applyAsDouble(statistics.parse());
+    }
+}
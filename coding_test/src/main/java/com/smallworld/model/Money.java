@@ -0,0 +1,74 @@
+package com.smallworld.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point money: amounts are held and summed as a {@code long} count of cents, the minor unit at
+ * {@link #SCALE} decimals, so totals are exact and independent of the order rows are added in. Sums use
+ * {@link Math#addExact} and fail rather than wrap. Amounts come in as the {@code double} of the JSON
+ * {@link Transaction} and go out as a {@link BigDecimal} at the API
+ */
+public final class Money {
+    public static final int SCALE = 2;
+    private static final long CENTS_PER_UNIT = 100;
+    // below 2^50 cents, amount * 100 rounds to the right count of cents and every count has its own double
+    private static final double MAX_AMOUNT = (double) (1L << 50) / CENTS_PER_UNIT;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount to cents without rounding
+     *
+     * @throws ArithmeticException when the amount is not a number, out of range or has more than 2 decimals
+     */
+    public static long toCents(double amount) {
+        if (!(Math.abs(amount) <= MAX_AMOUNT)) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+        long cents = Math.round(amount * CENTS_PER_UNIT);
+        if (toDouble(cents) != amount) {
+            throw new ArithmeticException("Amount has more than " + SCALE + " decimals: " + amount);
+        }
+        return cents;
+    }
+
+    /**
+     * Returns whether the amount converts to cents without rounding
+     */
+    public static boolean isExact(double amount) {
+        return Math.abs(amount) <= MAX_AMOUNT && toDouble(Math.round(amount * CENTS_PER_UNIT)) == amount;
+    }
+
+    /**
+     * Returns the smallest count of cents whose amount is at least the given bound, so comparing cents
+     * against it matches comparing the amounts as doubles
+     */
+    public static long ceilCents(double bound) {
+        if (bound > MAX_AMOUNT) {
+            return Long.MAX_VALUE;
+        }
+        if (bound < -MAX_AMOUNT) {
+            return Long.MIN_VALUE;
+        }
+        long cents = (long) Math.ceil(bound * CENTS_PER_UNIT);
+        while (toDouble(cents - 1) >= bound) {
+            cents--;
+        }
+        while (toDouble(cents) < bound) {
+            cents++;
+        }
+        return cents;
+    }
+
+    /**
+     * Returns the double nearest to the amount, the value the JSON model carries
+     */
+    public static double toDouble(long cents) {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+}
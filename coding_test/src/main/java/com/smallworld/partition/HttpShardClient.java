@@ -0,0 +1,175 @@
+package com.smallworld.partition;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calls the {@code /shard} endpoints of a worker process over HTTP with JSON bodies, see
+ * {@link com.smallworld.controller.ShardController}. Appends go to the worker's {@code POST /transactions/batch}.
+ * A worker answering with a client error fails with a {@link ServiceException} of the same status and message
+ */
+public class HttpShardClient implements ShardClient {
+    private static final TypeReference<List<Transaction>> TRANSACTIONS = new TypeReference<>() {
+    };
+    private static final TypeReference<List<ClientSummary>> SUMMARIES = new TypeReference<>() {
+    };
+    private static final TypeReference<List<String>> NAMES = new TypeReference<>() {
+    };
+    private static final TypeReference<Map<String, Long>> TOTALS = new TypeReference<>() {
+    };
+
+    private final URI baseUri;
+    private final Duration timeout;
+    private final ObjectMapper mapper;
+    private final HttpClient client;
+
+    /**
+     * @param baseUri the worker's root, such as {@code http://worker-0:8085}
+     * @param timeout how long connecting and each request may take
+     */
+    public HttpShardClient(URI baseUri, Duration timeout, ObjectMapper mapper) {
+        this.baseUri = baseUri.toString().endsWith("/") ? baseUri : URI.create(baseUri + "/");
+        this.timeout = timeout;
+        this.mapper = mapper;
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public ShardAggregates aggregates() throws IOException {
+        return send(get("shard/aggregates"), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public List<String> clientNames() throws IOException {
+        return send(get("shard/clients"), NAMES);
+    }
+
+    @Override
+    public Map<String, Long> totalAmountCentsBySender() throws IOException {
+        return send(get("shard/senders"), TOTALS);
+    }
+
+    @Override
+    public ShardIssues issues() throws IOException {
+        return send(get("shard/issues"), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public Map<Integer, Integer> issueMtns(Collection<Integer> issueIds) throws IOException {
+        return send(post("shard/issues/mtns", issueIds), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public ClientSketches sketches() throws IOException {
+        return send(get("shard/sketches"), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public List<Transaction> topTransactions(int n) throws IOException {
+        return send(get("shard/transactions/top?n=" + n), TRANSACTIONS);
+    }
+
+    @Override
+    public List<Transaction> topTransactions(TransactionFilter filter, int n) throws IOException {
+        return send(post("shard/transactions/top?n=" + n, filter), TRANSACTIONS);
+    }
+
+    @Override
+    public FilterAggregate aggregate(TransactionFilter filter) throws IOException {
+        return send(post("shard/aggregate", filter), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public BeneficiaryPage beneficiaryPage(String after, int limit) throws IOException {
+        String path = "shard/beneficiaries?limit=" + limit;
+        if (after != null) {
+            path += "&after=" + URLEncoder.encode(after, StandardCharsets.UTF_8);
+        }
+        return send(get(path), new TypeReference<>() {
+        });
+    }
+
+    @Override
+    public List<ClientSummary> summarize(List<String> clientFullNames) throws IOException {
+        return send(post("shard/clients/summary", clientFullNames), SUMMARIES);
+    }
+
+    @Override
+    public List<Transaction> transactions() throws IOException {
+        return send(get("shard/transactions"), TRANSACTIONS);
+    }
+
+    @Override
+    public void append(List<Transaction> transactions) throws IOException {
+        send(post("transactions/batch", transactions), null);
+    }
+
+    @Override
+    public String toString() {
+        return baseUri.toString();
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest post(String path, Object body) throws IOException {
+        return request(path).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body))).build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(timeout).header("Accept", "application/json");
+    }
+
+    private <T> T send(HttpRequest request, TypeReference<T> type) throws IOException {
+        HttpResponse<byte[]> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + request.uri());
+        }
+        int status = response.statusCode();
+        if (status >= 400 && status < 500) {
+            throw new ServiceException(status, errorMessage(response));
+        }
+        if (status < 200 || status >= 300) {
+            throw new IOException(request.uri() + " answered " + status + ": " + errorMessage(response));
+        }
+        return type == null ? null : mapper.readValue(response.body(), type);
+    }
+
+    private String errorMessage(HttpResponse<byte[]> response) {
+        try {
+            return mapper.readTree(response.body()).path("message").asText("");
+        } catch (IOException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.smallworld.partition;
+
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.TransactionService;
+import com.smallworld.service.WritableTransactionService;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import org.springframework.http.HttpStatus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers for a worker service in the same JVM, computing exactly what the worker's {@code /shard} endpoints
+ * return without serializing it. Stands in for worker processes in tests and benchmarks
+ */
+public class LocalShardClient implements ShardClient {
+    private final TransactionService worker;
+    private final Partitioning partitioning;
+
+    public LocalShardClient(TransactionService worker, Partitioning partitioning) {
+        this.worker = worker;
+        this.partitioning = partitioning;
+    }
+
+    @Override
+    public ShardAggregates aggregates() {
+        return ShardAggregates.of(partitioning, worker.getTransactionSnapshot());
+    }
+
+    @Override
+    public List<String> clientNames() {
+        return worker.getTransactionSnapshot().getAllClientNames();
+    }
+
+    @Override
+    public Map<String, Long> totalAmountCentsBySender() {
+        return worker.getTransactionSnapshot().getTotalAmountCentsBySender();
+    }
+
+    @Override
+    public ShardIssues issues() {
+        return ShardIssues.of(worker.getTransactionSnapshot());
+    }
+
+    @Override
+    public Map<Integer, Integer> issueMtns(Collection<Integer> issueIds) {
+        return worker.getTransactionSnapshot().getIssueMtns(issueIds);
+    }
+
+    @Override
+    public ClientSketches sketches() {
+        return ShardClient.sketchesOf(worker.getTransactionSnapshot());
+    }
+
+    @Override
+    public List<Transaction> topTransactions(int n) {
+        return worker.getTransactionSnapshot().getTopTransactions(n);
+    }
+
+    @Override
+    public List<Transaction> topTransactions(TransactionFilter filter, int n) {
+        return worker.getTransactionSnapshot().getTopTransactions(filter, n);
+    }
+
+    @Override
+    public FilterAggregate aggregate(TransactionFilter filter) {
+        return worker.getTransactionSnapshot().aggregate(filter);
+    }
+
+    @Override
+    public BeneficiaryPage beneficiaryPage(String after, int limit) {
+        return worker.getTransactionSnapshot().getBeneficiaryPage(after, limit);
+    }
+
+    @Override
+    public List<ClientSummary> summarize(List<String> clientFullNames) {
+        return worker.getTransactionSnapshot().summarize(clientFullNames);
+    }
+
+    @Override
+    public List<Transaction> transactions() {
+        return worker.getAllTransaction();
+    }
+
+    @Override
+    public void append(List<Transaction> transactions) {
+        if (!(worker instanceof WritableTransactionService writable)) {
+            throw new ServiceException(HttpStatus.NOT_IMPLEMENTED.value(), "The worker does not accept transactions");
+        }
+        writable.appendBatch(transactions);
+    }
+}
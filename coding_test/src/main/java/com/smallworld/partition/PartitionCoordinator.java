@@ -0,0 +1,535 @@
+package com.smallworld.partition;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.DataVersion;
+import com.smallworld.service.ReloadStatistics;
+import com.smallworld.service.ReloadableTransactionService;
+import com.smallworld.service.WritableTransactionService;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import com.smallworld.snapshot.TransactionSnapshot;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves transactions split by MTN over several worker processes, each loading one shard, see
+ * {@link Partitioning}. Enabled with {@code datasource.storage=partitioned}; the workers are listed in
+ * {@code datasource.partition.workers}, shard 0 first, and each runs with the matching
+ * {@code datasource.partition.shard-count} and {@code shard-index}.
+ * <p>
+ * Queries fan out to every worker in parallel and merge their partial answers: totals are summed exactly in
+ * cents, maxima and open issue flags combined, client names and per-sender totals merged before counting or
+ * ranking, issue ids united and top transactions merged by amount. The answers equal those of one node holding
+ * all the data, except that ties are broken by shard: equal amounts rank by shard before load order, the top
+ * sender of equal totals is the first by name and solved issue messages come shard by shard.
+ * <p>
+ * Filters are answered the same way: every worker aggregates or ranks its own matches. Beneficiary pages merge
+ * the first beneficiaries of every shard by name, the transactions of a beneficiary on several shards coming
+ * shard by shard. Queries without a partial form, the map of all beneficiaries and filtered pages in load
+ * order, are rejected rather than answered by gathering every row on the coordinator.
+ * <p>
+ * The data version is the vector of the epoch and generation of every worker, so it changes when any worker's
+ * data changes or a worker restarts with its generation counted from the start again. The aggregates it is read
+ * from are reused for up to {@code datasource.partition.aggregates-max-age}, so the version and the totals of
+ * one request take a single round trip; changes made on a worker directly show within that age.
+ * <p>
+ * Appends are routed to the shard of their MTN. A batch spanning shards is sent to each shard separately, so
+ * a shard rejecting its part does not undo the parts other shards have accepted. An issue belongs to the
+ * transaction that raised it, so an update of an issue naming another MTN, which would be routed to a shard
+ * that does not know the issue, is rejected before anything is sent. Two appends racing to raise the same
+ * issue id on different shards are not detected.
+ * <p>
+ * With {@code datasource.sketch.enabled} the unique client count and the top sender are estimated from the
+ * {@link ClientSketches} of every worker, which must enable them as well. Merging them takes memory independent
+ * of the number of clients, where the exact answers merge every client name and sender total of every shard
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "datasource.storage", havingValue = "partitioned")
+public class PartitionCoordinator implements ReloadableTransactionService, WritableTransactionService {
+    private final List<ShardClient> shards;
+    // answers the client queries from merged sketches instead of every shard's clients
+    private final boolean approximate;
+    private final ExecutorService executor;
+    private final AtomicLong failedReloads = new AtomicLong();
+    // how long the aggregates of the workers are reused, 0 to ask for them on every call
+    private final long aggregatesMaxAgeNanos;
+    // bumped by every append through the coordinator, so aggregates fetched before it are not kept
+    private final AtomicLong appends = new AtomicLong();
+    private volatile ReloadStatistics lastReload;
+    private volatile RecentAggregates recentAggregates;
+
+    @Autowired
+    public PartitionCoordinator(@Value("${datasource.partition.workers:}") List<String> workers,
+                                @Value("${datasource.partition.timeout:30s}") Duration timeout,
+                                @Value("${datasource.sketch.enabled:false}") boolean approximate,
+                                @Value("${datasource.partition.aggregates-max-age:1s}") Duration aggregatesMaxAge,
+                                ObjectMapper mapper) {
+        this(workers.stream().map(worker -> (ShardClient) new HttpShardClient(URI.create(worker), timeout, mapper))
+                .toList(), approximate, aggregatesMaxAge);
+    }
+
+    public PartitionCoordinator(List<ShardClient> shards) {
+        this(shards, false);
+    }
+
+    public PartitionCoordinator(List<ShardClient> shards, boolean approximate) {
+        this(shards, approximate, Duration.ZERO);
+    }
+
+    public PartitionCoordinator(List<ShardClient> shards, boolean approximate, Duration aggregatesMaxAge) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("datasource.partition.workers must list at least one worker");
+        }
+        this.shards = List.copyOf(shards);
+        this.approximate = approximate;
+        this.aggregatesMaxAgeNanos = aggregatesMaxAge.toNanos();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "shard-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Returns the transactions of every shard, shard by shard
+     */
+    @Override
+    public List<Transaction> getAllTransaction() {
+        List<Transaction> all = new ArrayList<>();
+        scatter(ShardClient::transactions).forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * Rejects the queries without a partial form: the coordinator holds no data, and gathering every row of every
+     * worker into one snapshot is what partitioning avoids
+     */
+    @Override
+    public TransactionSnapshot getTransactionSnapshot() {
+        throw new ServiceException(HttpStatus.NOT_IMPLEMENTED.value(), "The query is not answered over partitioned"
+                + " transactions, page through the beneficiaries or aggregate a filter instead");
+    }
+
+    /**
+     * Returns the version of the vector of worker epochs and generations. The epoch is derived from the whole
+     * vector, and the generation is the sum of the workers' generations, which alone could repeat once a worker
+     * restarts
+     */
+    @Override
+    public DataVersion getDataVersion() {
+        StringBuilder vector = new StringBuilder();
+        long generation = 0;
+        long lastModified = 0;
+        for (ShardAggregates shard : aggregates()) {
+            vector.append(shard.epoch()).append(':').append(shard.generation()).append(',');
+            generation += shard.generation();
+            lastModified = Math.max(lastModified, shard.lastModifiedMillis());
+        }
+        String epoch = UUID.nameUUIDFromBytes(vector.toString().getBytes(StandardCharsets.UTF_8)).toString();
+        return new DataVersion(epoch, generation, Instant.ofEpochMilli(lastModified));
+    }
+
+    @Override
+    public void append(Transaction transaction) {
+        appendBatch(Collections.singletonList(transaction));
+    }
+
+    @Override
+    public void appendBatch(List<Transaction> transactions) {
+        if (transactions == null || transactions.stream().anyMatch(Objects::isNull)) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Transactions must not be null");
+        }
+        List<List<Transaction>> byShard = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Transaction transaction : transactions) {
+            byShard.get(Partitioning.shardOf(transaction.getMtn(), shards.size())).add(transaction);
+        }
+        checkIssueUpdates(transactions);
+        try {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                List<Transaction> part = byShard.get(shard);
+                if (!part.isEmpty()) {
+                    call(shard, client -> {
+                        client.append(part);
+                        return null;
+                    });
+                }
+            }
+        } finally {
+            appends.incrementAndGet();
+            recentAggregates = null;
+        }
+    }
+
+    /**
+     * Asks every worker for its aggregates, checking each serves the shard the coordinator expects of it. Answers
+     * younger than {@code datasource.partition.aggregates-max-age} are reused, unless an append went through the
+     * coordinator since
+     */
+    public List<ShardAggregates> aggregates() {
+        RecentAggregates recent = recentAggregates;
+        if (recent != null && System.nanoTime() - recent.fetchedNanos() < aggregatesMaxAgeNanos) {
+            return recent.aggregates();
+        }
+        long appended = appends.get();
+        long fetched = System.nanoTime();
+        List<ShardAggregates> aggregates = fetchAggregates();
+        if (aggregatesMaxAgeNanos > 0 && appends.get() == appended) {
+            recentAggregates = new RecentAggregates(aggregates, fetched);
+            if (appends.get() != appended) {
+                // an append finished while they were kept
+                recentAggregates = null;
+            }
+        }
+        return aggregates;
+    }
+
+    private List<ShardAggregates> fetchAggregates() {
+        List<ShardAggregates> aggregates = scatter(ShardClient::aggregates);
+        for (int shard = 0; shard < aggregates.size(); shard++) {
+            ShardAggregates answer = aggregates.get(shard);
+            if (answer.shardCount() != shards.size() || answer.shardIndex() != shard) {
+                throw new ServiceException(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Worker " + shards.get(shard)
+                        + " serves shard " + answer.shardIndex() + " of " + answer.shardCount() + " instead of shard "
+                        + shard + " of " + shards.size());
+            }
+        }
+        return List.copyOf(aggregates);
+    }
+
+    public boolean isEmpty() {
+        return aggregates().stream().allMatch(shard -> shard.transactions() == 0);
+    }
+
+    public long getTotalAmountCents() {
+        long total = 0;
+        for (ShardAggregates shard : aggregates()) {
+            total = Math.addExact(total, shard.totalAmountCents());
+        }
+        return total;
+    }
+
+    /**
+     * Returns the highest amount of the shards holding transactions, as an empty shard reports 0 and amounts
+     * may be negative
+     */
+    public long getMaxAmountCents() {
+        return aggregates().stream().filter(shard -> shard.transactions() > 0)
+                .mapToLong(ShardAggregates::maxAmountCents).max().orElse(0);
+    }
+
+    public long getUniqueClientCount() {
+        if (approximate) {
+            return mergedSketches().getUniqueClientCount();
+        }
+        Set<String> clients = new HashSet<>();
+        scatter(ShardClient::clientNames).forEach(clients::addAll);
+        return clients.size();
+    }
+
+    /**
+     * Returns the sender with the highest total over all shards, null when there are no senders
+     */
+    public String getTopSender() {
+        if (approximate) {
+            return mergedSketches().getTopSender();
+        }
+        Map<String, Long> totals = new HashMap<>();
+        scatter(ShardClient::totalAmountCentsBySender)
+                .forEach(shard -> shard.forEach((sender, total) -> totals.merge(sender, total, Math::addExact)));
+        return totals.entrySet().stream()
+                .max(Map.Entry.<String, Long>comparingByValue()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    /**
+     * Merges the client sketches of every shard. A client on several shards is counted once, and a sender's
+     * totals on several shards are summed
+     */
+    public ClientSketches mergedSketches() {
+        List<ClientSketches> answers = scatter(ShardClient::sketches);
+        ClientSketches merged = answers.get(0).copy();
+        for (ClientSketches answer : answers.subList(1, answers.size())) {
+            merged.merge(answer);
+        }
+        return merged;
+    }
+
+    /**
+     * Answers the per-client queries for a batch of clients, every shard answering the whole batch
+     */
+    public List<ClientSummary> summarize(List<String> clientFullNames) {
+        List<List<ClientSummary>> answers = scatter(shard -> shard.summarize(clientFullNames));
+        List<ClientSummary> summaries = new ArrayList<>(clientFullNames.size());
+        for (int i = 0; i < clientFullNames.size(); i++) {
+            boolean openIssues = false;
+            BigDecimal totalSent = BigDecimal.ZERO;
+            for (List<ClientSummary> answer : answers) {
+                ClientSummary summary = answer.get(i);
+                openIssues |= summary.openComplianceIssues();
+                totalSent = totalSent.add(summary.totalAmountSent());
+            }
+            summaries.add(new ClientSummary(clientFullNames.get(i), openIssues, totalSent));
+        }
+        return summaries;
+    }
+
+    public Set<Integer> getUnsolvedIssueIds() {
+        Set<Integer> ids = new HashSet<>();
+        scatter(ShardClient::issues).forEach(shard -> ids.addAll(shard.unsolvedIssueIds()));
+        return Collections.unmodifiableSet(ids);
+    }
+
+    public List<String> getSolvedIssueMessages() {
+        List<String> messages = new ArrayList<>();
+        scatter(ShardClient::issues).forEach(shard -> messages.addAll(shard.solvedIssueMessages()));
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * Merges the top n of every shard. A transaction lives on one shard, so no two shards rank the same one
+     */
+    public List<Transaction> getTopTransactions(int n) {
+        return mergeTop(scatter(shard -> shard.topTransactions(n)), n);
+    }
+
+    public List<Transaction> getTopTransactions(TransactionFilter filter, int n) {
+        return mergeTop(scatter(shard -> shard.topTransactions(filter, n)), n);
+    }
+
+    /**
+     * Sums the counts and totals of the matches of every shard and keeps the highest amount of the shards with
+     * matches, as a shard without any reports 0 and amounts may be negative
+     */
+    public FilterAggregate aggregate(TransactionFilter filter) {
+        long count = 0;
+        BigDecimal total = BigDecimal.ZERO;
+        BigDecimal max = null;
+        for (FilterAggregate shard : scatter(client -> client.aggregate(filter))) {
+            if (shard.count() == 0) {
+                continue;
+            }
+            count += shard.count();
+            total = total.add(shard.totalAmount());
+            max = max == null ? shard.maxAmount() : max.max(shard.maxAmount());
+        }
+        return new FilterAggregate(count, total.setScale(Money.SCALE),
+                (max == null ? BigDecimal.ZERO : max).setScale(Money.SCALE));
+    }
+
+    /**
+     * Merges the first limit beneficiaries named after the given one of every shard. The beneficiaries of the
+     * merged page are among those, so one round trip answers it whichever shards they live on
+     */
+    public BeneficiaryPage getBeneficiaryPage(String after, int limit) {
+        if (limit < 0) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Limit must not be negative");
+        }
+        NavigableMap<String, List<Transaction>> merged = new TreeMap<>();
+        boolean hasMore = false;
+        for (BeneficiaryPage shard : scatter(client -> client.beneficiaryPage(after, limit))) {
+            hasMore |= shard.hasMore();
+            shard.transactionsByBeneficiary().forEach((beneficiary, transactions) ->
+                    merged.computeIfAbsent(beneficiary, name -> new ArrayList<>()).addAll(transactions));
+        }
+        Map<String, List<Transaction>> page = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Transaction>> beneficiary : merged.entrySet()) {
+            if (page.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            page.put(beneficiary.getKey(), Collections.unmodifiableList(beneficiary.getValue()));
+        }
+        return new BeneficiaryPage(Collections.unmodifiableMap(page), hasMore);
+    }
+
+    /**
+     * Checks every worker answers. Workers reload their own shard
+     */
+    @Override
+    public synchronized ReloadStatistics reload() {
+        long start = System.nanoTime();
+        long heapUsedBefore = heapUsed();
+        List<ShardAggregates> aggregates;
+        try {
+            aggregates = fetchAggregates();
+        } catch (ServiceException e) {
+            failedReloads.incrementAndGet();
+            throw e;
+        }
+        recentAggregates = null;
+        ReloadStatistics statistics = new ReloadStatistics(
+                aggregates.stream().mapToLong(ShardAggregates::generation).sum(),
+                aggregates.stream().mapToLong(ShardAggregates::transactions).sum(), 0,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Instant.now(), null, heapUsedBefore,
+                heapUsed());
+        lastReload = statistics;
+        log.info("{} shards serve generation {} with {} transactions", shards.size(), statistics.generation(),
+                statistics.rows());
+        return statistics;
+    }
+
+    @Override
+    public ReloadStatistics getLastReload() {
+        return lastReload;
+    }
+
+    @Override
+    public long getFailedReloads() {
+        return failedReloads.get();
+    }
+
+    /**
+     * Checks that every issue update names the MTN of the transaction its issue was raised on, whichever shard
+     * holds it or wherever earlier in the batch it was raised, as a single node would
+     */
+    private void checkIssueUpdates(List<Transaction> transactions) {
+        Set<Integer> issueIds = new HashSet<>();
+        for (Transaction transaction : transactions) {
+            if (transaction.getIssueId() != null && transaction.getIssueSolved() != null) {
+                issueIds.add(transaction.getIssueId());
+            }
+        }
+        if (issueIds.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> owners = new HashMap<>();
+        scatter(shard -> shard.issueMtns(issueIds)).forEach(owners::putAll);
+        for (Transaction transaction : transactions) {
+            Integer issueId = transaction.getIssueId();
+            if (issueId == null || transaction.getIssueSolved() == null) {
+                continue;
+            }
+            Integer owner = owners.putIfAbsent(issueId, transaction.getMtn());
+            if (owner != null && !Objects.equals(owner, transaction.getMtn())) {
+                throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Issue " + issueId
+                        + " belongs to transaction " + owner + ", not to transaction " + transaction.getMtn());
+            }
+        }
+    }
+
+    private static List<Transaction> mergeTop(List<List<Transaction>> answers, int n) {
+        List<Transaction> candidates = new ArrayList<>();
+        answers.forEach(candidates::addAll);
+        // stable, so equal amounts keep shard order and each shard's own ranking
+        candidates.sort(Comparator.comparing(Transaction::getAmount).reversed());
+        return Collections.unmodifiableList(candidates.subList(0, Math.min(n, candidates.size())));
+    }
+
+    /**
+     * Runs the call on every shard in parallel and returns the answers in shard order
+     */
+    private <T> List<T> scatter(ShardCall<T> call) {
+        List<Future<T>> pending = new ArrayList<>(shards.size());
+        for (ShardClient shard : shards) {
+            pending.add(executor.submit(() -> call.apply(shard)));
+        }
+        try {
+            List<T> answers = new ArrayList<>(shards.size());
+            for (int shard = 0; shard < pending.size(); shard++) {
+                answers.add(await(shard, pending.get(shard)));
+            }
+            return answers;
+        } finally {
+            // left over when a shard fails
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private <T> T call(int shard, ShardCall<T> call) {
+        try {
+            return call.apply(shards.get(shard));
+        } catch (IOException e) {
+            throw unavailable(shard, e);
+        }
+    }
+
+    private <T> T await(int shard, Future<T> answer) {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    "Interrupted waiting for shard " + shard);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw unavailable(shard, (Exception) e.getCause());
+        }
+    }
+
+    private ServiceException unavailable(int shard, Exception e) {
+        log.warn("shard {} at {} did not answer", shard, shards.get(shard), e);
+        return new ServiceException(HttpStatus.BAD_GATEWAY.value(), "Shard " + shard + " is unavailable", e);
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private record RecentAggregates(List<ShardAggregates> aggregates, long fetchedNanos) {
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T apply(ShardClient shard) throws IOException;
+    }
+}
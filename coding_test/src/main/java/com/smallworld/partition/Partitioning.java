@@ -0,0 +1,57 @@
+package com.smallworld.partition;
+
+import com.smallworld.loader.TransactionSink;
+
+/**
+ * Which transactions a shard holds: those whose MTN hashes to its index among {@code shardCount} shards. Appends
+ * updating an issue must carry the MTN of the transaction that raised it, so a transaction and the issues raised
+ * on it live on exactly one shard. A loaded file updating an issue under another MTN splits it over the shards
+ * of both. Rows without an MTN belong to shard 0
+ *
+ * @param shardCount shards the MTN space is split into, 1 when the data is not partitioned
+ * @param shardIndex the shard held, from 0 to {@code shardCount - 1}
+ */
+public record Partitioning(int shardCount, int shardIndex) {
+    public static final Partitioning NONE = new Partitioning(1, 0);
+
+    public Partitioning {
+        if (shardCount <= 0 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("shardCount must be positive and shardIndex between 0 and "
+                    + (shardCount - 1));
+        }
+    }
+
+    /**
+     * Returns the shard of an MTN. The MTN is mixed before it is reduced, so consecutive MTNs spread evenly over
+     * any shard count
+     */
+    public static int shardOf(Integer mtn, int shardCount) {
+        if (mtn == null) {
+            return 0;
+        }
+        int hash = mtn * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    public boolean isPartitioned() {
+        return shardCount > 1;
+    }
+
+    public boolean owns(Integer mtn) {
+        return shardOf(mtn, shardCount) == shardIndex;
+    }
+
+    /**
+     * Returns a sink passing on only the transactions of this shard
+     */
+    public TransactionSink filter(TransactionSink sink) {
+        if (!isPartitioned()) {
+            return sink;
+        }
+        return transaction -> {
+            if (owns(transaction.getMtn())) {
+                sink.accept(transaction);
+            }
+        };
+    }
+}
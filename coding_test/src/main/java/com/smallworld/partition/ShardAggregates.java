@@ -0,0 +1,26 @@
+package com.smallworld.partition;
+
+import com.smallworld.service.DataVersion;
+import com.smallworld.snapshot.TransactionSnapshot;
+
+/**
+ * The aggregates of one shard that merge without any per-client state, small enough to fetch on every query
+ *
+ * @param shardCount         shards the worker was configured with
+ * @param shardIndex         shard the worker holds
+ * @param epoch              chosen when the worker process started, see {@link DataVersion#PROCESS_EPOCH}
+ * @param generation         generation of the worker's data, counted from the start again when it restarts
+ * @param lastModifiedMillis when the worker's data last changed
+ * @param transactions       transactions on the shard
+ * @param totalAmountCents   sum of their amounts, in cents
+ * @param maxAmountCents     highest of their amounts in cents, 0 when the shard is empty
+ */
+public record ShardAggregates(int shardCount, int shardIndex, String epoch, long generation, long lastModifiedMillis,
+                              long transactions, long totalAmountCents, long maxAmountCents) {
+
+    public static ShardAggregates of(Partitioning partitioning, TransactionSnapshot snapshot) {
+        return new ShardAggregates(partitioning.shardCount(), partitioning.shardIndex(), DataVersion.PROCESS_EPOCH,
+                snapshot.getGeneration(), snapshot.getLastModified().toEpochMilli(), snapshot.getTransactions().size(),
+                snapshot.getTotalAmountCents(), snapshot.getMaxAmountCents());
+    }
+}
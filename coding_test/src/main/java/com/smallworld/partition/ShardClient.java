@@ -0,0 +1,91 @@
+package com.smallworld.partition;
+
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.ClientSummary;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import com.smallworld.snapshot.TransactionSnapshot;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asks one worker for the partial answers of its shard. {@link LocalShardClient} reads a service in the same JVM,
+ * {@link HttpShardClient} calls the {@code /shard} endpoints of a worker process. An {@link IOException} means
+ * the worker could not be reached; a worker rejecting the request fails with a {@link ServiceException} carrying
+ * its status
+ */
+public interface ShardClient {
+
+    ShardAggregates aggregates() throws IOException;
+
+    /**
+     * Returns every sender and beneficiary on the shard. A client sends and receives on many shards, so
+     * counting distinct clients needs the names of every shard rather than a partial count
+     */
+    List<String> clientNames() throws IOException;
+
+    /**
+     * Returns the sum of the amounts each sender sent on the shard, in cents, to be summed over all shards
+     * before ranking
+     */
+    Map<String, Long> totalAmountCentsBySender() throws IOException;
+
+    ShardIssues issues() throws IOException;
+
+    /**
+     * Returns the MTN of the transaction each of the issues was raised on, for the issues known to the shard
+     */
+    Map<Integer, Integer> issueMtns(Collection<Integer> issueIds) throws IOException;
+
+    /**
+     * Returns the client sketches of the shard, to be merged over all shards. A worker without sketches fails
+     * with a {@link ServiceException}
+     */
+    ClientSketches sketches() throws IOException;
+
+    /**
+     * Returns the n transactions of the shard with the highest amounts, highest first
+     */
+    List<Transaction> topTransactions(int n) throws IOException;
+
+    /**
+     * Returns the n transactions of the shard matching the filter with the highest amounts, highest first
+     */
+    List<Transaction> topTransactions(TransactionFilter filter, int n) throws IOException;
+
+    FilterAggregate aggregate(TransactionFilter filter) throws IOException;
+
+    /**
+     * Returns the first limit beneficiaries of the shard named after the given one, with the transactions they
+     * received on the shard
+     */
+    BeneficiaryPage beneficiaryPage(String after, int limit) throws IOException;
+
+    /**
+     * Answers the per-client queries for the clients on this shard, in the order the names were given
+     */
+    List<ClientSummary> summarize(List<String> clientFullNames) throws IOException;
+
+    List<Transaction> transactions() throws IOException;
+
+    void append(List<Transaction> transactions) throws IOException;
+
+    /**
+     * Returns the client sketches a worker serves for its snapshot, rejecting the request when it keeps none
+     */
+    static ClientSketches sketchesOf(TransactionSnapshot snapshot) {
+        ClientSketches sketches = snapshot.getClientSketches();
+        if (sketches == null) {
+            throw new ServiceException(HttpStatus.CONFLICT.value(),
+                    "Client sketches are not enabled on this node, see datasource.sketch.enabled");
+        }
+        return sketches;
+    }
+}
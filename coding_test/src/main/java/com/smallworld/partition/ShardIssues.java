@@ -0,0 +1,19 @@
+package com.smallworld.partition;
+
+import com.smallworld.snapshot.TransactionSnapshot;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The compliance issues of one shard. An issue belongs to a single transaction and so to a single shard
+ *
+ * @param unsolvedIssueIds    ids of the open issues on the shard
+ * @param solvedIssueMessages messages of the solved issues on the shard, in the worker's order
+ */
+public record ShardIssues(Set<Integer> unsolvedIssueIds, List<String> solvedIssueMessages) {
+
+    public static ShardIssues of(TransactionSnapshot snapshot) {
+        return new ShardIssues(snapshot.getUnsolvedIssueIds(), snapshot.getSolvedIssueMessages());
+    }
+}
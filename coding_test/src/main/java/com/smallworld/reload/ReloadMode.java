@@ -0,0 +1,16 @@
+package com.smallworld.reload;
+
+public enum ReloadMode {
+    /**
+     * Load the datasource once at startup
+     */
+    NONE,
+    /**
+     * Reload when the file system reports a change to the datasource
+     */
+    WATCH,
+    /**
+     * Reload when the size or modification time of the datasource changes between two checks
+     */
+    POLL
+}
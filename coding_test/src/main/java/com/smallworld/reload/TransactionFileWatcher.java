@@ -0,0 +1,146 @@
+package com.smallworld.reload;
+
+import com.smallworld.exception.ServiceException;
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.service.ReloadableTransactionService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the transaction datasource in the background when it changes, either from file system
+ * notifications or by polling, depending on {@code datasource.reload.mode}. Reloads run on a single
+ * thread of their own, so requests keep being served from the current data while the new one is built
+ */
+@Component
+@Slf4j
+public class TransactionFileWatcher {
+    private final ReloadableTransactionService transactionService;
+    private final TransactionSource source;
+    private final ReloadMode mode;
+    private final Duration pollInterval;
+    private final Duration quietPeriod;
+
+    private ScheduledExecutorService executor;
+    private WatchService watchService;
+    private ScheduledFuture<?> pendingReload;
+    private TransactionSource.Fingerprint lastFingerprint;
+
+    public TransactionFileWatcher(ReloadableTransactionService transactionService,
+                                  @Value("${datasource.json.file-location}") String location,
+                                  @Value("${datasource.reload.mode:none}") ReloadMode mode,
+                                  @Value("${datasource.reload.poll-interval:30s}") Duration pollInterval,
+                                  @Value("${datasource.reload.quiet-period:500ms}") Duration quietPeriod) {
+        this.transactionService = transactionService;
+        this.source = TransactionSource.of(location);
+        this.mode = mode;
+        this.pollInterval = pollInterval;
+        this.quietPeriod = quietPeriod;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (mode == ReloadMode.NONE) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (mode == ReloadMode.POLL) {
+            lastFingerprint = source.fingerprint();
+            executor.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("polling {} for changes every {}", source, pollInterval);
+        } else {
+            Path watched = source.directory();
+            watchService = watched.getFileSystem().newWatchService();
+            watched.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            Thread watcher = new Thread(this::watch, "transaction-file-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            log.info("watching {} for changes", source);
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // an overflow means events were lost, one of them may have been ours
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || source.contains((Path) event.context());
+                }
+                if (!key.reset()) {
+                    log.warn("{} is no longer accessible, stopped watching it", source.directory());
+                    return;
+                }
+                if (changed) {
+                    scheduleReload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Writers usually produce several modify events for one file, the reload runs once they have been
+     * quiet for a while
+     */
+    private synchronized void scheduleReload() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        pendingReload = executor.schedule(this::reload, quietPeriod.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        TransactionSource.Fingerprint fingerprint = source.fingerprint();
+        if (!Objects.equals(fingerprint, lastFingerprint)) {
+            lastFingerprint = fingerprint;
+            reload();
+        }
+    }
+
+    private void reload() {
+        try {
+            transactionService.reload();
+        } catch (ServiceException e) {
+            // already logged by the service, which keeps serving the previous generation
+        } catch (RuntimeException e) {
+            log.error("reloading {} failed", source, e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.smallworld.service;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Identifies the data a service serves, for validating cached responses. Generations count from the start again
+ * in every process, so the data is only identified by the generation together with the epoch of the process
+ *
+ * @param epoch        chosen when the serving process started, or derived from the epochs of the workers
+ * @param generation   changes whenever the data does, like a snapshot generation
+ * @param lastModified when the data last changed
+ */
+public record DataVersion(String epoch, long generation, Instant lastModified) {
+    // chosen once per process
+    public static final String PROCESS_EPOCH = UUID.randomUUID().toString();
+
+    /**
+     * Returns the version of data served by this process
+     */
+    public static DataVersion of(long generation, Instant lastModified) {
+        return new DataVersion(PROCESS_EPOCH, generation, lastModified);
+    }
+
+    /**
+     * Returns the entity tag of the data, which differs between processes serving the same generation
+     */
+    public String tag() {
+        return epoch + "-" + generation;
+    }
+}
@@ -0,0 +1,29 @@
+package com.smallworld.service;
+
+import com.smallworld.loader.LoadStatistics;
+
+import java.time.Instant;
+
+/**
+ * Outcome of one load of the datasource
+ *
+ * @param generation     number of the published data. A load publishes the previous generation plus one and
+ *                       every append, including those replayed from the write-ahead log, adds one more, so
+ *                       consecutive loads are not numbered consecutively. A coordinator reports the sum of
+ *                       its workers' generations
+ * @param rows           transactions in the published data
+ * @param skippedRows    rows of the datasource skipped for an amount that is not a whole number of cents, see
+ *                       {@link com.smallworld.loader.SkippedRows}. Always 0 unless
+ *                       {@code datasource.skip-inexact-amounts} is set, as such rows fail the load otherwise. Not
+ *                       counted for data read from a binary copy, nor by a coordinator, whose workers count
+ *                       their own
+ * @param durationMillis time spent reading the datasource and building the new data
+ * @param completedAt    when the new data was published
+ * @param parse          progress of parsing the JSON file, null when the data was read from a binary copy
+ * @param heapUsedBefore heap in use before reading the datasource, in bytes
+ * @param heapUsedAfter  heap in use once the new data was published, in bytes. The previous data is still
+ *                       included until the next garbage collection
+ */
+public record ReloadStatistics(long generation, long rows, long skippedRows, long durationMillis,
+                               Instant completedAt, LoadStatistics parse, long heapUsedBefore, long heapUsedAfter) {
+}
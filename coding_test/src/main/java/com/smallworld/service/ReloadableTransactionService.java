@@ -0,0 +1,21 @@
+package com.smallworld.service;
+
+/**
+ * A {@link TransactionService} whose data can be reloaded from its datasource while it keeps serving reads
+ */
+public interface ReloadableTransactionService extends TransactionService {
+
+    /**
+     * Reads the datasource again and publishes the new data in one step. Readers keep seeing the previous
+     * data until the new one is complete, and keep it if the reload fails
+     */
+    ReloadStatistics reload();
+
+    /**
+     * Returns the statistics of the last successful load, null before the first one
+     */
+    ReloadStatistics getLastReload();
+
+    long getFailedReloads();
+
+}
@@ -1,6 +1,7 @@
 package com.smallworld.service;
 
 import com.smallworld.model.Transaction;
+import com.smallworld.snapshot.TransactionSnapshot;
 
 import java.util.List;
 
@@ -8,4 +9,21 @@ public interface TransactionService {
 
     List<Transaction> getAllTransaction();
 
+    /**
+     * Returns the transactions together with their precomputed aggregates. Implementations holding
+     * loaded data should override this to hand out the snapshot built once per load
+     */
+    default TransactionSnapshot getTransactionSnapshot() {
+        return TransactionSnapshot.of(getAllTransaction());
+    }
+
+    /**
+     * Returns the generation and last modification of the data. Implementations not holding a snapshot should
+     * override this to answer without building one
+     */
+    default DataVersion getDataVersion() {
+        TransactionSnapshot snapshot = getTransactionSnapshot();
+        return DataVersion.of(snapshot.getGeneration(), snapshot.getLastModified());
+    }
+
 }
@@ -0,0 +1,22 @@
+package com.smallworld.service;
+
+import com.smallworld.model.Transaction;
+
+import java.util.List;
+
+/**
+ * A {@link TransactionService} that accepts new transactions while it keeps serving reads
+ */
+public interface WritableTransactionService extends TransactionService {
+
+    /**
+     * Adds a transaction to the data set without reloading it. A transaction for an issue that is already
+     * known updates the issue instead, which is how an unsolved issue is marked as solved
+     */
+    void append(Transaction transaction);
+
+    default void appendBatch(List<Transaction> transactions) {
+        transactions.forEach(this::append);
+    }
+
+}
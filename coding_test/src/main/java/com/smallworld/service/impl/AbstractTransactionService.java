@@ -0,0 +1,366 @@
+package com.smallworld.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.loader.LoadStatistics;
+import com.smallworld.loader.ParallelTransactionReader;
+import com.smallworld.loader.TransactionSink;
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import com.smallworld.partition.Partitioning;
+import com.smallworld.service.ReloadStatistics;
+import com.smallworld.service.ReloadableTransactionService;
+import com.smallworld.service.WritableTransactionService;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.ExecutionMode;
+import com.smallworld.snapshot.ParallelAggregator;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import com.smallworld.wal.RecordTooLargeException;
+import com.smallworld.wal.TransactionLog;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds the snapshot loaded from {@code datasource.json.file-location}, a file, a directory or a glob of part
+ * files, and swaps it for a new one on reload.
+ * Subclasses decide how the file is turned into a snapshot. Appended transactions go to the current snapshot
+ * and last until the next reload replaces it, unless the {@link TransactionLog} is enabled: appends are then
+ * logged before they are applied, and every load replays the log on top of the data it read.
+ * <p>
+ * A worker of a partitioned deployment sets {@code datasource.partition.shard-count} and {@code shard-index}: it
+ * then loads and accepts only the transactions whose MTN falls in its shard, see {@link Partitioning}.
+ * <p>
+ * With {@code datasource.sketch.enabled} every published snapshot carries {@link ClientSketches} of its clients,
+ * which answer the unique client count and the top sender approximately and merge across shards
+ */
+@Slf4j
+public abstract class AbstractTransactionService implements ReloadableTransactionService, WritableTransactionService {
+    @Value("${datasource.json.file-location}")
+    private String jsonFileLocation;
+    @Value("${datasource.json.parallelism:0}")
+    private int parseParallelism;
+    @Value("${datasource.json.split-size:32MB}")
+    private DataSize splitSize = DataSize.ofBytes(ParallelTransactionReader.DEFAULT_SPLIT_SIZE);
+    @Value("${datasource.skip-inexact-amounts:false}")
+    private boolean skipInexactAmounts;
+    @Value("${datasource.execution.mode:sequential}")
+    private ExecutionMode executionMode = ExecutionMode.SEQUENTIAL;
+    @Value("${datasource.execution.parallelism:0}")
+    private int parallelism;
+    @Value("${datasource.execution.threshold:100000}")
+    private int parallelThreshold;
+    @Value("${datasource.partition.shard-count:1}")
+    private int shardCount = 1;
+    @Value("${datasource.partition.shard-index:0}")
+    private int shardIndex;
+    @Value("${datasource.sketch.enabled:false}")
+    private boolean sketchesEnabled;
+    @Value("${datasource.sketch.distinct-error:0.01}")
+    private double distinctError = 0.01;
+    @Value("${datasource.sketch.heavy-hitter-error:0.001}")
+    private double heavyHitterError = 0.001;
+    private ParallelAggregator parallelAggregator;
+    @Autowired(required = false)
+    private TransactionLog transactionLog;
+    // appends hold the read lock from logging to applying, so a reload replays exactly what it publishes over
+    private final ReadWriteLock appendLock = new ReentrantReadWriteLock();
+
+    // replaced as a whole on every load so readers always see one consistent set of rows and aggregates
+    private volatile TransactionSnapshot snapshot = TransactionSnapshot.empty();
+    private volatile ReloadStatistics lastReload;
+    // set by the subclass during load, guarded by the reload lock
+    private LoadStatistics parseStatistics;
+    private long skippedRows;
+    private final AtomicLong failedReloads = new AtomicLong();
+
+    @PostConstruct
+        // Loading json file once and precomputing its aggregates
+    void initTransaction() {
+        reload();
+    }
+
+    @Override
+    public List<Transaction> getAllTransaction() {
+        return snapshot.getTransactions();
+    }
+
+    @Override
+    public TransactionSnapshot getTransactionSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void append(Transaction transaction) {
+        validate(transaction);
+        checkShard(transaction);
+        appendLock.readLock().lock();
+        try {
+            checkIssueUpdates(List.of(transaction));
+            checkTotalAmount(List.of(transaction));
+            logAppends(List.of(transaction));
+            applyAppend(snapshot, transaction);
+        } finally {
+            appendLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the transactions in order once all of them are valid, so a bad record rejects the whole batch
+     */
+    @Override
+    public void appendBatch(List<Transaction> transactions) {
+        if (transactions == null) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Transactions must not be null");
+        }
+        transactions.forEach(AbstractTransactionService::validate);
+        transactions.forEach(this::checkShard);
+        appendLock.readLock().lock();
+        try {
+            checkIssueUpdates(transactions);
+            checkTotalAmount(transactions);
+            logAppends(transactions);
+            TransactionSnapshot current = snapshot;
+            transactions.forEach(transaction -> applyAppend(current, transaction));
+        } finally {
+            appendLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized ReloadStatistics reload() {
+        long start = System.nanoTime();
+        long heapUsedBefore = heapUsed();
+        parseStatistics = null;
+        skippedRows = 0;
+        TransactionSnapshot loaded;
+        try {
+            log.info("loading file {}", jsonFileLocation);
+            loaded = load(TransactionSource.of(jsonFileLocation));
+        } catch (Exception e) {
+            failedReloads.incrementAndGet();
+            log.error("loading file {} failed, keeping generation {}", jsonFileLocation, snapshot.getGeneration(), e);
+            throw new ServiceException("Transaction Object Not Found");
+        }
+        // sketched outside the lock, appends only wait for the replay
+        ClientSketches sketches = sketchesEnabled ? loaded.sketchClients(distinctError, heavyHitterError) : null;
+        TransactionSnapshot published;
+        appendLock.writeLock().lock();
+        try {
+            published = loaded.withGeneration(snapshot.getGeneration() + 1, sketches);
+            replayLog(published);
+            snapshot = published;
+        } finally {
+            appendLock.writeLock().unlock();
+        }
+        ReloadStatistics statistics = new ReloadStatistics(published.getGeneration(), published.getTransactions().size(),
+                skippedRows, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Instant.now(), parseStatistics,
+                heapUsedBefore, heapUsed());
+        lastReload = statistics;
+        log.info("published generation {} with {} transactions, loaded in {} ms", statistics.generation(),
+                statistics.rows(), statistics.durationMillis());
+        if (skippedRows > 0) {
+            log.warn("skipped {} rows of {} with amounts that are not whole numbers of cents", skippedRows,
+                    jsonFileLocation);
+        }
+        return statistics;
+    }
+
+    @Override
+    public ReloadStatistics getLastReload() {
+        return lastReload;
+    }
+
+    @Override
+    public long getFailedReloads() {
+        return failedReloads.get();
+    }
+
+    public String getJsonFileLocation() {
+        return jsonFileLocation;
+    }
+
+    public Partitioning getPartitioning() {
+        return new Partitioning(shardCount, shardIndex);
+    }
+
+    /**
+     * Rejects an update of an issue raised on another transaction before anything is logged
+     */
+    private void checkIssueUpdates(List<Transaction> transactions) {
+        try {
+            snapshot.checkIssueUpdates(transactions);
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+    }
+
+    /**
+     * Rejects transactions that would overflow the total amount before anything is logged, as a logged one
+     * would fail again on every replay
+     */
+    private void checkTotalAmount(List<Transaction> transactions) {
+        try {
+            snapshot.checkTotalAmount(transactions);
+        } catch (ArithmeticException e) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(),
+                    "Transactions would overflow the total amount");
+        }
+    }
+
+    /**
+     * Applies a checked transaction. Only a concurrent append raising the same issue on another transaction, or
+     * taking the rest of the total amount, between the checks and here still gets it rejected; it is then
+     * logged, but skipped the same way on replay
+     */
+    private static void applyAppend(TransactionSnapshot target, Transaction transaction) {
+        try {
+            target.append(transaction);
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        } catch (ArithmeticException e) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(),
+                    "Transactions would overflow the total amount");
+        }
+    }
+
+    /**
+     * Makes the transactions durable before they are applied, when the log is enabled
+     */
+    private void logAppends(List<Transaction> transactions) {
+        if (transactionLog == null || transactions.isEmpty()) {
+            return;
+        }
+        try {
+            transactionLog.append(transactions);
+        } catch (RecordTooLargeException e) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        } catch (IOException e) {
+            log.error("logging {} transactions failed", transactions.size(), e);
+            throw new ServiceException(HttpStatus.SERVICE_UNAVAILABLE.value(), "Transactions could not be logged", e);
+        }
+    }
+
+    private void replayLog(TransactionSnapshot published) {
+        if (transactionLog == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        long rows = published.getTransactions().size();
+        try {
+            long sequence = transactionLog.replay(transaction -> replayAppend(published, transaction));
+            log.info("replayed {} up to sequence {} onto {} transactions in {} ms", transactionLog.getFile(), sequence,
+                    rows, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            failedReloads.incrementAndGet();
+            log.error("replaying {} failed, keeping generation {}", transactionLog.getFile(),
+                    snapshot.getGeneration(), e);
+            throw new ServiceException("Transaction log could not be replayed");
+        }
+    }
+
+    private void replayAppend(TransactionSnapshot published, Transaction transaction) {
+        try {
+            published.append(transaction);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // the datasource may have changed since it was logged, so that it no longer applies
+            log.warn("skipping logged transaction {}: {}", transaction.getMtn(), e.getMessage());
+        }
+    }
+
+    private void checkShard(Transaction transaction) {
+        if (shardCount > 1 && !getPartitioning().owns(transaction.getMtn())) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Transaction mtn belongs to shard "
+                    + Partitioning.shardOf(transaction.getMtn(), shardCount) + ", not to shard " + shardIndex);
+        }
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void validate(Transaction transaction) {
+        if (transaction == null || transaction.getMtn() == null || transaction.getAmount() == null
+                || transaction.getSenderFullName() == null || transaction.getBeneficiaryFullName() == null) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(),
+                    "Transaction must have an mtn, an amount, a sender and a beneficiary");
+        }
+        if (!(transaction.getAmount() >= 0) || transaction.getAmount().isInfinite()) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(), "Transaction amount must be a non-negative number");
+        }
+        if (!Money.isExact(transaction.getAmount())) {
+            throw new ServiceException(HttpStatus.BAD_REQUEST.value(),
+                    "Transaction amount must be a whole number of cents");
+        }
+    }
+
+    /**
+     * Aggregates a column store into a snapshot, on the fork-join pool when {@code datasource.execution.mode}
+     * is parallel
+     */
+    protected TransactionSnapshot snapshotOf(TransactionStore store) {
+        if (executionMode == ExecutionMode.SEQUENTIAL) {
+            return TransactionSnapshot.of(store);
+        }
+        synchronized (this) {
+            if (parallelAggregator == null) {
+                int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+                parallelAggregator = new ParallelAggregator(new ForkJoinPool(threads), parallelThreshold);
+            }
+        }
+        return parallelAggregator.aggregate(store);
+    }
+
+    /**
+     * Parses the files of the source into the sink, on {@code datasource.json.parallelism} threads. A worker
+     * passes on only the transactions of its shard
+     */
+    protected LoadStatistics read(TransactionSource source, TransactionSink sink) throws IOException {
+        return reader().read(source, getPartitioning().filter(sink));
+    }
+
+    protected ParallelTransactionReader reader() {
+        return new ParallelTransactionReader(new ObjectMapper(), parseParallelism, splitSize.toBytes());
+    }
+
+    /**
+     * Returns whether loads skip rows whose amount is not a whole number of cents instead of failing on them
+     */
+    protected boolean skipsInexactAmounts() {
+        return skipInexactAmounts;
+    }
+
+    /**
+     * Records how parsing the JSON file went, for the statistics of the load in progress
+     */
+    protected void parsed(LoadStatistics statistics) {
+        parseStatistics = statistics;
+    }
+
+    /**
+     * Records how many rows the load in progress skipped for their amounts
+     */
+    protected void skipped(long rows) {
+        skippedRows = rows;
+    }
+
+    /**
+     * Reads the source into a new snapshot. Runs off the request path; the current snapshot keeps serving meanwhile
+     */
+    protected abstract TransactionSnapshot load(TransactionSource source) throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.smallworld.service.impl;
+
+import com.smallworld.loader.LoadStatistics;
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * Keeps the transactions in a column oriented {@link TransactionStore} instead of a list of objects.
+ * Enabled with {@code datasource.storage=columnar}
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "datasource.storage", havingValue = "columnar")
+public class ColumnarTransactionServiceImpl extends AbstractTransactionService {
+
+    @Override
+    protected TransactionSnapshot load(TransactionSource source) throws IOException {
+        TransactionStore.Builder builder = new TransactionStore.Builder(skipsInexactAmounts());
+        LoadStatistics statistics = read(source, builder);
+        parsed(statistics);
+        skipped(builder.getSkippedRows());
+        TransactionStore store = builder.build();
+        log.info("loaded {} rows as {} transactions with {} issues in {} ms, store retains {} bytes ({} bytes/row)",
+                statistics.rows(), store.size(), store.issueCount(), statistics.elapsedMillis(),
+                store.estimatedSizeInBytes(), statistics.rows() == 0 ? 0 : store.estimatedSizeInBytes() / statistics.rows());
+        return snapshotOf(store);
+    }
+}
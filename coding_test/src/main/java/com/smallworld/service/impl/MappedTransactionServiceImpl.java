@@ -0,0 +1,72 @@
+package com.smallworld.service.impl;
+
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import com.smallworld.store.TransactionStoreConverter;
+import com.smallworld.store.TransactionStoreFile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Serves the transactions from a memory-mapped binary copy of the JSON files, see {@link TransactionStoreFile}.
+ * Enabled with {@code datasource.storage=mapped}.
+ * <p>
+ * The binary file is written after the first JSON load and reused by later starts while its header still
+ * records the total size and latest modification time of the JSON files, so those starts skip parsing
+ * altogether. When the JSON files are absent the binary file is used as it is, which lets a converted file be shipped on its own.
+ * The binary file holds every transaction, so this storage cannot serve a single shard of partitioned data
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "datasource.storage", havingValue = "mapped")
+public class MappedTransactionServiceImpl extends AbstractTransactionService {
+    @Value("${datasource.binary.file-location:}")
+    private String binaryFileLocation;
+    @Value("${datasource.binary.verify-checksum:true}")
+    private boolean verifyChecksum;
+
+    @Override
+    protected TransactionSnapshot load(TransactionSource source) throws IOException {
+        if (getPartitioning().isPartitioned()) {
+            throw new IOException("Mapped storage cannot load a shard, use heap or columnar storage on workers");
+        }
+        Path binary = binaryFileLocation.isEmpty() ? TransactionStoreConverter.defaultTarget(source)
+                : Path.of(binaryFileLocation);
+        boolean sourceExists = source.exists();
+        if (Files.exists(binary) && (!sourceExists || isCurrent(binary, source))) {
+            long start = System.nanoTime();
+            try {
+                TransactionStore store = TransactionStoreFile.open(binary, verifyChecksum);
+                log.info("mapped {} transactions from {} in {} ms", store.size(), binary,
+                        (System.nanoTime() - start) / 1_000_000);
+                return snapshotOf(store);
+            } catch (IOException e) {
+                if (!sourceExists) {
+                    throw e;
+                }
+                log.warn("{} is unusable, converting {} again", binary, source, e);
+            }
+        }
+        return snapshotOf(TransactionStoreConverter.convert(source, binary, reader(), skipsInexactAmounts()));
+    }
+
+    private static boolean isCurrent(Path binary, TransactionSource source) {
+        TransactionSource.Fingerprint fingerprint = source.fingerprint();
+        if (fingerprint == null) {
+            return false;
+        }
+        try {
+            return TransactionStoreFile.readHeader(binary).matches(fingerprint.length(), fingerprint.lastModifiedMillis());
+        } catch (IOException e) {
+            log.warn("cannot read the header of {}", binary, e);
+            return false;
+        }
+    }
+}
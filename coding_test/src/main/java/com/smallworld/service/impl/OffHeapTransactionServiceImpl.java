@@ -0,0 +1,40 @@
+package com.smallworld.service.impl;
+
+import com.smallworld.loader.LoadStatistics;
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.store.TransactionStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * Keeps the columns of the {@link TransactionStore} in direct memory outside the heap, see
+ * {@link TransactionStore.Builder#buildOffHeap}, so the heap only holds the dictionaries and the snapshot's
+ * per-client aggregates. Enabled with {@code datasource.storage=offheap}; size {@code -XX:MaxDirectMemorySize}
+ * for the data rather than {@code -Xmx}.
+ * <p>
+ * Each load allocates the columns of its own generation. The columns of a replaced generation are released
+ * once the last snapshot of it is unreachable, so a query still running on it never reads freed memory
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "datasource.storage", havingValue = "offheap")
+public class OffHeapTransactionServiceImpl extends AbstractTransactionService {
+
+    @Override
+    protected TransactionSnapshot load(TransactionSource source) throws IOException {
+        TransactionStore.Builder builder = new TransactionStore.Builder(skipsInexactAmounts());
+        LoadStatistics statistics = read(source, builder);
+        parsed(statistics);
+        skipped(builder.getSkippedRows());
+        TransactionStore store = builder.buildOffHeap();
+        log.info("loaded {} rows as {} transactions with {} issues in {} ms, store holds {} bytes off heap and {} "
+                        + "bytes on heap", statistics.rows(), store.size(), store.issueCount(),
+                statistics.elapsedMillis(), store.estimatedSizeInBytes() - store.estimatedHeapSizeInBytes(),
+                store.estimatedHeapSizeInBytes());
+        return snapshotOf(store);
+    }
+}
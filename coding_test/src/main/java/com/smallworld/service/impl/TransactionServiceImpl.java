@@ -1,46 +1,29 @@
 package com.smallworld.service.impl;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.smallworld.exception.ServiceException;
-import com.smallworld.model.Transaction;
-import com.smallworld.service.TransactionService;
-import jakarta.annotation.PostConstruct;
+import com.smallworld.loader.LoadStatistics;
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.snapshot.TransactionSnapshot;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.util.List;
+import java.io.IOException;
 
 @Service
 @Slf4j
-public class TransactionServiceImpl implements TransactionService {
-    @Value("${datasource.json.file-location}")
-    private String jsonFileLocation;
-
-    private static List<Transaction> transactions;
-
-    @PostConstruct
-        // Loading json file one and storing it in static variable
-    void initTransaction() {
-        getAllTransactions();
-    }
+@ConditionalOnProperty(name = "datasource.storage", havingValue = "heap", matchIfMissing = true)
+public class TransactionServiceImpl extends AbstractTransactionService {
 
     @Override
-    public List<Transaction> getAllTransaction() {
-        return transactions;
-    }
-
-    private void getAllTransactions() {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            log.info("loading file");
-            File initialFile = new File(jsonFileLocation);
-            transactions = mapper.readValue(initialFile, new TypeReference<List<Transaction>>() {
-            });
-        } catch (Exception e) {
-            throw new ServiceException("Transaction Object Not Found");
-        }
+    protected TransactionSnapshot load(TransactionSource source) throws IOException {
+        TransactionSnapshot.Builder builder = new TransactionSnapshot.Builder(skipsInexactAmounts());
+        LoadStatistics statistics = read(source, builder);
+        parsed(statistics);
+        skipped(builder.getSkippedRows());
+        TransactionSnapshot snapshot = builder.build();
+        log.info("loaded {} rows as {} transactions ({} bytes) in {} ms at {} rows/s", statistics.rows(),
+                snapshot.getTransactions().size(), statistics.bytesRead(), statistics.elapsedMillis(),
+                Math.round(statistics.rowsPerSecond()));
+        return snapshot;
     }
 }
@@ -0,0 +1,161 @@
+package com.smallworld.sketch;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Approximates the client queries in memory independent of the number of clients: {@link HyperLogLog} sketches
+ * of the distinct senders and beneficiaries, whose union counts the distinct clients, and a {@link SpaceSaving}
+ * sketch of the amounts sent by each sender, in cents, for the top senders.
+ * <p>
+ * Sketches of several files or shards merge into the sketches of all their transactions, as long as each
+ * transaction was added to only one of them. They serialize to a compact binary form, written as base64 in JSON.
+ * Thread safe
+ */
+public final class ClientSketches {
+    private static final int FORMAT_VERSION = 1;
+
+    private final HyperLogLog senders;
+    private final HyperLogLog beneficiaries;
+    private SpaceSaving amountBySender;
+
+    /**
+     * @param distinctError     relative standard error of the distinct counts
+     * @param heavyHitterError  share of all amounts by which a sender's total may be overestimated
+     */
+    public ClientSketches(double distinctError, double heavyHitterError) {
+        this(HyperLogLog.withRelativeError(distinctError), HyperLogLog.withRelativeError(distinctError),
+                SpaceSaving.withRelativeError(heavyHitterError));
+    }
+
+    private ClientSketches(HyperLogLog senders, HyperLogLog beneficiaries, SpaceSaving amountBySender) {
+        this.senders = senders;
+        this.beneficiaries = beneficiaries;
+        this.amountBySender = amountBySender;
+    }
+
+    /**
+     * Adds one transaction, its amount in cents
+     */
+    public synchronized void add(String sender, String beneficiary, long amountCents) {
+        senders.add(sender);
+        beneficiaries.add(beneficiary);
+        amountBySender.add(sender, amountCents);
+    }
+
+    /**
+     * Adds a sender with the total of the transactions it sent, the same as adding each of them
+     */
+    public synchronized void addSender(String sender, long totalAmountCents) {
+        senders.add(sender);
+        amountBySender.add(sender, totalAmountCents);
+    }
+
+    public synchronized void addBeneficiary(String beneficiary) {
+        beneficiaries.add(beneficiary);
+    }
+
+    public synchronized long getUniqueSenderCount() {
+        return senders.estimate();
+    }
+
+    public synchronized long getUniqueBeneficiaryCount() {
+        return beneficiaries.estimate();
+    }
+
+    /**
+     * Estimates the clients that sent or received a transaction, each counted once
+     */
+    public synchronized long getUniqueClientCount() {
+        HyperLogLog clients = senders.copy();
+        clients.merge(beneficiaries);
+        return clients.estimate();
+    }
+
+    /**
+     * Returns the sender with the highest estimated total, null when there are no senders
+     */
+    public synchronized String getTopSender() {
+        return amountBySender.heaviest();
+    }
+
+    /**
+     * Returns the n senders with the highest estimated totals in cents, highest first
+     */
+    public synchronized List<HeavyHitter> getTopSenders(int n) {
+        return amountBySender.top(n);
+    }
+
+    /**
+     * Returns the relative standard error of the distinct counts
+     */
+    public synchronized double getDistinctError() {
+        return Math.max(senders.relativeError(), beneficiaries.relativeError());
+    }
+
+    /**
+     * Returns how many cents a sender's estimated total may exceed its true total
+     */
+    public synchronized long getMaxAmountErrorCents() {
+        return amountBySender.maxError();
+    }
+
+    /**
+     * Adds the transactions of the other sketches to these, keeping the coarser error bounds of the two
+     */
+    public void merge(ClientSketches other) {
+        ClientSketches added = other.copy();
+        synchronized (this) {
+            senders.merge(added.senders);
+            beneficiaries.merge(added.beneficiaries);
+            amountBySender = amountBySender.merge(added.amountBySender);
+        }
+    }
+
+    public synchronized ClientSketches copy() {
+        return new ClientSketches(senders.copy(), beneficiaries.copy(), amountBySender.copy());
+    }
+
+    @JsonValue
+    public synchronized byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            senders.writeTo(out);
+            beneficiaries.writeTo(out);
+            amountBySender.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads sketches written by {@link #toBytes}, failing with an {@link IllegalArgumentException} on anything else
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static ClientSketches fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Sketch format " + version + " is not supported");
+            }
+            ClientSketches sketches = new ClientSketches(HyperLogLog.readFrom(in), HyperLogLog.readFrom(in),
+                    SpaceSaving.readFrom(in));
+            if (in.available() > 0) {
+                throw new IOException("Sketch has trailing bytes");
+            }
+            return sketches;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Client sketches could not be read: " + e.getMessage(), e);
+        }
+    }
+}
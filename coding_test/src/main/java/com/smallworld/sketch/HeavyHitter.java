@@ -0,0 +1,8 @@
+package com.smallworld.sketch;
+
+/**
+ * A name kept by a {@link SpaceSaving} sketch. Its true weight lies between {@code weight - error} and
+ * {@code weight}
+ */
+public record HeavyHitter(String name, long weight, long error) {
+}
@@ -0,0 +1,156 @@
+package com.smallworld.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Estimates the number of distinct names added in a fixed number of one byte registers, whatever the number of
+ * names. With 2^p registers the estimate has a relative standard error of about 1.04 / sqrt(2^p).
+ * <p>
+ * Sketches of any precision merge into the union of their names: a finer sketch is folded down to the coarser
+ * precision first. Adding a name twice changes nothing, so overlapping inputs can be merged freely. Not thread safe
+ */
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private int precision;
+    private byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and "
+                    + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    /**
+     * Returns a sketch with the fewest registers whose relative standard error is at most the given one
+     */
+    public static HyperLogLog withRelativeError(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("relative error must be between 0 and 1");
+        }
+        double registers = Math.pow(1.04 / relativeError, 2);
+        int precision = 64 - Long.numberOfLeadingZeros((long) Math.ceil(registers) - 1);
+        return new HyperLogLog(Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision)));
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public void add(String name) {
+        addHash(hash(name));
+    }
+
+    public void addHash(long hash) {
+        int register = (int) (hash >>> (64 - precision));
+        // the guard bit caps the rank once every remaining bit is zero
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m >= 128 ? 0.7213 / (1 + 1.079 / m) : m == 64 ? 0.709 : m == 32 ? 0.697 : 0.673;
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate while many registers are still empty
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds every name of the other sketch to this one, keeping the coarser of the two precisions
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision < precision) {
+            registers = fold(registers, precision, other.precision);
+            precision = other.precision;
+        }
+        byte[] others = other.precision > precision ? fold(other.registers, other.precision, precision)
+                : other.registers;
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], others[i]);
+        }
+    }
+
+    public HyperLogLog copy() {
+        return new HyperLogLog(precision, registers.clone());
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    public static HyperLogLog readFrom(DataInput in) throws IOException {
+        int precision = in.readUnsignedByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Sketch has an unsupported precision of " + precision);
+        }
+        byte[] registers = new byte[1 << precision];
+        in.readFully(registers);
+        return new HyperLogLog(precision, registers);
+    }
+
+    /**
+     * Hashes the characters of a name to 64 well mixed bits, FNV-1a over the chars and the MurmurHash3 finalizer
+     */
+    public static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Returns the registers a sketch of the lower precision would hold for the same names. The index bits
+     * dropped from a register become the leading bits its rank is counted from
+     */
+    private static byte[] fold(byte[] registers, int precision, int lower) {
+        int dropped = precision - lower;
+        byte[] folded = new byte[1 << lower];
+        for (int register = 0; register < registers.length; register++) {
+            if (registers[register] == 0) {
+                continue;
+            }
+            int droppedBits = register & ((1 << dropped) - 1);
+            int rank = droppedBits != 0 ? Integer.numberOfLeadingZeros(droppedBits) - (32 - dropped) + 1
+                    : dropped + registers[register];
+            int target = register >>> dropped;
+            folded[target] = (byte) Math.max(folded[target], Math.min(rank, 64 - lower + 1));
+        }
+        return folded;
+    }
+}
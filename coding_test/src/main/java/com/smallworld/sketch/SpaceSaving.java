@@ -0,0 +1,241 @@
+package com.smallworld.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the names carrying the most weight, such as the senders sending the highest amounts, in a fixed number
+ * of counters. A name without a counter takes over the counter of the lightest one, inheriting its weight as
+ * error, so every kept weight overestimates the true one by at most the total weight divided by the capacity
+ * and every name heavier than that is kept.
+ * <p>
+ * The counters sit in a min-heap indexed by name, so adding costs O(log capacity). Sketches merge by summing the
+ * counters of each name, a name missing from a full sketch counting that sketch's lightest weight, which keeps
+ * the same bound over the combined weight. Not thread safe
+ */
+public final class SpaceSaving {
+    private static final Comparator<HeavyHitter> HEAVIEST_FIRST = Comparator.comparingLong(HeavyHitter::weight)
+            .reversed().thenComparing(HeavyHitter::name);
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private long totalWeight;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Returns a sketch overestimating any weight by at most the given share of the total weight
+     */
+    public static SpaceSaving withRelativeError(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("relative error must be between 0 and 1");
+        }
+        return new SpaceSaving((int) Math.ceil(1 / relativeError));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns how much any kept weight may exceed the true one: the lightest kept weight once every counter is in
+     * use, which is never more than the total weight divided by the capacity
+     */
+    public long maxError() {
+        return size < capacity ? 0 : heap[0].weight;
+    }
+
+    public void add(String name, long weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative");
+        }
+        totalWeight = Math.addExact(totalWeight, weight);
+        Counter counter = counters.get(name);
+        if (counter == null && size < capacity) {
+            counter = new Counter(name, 0, 0);
+            counter.position = size;
+            heap[size++] = counter;
+            counters.put(name, counter);
+        } else if (counter == null) {
+            counter = heap[0];
+            counters.remove(counter.name);
+            counter.name = name;
+            counter.error = counter.weight;
+            counters.put(name, counter);
+        }
+        counter.weight = Math.addExact(counter.weight, weight);
+        // weights only grow, so the counter can only move away from the root
+        siftDown(counter.position);
+    }
+
+    /**
+     * Returns the n heaviest names, heaviest first and equal weights by name
+     */
+    public List<HeavyHitter> top(int n) {
+        List<HeavyHitter> top = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            top.add(heap[i].toHeavyHitter());
+        }
+        top.sort(HEAVIEST_FIRST);
+        return top.subList(0, Math.min(n, top.size()));
+    }
+
+    /**
+     * Returns the heaviest name, null when nothing was added
+     */
+    public String heaviest() {
+        List<HeavyHitter> top = top(1);
+        return top.isEmpty() ? null : top.get(0).name();
+    }
+
+    /**
+     * Returns the combined sketch of this one and the other, holding as many counters as the smaller of the two
+     */
+    public SpaceSaving merge(SpaceSaving other) {
+        long missingHere = maxError();
+        long missingThere = other.maxError();
+        Map<String, HeavyHitter> combined = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            Counter there = other.counters.get(counter.name);
+            combined.put(counter.name, new HeavyHitter(counter.name,
+                    Math.addExact(counter.weight, there == null ? missingThere : there.weight),
+                    Math.addExact(counter.error, there == null ? missingThere : there.error)));
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter counter = other.heap[i];
+            if (!counters.containsKey(counter.name)) {
+                combined.put(counter.name, new HeavyHitter(counter.name, Math.addExact(counter.weight, missingHere),
+                        Math.addExact(counter.error, missingHere)));
+            }
+        }
+        List<HeavyHitter> kept = new ArrayList<>(combined.values());
+        kept.sort(HEAVIEST_FIRST);
+        SpaceSaving merged = new SpaceSaving(Math.min(capacity, other.capacity));
+        merged.totalWeight = Math.addExact(totalWeight, other.totalWeight);
+        for (HeavyHitter hitter : kept.subList(0, Math.min(merged.capacity, kept.size()))) {
+            merged.put(hitter);
+        }
+        return merged;
+    }
+
+    public SpaceSaving copy() {
+        SpaceSaving copy = new SpaceSaving(capacity);
+        copy.totalWeight = totalWeight;
+        for (int i = 0; i < size; i++) {
+            copy.put(heap[i].toHeavyHitter());
+        }
+        return copy;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(totalWeight);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(heap[i].name);
+            out.writeLong(heap[i].weight);
+            out.writeLong(heap[i].error);
+        }
+    }
+
+    public static SpaceSaving readFrom(DataInput in) throws IOException {
+        int capacity = in.readInt();
+        long totalWeight = in.readLong();
+        int size = in.readInt();
+        if (capacity <= 0 || size < 0 || size > capacity) {
+            throw new IOException("Sketch has " + size + " of " + capacity + " counters");
+        }
+        SpaceSaving sketch = new SpaceSaving(capacity);
+        sketch.totalWeight = totalWeight;
+        for (int i = 0; i < size; i++) {
+            sketch.put(new HeavyHitter(in.readUTF(), in.readLong(), in.readLong()));
+        }
+        return sketch;
+    }
+
+    /**
+     * Adds a counter as it was kept by another sketch, while there is room for it
+     */
+    private void put(HeavyHitter hitter) {
+        Counter counter = new Counter(hitter.name(), hitter.weight(), hitter.error());
+        counter.position = size;
+        heap[size++] = counter;
+        counters.put(counter.name, counter);
+        siftUp(counter.position);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent].weight <= heap[position].weight) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int lightest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && heap[left].weight < heap[lightest].weight) {
+                lightest = left;
+            }
+            if (right < size && heap[right].weight < heap[lightest].weight) {
+                lightest = right;
+            }
+            if (lightest == position) {
+                return;
+            }
+            swap(position, lightest);
+            position = lightest;
+        }
+    }
+
+    private void swap(int first, int second) {
+        Counter counter = heap[first];
+        heap[first] = heap[second];
+        heap[second] = counter;
+        heap[first].position = first;
+        heap[second].position = second;
+    }
+
+    private static final class Counter {
+        private String name;
+        private long weight;
+        private long error;
+        private int position;
+
+        Counter(String name, long weight, long error) {
+            this.name = name;
+            this.weight = weight;
+            this.error = error;
+        }
+
+        HeavyHitter toHeavyHitter() {
+            return new HeavyHitter(name, weight, error);
+        }
+    }
+}
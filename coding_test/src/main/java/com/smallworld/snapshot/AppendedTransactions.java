@@ -0,0 +1,375 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.model.Transaction;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.store.MtnIndex;
+import com.smallworld.store.StringDictionary;
+import com.smallworld.store.TopAmountHeap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rows appended to a snapshot after its load, with the aggregates they add on top of the loaded ones, which
+ * it reads but never changes. Updates of loaded issues are told apart by the snapshot, see
+ * {@link TransactionSnapshot#append}; every other append is applied here.
+ * Writers never take a common lock: amounts are summed in cents with compare-and-set so an overflow is caught
+ * rather than wrapped, counts are adders, sets are concurrent maps, and only the row array and the top rows
+ * heap are guarded, each by its own short critical section
+ */
+final class AppendedTransactions {
+    // bumped on every change so anything keyed on the generation sees appends as new data
+    final AtomicLong generation;
+    volatile long lastModifiedMillis = System.currentTimeMillis();
+    // amounts in cents
+    final AtomicLong totalAmount = new AtomicLong();
+    final LongAccumulator maxAmount = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    final ConcurrentHashMap<String, AtomicLong> amountBySender = new ConcurrentHashMap<>();
+    // clients missing from the loaded name dictionary
+    final Set<String> newClients = ConcurrentHashMap.newKeySet();
+    // open issue rows gained or lost per client, added to the loaded counts
+    final ConcurrentHashMap<String, LongAdder> openIssueChanges = new ConcurrentHashMap<>();
+    // issues created or solved by appends with the transaction owning them
+    final ConcurrentHashMap<Integer, IssueState> issueStates = new ConcurrentHashMap<>();
+    // issues appends raised or solved on transactions, loaded ones by row and appended ones by their first row
+    final ConcurrentHashMap<Integer, IssueChange> loadedIssueChanges = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Transaction, IssueChange> appendedIssueChanges = new ConcurrentHashMap<>();
+    // a list rather than a concurrent queue, as the loaded messages it follows may be null
+    final List<String> solvedIssueMessages = Collections.synchronizedList(new ArrayList<>());
+    // the first appended transaction of each MTN, later rows repeating it only add issues
+    final ConcurrentHashMap<Integer, Transaction> transactionsByMtn = new ConcurrentHashMap<>();
+    final AtomicReference<SenderTotal> topSender;
+
+    // the loaded aggregates the appended ones add to
+    private final long loadedTotalAmount;
+    private final StringDictionary loadedClientNames;
+    private final long[] loadedAmountBySender;
+    // fed every appended row when attached to the snapshot, null otherwise
+    private final ClientSketches clientSketches;
+    private final Object rowsLock = new Object();
+    private volatile Transaction[] rows = new Transaction[16];
+    private volatile int size;
+    private final TopAmountHeap topRows = new TopAmountHeap(TransactionSnapshot.TOP_TRANSACTIONS_CAPACITY);
+
+    AppendedTransactions(long generation, long loadedTotalAmount, StringDictionary loadedClientNames,
+                         long[] loadedAmountBySender, SenderTotal topSender, ClientSketches clientSketches) {
+        this.generation = new AtomicLong(generation);
+        this.loadedTotalAmount = loadedTotalAmount;
+        this.loadedClientNames = loadedClientNames;
+        this.loadedAmountBySender = loadedAmountBySender;
+        this.topSender = new AtomicReference<>(topSender);
+        this.clientSketches = clientSketches;
+    }
+
+    /**
+     * Applies a transaction that is not an update of a loaded issue, see {@link TransactionSnapshot#append}
+     *
+     * @param amount    the amount of the transaction in cents
+     * @param loadedRow the loaded row the transaction repeats, {@link MtnIndex#NO_ROW} when it repeats none
+     */
+    void append(Transaction transaction, long amount, int loadedRow) {
+        Integer issueId = transaction.getIssueId();
+        Boolean issueSolved = transaction.getIssueSolved();
+        // a new row takes its share of the total before anything else changes, so an overflow leaves no trace
+        boolean newRow = loadedRow == MtnIndex.NO_ROW && !repeatsRow(transaction);
+        if (newRow) {
+            addToTotal(amount);
+        }
+        if (issueId != null && issueSolved != null) {
+            IssueState registered = issueStates.putIfAbsent(issueId,
+                    new IssueState(transaction, loadedRow, issueSolved));
+            if (registered != null) {
+                // an earlier append raised the issue, so this one is an update
+                if (newRow) {
+                    totalAmount.addAndGet(-amount);
+                }
+                TransactionSnapshot.checkIssueOwner(issueId, registered.owner().getMtn(), transaction);
+                if (issueSolved) {
+                    solveAppendedIssue(issueId, registered, transaction);
+                }
+                return;
+            }
+        }
+        if (loadedRow != MtnIndex.NO_ROW) {
+            addIssue(transaction);
+            loadedIssueChanges.merge(loadedRow, IssueChange.raised(transaction), IssueChange::plus);
+            changed();
+            return;
+        }
+        Transaction previous = transactionsByMtn.putIfAbsent(transaction.getMtn(), transaction);
+        if (previous != null && TransactionSnapshot.isSameTransaction(previous, transaction)) {
+            // a concurrent append of the same transaction may have registered it since it was checked
+            if (newRow) {
+                totalAmount.addAndGet(-amount);
+            }
+            addIssue(transaction);
+            appendedIssueChanges.merge(previous, IssueChange.raised(transaction), IssueChange::plus);
+            changed();
+            return;
+        }
+
+        int row = add(transaction);
+        String sender = transaction.getSenderFullName();
+        String beneficiary = transaction.getBeneficiaryFullName();
+        maxAmount.accumulate(amount);
+        addClient(sender);
+        addClient(beneficiary);
+        // a sender's total is part of the checked total, so it cannot overflow
+        amountBySender.computeIfAbsent(sender, name -> new AtomicLong()).addAndGet(amount);
+        offerTopSender(sender);
+        if (clientSketches != null) {
+            clientSketches.add(sender, beneficiary, amount);
+        }
+        addIssue(transaction);
+        offerTopRow(row, transaction.getMtn(), amount);
+        changed();
+    }
+
+    /**
+     * Solves an issue raised on a loaded row, unless it was loaded or already appended as solved
+     */
+    void solveLoadedIssue(int issueId, IssueState loaded, Transaction transaction) {
+        // loaded issues only get an entry once solved
+        if (!loaded.solved() && issueStates.putIfAbsent(issueId, loaded.solve()) == null) {
+            issueSolved(loaded, transaction);
+        }
+    }
+
+    /**
+     * Returns whether the transaction repeats the first appended row of its MTN
+     */
+    boolean repeatsRow(Transaction transaction) {
+        Transaction first = transactionsByMtn.get(transaction.getMtn());
+        return first != null && TransactionSnapshot.isSameTransaction(first, transaction);
+    }
+
+    /**
+     * Returns the current issue flags of an appended row, its own issue and those appends raised or solved
+     * for it since
+     */
+    int issueFlags(Transaction transaction) {
+        int flags = FilterIndex.issueFlagsOf(transaction.getIssueId(), transaction.getIssueSolved());
+        IssueChange change = appendedIssueChanges.isEmpty() ? null : appendedIssueChanges.get(transaction);
+        if (change == null) {
+            return flags;
+        }
+        return change.applyTo(flags, IssueChange.solvableOpenIssues(flags));
+    }
+
+    /**
+     * Records that an append changed the data
+     */
+    void changed() {
+        lastModifiedMillis = System.currentTimeMillis();
+        generation.incrementAndGet();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Stores the row and returns its position among the appended rows
+     */
+    int add(Transaction transaction) {
+        synchronized (rowsLock) {
+            int row = size;
+            if (row == rows.length) {
+                rows = Arrays.copyOf(rows, row * 2);
+            }
+            rows[row] = transaction;
+            // the volatile write publishes the row to readers checking the size first
+            size = row + 1;
+            return row;
+        }
+    }
+
+    /**
+     * Returns the rows appended so far; rows appended afterwards are not part of the returned list
+     */
+    List<Transaction> rows() {
+        int count = size;
+        Transaction[] current = rows;
+        return new RowsView(current, count);
+    }
+
+    void offerTopRow(int row, int mtn, long amount) {
+        synchronized (topRows) {
+            topRows.offer(row, mtn, amount);
+        }
+    }
+
+    int[] topRowsDescending() {
+        synchronized (topRows) {
+            return topRows.rowsDescending();
+        }
+    }
+
+    void changeOpenIssues(String clientFullName, int change) {
+        openIssueChanges.computeIfAbsent(clientFullName, name -> new LongAdder()).add(change);
+    }
+
+    long openIssueChange(String clientFullName) {
+        LongAdder change = openIssueChanges.get(clientFullName);
+        return change == null ? 0 : change.sum();
+    }
+
+    long amountSentBy(String senderFullName) {
+        AtomicLong amount = amountBySender.get(senderFullName);
+        return amount == null ? 0 : amount.get();
+    }
+
+    /**
+     * Adds to the total, failing before anything changes when the total with the loaded one would overflow
+     */
+    private void addToTotal(long amount) {
+        long current;
+        long next;
+        do {
+            current = totalAmount.get();
+            next = Math.addExact(current, amount);
+            Math.addExact(loadedTotalAmount, next);
+        } while (!totalAmount.compareAndSet(current, next));
+    }
+
+    private void solveAppendedIssue(int issueId, IssueState registered, Transaction transaction) {
+        if (!registered.solved() && issueStates.replace(issueId, registered, registered.solve())) {
+            issueSolved(registered, transaction);
+        }
+    }
+
+    private void issueSolved(IssueState issue, Transaction transaction) {
+        changeOpenIssues(issue.owner().getSenderFullName(), -1);
+        changeOpenIssues(issue.owner().getBeneficiaryFullName(), -1);
+        solvedIssueMessages.add(transaction.getIssueMessage());
+        if (issue.loadedRow() != MtnIndex.NO_ROW) {
+            loadedIssueChanges.merge(issue.loadedRow(), IssueChange.SOLVED, IssueChange::plus);
+        } else {
+            appendedIssueChanges.merge(firstRowOf(issue.owner()), IssueChange.SOLVED, IssueChange::plus);
+        }
+        changed();
+    }
+
+    /**
+     * Returns the first appended row of the transaction, which is the row its later issues are kept for
+     */
+    private Transaction firstRowOf(Transaction transaction) {
+        return repeatsRow(transaction) ? transactionsByMtn.get(transaction.getMtn()) : transaction;
+    }
+
+    private void addIssue(Transaction transaction) {
+        if (Boolean.FALSE.equals(transaction.getIssueSolved())) {
+            changeOpenIssues(transaction.getSenderFullName(), 1);
+            changeOpenIssues(transaction.getBeneficiaryFullName(), 1);
+        } else if (transaction.getIssueId() != null && Boolean.TRUE.equals(transaction.getIssueSolved())) {
+            solvedIssueMessages.add(transaction.getIssueMessage());
+        }
+    }
+
+    private void addClient(String clientFullName) {
+        if (loadedClientNames.idOf(clientFullName) == StringDictionary.NULL_ID) {
+            newClients.add(clientFullName);
+        }
+    }
+
+    /**
+     * Raises the top sender when this sender's total now beats it. Totals only grow, so a thread reading a
+     * stale total loses the race to the thread whose append produced the larger one
+     */
+    private void offerTopSender(String sender) {
+        int clientId = loadedClientNames.idOf(sender);
+        long loaded = clientId == StringDictionary.NULL_ID ? 0 : loadedAmountBySender[clientId];
+        long total = loaded + amountSentBy(sender);
+        SenderTotal current;
+        do {
+            current = topSender.get();
+            if (current != null && current.total() >= total) {
+                return;
+            }
+        } while (!topSender.compareAndSet(current, new SenderTotal(sender, total)));
+    }
+
+    record SenderTotal(String name, long total) {
+    }
+
+    /**
+     * An issue with the transaction it was raised on, whose MTN every update must name, and the loaded row of
+     * that transaction, {@link MtnIndex#NO_ROW} when it was appended
+     */
+    record IssueState(Transaction owner, int loadedRow, boolean solved) {
+        IssueState solve() {
+            return new IssueState(owner, loadedRow, true);
+        }
+    }
+
+    /**
+     * Issues appends raised on or solved for one transaction: the issue flags they add, and the open issues
+     * raised and solved
+     */
+    record IssueChange(int flags, int opened, int solved) {
+        static final IssueChange SOLVED = new IssueChange(FilterIndex.ISSUE_PRESENT | FilterIndex.ISSUE_SOLVED, 0, 1);
+
+        static IssueChange raised(Transaction transaction) {
+            int flags = FilterIndex.issueFlagsOf(transaction.getIssueId(), transaction.getIssueSolved());
+            return new IssueChange(flags, solvableOpenIssues(flags), 0);
+        }
+
+        /**
+         * Returns 1 when the flags of a single issue are those of an open one an update can solve, 0 otherwise
+         */
+        static int solvableOpenIssues(int flags) {
+            return (flags & FilterIndex.ISSUE_OPEN) != 0 && (flags & FilterIndex.ISSUE_OPEN_WITHOUT_ID) == 0 ? 1 : 0;
+        }
+
+        IssueChange plus(IssueChange other) {
+            return new IssueChange(flags | other.flags, opened + other.opened, solved + other.solved);
+        }
+
+        /**
+         * Returns the current issue flags of a transaction
+         *
+         * @param flags      the flags of its issues before any append
+         * @param ownedOpen  the open issues it was raised with before any append, not counting those without an id
+         */
+        int applyTo(int flags, int ownedOpen) {
+            int current = (flags | this.flags) & ~FilterIndex.ISSUE_OPEN;
+            // an open issue without an id, or raised on another transaction first, is never solved here
+            boolean unsolvable = (current & FilterIndex.ISSUE_OPEN_WITHOUT_ID) != 0
+                    || ((flags & FilterIndex.ISSUE_OPEN) != 0 && ownedOpen == 0);
+            return unsolvable || ownedOpen + opened - solved > 0 ? current | FilterIndex.ISSUE_OPEN : current;
+        }
+    }
+
+    private static final class RowsView extends AbstractList<Transaction> implements RandomAccess {
+        private final Transaction[] rows;
+        private final int size;
+
+        RowsView(Transaction[] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return rows[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.model.Transaction;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of beneficiaries in name order with the transactions they received
+ *
+ * @param transactionsByBeneficiary beneficiaries of the page in name order, loaded rows read through the
+ *                                  beneficiary index rather than copied
+ * @param hasMore                   whether beneficiaries named after the last one of the page exist
+ */
+public record BeneficiaryPage(Map<String, List<Transaction>> transactionsByBeneficiary, boolean hasMore) {
+
+    /**
+     * Returns the name to continue after for the next page, null when this page is the last one
+     */
+    public String nextAfter() {
+        if (!hasMore || transactionsByBeneficiary.isEmpty()) {
+            return null;
+        }
+        String last = null;
+        for (String beneficiary : transactionsByBeneficiary.keySet()) {
+            last = beneficiary;
+        }
+        return last;
+    }
+}
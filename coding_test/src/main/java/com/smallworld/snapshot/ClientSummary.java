@@ -0,0 +1,13 @@
+package com.smallworld.snapshot;
+
+import java.math.BigDecimal;
+
+/**
+ * Answers of the per-client queries for one client
+ *
+ * @param client               the client full name
+ * @param openComplianceIssues whether the client sent or received a transaction with an open issue
+ * @param totalAmountSent      sum of the amounts the client sent
+ */
+public record ClientSummary(String client, boolean openComplianceIssues, BigDecimal totalAmountSent) {
+}
@@ -0,0 +1,12 @@
+package com.smallworld.snapshot;
+
+public enum ExecutionMode {
+    /**
+     * Aggregate the rows on the loading thread
+     */
+    SEQUENTIAL,
+    /**
+     * Aggregate chunks of rows on a dedicated fork-join pool and merge the partial results
+     */
+    PARALLEL
+}
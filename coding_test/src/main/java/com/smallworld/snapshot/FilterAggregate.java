@@ -0,0 +1,19 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.model.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregates of the transactions matching a {@link TransactionFilter}
+ *
+ * @param count       matching transactions
+ * @param totalAmount sum of their amounts
+ * @param maxAmount   highest of their amounts, 0 when nothing matches
+ */
+public record FilterAggregate(long count, BigDecimal totalAmount, BigDecimal maxAmount) {
+
+    static FilterAggregate ofCents(long count, long totalCents, long maxCents) {
+        return new FilterAggregate(count, Money.toBigDecimal(totalCents), Money.toBigDecimal(maxCents));
+    }
+}
@@ -0,0 +1,188 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import com.smallworld.store.ClientRowIndex;
+import com.smallworld.store.RowBitmap;
+import com.smallworld.store.StringDictionary;
+import com.smallworld.store.TopAmountHeap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Answers the filtered queries of a snapshot: the loaded rows through the bitmap indexes of a {@link FilterIndex}
+ * built by the first filtered query, then the appended rows one by one with their current issue flags. Shared by
+ * every snapshot stamped from the same loaded data, see {@link TransactionSnapshot#withGeneration}
+ */
+final class FilterEvaluator {
+    private final List<Transaction> transactions;
+    // per loaded transaction, the FilterIndex issue flags of all its issues
+    private final byte[] issueFlags;
+    private final StringDictionary clientNames;
+    private final ClientRowIndex rowsBySender;
+    private final ClientRowIndex rowsByBeneficiary;
+    private final ClientRowIndex rowsByClient;
+    private final Set<Integer> unsolvedIssueIds;
+    private final Map<Integer, Integer> issueRows;
+    // built by the first filtered query
+    private volatile FilterIndex filterIndex;
+    // the filter index with the issue changes of one generation of appended rows applied, built by the first
+    // filtered query after an append changed the issues of a loaded row
+    private volatile IssueFilterIndex issueFilterIndex;
+    // built with the first one
+    private volatile Map<Integer, Integer> loadedOpenIssuesByRow;
+
+    FilterEvaluator(List<Transaction> transactions, byte[] issueFlags, StringDictionary clientNames,
+                    ClientRowIndex rowsBySender, ClientRowIndex rowsByBeneficiary, ClientRowIndex rowsByClient,
+                    Set<Integer> unsolvedIssueIds, Map<Integer, Integer> issueRows) {
+        this.transactions = transactions;
+        this.issueFlags = issueFlags;
+        this.clientNames = clientNames;
+        this.rowsBySender = rowsBySender;
+        this.rowsByBeneficiary = rowsByBeneficiary;
+        this.rowsByClient = rowsByClient;
+        this.unsolvedIssueIds = unsolvedIssueIds;
+        this.issueRows = issueRows;
+    }
+
+    /**
+     * Counts and sums the transactions matching the filter
+     */
+    FilterAggregate aggregate(TransactionFilter filter, AppendedTransactions appended) {
+        FilterIndex index = currentFilterIndex(appended);
+        int[] rows = index.select(filter).toArray();
+        long total = 0;
+        long max = Long.MIN_VALUE;
+        for (int row : rows) {
+            long amount = index.getAmountCents(row);
+            total = Math.addExact(total, amount);
+            max = Math.max(max, amount);
+        }
+        long count = rows.length;
+        for (Transaction transaction : appended.rows()) {
+            if (FilterIndex.test(filter, transaction, appended.issueFlags(transaction))) {
+                long amount = Money.toCents(transaction.getAmount());
+                total = Math.addExact(total, amount);
+                max = Math.max(max, amount);
+                count++;
+            }
+        }
+        return FilterAggregate.ofCents(count, total, count == 0 ? 0 : max);
+    }
+
+    /**
+     * Returns a page of the transactions matching the filter, loaded ones first, each in row order
+     */
+    List<Transaction> transactions(TransactionFilter filter, int offset, int limit, AppendedTransactions appended) {
+        RowBitmap selected = currentFilterIndex(appended).select(filter);
+        List<Transaction> page = new ArrayList<>(Math.min(limit, 1024));
+        for (int row : selected.slice(offset, limit)) {
+            page.add(transactions.get(row));
+        }
+        int position = selected.cardinality();
+        for (Transaction transaction : appended.rows()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (FilterIndex.test(filter, transaction, appended.issueFlags(transaction)) && position++ >= offset) {
+                page.add(transaction);
+            }
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+    /**
+     * Returns the n transactions matching the filter with the highest amounts, highest first
+     */
+    List<Transaction> topTransactions(TransactionFilter filter, int n, AppendedTransactions appended) {
+        FilterIndex index = currentFilterIndex(appended);
+        TopAmountHeap loaded = new TopAmountHeap(n);
+        index.select(filter).forEach(row -> loaded.offer(row, index.getMtn(row), index.getAmountCents(row)));
+        List<Transaction> appendedRows = appended.rows();
+        TopAmountHeap appendedTop = new TopAmountHeap(n);
+        for (int row = 0; row < appendedRows.size(); row++) {
+            Transaction transaction = appendedRows.get(row);
+            if (FilterIndex.test(filter, transaction, appended.issueFlags(transaction))) {
+                appendedTop.offer(row, transaction.getMtn(), Money.toCents(transaction.getAmount()));
+            }
+        }
+        return TransactionSnapshot.mergeTop(TransactionSnapshot.rowsOf(transactions, loaded.rowsDescending(), n),
+                TransactionSnapshot.rowsOf(appendedRows, appendedTop.rowsDescending(), n), n);
+    }
+
+    /**
+     * Returns the filter index with the issue bitmaps of the loaded rows whose issues appends changed brought
+     * up to date, rebuilt once per generation
+     */
+    private FilterIndex currentFilterIndex(AppendedTransactions appended) {
+        FilterIndex index = filterIndex();
+        if (appended.loadedIssueChanges.isEmpty()) {
+            return index;
+        }
+        // read before the changes, which are made before the generation moves on
+        long generation = appended.generation.get();
+        IssueFilterIndex current = issueFilterIndex;
+        if (current != null && current.appended() == appended && current.generation() == generation) {
+            return current.index();
+        }
+        Map<Integer, AppendedTransactions.IssueChange> changes = new TreeMap<>(appended.loadedIssueChanges);
+        int[] rows = new int[changes.size()];
+        int[] flags = new int[changes.size()];
+        int i = 0;
+        for (Map.Entry<Integer, AppendedTransactions.IssueChange> change : changes.entrySet()) {
+            rows[i] = change.getKey();
+            flags[i++] = change.getValue().applyTo(issueFlags[change.getKey()],
+                    loadedOpenIssuesByRow().getOrDefault(change.getKey(), 0));
+        }
+        current = new IssueFilterIndex(appended, generation, index.withIssueFlags(rows, flags));
+        issueFilterIndex = current;
+        return current.index();
+    }
+
+    private FilterIndex filterIndex() {
+        FilterIndex index = filterIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = filterIndex;
+                if (index == null) {
+                    index = FilterIndex.of(transactions, issueFlags, clientNames, rowsBySender, rowsByBeneficiary,
+                            rowsByClient);
+                    filterIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Counts the open issues of each loaded row the row was the first to carry, built by the first query
+     * after an append changed the issues of a loaded row
+     */
+    private Map<Integer, Integer> loadedOpenIssuesByRow() {
+        Map<Integer, Integer> counts = loadedOpenIssuesByRow;
+        if (counts == null) {
+            synchronized (this) {
+                counts = loadedOpenIssuesByRow;
+                if (counts == null) {
+                    counts = new HashMap<>();
+                    for (Integer issueId : unsolvedIssueIds) {
+                        if (issueId != null) {
+                            counts.merge(issueRows.get(issueId), 1, Integer::sum);
+                        }
+                    }
+                    loadedOpenIssuesByRow = counts;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private record IssueFilterIndex(AppendedTransactions appended, long generation, FilterIndex index) {
+    }
+}
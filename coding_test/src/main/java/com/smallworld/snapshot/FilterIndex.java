@@ -0,0 +1,357 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import com.smallworld.store.ClientRowIndex;
+import com.smallworld.store.RowBitmap;
+import com.smallworld.store.StringDictionary;
+import com.smallworld.store.TransactionStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+/**
+ * Bitmap indexes over the loaded transactions of a snapshot: one bitmap per issue flag, per age bucket of
+ * senders and beneficiaries and per amount bucket, while client bitmaps are cut from the client row indexes
+ * on demand. A filter is answered by combining bitmaps; only rows in the bucket at either end of an age or
+ * amount range are read to check their exact value.
+ * <p>
+ * Amounts are indexed in cents. Amount buckets are quarter powers of two, so every bucket holds a similar share
+ * of a skewed amount distribution and a range touches few of them
+ */
+final class FilterIndex {
+    static final int ISSUE_PRESENT = 1;
+    static final int ISSUE_OPEN = 2;
+    static final int ISSUE_SOLVED = 4;
+    // not indexed, marks an open issue no update can solve
+    static final int ISSUE_OPEN_WITHOUT_ID = 8;
+    private static final int AGE_BUCKET_WIDTH = 5;
+    private static final int AMOUNT_BUCKETS_PER_POWER_OF_TWO = 4;
+    private static final int MAX_AMOUNT_BUCKET = 1 + AMOUNT_BUCKETS_PER_POWER_OF_TWO * 1024;
+    private static final double LN_2 = Math.log(2);
+
+    private final int size;
+    private final int[] mtns;
+    private final long[] amounts;
+    private final short[] senderAges;
+    private final short[] beneficiaryAges;
+    private final RowBitmap all;
+    private final RowBitmap[] issues;
+    private final RowBitmap[] senderAgeBuckets;
+    private final RowBitmap[] beneficiaryAgeBuckets;
+    private final RowBitmap[] amountBuckets;
+    private final StringDictionary clientNames;
+    private final ClientRowIndex rowsBySender;
+    private final ClientRowIndex rowsByBeneficiary;
+    private final ClientRowIndex rowsByClient;
+
+    private FilterIndex(List<Transaction> transactions, byte[] issueFlags, StringDictionary clientNames,
+                        ClientRowIndex rowsBySender, ClientRowIndex rowsByBeneficiary, ClientRowIndex rowsByClient) {
+        this.size = transactions.size();
+        this.mtns = new int[size];
+        this.amounts = new long[size];
+        this.senderAges = new short[size];
+        this.beneficiaryAges = new short[size];
+        this.clientNames = clientNames;
+        this.rowsBySender = rowsBySender;
+        this.rowsByBeneficiary = rowsByBeneficiary;
+        this.rowsByClient = rowsByClient;
+
+        BucketBuilder issueBuilder = new BucketBuilder();
+        BucketBuilder senderAgeBuilder = new BucketBuilder();
+        BucketBuilder beneficiaryAgeBuilder = new BucketBuilder();
+        BucketBuilder amountBuilder = new BucketBuilder();
+        for (int row = 0; row < size; row++) {
+            Transaction transaction = transactions.get(row);
+            mtns[row] = transaction.getMtn();
+            amounts[row] = Money.toCents(transaction.getAmount());
+            senderAges[row] = toAge(transaction.getSenderAge());
+            beneficiaryAges[row] = toAge(transaction.getBeneficiaryAge());
+            for (int bit = 0; bit < 3; bit++) {
+                if ((issueFlags[row] & (1 << bit)) != 0) {
+                    issueBuilder.add(bit, row);
+                }
+            }
+            senderAgeBuilder.add(ageBucket(senderAges[row]), row);
+            beneficiaryAgeBuilder.add(ageBucket(beneficiaryAges[row]), row);
+            amountBuilder.add(amountBucket(amounts[row]), row);
+        }
+        this.all = RowBitmap.range(0, size);
+        this.issues = issueBuilder.build(3);
+        this.senderAgeBuckets = senderAgeBuilder.build(0);
+        this.beneficiaryAgeBuckets = beneficiaryAgeBuilder.build(0);
+        this.amountBuckets = amountBuilder.build(0);
+    }
+
+    private FilterIndex(FilterIndex source, RowBitmap[] issues) {
+        this.size = source.size;
+        this.mtns = source.mtns;
+        this.amounts = source.amounts;
+        this.senderAges = source.senderAges;
+        this.beneficiaryAges = source.beneficiaryAges;
+        this.all = source.all;
+        this.issues = issues;
+        this.senderAgeBuckets = source.senderAgeBuckets;
+        this.beneficiaryAgeBuckets = source.beneficiaryAgeBuckets;
+        this.amountBuckets = source.amountBuckets;
+        this.clientNames = source.clientNames;
+        this.rowsBySender = source.rowsBySender;
+        this.rowsByBeneficiary = source.rowsByBeneficiary;
+        this.rowsByClient = source.rowsByClient;
+    }
+
+    static FilterIndex of(List<Transaction> transactions, byte[] issueFlags, StringDictionary clientNames,
+                          ClientRowIndex rowsBySender, ClientRowIndex rowsByBeneficiary, ClientRowIndex rowsByClient) {
+        return new FilterIndex(transactions, issueFlags, clientNames, rowsBySender, rowsByBeneficiary, rowsByClient);
+    }
+
+    /**
+     * Returns the issue flags one issue row contributes to its transaction
+     */
+    static int issueFlagsOf(Integer issueId, Boolean issueSolved) {
+        int flags = issueId == null ? 0 : ISSUE_PRESENT;
+        if (Boolean.FALSE.equals(issueSolved)) {
+            flags |= issueId == null ? ISSUE_OPEN | ISSUE_OPEN_WITHOUT_ID : ISSUE_OPEN;
+        } else if (issueId != null && Boolean.TRUE.equals(issueSolved)) {
+            flags |= ISSUE_SOLVED;
+        }
+        return flags;
+    }
+
+    /**
+     * Returns this index with the issue flags of some rows replaced, sharing everything but the issue bitmaps
+     *
+     * @param ascendingRows rows whose issues changed since the load
+     * @param flags         the current issue flags of each of those rows
+     */
+    FilterIndex withIssueFlags(int[] ascendingRows, int[] flags) {
+        if (ascendingRows.length == 0) {
+            return this;
+        }
+        RowBitmap changed = RowBitmap.of(ascendingRows);
+        RowBitmap[] current = new RowBitmap[issues.length];
+        for (int bit = 0; bit < issues.length; bit++) {
+            RowBitmap.Builder matching = new RowBitmap.Builder();
+            for (int i = 0; i < ascendingRows.length; i++) {
+                if ((flags[i] & (1 << bit)) != 0) {
+                    matching.add(ascendingRows[i]);
+                }
+            }
+            current[bit] = issues[bit].andNot(changed).or(matching.build());
+        }
+        return new FilterIndex(this, current);
+    }
+
+    int getMtn(int row) {
+        return mtns[row];
+    }
+
+    long getAmountCents(int row) {
+        return amounts[row];
+    }
+
+    /**
+     * Returns the loaded rows matching the filter
+     */
+    RowBitmap select(TransactionFilter filter) {
+        if (filter instanceof TransactionFilter.All) {
+            return all;
+        }
+        if (filter instanceof TransactionFilter.Issue issue) {
+            return issues[Integer.numberOfTrailingZeros(issue.flag())];
+        }
+        if (filter instanceof TransactionFilter.Age age) {
+            return selectAges(age.sender() ? senderAgeBuckets : beneficiaryAgeBuckets,
+                    age.sender() ? senderAges : beneficiaryAges, age.min(), age.max());
+        }
+        if (filter instanceof TransactionFilter.Amount amount) {
+            return selectAmounts(amount.min(), amount.max());
+        }
+        if (filter instanceof TransactionFilter.Client client) {
+            int clientId = clientNames.idOf(client.fullName());
+            ClientRowIndex index = client.sender() && client.beneficiary() ? rowsByClient
+                    : client.sender() ? rowsBySender : rowsByBeneficiary;
+            return RowBitmap.of(index.rows(clientId));
+        }
+        if (filter instanceof TransactionFilter.And and) {
+            return selectAll(and.filters());
+        }
+        if (filter instanceof TransactionFilter.Or or) {
+            RowBitmap result = RowBitmap.empty();
+            for (TransactionFilter each : or.filters()) {
+                result = result.or(select(each));
+            }
+            return result;
+        }
+        return all.andNot(select(((TransactionFilter.Not) filter).filter()));
+    }
+
+    /**
+     * Tests a row the index does not cover, such as an appended one, by the issue flags of its own issue
+     */
+    static boolean test(TransactionFilter filter, Transaction transaction) {
+        return test(filter, transaction, issueFlagsOf(transaction.getIssueId(), transaction.getIssueSolved()));
+    }
+
+    /**
+     * Tests a row the index does not cover, its issues having the given flags
+     */
+    static boolean test(TransactionFilter filter, Transaction transaction, int issueFlags) {
+        if (filter instanceof TransactionFilter.All) {
+            return true;
+        }
+        if (filter instanceof TransactionFilter.Issue issue) {
+            return (issueFlags & issue.flag()) != 0;
+        }
+        if (filter instanceof TransactionFilter.Age age) {
+            Integer value = age.sender() ? transaction.getSenderAge() : transaction.getBeneficiaryAge();
+            return value != null && value >= age.min() && value <= age.max();
+        }
+        if (filter instanceof TransactionFilter.Amount amount) {
+            double value = transaction.getAmount();
+            return value >= amount.min() && value < amount.max();
+        }
+        if (filter instanceof TransactionFilter.Client client) {
+            return (client.sender() && Objects.equals(client.fullName(), transaction.getSenderFullName()))
+                    || (client.beneficiary() && Objects.equals(client.fullName(), transaction.getBeneficiaryFullName()));
+        }
+        if (filter instanceof TransactionFilter.And and) {
+            return and.filters().stream().allMatch(each -> test(each, transaction, issueFlags));
+        }
+        if (filter instanceof TransactionFilter.Or or) {
+            return or.filters().stream().anyMatch(each -> test(each, transaction, issueFlags));
+        }
+        return !test(((TransactionFilter.Not) filter).filter(), transaction, issueFlags);
+    }
+
+    /**
+     * Intersects the filters, subtracting negated ones instead of complementing them first
+     */
+    private RowBitmap selectAll(List<TransactionFilter> filters) {
+        RowBitmap result = null;
+        List<TransactionFilter> negated = new ArrayList<>();
+        for (TransactionFilter each : filters) {
+            if (each instanceof TransactionFilter.Not not) {
+                negated.add(not.filter());
+            } else {
+                result = result == null ? select(each) : result.and(select(each));
+                if (result.isEmpty()) {
+                    return result;
+                }
+            }
+        }
+        if (result == null) {
+            result = all;
+        }
+        for (TransactionFilter each : negated) {
+            result = result.andNot(select(each));
+        }
+        return result;
+    }
+
+    private static RowBitmap selectAges(RowBitmap[] buckets, short[] ages, int min, int max) {
+        int from = Math.max(min, 0);
+        int to = Math.min(max, (buckets.length - 1) * AGE_BUCKET_WIDTH - 1);
+        if (from > to) {
+            return RowBitmap.empty();
+        }
+        int first = ageBucket((short) from);
+        int last = ageBucket((short) to);
+        RowBitmap result = RowBitmap.empty();
+        for (int bucket = first + 1; bucket < last; bucket++) {
+            result = result.or(buckets[bucket]);
+        }
+        result = result.or(refine(buckets[first], row -> ages[row] >= from && ages[row] <= to));
+        if (last != first) {
+            result = result.or(refine(buckets[last], row -> ages[row] >= from && ages[row] <= to));
+        }
+        return result;
+    }
+
+    private RowBitmap selectAmounts(double min, double max) {
+        if (!(min < max)) {
+            return RowBitmap.empty();
+        }
+        // the cents matching the bounds exactly as the amounts would as doubles, from inclusive to exclusive
+        long from = Money.ceilCents(min);
+        long to = Money.ceilCents(max);
+        if (from >= to) {
+            return RowBitmap.empty();
+        }
+        // a bucket strictly between the buckets of both bounds only holds amounts inside them
+        int first = amountBucket(from);
+        int last = Math.min(amountBucket(to), amountBuckets.length - 1);
+        if (first >= amountBuckets.length) {
+            return RowBitmap.empty();
+        }
+        RowBitmap result = RowBitmap.empty();
+        for (int bucket = first + 1; bucket < last; bucket++) {
+            result = result.or(amountBuckets[bucket]);
+        }
+        result = result.or(refine(amountBuckets[first], row -> amounts[row] >= from && amounts[row] < to));
+        if (last != first) {
+            result = result.or(refine(amountBuckets[last], row -> amounts[row] >= from && amounts[row] < to));
+        }
+        return result;
+    }
+
+    private static RowBitmap refine(RowBitmap bucket, IntPredicate matches) {
+        RowBitmap.Builder builder = new RowBitmap.Builder();
+        bucket.forEach(row -> {
+            if (matches.test(row)) {
+                builder.add(row);
+            }
+        });
+        return builder.build();
+    }
+
+    private static short toAge(Integer age) {
+        return age == null ? TransactionStore.NO_AGE : age.shortValue();
+    }
+
+    /**
+     * Bucket 0 holds rows without an age
+     */
+    private static int ageBucket(short age) {
+        return age < 0 ? 0 : 1 + age / AGE_BUCKET_WIDTH;
+    }
+
+    /**
+     * Bucket 0 holds amounts below 1, and every bucket is monotonic in the amount
+     */
+    private static int amountBucket(long cents) {
+        double amount = Money.toDouble(cents);
+        if (amount < 1) {
+            return 0;
+        }
+        double bucket = Math.floor(AMOUNT_BUCKETS_PER_POWER_OF_TWO * Math.log(amount) / LN_2);
+        return (int) Math.min(MAX_AMOUNT_BUCKET, 1 + bucket);
+    }
+
+    /**
+     * Grows one bitmap builder per bucket as rows arrive in ascending order
+     */
+    private static final class BucketBuilder {
+        private final List<RowBitmap.Builder> buckets = new ArrayList<>();
+
+        void add(int bucket, int row) {
+            while (buckets.size() <= bucket) {
+                buckets.add(new RowBitmap.Builder());
+            }
+            buckets.get(bucket).add(row);
+        }
+
+        RowBitmap[] build(int minimumBuckets) {
+            while (buckets.size() < Math.max(minimumBuckets, 1)) {
+                buckets.add(new RowBitmap.Builder());
+            }
+            RowBitmap[] result = new RowBitmap[buckets.size()];
+            for (int bucket = 0; bucket < result.length; bucket++) {
+                result[bucket] = buckets.get(bucket).build();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.store.ClientRowIndex;
+import com.smallworld.store.TopAmountHeap;
+import com.smallworld.store.TransactionStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Builds the snapshot of a column store on a fork-join pool. Transaction rows are split into fixed-size chunks
+ * that each produce partial aggregates (sum, max, the issue sets of their issues, top rows and a slice of the
+ * client id columns), which are merged in chunk order. The client row indexes are then built concurrently,
+ * and per client sums and open issue counts are computed over ranges of client ids, each client's rows in
+ * row order.
+ * <p>
+ * The result is identical to a sequential build: amounts are summed in cents, so the total of the chunk totals
+ * is exact whatever the chunking and parallelism. Stores below the threshold are built sequentially
+ */
+public final class ParallelAggregator {
+    public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+    private static final int CLIENTS_PER_TASK = 1 << 12;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int chunkRows;
+
+    public ParallelAggregator(ForkJoinPool pool, int threshold) {
+        this(pool, threshold, DEFAULT_CHUNK_ROWS);
+    }
+
+    public ParallelAggregator(ForkJoinPool pool, int threshold, int chunkRows) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows must be positive");
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+        this.chunkRows = chunkRows;
+    }
+
+    public TransactionSnapshot aggregate(TransactionStore store) {
+        if (store.size() < threshold) {
+            return TransactionSnapshot.of(store);
+        }
+        return pool.invoke(ForkJoinTask.adapt(() -> build(store)));
+    }
+
+    private TransactionSnapshot build(TransactionStore store) {
+        int rows = store.size();
+        int clients = store.getNames().size();
+        int[] senderIds = new int[rows];
+        int[] beneficiaryIds = new int[rows];
+        byte[] issueFlags = new byte[rows];
+        Chunk[] chunks = new Chunk[(rows + chunkRows - 1) / chunkRows];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.length);
+        for (int i = 0; i < chunks.length; i++) {
+            Chunk chunk = new Chunk(i * chunkRows, Math.min(rows, (i + 1) * chunkRows));
+            chunks[i] = chunk;
+            tasks.add(ForkJoinTask.adapt(() -> chunk.aggregate(store, senderIds, beneficiaryIds, issueFlags)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        long totalAmount = 0;
+        long maxAmount = Long.MIN_VALUE;
+        Set<Integer> unsolvedIssueIds = new HashSet<>();
+        Map<Integer, Integer> issueRows = new HashMap<>();
+        List<String> solvedIssueMessages = new ArrayList<>();
+        TopAmountHeap topRows = new TopAmountHeap(TransactionSnapshot.TOP_TRANSACTIONS_CAPACITY);
+        for (Chunk chunk : chunks) {
+            totalAmount = Math.addExact(totalAmount, chunk.totalAmount);
+            maxAmount = Math.max(maxAmount, chunk.maxAmount);
+            unsolvedIssueIds.addAll(chunk.unsolvedIssueIds);
+            chunk.issueRows.forEach(issueRows::putIfAbsent);
+            solvedIssueMessages.addAll(chunk.solvedIssueMessages);
+            // offered in row order, as a sequential build would
+            int[] kept = chunk.topRows.rowsDescending();
+            Arrays.sort(kept);
+            for (int row : kept) {
+                topRows.offer(row, store.getMtn(row), store.getAmountCents(row));
+            }
+        }
+
+        ForkJoinTask<ClientRowIndex> bySender = ForkJoinTask.adapt(() -> ClientRowIndex.of(senderIds, rows, clients)).fork();
+        ForkJoinTask<ClientRowIndex> byBeneficiary =
+                ForkJoinTask.adapt(() -> ClientRowIndex.of(beneficiaryIds, rows, clients)).fork();
+        ClientRowIndex byClient = ClientRowIndex.of(senderIds, beneficiaryIds, rows, clients);
+        ClientRowIndex rowsBySender = bySender.join();
+        ClientRowIndex rowsByBeneficiary = byBeneficiary.join();
+
+        long[] totalAmountBySender = new long[clients];
+        int[] openIssuesByClient = new int[clients];
+        tasks.clear();
+        for (int first = 0; first < clients; first += CLIENTS_PER_TASK) {
+            int from = first;
+            int to = Math.min(clients, first + CLIENTS_PER_TASK);
+            tasks.add(ForkJoinTask.adapt(() -> aggregateClients(store, rowsBySender, rowsByBeneficiary, from, to,
+                    totalAmountBySender, openIssuesByClient)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        return new TransactionSnapshot(store.asTransactions(), store.getNames(), totalAmount, maxAmount,
+                totalAmountBySender, openIssuesByClient, unsolvedIssueIds, issueRows, solvedIssueMessages,
+                rowsBySender, rowsByBeneficiary, byClient, topRows.rowsDescending(), issueFlags);
+    }
+
+    private static void aggregateClients(TransactionStore store, ClientRowIndex rowsBySender,
+                                         ClientRowIndex rowsByBeneficiary, int from, int to,
+                                         long[] totalAmountBySender, int[] openIssuesByClient) {
+        for (int id = from; id < to; id++) {
+            long sent = 0;
+            int openIssues = 0;
+            for (int n = 0; n < rowsBySender.rowCount(id); n++) {
+                int row = rowsBySender.row(id, n);
+                sent = Math.addExact(sent, store.getAmountCents(row));
+                openIssues += store.getOpenIssueCount(row);
+            }
+            for (int n = 0; n < rowsByBeneficiary.rowCount(id); n++) {
+                openIssues += store.getOpenIssueCount(rowsByBeneficiary.row(id, n));
+            }
+            totalAmountBySender[id] = sent;
+            openIssuesByClient[id] = openIssues;
+        }
+    }
+
+    /**
+     * Partial aggregates of one range of rows
+     */
+    private static final class Chunk {
+        private final int start;
+        private final int end;
+        private long totalAmount;
+        private long maxAmount = Long.MIN_VALUE;
+        private final Set<Integer> unsolvedIssueIds = new HashSet<>();
+        // first row of each issue id in the chunk
+        private final Map<Integer, Integer> issueRows = new HashMap<>();
+        private final List<String> solvedIssueMessages = new ArrayList<>();
+        private final TopAmountHeap topRows = new TopAmountHeap(TransactionSnapshot.TOP_TRANSACTIONS_CAPACITY);
+
+        Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void aggregate(TransactionStore store, int[] senderIds, int[] beneficiaryIds, byte[] issueFlags) {
+            for (int row = start; row < end; row++) {
+                long amount = store.getAmountCents(row);
+                totalAmount = Math.addExact(totalAmount, amount);
+                maxAmount = Math.max(maxAmount, amount);
+                senderIds[row] = store.getSenderId(row);
+                beneficiaryIds[row] = store.getBeneficiaryId(row);
+                int firstIssue = store.getFirstIssue(row);
+                for (int issue = firstIssue; issue < firstIssue + store.getIssueCount(row); issue++) {
+                    Integer issueId = store.hasIssueId(issue) ? store.getIssueId(issue) : null;
+                    Boolean issueSolved = store.isIssueOpen(issue) ? Boolean.FALSE
+                            : store.isIssueSolved(issue) ? Boolean.TRUE : null;
+                    issueFlags[row] |= (byte) FilterIndex.issueFlagsOf(issueId, issueSolved);
+                    if (issueId != null && issueSolved != null) {
+                        issueRows.putIfAbsent(issueId, row);
+                    }
+                    if (store.isIssueOpen(issue)) {
+                        unsolvedIssueIds.add(issueId);
+                    } else if (store.hasIssueId(issue) && store.isIssueSolved(issue)) {
+                        solvedIssueMessages.add(store.getIssueMessage(issue));
+                    }
+                }
+                topRows.offer(row, store.getMtn(row), amount);
+            }
+        }
+    }
+}
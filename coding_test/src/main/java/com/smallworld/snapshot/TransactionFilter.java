@@ -0,0 +1,137 @@
+package com.smallworld.snapshot;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.List;
+
+/**
+ * Predicate over transactions, answered by {@link TransactionSnapshot} from bitmap indexes over the loaded
+ * transactions. Filters are combined with {@link #and}, {@link #or} and {@link #not}, for example the unsolved
+ * issues of senders aged 18 to 25 sending over 1000:
+ * <pre>{@code
+ * TransactionFilter.hasOpenIssue()
+ *         .and(TransactionFilter.senderAgeBetween(18, 25))
+ *         .and(TransactionFilter.amountAbove(1000))
+ * }</pre>
+ * Issue filters look at every issue of a transaction, so a transaction with one open and one solved issue
+ * matches both {@link #hasOpenIssue()} and {@link #hasSolvedIssue()}. They include the issues appends raised on
+ * or solved for a transaction since it was loaded. Filters are sent to partitioned workers as JSON, each named by
+ * its {@code type}
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = TransactionFilter.All.class, name = "all"),
+        @JsonSubTypes.Type(value = TransactionFilter.Issue.class, name = "issue"),
+        @JsonSubTypes.Type(value = TransactionFilter.Age.class, name = "age"),
+        @JsonSubTypes.Type(value = TransactionFilter.Amount.class, name = "amount"),
+        @JsonSubTypes.Type(value = TransactionFilter.Client.class, name = "client"),
+        @JsonSubTypes.Type(value = TransactionFilter.And.class, name = "and"),
+        @JsonSubTypes.Type(value = TransactionFilter.Or.class, name = "or"),
+        @JsonSubTypes.Type(value = TransactionFilter.Not.class, name = "not")
+})
+public sealed interface TransactionFilter {
+
+    static TransactionFilter all() {
+        return new All();
+    }
+
+    /**
+     * Matches transactions with at least one issue id
+     */
+    static TransactionFilter hasIssue() {
+        return new Issue(FilterIndex.ISSUE_PRESENT);
+    }
+
+    /**
+     * Matches transactions with at least one issue flagged as not solved
+     */
+    static TransactionFilter hasOpenIssue() {
+        return new Issue(FilterIndex.ISSUE_OPEN);
+    }
+
+    static TransactionFilter hasSolvedIssue() {
+        return new Issue(FilterIndex.ISSUE_SOLVED);
+    }
+
+    /**
+     * Matches senders aged from min to max, both inclusive. A sender without an age never matches
+     */
+    static TransactionFilter senderAgeBetween(int min, int max) {
+        return new Age(true, min, max);
+    }
+
+    static TransactionFilter beneficiaryAgeBetween(int min, int max) {
+        return new Age(false, min, max);
+    }
+
+    /**
+     * Matches amounts from min inclusive to max exclusive
+     */
+    static TransactionFilter amountBetween(double min, double max) {
+        return new Amount(min, max);
+    }
+
+    static TransactionFilter amountAtLeast(double min) {
+        return new Amount(min, Double.POSITIVE_INFINITY);
+    }
+
+    static TransactionFilter amountAbove(double amount) {
+        return new Amount(Math.nextUp(amount), Double.POSITIVE_INFINITY);
+    }
+
+    static TransactionFilter amountBelow(double max) {
+        return new Amount(Double.NEGATIVE_INFINITY, max);
+    }
+
+    static TransactionFilter sentBy(String senderFullName) {
+        return new Client(senderFullName, true, false);
+    }
+
+    static TransactionFilter receivedBy(String beneficiaryFullName) {
+        return new Client(beneficiaryFullName, false, true);
+    }
+
+    /**
+     * Matches transactions where the client is the sender or the beneficiary
+     */
+    static TransactionFilter involving(String clientFullName) {
+        return new Client(clientFullName, true, true);
+    }
+
+    default TransactionFilter and(TransactionFilter other) {
+        return new And(List.of(this, other));
+    }
+
+    default TransactionFilter or(TransactionFilter other) {
+        return new Or(List.of(this, other));
+    }
+
+    default TransactionFilter not() {
+        return new Not(this);
+    }
+
+    record All() implements TransactionFilter {
+    }
+
+    record Issue(int flag) implements TransactionFilter {
+    }
+
+    record Age(boolean sender, int min, int max) implements TransactionFilter {
+    }
+
+    record Amount(double min, double max) implements TransactionFilter {
+    }
+
+    record Client(String fullName, boolean sender, boolean beneficiary) implements TransactionFilter {
+    }
+
+    record And(List<TransactionFilter> filters) implements TransactionFilter {
+    }
+
+    record Or(List<TransactionFilter> filters) implements TransactionFilter {
+    }
+
+    record Not(TransactionFilter filter) implements TransactionFilter {
+    }
+}
@@ -0,0 +1,1035 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.loader.SkippedRows;
+import com.smallworld.loader.TransactionSink;
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.store.ClientRowIndex;
+import com.smallworld.store.MtnIndex;
+import com.smallworld.store.StringDictionary;
+import com.smallworld.store.TopAmountHeap;
+import com.smallworld.store.TransactionStore;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Loaded transactions together with every aggregate the fetcher needs. The loaded rows and their aggregates
+ * are immutable and computed in a single pass, so queries answer without rescanning.
+ * <p>
+ * Rows are normalized as they are loaded: a row repeating the MTN and transaction fields of an earlier one is
+ * only another issue of that transaction, so it feeds the issue aggregates but is not kept and adds nothing
+ * to amounts, client rows or the top transactions. Every query therefore runs over one row per transaction.
+ * A row reusing an MTN with a different amount, client or age is kept as a transaction of its own.
+ * <p>
+ * Amounts are aggregated in cents, see {@link Money}. Sums are exact, so every total is the same whichever
+ * order the rows were loaded, aggregated or appended in.
+ * <p>
+ * Transactions appended after the load are kept in a concurrent tail that updates the aggregates record by
+ * record; queries combine both. Each aggregate is safe to read while appends run, though a reader racing an
+ * append may see some aggregates with the new row and others without it
+ */
+@Getter
+public final class TransactionSnapshot {
+    // largest top-N served from the rows ranked at load time, larger requests rank all rows again
+    public static final int TOP_TRANSACTIONS_CAPACITY = 1000;
+
+    private static final TransactionSnapshot EMPTY = new Builder().build();
+
+    @Getter(AccessLevel.NONE)
+    private final List<Transaction> transactions;
+    @Getter(AccessLevel.NONE)
+    private final long totalAmount;
+    @Getter(AccessLevel.NONE)
+    private final long maxAmount;
+    // every loaded sender and beneficiary name, per client aggregates below are indexed by its ids
+    private final StringDictionary clientNames;
+    @Getter(AccessLevel.NONE)
+    private final long[] totalAmountBySender;
+    @Getter(AccessLevel.NONE)
+    private final int[] openIssuesByClient;
+    @Getter(AccessLevel.NONE)
+    private final ClientRowIndex rowsBySender;
+    @Getter(AccessLevel.NONE)
+    private final ClientRowIndex rowsByBeneficiary;
+    @Getter(AccessLevel.NONE)
+    private final ClientRowIndex rowsByClient;
+    @Getter(AccessLevel.NONE)
+    private final String topSender;
+    @Getter(AccessLevel.NONE)
+    private final Set<Integer> unsolvedIssueIds;
+    // loaded row of each issue id, the first one carrying it
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, Integer> issueRows;
+    @Getter(AccessLevel.NONE)
+    private final List<String> solvedIssueMessages;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, List<Transaction>> transactionsByBeneficiary;
+    @Getter(AccessLevel.NONE)
+    private final int[] topRows;
+    @Getter(AccessLevel.NONE)
+    private final AppendedTransactions appended;
+    @Getter(AccessLevel.NONE)
+    private final FilterEvaluator filters;
+    // sketches of the clients for the approximate queries, null unless attached when the snapshot was published
+    private final ClientSketches clientSketches;
+    // loaded rows by MTN, built by the first append that needs it
+    @Getter(AccessLevel.NONE)
+    private volatile MtnIndex loadedRowsByMtn;
+    // loaded client ids that received a transaction, sorted by name, built by the first beneficiary page
+    @Getter(AccessLevel.NONE)
+    private volatile int[] beneficiariesByName;
+
+    TransactionSnapshot(List<Transaction> transactions, StringDictionary clientNames, long totalAmount,
+                        long maxAmount, long[] totalAmountBySender, int[] openIssuesByClient,
+                        Set<Integer> unsolvedIssueIds, Map<Integer, Integer> issueRows,
+                        List<String> solvedIssueMessages,
+                        ClientRowIndex rowsBySender, ClientRowIndex rowsByBeneficiary, ClientRowIndex rowsByClient,
+                        int[] topRows, byte[] issueFlags) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.totalAmount = totalAmount;
+        this.maxAmount = transactions.isEmpty() ? 0 : maxAmount;
+        this.clientNames = clientNames;
+        this.totalAmountBySender = totalAmountBySender;
+        int topSenderId = StringDictionary.NULL_ID;
+        for (int id = 0; id < clientNames.size(); id++) {
+            if (rowsBySender.rowCount(id) > 0 && (topSenderId == StringDictionary.NULL_ID
+                    || totalAmountBySender[id] > totalAmountBySender[topSenderId])) {
+                topSenderId = id;
+            }
+        }
+        this.topSender = clientNames.get(topSenderId);
+        this.openIssuesByClient = openIssuesByClient;
+        this.unsolvedIssueIds = Collections.unmodifiableSet(unsolvedIssueIds);
+        this.issueRows = issueRows;
+        this.solvedIssueMessages = Collections.unmodifiableList(solvedIssueMessages);
+        this.rowsBySender = rowsBySender;
+        this.rowsByBeneficiary = rowsByBeneficiary;
+        this.rowsByClient = rowsByClient;
+        Map<String, List<Transaction>> byBeneficiary = new HashMap<>();
+        for (int id = 0; id < clientNames.size(); id++) {
+            if (rowsByBeneficiary.rowCount(id) > 0) {
+                byBeneficiary.put(clientNames.get(id), new ClientRowsView(this.transactions, rowsByBeneficiary, id));
+            }
+        }
+        this.transactionsByBeneficiary = Collections.unmodifiableMap(byBeneficiary);
+        this.topRows = topRows;
+        this.filters = new FilterEvaluator(this.transactions, issueFlags, clientNames, rowsBySender,
+                rowsByBeneficiary, rowsByClient, this.unsolvedIssueIds, issueRows);
+        this.appended = newAppendedTransactions(0, null);
+        this.clientSketches = null;
+    }
+
+    private TransactionSnapshot(TransactionSnapshot source, long generation, ClientSketches clientSketches) {
+        this.transactions = source.transactions;
+        this.totalAmount = source.totalAmount;
+        this.maxAmount = source.maxAmount;
+        this.clientNames = source.clientNames;
+        this.totalAmountBySender = source.totalAmountBySender;
+        this.openIssuesByClient = source.openIssuesByClient;
+        this.rowsBySender = source.rowsBySender;
+        this.rowsByBeneficiary = source.rowsByBeneficiary;
+        this.rowsByClient = source.rowsByClient;
+        this.topSender = source.topSender;
+        this.unsolvedIssueIds = source.unsolvedIssueIds;
+        this.issueRows = source.issueRows;
+        this.solvedIssueMessages = source.solvedIssueMessages;
+        this.transactionsByBeneficiary = source.transactionsByBeneficiary;
+        this.topRows = source.topRows;
+        this.filters = source.filters;
+        this.appended = newAppendedTransactions(generation, clientSketches);
+        this.clientSketches = clientSketches;
+        this.loadedRowsByMtn = source.loadedRowsByMtn;
+        this.beneficiariesByName = source.beneficiariesByName;
+    }
+
+    /**
+     * Returns a new empty snapshot, so appends to it are not shared with any other
+     */
+    public static TransactionSnapshot empty() {
+        return EMPTY.withGeneration(0);
+    }
+
+    public static TransactionSnapshot of(List<Transaction> transactions) {
+        if (transactions == null || transactions.isEmpty()) {
+            return empty();
+        }
+        Builder builder = new Builder();
+        transactions.forEach(builder::accept);
+        return builder.build();
+    }
+
+    /**
+     * Computes the aggregates straight from the primitive columns of the store, its transactions and then
+     * their issues; rows are only materialised when a query hands them out
+     */
+    public static TransactionSnapshot of(TransactionStore store) {
+        Builder builder = new Builder();
+        for (int row = 0; row < store.size(); row++) {
+            int senderId = store.getSenderId(row);
+            int beneficiaryId = store.getBeneficiaryId(row);
+            builder.addTransaction(store.getMtn(row), store.getAmountCents(row), senderId, beneficiaryId);
+            for (int issue = store.getFirstIssue(row), end = issue + store.getIssueCount(row); issue < end; issue++) {
+                Boolean issueSolved = store.isIssueOpen(issue) ? Boolean.FALSE
+                        : store.isIssueSolved(issue) ? Boolean.TRUE : null;
+                builder.addIssue(row, senderId, beneficiaryId, store.hasIssueId(issue) ? store.getIssueId(issue) : null,
+                        issueSolved, store.getIssueMessage(issue));
+            }
+        }
+        return builder.build(store.asTransactions(), store.getNames());
+    }
+
+    /**
+     * Returns whether two rows describe the same transaction, so the later one only adds an issue to it
+     */
+    static boolean isSameTransaction(Transaction first, Transaction second) {
+        return Objects.equals(first.getMtn(), second.getMtn())
+                && Objects.equals(first.getAmount(), second.getAmount())
+                && Objects.equals(first.getSenderFullName(), second.getSenderFullName())
+                && Objects.equals(first.getSenderAge(), second.getSenderAge())
+                && Objects.equals(first.getBeneficiaryFullName(), second.getBeneficiaryFullName())
+                && Objects.equals(first.getBeneficiaryAge(), second.getBeneficiaryAge());
+    }
+
+    /**
+     * Returns the loaded data stamped with the generation it is published as. Nothing is copied, and rows
+     * appended to this snapshot are not carried over
+     */
+    public TransactionSnapshot withGeneration(long generation) {
+        return new TransactionSnapshot(this, generation, null);
+    }
+
+    /**
+     * Returns the loaded data stamped with the generation it is published as, carrying the sketches of its
+     * clients. Every transaction appended to the returned snapshot is added to the sketches as well
+     */
+    public TransactionSnapshot withGeneration(long generation, ClientSketches clientSketches) {
+        return new TransactionSnapshot(this, generation, clientSketches);
+    }
+
+    /**
+     * Sketches the clients of the snapshot with the given error bounds, see {@link ClientSketches}. Fed once per
+     * client from the per-client aggregates rather than once per row, so a transaction repeated on several rows
+     * for its issues counts its amount once, as it does in the exact totals
+     */
+    public ClientSketches sketchClients(double distinctError, double heavyHitterError) {
+        ClientSketches sketches = new ClientSketches(distinctError, heavyHitterError);
+        for (int id = 0; id < clientNames.size(); id++) {
+            if (rowsBySender.rowCount(id) > 0) {
+                sketches.addSender(clientNames.get(id), totalAmountBySender[id]);
+            }
+            if (rowsByBeneficiary.rowCount(id) > 0) {
+                sketches.addBeneficiary(clientNames.get(id));
+            }
+        }
+        for (Transaction transaction : appended.rows()) {
+            sketches.add(transaction.getSenderFullName(), transaction.getBeneficiaryFullName(),
+                    Money.toCents(transaction.getAmount()));
+        }
+        return sketches;
+    }
+
+    /**
+     * Identifies the data: set when a service publishes the snapshot, then bumped by every change an append makes
+     */
+    public long getGeneration() {
+        return appended.generation.get();
+    }
+
+    /**
+     * Returns when the data last changed: when the snapshot was published or when an append last changed it
+     */
+    public Instant getLastModified() {
+        return Instant.ofEpochMilli(appended.lastModifiedMillis);
+    }
+
+    /**
+     * Adds a transaction to the snapshot, updating every aggregate in O(1) amortized time. The mtn, amount and
+     * both client names must be set and the amount must be a non-negative whole number of cents, see
+     * {@link Money#toCents}; an {@link ArithmeticException} rejects any other amount and an append that would
+     * overflow the total, before anything changes. A concurrent append racing to add the same transaction or
+     * to raise the same issue may briefly count the amount in the total until it turns out to be a repeat.
+     * <p>
+     * A transaction carrying an issue id the snapshot already knows is an update of that issue rather than a
+     * new row, and must carry the MTN of the transaction the issue was raised on; an
+     * {@link IllegalArgumentException} rejects it otherwise, see {@link #checkIssueUpdates}. An unsolved issue
+     * reported as solved moves to the solved issues, lowering the open issues of the clients of that transaction.
+     * A solved issue stays solved. A transaction repeating a known one with a new issue only adds that issue
+     */
+    public void append(Transaction transaction) {
+        long amount = Money.toCents(transaction.getAmount());
+        Integer issueId = transaction.getIssueId();
+        if (issueId != null && transaction.getIssueSolved() != null) {
+            AppendedTransactions.IssueState loaded = getLoadedIssue(issueId);
+            if (loaded != null) {
+                checkIssueOwner(issueId, loaded.owner().getMtn(), transaction);
+                if (transaction.getIssueSolved()) {
+                    appended.solveLoadedIssue(issueId, loaded, transaction);
+                }
+                return;
+            }
+        }
+        appended.append(transaction, amount, getRepeatedLoadedRow(transaction));
+    }
+
+    /**
+     * Checks that every issue update of the transactions, in order, names the MTN of the transaction its issue
+     * was raised on, whether that transaction is in the snapshot or earlier in the list. Nothing is appended
+     *
+     * @throws IllegalArgumentException naming the first update of an issue of another transaction
+     */
+    public void checkIssueUpdates(List<Transaction> transactions) {
+        Map<Integer, Integer> raisedBefore = new HashMap<>();
+        for (Transaction transaction : transactions) {
+            Integer issueId = transaction.getIssueId();
+            if (issueId == null || transaction.getIssueSolved() == null) {
+                continue;
+            }
+            Integer owner = getIssueMtn(issueId);
+            if (owner == null) {
+                owner = raisedBefore.putIfAbsent(issueId, transaction.getMtn());
+            }
+            if (owner != null) {
+                checkIssueOwner(issueId, owner, transaction);
+            }
+        }
+    }
+
+    /**
+     * Checks that appending the transactions, in order, keeps the total amount in range. Only transactions that
+     * would be new rows count, not issue updates nor repeats of a known transaction. Nothing is appended
+     *
+     * @throws ArithmeticException when the total would overflow
+     */
+    public void checkTotalAmount(List<Transaction> transactions) {
+        Set<Integer> raisedBefore = new HashSet<>();
+        Map<Integer, Transaction> addedBefore = new HashMap<>();
+        long total = getTotalAmountCents();
+        for (Transaction transaction : transactions) {
+            if (addsRow(transaction, raisedBefore, addedBefore)) {
+                total = Math.addExact(total, Money.toCents(transaction.getAmount()));
+            }
+        }
+    }
+
+    /**
+     * Returns the MTN of the transaction each known issue was raised on, leaving out the issues not in the
+     * snapshot
+     */
+    public Map<Integer, Integer> getIssueMtns(Collection<Integer> issueIds) {
+        Map<Integer, Integer> mtns = new HashMap<>();
+        for (Integer issueId : issueIds) {
+            Integer mtn = issueId == null ? null : getIssueMtn(issueId);
+            if (mtn != null) {
+                mtns.put(issueId, mtn);
+            }
+        }
+        return mtns;
+    }
+
+    /**
+     * Returns the loaded transactions followed by the appended ones, one row per transaction carrying the
+     * first issue seen for it
+     */
+    public List<Transaction> getTransactions() {
+        List<Transaction> appendedRows = appended.rows();
+        if (appendedRows.isEmpty()) {
+            return transactions;
+        }
+        return new ConcatenatedView(transactions, appendedRows);
+    }
+
+    public boolean isEmpty() {
+        return transactions.isEmpty() && appended.size() == 0;
+    }
+
+    /**
+     * Returns the sum of all amounts, in cents
+     */
+    public long getTotalAmountCents() {
+        return totalAmount + appended.totalAmount.get();
+    }
+
+    /**
+     * Returns the highest amount in cents, 0 when there are no transactions
+     */
+    public long getMaxAmountCents() {
+        return appended.size() == 0 ? maxAmount : Math.max(maxAmount, appended.maxAmount.get());
+    }
+
+    public long getUniqueClientCount() {
+        return clientNames.size() + appended.newClients.size();
+    }
+
+    /**
+     * Returns the name of every client, the loaded ones in dictionary order followed by those only seen in
+     * appended rows
+     */
+    public List<String> getAllClientNames() {
+        List<String> names = new ArrayList<>(clientNames.size() + appended.newClients.size());
+        names.addAll(clientNames.values());
+        names.addAll(appended.newClients);
+        return names;
+    }
+
+    /**
+     * Returns the sum of the amounts each sender sent, in cents. Builds a map of every sender, so it is meant
+     * for merging the totals of several snapshots rather than for single lookups
+     */
+    public Map<String, Long> getTotalAmountCentsBySender() {
+        Map<String, Long> totals = new HashMap<>();
+        for (int id = 0; id < clientNames.size(); id++) {
+            if (rowsBySender.rowCount(id) > 0) {
+                totals.put(clientNames.get(id), totalAmountBySender[id]);
+            }
+        }
+        appended.amountBySender.forEach((sender, amount) -> totals.merge(sender, amount.get(), Long::sum));
+        return totals;
+    }
+
+    /**
+     * Resolves a client name to its id, {@link StringDictionary#NULL_ID} when the client is unknown or was
+     * only seen in appended rows. Callers asking several questions about the same client should resolve it
+     * once and use the id
+     */
+    public int getClientId(String clientFullName) {
+        return clientNames.idOf(clientFullName);
+    }
+
+    /**
+     * Returns the sum of the amounts the client sent, in cents
+     */
+    public long getTotalAmountCentsSentBy(String senderFullName) {
+        long loaded = getLoadedAmountSentBy(getClientId(senderFullName));
+        if (senderFullName == null || appended.amountBySender.isEmpty()) {
+            return loaded;
+        }
+        return loaded + appended.amountSentBy(senderFullName);
+    }
+
+    public long getTotalAmountCentsSentBy(int clientId) {
+        long loaded = getLoadedAmountSentBy(clientId);
+        if (clientId == StringDictionary.NULL_ID || appended.amountBySender.isEmpty()) {
+            return loaded;
+        }
+        return loaded + appended.amountSentBy(clientNames.get(clientId));
+    }
+
+    /**
+     * Answers the per-client queries for a batch of clients, resolving each name once. Costs one dictionary
+     * lookup per name and never reads the rows
+     */
+    public List<ClientSummary> summarize(List<String> clientFullNames) {
+        List<ClientSummary> summaries = new ArrayList<>(clientFullNames.size());
+        for (String name : clientFullNames) {
+            int clientId = getClientId(name);
+            // clients only seen in appended rows have no id and are looked up by name
+            boolean openIssues = clientId == StringDictionary.NULL_ID ? hasOpenIssues(name) : hasOpenIssues(clientId);
+            long totalSent = clientId == StringDictionary.NULL_ID ? getTotalAmountCentsSentBy(name)
+                    : getTotalAmountCentsSentBy(clientId);
+            summaries.add(new ClientSummary(name, openIssues, Money.toBigDecimal(totalSent)));
+        }
+        return summaries;
+    }
+
+    public String getTopSender() {
+        AppendedTransactions.SenderTotal top = appended.topSender.get();
+        return top == null ? null : top.name();
+    }
+
+    public boolean hasOpenIssues(String clientFullName) {
+        long loaded = getLoadedOpenIssues(getClientId(clientFullName));
+        if (clientFullName == null || appended.openIssueChanges.isEmpty()) {
+            return loaded > 0;
+        }
+        return loaded + appended.openIssueChange(clientFullName) > 0;
+    }
+
+    public boolean hasOpenIssues(int clientId) {
+        long loaded = getLoadedOpenIssues(clientId);
+        if (clientId == StringDictionary.NULL_ID || appended.openIssueChanges.isEmpty()) {
+            return loaded > 0;
+        }
+        return loaded + appended.openIssueChange(clientNames.get(clientId)) > 0;
+    }
+
+    public Set<Integer> getUnsolvedIssueIds() {
+        if (appended.issueStates.isEmpty()) {
+            return unsolvedIssueIds;
+        }
+        Set<Integer> ids = new HashSet<>(unsolvedIssueIds);
+        appended.issueStates.forEach((issueId, issue) -> {
+            if (issue.solved()) {
+                ids.remove(issueId);
+            } else {
+                ids.add(issueId);
+            }
+        });
+        return Collections.unmodifiableSet(ids);
+    }
+
+    public List<String> getSolvedIssueMessages() {
+        if (appended.solvedIssueMessages.isEmpty()) {
+            return solvedIssueMessages;
+        }
+        List<String> messages = new ArrayList<>(solvedIssueMessages);
+        messages.addAll(appended.solvedIssueMessages);
+        return Collections.unmodifiableList(messages);
+    }
+
+    public Map<String, List<Transaction>> getTransactionsByBeneficiary() {
+        List<Transaction> appendedRows = appended.rows();
+        if (appendedRows.isEmpty()) {
+            return transactionsByBeneficiary;
+        }
+        Map<String, List<Transaction>> byBeneficiary = new HashMap<>(transactionsByBeneficiary);
+        for (Transaction transaction : appendedRows) {
+            byBeneficiary.compute(transaction.getBeneficiaryFullName(), (name, rows) -> {
+                List<Transaction> grown = rows instanceof ArrayList<Transaction> ? rows
+                        : rows == null ? new ArrayList<>() : new ArrayList<>(rows);
+                grown.add(transaction);
+                return grown;
+            });
+        }
+        byBeneficiary.replaceAll((name, rows) -> Collections.unmodifiableList(rows));
+        return Collections.unmodifiableMap(byBeneficiary);
+    }
+
+    /**
+     * Returns up to limit beneficiaries named after the given name, or from the first one when it is null, with
+     * the rows each received. Names are in {@link String#compareTo} order and loaded rows are read through the
+     * beneficiary index, so a page costs its own rows only and the map of all beneficiaries is never built
+     */
+    public BeneficiaryPage getBeneficiaryPage(String after, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        int[] sorted = beneficiariesByName();
+        int next = after == null ? 0 : firstNamedAfter(sorted, after);
+        Iterator<Map.Entry<String, List<Transaction>>> appendedEntries = appendedByBeneficiary(after).iterator();
+        Map.Entry<String, List<Transaction>> nextAppended = appendedEntries.hasNext() ? appendedEntries.next() : null;
+        Map<String, List<Transaction>> page = new LinkedHashMap<>();
+        while (page.size() < limit && (next < sorted.length || nextAppended != null)) {
+            String loadedName = next < sorted.length ? clientNames.get(sorted[next]) : null;
+            int order = loadedName == null ? 1 : nextAppended == null ? -1 : loadedName.compareTo(nextAppended.getKey());
+            if (order > 0) {
+                page.put(nextAppended.getKey(), Collections.unmodifiableList(nextAppended.getValue()));
+            } else {
+                List<Transaction> rows = new ClientRowsView(transactions, rowsByBeneficiary, sorted[next++]);
+                if (order == 0) {
+                    rows = new ArrayList<>(rows);
+                    rows.addAll(nextAppended.getValue());
+                    rows = Collections.unmodifiableList(rows);
+                }
+                page.put(loadedName, rows);
+            }
+            if (order >= 0) {
+                nextAppended = appendedEntries.hasNext() ? appendedEntries.next() : null;
+            }
+        }
+        return new BeneficiaryPage(Collections.unmodifiableMap(page), next < sorted.length || nextAppended != null);
+    }
+
+    /**
+     * Returns the rows sent by the client in load order, read through the sender index
+     */
+    public List<Transaction> getTransactionsSentBy(String senderFullName) {
+        return withAppended(new ClientRowsView(transactions, rowsBySender, getClientId(senderFullName)),
+                transaction -> Objects.equals(senderFullName, transaction.getSenderFullName()));
+    }
+
+    public List<Transaction> getTransactionsReceivedBy(String beneficiaryFullName) {
+        return withAppended(new ClientRowsView(transactions, rowsByBeneficiary, getClientId(beneficiaryFullName)),
+                transaction -> Objects.equals(beneficiaryFullName, transaction.getBeneficiaryFullName()));
+    }
+
+    /**
+     * Returns the rows where the client is the sender or the beneficiary, each row once
+     */
+    public List<Transaction> getTransactionsOfClient(String clientFullName) {
+        return withAppended(new ClientRowsView(transactions, rowsByClient, getClientId(clientFullName)),
+                transaction -> Objects.equals(clientFullName, transaction.getSenderFullName())
+                        || Objects.equals(clientFullName, transaction.getBeneficiaryFullName()));
+    }
+
+    /**
+     * Returns the n transactions with the highest amounts, highest first, counting a transaction repeated
+     * over several issue rows once
+     */
+    public List<Transaction> getTopTransactions(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative");
+        }
+        List<Transaction> all = getTransactions();
+        if (n > TOP_TRANSACTIONS_CAPACITY) {
+            TopAmountHeap heap = new TopAmountHeap(n);
+            for (int row = 0; row < all.size(); row++) {
+                Transaction transaction = all.get(row);
+                heap.offer(row, transaction.getMtn(), Money.toCents(transaction.getAmount()));
+            }
+            return rowsOf(all, heap.rowsDescending(), n);
+        }
+        List<Transaction> loadedTop = rowsOf(transactions, topRows, n);
+        if (all == transactions) {
+            return loadedTop;
+        }
+        return mergeTop(loadedTop, rowsOf(appended.rows(), appended.topRowsDescending(), n), n);
+    }
+
+    /**
+     * Counts and sums the transactions matching the filter, the loaded ones through the bitmap indexes
+     */
+    public FilterAggregate aggregate(TransactionFilter filter) {
+        return filters.aggregate(filter, appended);
+    }
+
+    /**
+     * Returns a page of the transactions matching the filter, loaded ones first, each in row order
+     */
+    public List<Transaction> getTransactions(TransactionFilter filter, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        return filters.transactions(filter, offset, limit, appended);
+    }
+
+    /**
+     * Returns the n transactions matching the filter with the highest amounts, highest first
+     */
+    public List<Transaction> getTopTransactions(TransactionFilter filter, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative");
+        }
+        return filters.topTransactions(filter, n, appended);
+    }
+
+    private int[] beneficiariesByName() {
+        int[] sorted = beneficiariesByName;
+        if (sorted == null) {
+            synchronized (this) {
+                sorted = beneficiariesByName;
+                if (sorted == null) {
+                    sorted = IntStream.range(0, clientNames.size())
+                            .filter(id -> rowsByBeneficiary.rowCount(id) > 0)
+                            .boxed()
+                            .sorted(Comparator.comparing(clientNames::get))
+                            .mapToInt(Integer::intValue)
+                            .toArray();
+                    beneficiariesByName = sorted;
+                }
+            }
+        }
+        return sorted;
+    }
+
+    private int firstNamedAfter(int[] sorted, String name) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (clientNames.get(sorted[middle]).compareTo(name) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Groups the appended rows of beneficiaries named after the given name, in name order
+     */
+    private Set<Map.Entry<String, List<Transaction>>> appendedByBeneficiary(String after) {
+        NavigableMap<String, List<Transaction>> byBeneficiary = new TreeMap<>();
+        for (Transaction transaction : appended.rows()) {
+            String beneficiary = transaction.getBeneficiaryFullName();
+            if (after == null || beneficiary.compareTo(after) > 0) {
+                byBeneficiary.computeIfAbsent(beneficiary, name -> new ArrayList<>()).add(transaction);
+            }
+        }
+        return byBeneficiary.entrySet();
+    }
+
+    static List<Transaction> rowsOf(List<Transaction> rows, int[] positions, int n) {
+        List<Transaction> top = new ArrayList<>(Math.min(n, positions.length));
+        for (int i = 0; i < positions.length && i < n; i++) {
+            top.add(rows.get(positions[i]));
+        }
+        return Collections.unmodifiableList(top);
+    }
+
+    /**
+     * Merges two rankings, loaded rows first on equal amounts. A transaction repeated in both keeps the same
+     * amount, so its loaded row always ranks first and the appended one is skipped
+     */
+    static List<Transaction> mergeTop(List<Transaction> loaded, List<Transaction> appended, int n) {
+        List<Transaction> top = new ArrayList<>(n);
+        Set<Integer> mtns = new HashSet<>();
+        int i = 0;
+        int j = 0;
+        while (top.size() < n && (i < loaded.size() || j < appended.size())) {
+            Transaction next = j >= appended.size()
+                    || (i < loaded.size() && loaded.get(i).getAmount() >= appended.get(j).getAmount())
+                    ? loaded.get(i++) : appended.get(j++);
+            if (mtns.add(next.getMtn())) {
+                top.add(next);
+            }
+        }
+        return Collections.unmodifiableList(top);
+    }
+
+    private List<Transaction> withAppended(List<Transaction> loaded, Predicate<Transaction> filter) {
+        List<Transaction> appendedRows = appended.rows();
+        if (appendedRows.isEmpty()) {
+            return loaded;
+        }
+        List<Transaction> rows = new ArrayList<>(loaded);
+        for (Transaction transaction : appendedRows) {
+            if (filter.test(transaction)) {
+                rows.add(transaction);
+            }
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    private AppendedTransactions newAppendedTransactions(long generation, ClientSketches clientSketches) {
+        AppendedTransactions.SenderTotal top = topSender == null ? null
+                : new AppendedTransactions.SenderTotal(topSender, getLoadedAmountSentBy(getClientId(topSender)));
+        return new AppendedTransactions(generation, totalAmount, clientNames, totalAmountBySender, top,
+                clientSketches);
+    }
+
+    private long getLoadedAmountSentBy(int clientId) {
+        return clientId == StringDictionary.NULL_ID ? 0 : totalAmountBySender[clientId];
+    }
+
+    /**
+     * Returns whether appending the transaction would add a row, given the issues raised and the first
+     * transaction of each MTN added by the transactions before it in the same list
+     */
+    private boolean addsRow(Transaction transaction, Set<Integer> raisedBefore,
+                            Map<Integer, Transaction> addedBefore) {
+        Integer issueId = transaction.getIssueId();
+        if (issueId != null && transaction.getIssueSolved() != null
+                && (getIssueMtn(issueId) != null || !raisedBefore.add(issueId))) {
+            return false;
+        }
+        if (getRepeatedLoadedRow(transaction) != MtnIndex.NO_ROW) {
+            return false;
+        }
+        Transaction previous = appended.transactionsByMtn.get(transaction.getMtn());
+        if (previous == null) {
+            previous = addedBefore.putIfAbsent(transaction.getMtn(), transaction);
+        }
+        return previous == null || !isSameTransaction(previous, transaction);
+    }
+
+    private long getLoadedOpenIssues(int clientId) {
+        return clientId == StringDictionary.NULL_ID ? 0 : openIssuesByClient[clientId];
+    }
+
+    /**
+     * Returns the loaded row of the transaction when it repeats a loaded one, {@link MtnIndex#NO_ROW} otherwise
+     */
+    private int getRepeatedLoadedRow(Transaction transaction) {
+        int row = loadedRowsByMtn().get(transaction.getMtn());
+        return row != MtnIndex.NO_ROW && isSameTransaction(transactions.get(row), transaction) ? row
+                : MtnIndex.NO_ROW;
+    }
+
+    private MtnIndex loadedRowsByMtn() {
+        MtnIndex index = loadedRowsByMtn;
+        if (index == null) {
+            synchronized (this) {
+                index = loadedRowsByMtn;
+                if (index == null) {
+                    index = new MtnIndex(transactions.size());
+                    for (int row = 0; row < transactions.size(); row++) {
+                        index.put(transactions.get(row).getMtn(), row);
+                    }
+                    loadedRowsByMtn = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the issue as it was loaded, with the transaction of the first loaded row carrying it, or null
+     * when no loaded row carries it
+     */
+    private AppendedTransactions.IssueState getLoadedIssue(int issueId) {
+        Integer row = issueRows.get(issueId);
+        if (row == null) {
+            return null;
+        }
+        return new AppendedTransactions.IssueState(transactions.get(row), row, !unsolvedIssueIds.contains(issueId));
+    }
+
+    private Integer getIssueMtn(int issueId) {
+        Integer row = issueRows.get(issueId);
+        if (row != null) {
+            return transactions.get(row).getMtn();
+        }
+        AppendedTransactions.IssueState issue = appended.issueStates.get(issueId);
+        return issue == null ? null : issue.owner().getMtn();
+    }
+
+    static void checkIssueOwner(int issueId, int ownerMtn, Transaction transaction) {
+        if (transaction.getMtn() != ownerMtn) {
+            throw new IllegalArgumentException("Issue " + issueId + " belongs to transaction " + ownerMtn
+                    + ", not to transaction " + transaction.getMtn());
+        }
+    }
+
+    /**
+     * Accumulates rows one at a time, typically as the sink of a streaming load, keeping the first row of each
+     * transaction. Not thread safe; a builder is used by the single thread loading the data and then discarded
+     */
+    public static final class Builder implements TransactionSink {
+        private final List<Transaction> transactions = new ArrayList<>();
+        private final StringDictionary.Builder clientNames = new StringDictionary.Builder();
+        private final MtnIndex rowsByMtn = new MtnIndex();
+        private int rows;
+        private long totalAmount;
+        private long maxAmount = Long.MIN_VALUE;
+        private final ClientSums totalAmountBySender = new ClientSums();
+        private final ClientCounts openIssuesByClient = new ClientCounts();
+        private final Set<Integer> unsolvedIssueIds = new HashSet<>();
+        private final Map<Integer, Integer> issueRows = new HashMap<>();
+        private final List<String> solvedIssueMessages = new ArrayList<>();
+        private final IntColumn senderIds = new IntColumn();
+        private final IntColumn beneficiaryIds = new IntColumn();
+        private final IntColumn issueFlags = new IntColumn();
+        private final TopAmountHeap topRows = new TopAmountHeap(TOP_TRANSACTIONS_CAPACITY);
+        private final SkippedRows skippedRows;
+
+        /**
+         * Creates a builder that fails on a row whose amount is not a whole number of cents
+         */
+        public Builder() {
+            this(false);
+        }
+
+        /**
+         * Creates a builder that skips and counts the rows whose amount is not a whole number of cents instead
+         * of failing on them, see {@link SkippedRows}
+         */
+        public Builder(boolean skipInexactAmounts) {
+            skippedRows = new SkippedRows(skipInexactAmounts);
+        }
+
+        /**
+         * Adds a row, failing or skipping it when its amount is not a whole number of cents, see
+         * {@link SkippedRows}
+         */
+        @Override
+        public void accept(Transaction transaction) {
+            if (!skippedRows.accept(transaction)) {
+                return;
+            }
+            int senderId = clientNames.intern(transaction.getSenderFullName());
+            int beneficiaryId = clientNames.intern(transaction.getBeneficiaryFullName());
+            int row = rowsByMtn.get(transaction.getMtn());
+            if (row == MtnIndex.NO_ROW || !isSameTransaction(transactions.get(row), transaction)) {
+                row = addTransaction(transaction.getMtn(), Money.toCents(transaction.getAmount()), senderId,
+                        beneficiaryId);
+                transactions.add(transaction);
+                rowsByMtn.put(transaction.getMtn(), row);
+            }
+            addIssue(row, senderId, beneficiaryId, transaction.getIssueId(), transaction.getIssueSolved(),
+                    transaction.getIssueMessage());
+        }
+
+        public long getSkippedRows() {
+            return skippedRows.count();
+        }
+
+        public TransactionSnapshot build() {
+            return build(transactions, clientNames.build());
+        }
+
+        private TransactionSnapshot build(List<Transaction> rowsOfSnapshot, StringDictionary names) {
+            int[] senders = senderIds.toArray();
+            int[] beneficiaries = beneficiaryIds.toArray();
+            return new TransactionSnapshot(rowsOfSnapshot, names, totalAmount, maxAmount,
+                    totalAmountBySender.values(names.size()), openIssuesByClient.values(names.size()),
+                    unsolvedIssueIds, issueRows, solvedIssueMessages,
+                    ClientRowIndex.of(senders, rows, names.size()), ClientRowIndex.of(beneficiaries, rows, names.size()),
+                    ClientRowIndex.of(senders, beneficiaries, rows, names.size()), topRows.rowsDescending(),
+                    issueFlags.toByteArray());
+        }
+
+        private int addTransaction(int mtn, long amount, int senderId, int beneficiaryId) {
+            int row = rows++;
+            totalAmount = Math.addExact(totalAmount, amount);
+            maxAmount = Math.max(maxAmount, amount);
+            if (senderId != StringDictionary.NULL_ID) {
+                totalAmountBySender.add(senderId, amount);
+            }
+            senderIds.add(senderId);
+            beneficiaryIds.add(beneficiaryId);
+            issueFlags.add(0);
+            topRows.offer(row, mtn, amount);
+            return row;
+        }
+
+        private void addIssue(int row, int senderId, int beneficiaryId, Integer issueId, Boolean issueSolved,
+                              String issueMessage) {
+            issueFlags.or(row, FilterIndex.issueFlagsOf(issueId, issueSolved));
+            if (issueId != null && issueSolved != null) {
+                issueRows.putIfAbsent(issueId, row);
+            }
+            // not checking issue id for open issues as a row without issues is marked as solved
+            if (Boolean.FALSE.equals(issueSolved)) {
+                openIssuesByClient.increment(senderId);
+                openIssuesByClient.increment(beneficiaryId);
+                unsolvedIssueIds.add(issueId);
+            } else if (issueId != null && Boolean.TRUE.equals(issueSolved)) {
+                solvedIssueMessages.add(issueMessage);
+            }
+        }
+    }
+
+    /**
+     * Growable int column, avoiding a boxed Integer per row
+     */
+    private static final class IntColumn {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void or(int index, int bits) {
+            values[index] |= bits;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = (byte) values[i];
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Read only view of the rows one client has in an index, in row order
+     */
+    private static final class ClientRowsView extends AbstractList<Transaction> implements RandomAccess {
+        private final List<Transaction> transactions;
+        private final ClientRowIndex index;
+        private final int clientId;
+
+        ClientRowsView(List<Transaction> transactions, ClientRowIndex index, int clientId) {
+            this.transactions = transactions;
+            this.index = index;
+            this.clientId = clientId;
+        }
+
+        @Override
+        public Transaction get(int position) {
+            if (position < 0 || position >= size()) {
+                throw new IndexOutOfBoundsException(position);
+            }
+            return transactions.get(index.row(clientId, position));
+        }
+
+        @Override
+        public int size() {
+            return index.rowCount(clientId);
+        }
+    }
+
+    /**
+     * Per client sums in cents held in an array indexed by client id
+     */
+    private static final class ClientSums {
+        private long[] sums = new long[16];
+
+        void add(int clientId, long value) {
+            if (clientId >= sums.length) {
+                sums = Arrays.copyOf(sums, Math.max(clientId + 1, sums.length * 2));
+            }
+            sums[clientId] = Math.addExact(sums[clientId], value);
+        }
+
+        long[] values(int clientCount) {
+            return Arrays.copyOf(sums, clientCount);
+        }
+    }
+
+    /**
+     * Per client counters held in an array indexed by client id
+     */
+    private static final class ClientCounts {
+        private int[] counts = new int[16];
+
+        void increment(int clientId) {
+            if (clientId == StringDictionary.NULL_ID) {
+                return;
+            }
+            if (clientId >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(clientId + 1, counts.length * 2));
+            }
+            counts[clientId]++;
+        }
+
+        int[] values(int clientCount) {
+            return Arrays.copyOf(counts, clientCount);
+        }
+    }
+
+    /**
+     * Read only view of the loaded rows followed by the appended ones
+     */
+    private static final class ConcatenatedView extends AbstractList<Transaction> implements RandomAccess {
+        private final List<Transaction> first;
+        private final List<Transaction> second;
+
+        ConcatenatedView(List<Transaction> first, List<Transaction> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            return index < first.size() ? first.get(index) : second.get(index - first.size());
+        }
+
+        @Override
+        public int size() {
+            return first.size() + second.size();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.smallworld.store;
+
+import java.util.Arrays;
+
+/**
+ * Maps a client id to the rows it appears on. Rows are kept in one array grouped by client, with an offset
+ * array marking where each client's rows start, so the whole index costs one int per row plus one per client
+ */
+public final class ClientRowIndex {
+    private static final int[] NO_ROWS = new int[0];
+
+    private final int[] offsets;
+    private final int[] rows;
+
+    private ClientRowIndex(int[] offsets, int[] rows) {
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    /**
+     * Indexes rows by a single client column, skipping rows where the client is {@link StringDictionary#NULL_ID}
+     */
+    public static ClientRowIndex of(int[] clientIds, int rowCount, int clientCount) {
+        return of(clientIds, null, rowCount, clientCount);
+    }
+
+    /**
+     * Indexes rows by either of two client columns. A row where both columns hold the same client is listed once
+     */
+    public static ClientRowIndex of(int[] clientIds, int[] otherClientIds, int rowCount, int clientCount) {
+        int[] offsets = new int[clientCount + 1];
+        for (int row = 0; row < rowCount; row++) {
+            int clientId = clientIds[row];
+            if (clientId != StringDictionary.NULL_ID) {
+                offsets[clientId + 1]++;
+            }
+            int otherClientId = otherClientId(otherClientIds, row, clientId);
+            if (otherClientId != StringDictionary.NULL_ID) {
+                offsets[otherClientId + 1]++;
+            }
+        }
+        for (int clientId = 0; clientId < clientCount; clientId++) {
+            offsets[clientId + 1] += offsets[clientId];
+        }
+        int[] rows = new int[offsets[clientCount]];
+        int[] next = Arrays.copyOf(offsets, clientCount);
+        for (int row = 0; row < rowCount; row++) {
+            int clientId = clientIds[row];
+            if (clientId != StringDictionary.NULL_ID) {
+                rows[next[clientId]++] = row;
+            }
+            int otherClientId = otherClientId(otherClientIds, row, clientId);
+            if (otherClientId != StringDictionary.NULL_ID) {
+                rows[next[otherClientId]++] = row;
+            }
+        }
+        return new ClientRowIndex(offsets, rows);
+    }
+
+    public int clientCount() {
+        return offsets.length - 1;
+    }
+
+    public int rowCount(int clientId) {
+        if (clientId < 0 || clientId >= clientCount()) {
+            return 0;
+        }
+        return offsets[clientId + 1] - offsets[clientId];
+    }
+
+    /**
+     * Returns the rows of the client in ascending order, empty when the id is unknown
+     */
+    public int[] rows(int clientId) {
+        if (clientId < 0 || clientId >= clientCount()) {
+            return NO_ROWS;
+        }
+        return Arrays.copyOfRange(rows, offsets[clientId], offsets[clientId + 1]);
+    }
+
+    /**
+     * Returns the n-th row of the client, without copying its rows out
+     */
+    public int row(int clientId, int n) {
+        return rows[offsets[clientId] + n];
+    }
+
+    private static int otherClientId(int[] otherClientIds, int row, int clientId) {
+        if (otherClientIds == null || otherClientIds[row] == clientId) {
+            return StringDictionary.NULL_ID;
+        }
+        return otherClientIds[row];
+    }
+}
@@ -0,0 +1,91 @@
+package com.smallworld.store;
+
+import java.util.Arrays;
+
+/**
+ * Maps an MTN to the transaction row holding it, so rows repeating a transaction for each of its issues can
+ * be folded into the first one. Open addressing over primitive arrays, no boxing per entry. Not thread safe
+ */
+public final class MtnIndex {
+    public static final int NO_ROW = -1;
+
+    private int[] mtns;
+    private int[] rows;
+    private int size;
+    private int mask;
+
+    public MtnIndex() {
+        this(16);
+    }
+
+    public MtnIndex(int expectedSize) {
+        int slots = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        mtns = new int[slots];
+        rows = new int[slots];
+        Arrays.fill(rows, NO_ROW);
+        mask = slots - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row last put for the MTN, or {@link #NO_ROW}
+     */
+    public int get(int mtn) {
+        for (int slot = hash(mtn); rows[slot] != NO_ROW; slot = (slot + 1) & mask) {
+            if (mtns[slot] == mtn) {
+                return rows[slot];
+            }
+        }
+        return NO_ROW;
+    }
+
+    /**
+     * Points the MTN at the row, replacing the row it pointed at before
+     */
+    public void put(int mtn, int row) {
+        if (row < 0) {
+            throw new IllegalArgumentException("row must not be negative");
+        }
+        int slot = hash(mtn);
+        while (rows[slot] != NO_ROW) {
+            if (mtns[slot] == mtn) {
+                rows[slot] = row;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mtns[slot] = mtn;
+        rows[slot] = row;
+        // kept at most half full so probe sequences stay short
+        if (++size * 2 > mtns.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        int[] oldMtns = mtns;
+        int[] oldRows = rows;
+        mtns = new int[oldMtns.length * 2];
+        rows = new int[oldMtns.length * 2];
+        Arrays.fill(rows, NO_ROW);
+        mask = mtns.length - 1;
+        for (int i = 0; i < oldMtns.length; i++) {
+            if (oldRows[i] != NO_ROW) {
+                int slot = hash(oldMtns[i]);
+                while (rows[slot] != NO_ROW) {
+                    slot = (slot + 1) & mask;
+                }
+                mtns[slot] = oldMtns[i];
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    private int hash(int mtn) {
+        int h = mtn * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
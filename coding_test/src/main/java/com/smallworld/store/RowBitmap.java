@@ -0,0 +1,470 @@
+package com.smallworld.store;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable compressed set of row numbers, laid out like a Roaring bitmap: rows are split by their high
+ * 16 bits into chunks of 65536, and each chunk is stored as a sorted array of its low 16 bits while it holds
+ * at most {@value #ARRAY_LIMIT} rows, or as a 65536-bit bitmap once it holds more. Sparse sets cost about
+ * 2 bytes per row, dense ones at most 1 bit per possible row, and set operations work chunk by chunk on
+ * whichever form both sides have
+ */
+public final class RowBitmap {
+    static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final RowBitmap EMPTY = new RowBitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int cardinality;
+
+    private RowBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = Arrays.copyOf(keys, size);
+        this.containers = Arrays.copyOf(containers, size);
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        this.cardinality = total;
+    }
+
+    public static RowBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the rows from start inclusive to end exclusive
+     */
+    public static RowBitmap range(int start, int end) {
+        Builder builder = new Builder();
+        for (int row = start; row < end; row++) {
+            builder.add(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the rows of an ascending array, as handed out by {@link ClientRowIndex#rows(int)}
+     */
+    public static RowBitmap of(int... ascendingRows) {
+        Builder builder = new Builder();
+        for (int row : ascendingRows) {
+            builder.add(row);
+        }
+        return builder.build();
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int row) {
+        int index = Arrays.binarySearch(keys, (char) (row >>> 16));
+        return index >= 0 && containers[index].contains((char) row);
+    }
+
+    /**
+     * Hands every row to the consumer in ascending order
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    public int[] toArray() {
+        int[] rows = new int[cardinality];
+        int[] next = {0};
+        forEach(row -> rows[next[0]++] = row);
+        return rows;
+    }
+
+    /**
+     * Returns at most limit rows in ascending order, skipping the first offset ones. Containers entirely
+     * before the offset are skipped by their cardinality
+     */
+    public int[] slice(int offset, int limit) {
+        int[] rows = new int[Math.max(0, Math.min(limit, cardinality - offset))];
+        int skipped = 0;
+        int next = 0;
+        for (int i = 0; i < keys.length && next < rows.length; i++) {
+            if (skipped + containers[i].cardinality() <= offset) {
+                skipped += containers[i].cardinality();
+                continue;
+            }
+            int[] values = new int[containers[i].cardinality()];
+            int[] n = {0};
+            containers[i].forEach(keys[i] << 16, row -> values[n[0]++] = row);
+            for (int j = Math.max(0, offset - skipped); j < values.length && next < rows.length; j++) {
+                rows[next++] = values[j];
+            }
+            skipped += values.length;
+        }
+        return rows;
+    }
+
+    public RowBitmap and(RowBitmap other) {
+        char[] resultKeys = new char[Math.min(keys.length, other.keys.length)];
+        Container[] result = new Container[resultKeys.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    resultKeys[size] = keys[i];
+                    result[size++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new RowBitmap(resultKeys, result, size);
+    }
+
+    public RowBitmap or(RowBitmap other) {
+        char[] resultKeys = new char[keys.length + other.keys.length];
+        Container[] result = new Container[resultKeys.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                resultKeys[size] = keys[i];
+                result[size++] = containers[i++];
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                resultKeys[size] = other.keys[j];
+                result[size++] = other.containers[j++];
+            } else {
+                resultKeys[size] = keys[i];
+                result[size++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new RowBitmap(resultKeys, result, size);
+    }
+
+    /**
+     * Returns the rows of this bitmap that are not in the other one
+     */
+    public RowBitmap andNot(RowBitmap other) {
+        char[] resultKeys = new char[keys.length];
+        Container[] result = new Container[keys.length];
+        int size = 0;
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.keys.length && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j]) : containers[i];
+            if (container.cardinality() > 0) {
+                resultKeys[size] = keys[i];
+                result[size++] = container;
+            }
+        }
+        return new RowBitmap(resultKeys, result, size);
+    }
+
+    /**
+     * Returns the memory retained by the containers, estimated from their lengths
+     */
+    public long estimatedSizeInBytes() {
+        long bytes = 2L * keys.length + 16L * containers.length;
+        for (Container container : containers) {
+            bytes += container instanceof ArrayContainer array ? 2L * array.values.length : 8L * BITMAP_WORDS;
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds rows in ascending order. Not thread safe
+     */
+    public static final class Builder {
+        private char[] keys = new char[4];
+        private Container[] containers = new Container[4];
+        private int size;
+        private int currentKey = -1;
+        private char[] values = new char[16];
+        private long[] words;
+        private int count;
+        private int last = -1;
+
+        public void add(int row) {
+            if (row <= last) {
+                throw new IllegalArgumentException("rows must be added in ascending order");
+            }
+            last = row;
+            int key = row >>> 16;
+            if (key != currentKey) {
+                flush();
+                currentKey = key;
+            }
+            char low = (char) row;
+            if (words != null) {
+                words[low >>> 6] |= 1L << low;
+            } else if (count == ARRAY_LIMIT) {
+                words = new long[BITMAP_WORDS];
+                for (int i = 0; i < count; i++) {
+                    words[values[i] >>> 6] |= 1L << values[i];
+                }
+                words[low >>> 6] |= 1L << low;
+            } else {
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                values[count] = low;
+            }
+            count++;
+        }
+
+        public RowBitmap build() {
+            flush();
+            return new RowBitmap(keys, containers, size);
+        }
+
+        private void flush() {
+            if (count == 0) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = (char) currentKey;
+            containers[size++] = words != null ? new BitmapContainer(words, count)
+                    : new ArrayContainer(Arrays.copyOf(values, count));
+            words = null;
+            count = 0;
+        }
+    }
+
+    /**
+     * The rows of one 65536 row chunk, by their low 16 bits
+     */
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract void forEach(int high, IntConsumer consumer);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        /**
+         * Picks the smaller form for the words: an array up to the limit, the words themselves above it
+         */
+        static Container of(long[] words, int cardinality) {
+            if (cardinality > ARRAY_LIMIT) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int word = 0; word < words.length; word++) {
+                for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                    values[n++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                }
+            }
+            return new ArrayContainer(values);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (char value : values) {
+                consumer.accept(high | value);
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[values.length];
+            int n = 0;
+            if (other instanceof ArrayContainer array) {
+                int j = 0;
+                for (char value : values) {
+                    while (j < array.values.length && array.values[j] < value) {
+                        j++;
+                    }
+                    if (j < array.values.length && array.values[j] == value) {
+                        result[n++] = value;
+                    }
+                }
+            } else {
+                for (char value : values) {
+                    if (other.contains(value)) {
+                        result[n++] = value;
+                    }
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(result, n));
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            char[] others = ((ArrayContainer) other).values;
+            if (values.length + others.length > ARRAY_LIMIT) {
+                long[] words = new long[BITMAP_WORDS];
+                int cardinality = BitmapContainer.set(words, values) + BitmapContainer.set(words, others);
+                return Container.of(words, cardinality);
+            }
+            char[] result = new char[values.length + others.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length || j < others.length) {
+                if (j == others.length || (i < values.length && values[i] < others[j])) {
+                    result[n++] = values[i++];
+                } else if (i == values.length || values[i] > others[j]) {
+                    result[n++] = others[j++];
+                } else {
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(result, n));
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[values.length];
+            int n = 0;
+            for (char value : values) {
+                if (!other.contains(value)) {
+                    result[n++] = value;
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(result, n));
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * Sets the values in the words and returns how many were not set before
+         */
+        static int set(long[] words, char[] values) {
+            int added = 0;
+            for (char value : values) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    words[value >>> 6] |= bit;
+                    added++;
+                }
+            }
+            return added;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int word = 0; word < words.length; word++) {
+                for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                    consumer.accept(high | (word << 6) + Long.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] others = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & others[i];
+                count += Long.bitCount(result[i]);
+            }
+            return Container.of(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer array) {
+                return new BitmapContainer(result, cardinality + set(result, array.values));
+            }
+            long[] others = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] |= others[i];
+                count += Long.bitCount(result[i]);
+            }
+            return new BitmapContainer(result, count);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            int count = cardinality;
+            if (other instanceof ArrayContainer array) {
+                for (char value : array.values) {
+                    long bit = 1L << value;
+                    if ((result[value >>> 6] & bit) != 0) {
+                        result[value >>> 6] &= ~bit;
+                        count--;
+                    }
+                }
+            } else {
+                long[] others = ((BitmapContainer) other).words;
+                count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] &= ~others[i];
+                    count += Long.bitCount(result[i]);
+                }
+            }
+            return Container.of(result, count);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.smallworld.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps each distinct string to a dense int id so repeated values are stored once and rows only keep the id
+ */
+public final class StringDictionary {
+    public static final int NULL_ID = -1;
+
+    private final String[] values;
+    private final Map<String, Integer> ids;
+
+    private StringDictionary(String[] values, Map<String, Integer> ids) {
+        this.values = values;
+        this.ids = ids;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public String get(int id) {
+        return id == NULL_ID ? null : values[id];
+    }
+
+    /**
+     * Returns the id of the value, or {@link #NULL_ID} when it is null or was never seen
+     */
+    public int idOf(String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(value);
+        return id == null ? NULL_ID : id;
+    }
+
+    public List<String> values() {
+        return Arrays.asList(values);
+    }
+
+    long estimatedSizeInBytes() {
+        long bytes = 16L + 4L * values.length;
+        for (String value : values) {
+            // String header and value array, plus the map entry pointing back to the id
+            bytes += 24 + 16 + value.length() + 48;
+        }
+        return bytes;
+    }
+
+    public static final class Builder {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        public int intern(String value) {
+            if (value == null) {
+                return NULL_ID;
+            }
+            return ids.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+
+        public StringDictionary build() {
+            return new StringDictionary(values.toArray(String[]::new), new HashMap<>(ids));
+        }
+    }
+}
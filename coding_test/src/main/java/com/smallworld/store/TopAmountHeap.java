@@ -0,0 +1,184 @@
+package com.smallworld.store;
+
+/**
+ * Keeps the rows with the highest amounts, in cents, seen so far, at most one row per MTN. Backed by a bounded binary
+ * min-heap over parallel primitive arrays, so offering a row costs O(log k) and allocates nothing.
+ * Rows can be offered in any order and at any time, which lets the top rows be maintained as data is appended.
+ * <p>
+ * Equal amounts are ranked by row number, the earlier row first. A transaction with several issues is repeated
+ * with the same amount on several rows; only its first row is kept. Not thread safe
+ */
+public final class TopAmountHeap {
+    private final int capacity;
+    private int size;
+    private final long[] amounts;
+    private final int[] rows;
+    private final int[] mtns;
+    // open addressing set of the MTNs currently in the heap
+    private final int[] mtnSlots;
+    private final boolean[] mtnSlotUsed;
+    private final int mtnMask;
+
+    public TopAmountHeap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.amounts = new long[capacity];
+        this.rows = new int[capacity];
+        this.mtns = new int[capacity];
+        int slots = Integer.highestOneBit(Math.max(4, capacity * 2 - 1)) << 1;
+        this.mtnSlots = new int[slots];
+        this.mtnSlotUsed = new boolean[slots];
+        this.mtnMask = slots - 1;
+    }
+
+    private TopAmountHeap(TopAmountHeap source) {
+        this.capacity = source.capacity;
+        this.size = source.size;
+        this.amounts = source.amounts.clone();
+        this.rows = source.rows.clone();
+        this.mtns = source.mtns.clone();
+        this.mtnSlots = source.mtnSlots.clone();
+        this.mtnSlotUsed = source.mtnSlotUsed.clone();
+        this.mtnMask = source.mtnMask;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Offers a row, returning whether it is now among the top rows
+     */
+    public boolean offer(int row, int mtn, long amount) {
+        if (capacity == 0) {
+            return false;
+        }
+        if (size == capacity && !ranksAbove(amount, row, amounts[0], rows[0])) {
+            return false;
+        }
+        if (containsMtn(mtn)) {
+            return false;
+        }
+        if (size == capacity) {
+            removeMtn(mtns[0]);
+            set(0, amount, row, mtn);
+            siftDown(0);
+        } else {
+            set(size, amount, row, mtn);
+            siftUp(size++);
+        }
+        addMtn(mtn);
+        return true;
+    }
+
+    /**
+     * Returns the kept rows, highest amount first
+     */
+    public int[] rowsDescending() {
+        // heap sort on a copy: the root is always the weakest remaining row, so the result fills from the back
+        TopAmountHeap remaining = new TopAmountHeap(this);
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = remaining.rows[0];
+            remaining.size--;
+            remaining.set(0, remaining.amounts[remaining.size], remaining.rows[remaining.size], remaining.mtns[remaining.size]);
+            remaining.siftDown(0);
+        }
+        return result;
+    }
+
+    private static boolean ranksAbove(long amount, int row, long otherAmount, int otherRow) {
+        int comparison = Long.compare(amount, otherAmount);
+        return comparison > 0 || (comparison == 0 && row < otherRow);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(amounts[parent], rows[parent], amounts[index], rows[index])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int weakest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && ranksAbove(amounts[weakest], rows[weakest], amounts[left], rows[left])) {
+                weakest = left;
+            }
+            if (right < size && ranksAbove(amounts[weakest], rows[weakest], amounts[right], rows[right])) {
+                weakest = right;
+            }
+            if (weakest == index) {
+                return;
+            }
+            swap(index, weakest);
+            index = weakest;
+        }
+    }
+
+    private void set(int index, long amount, int row, int mtn) {
+        amounts[index] = amount;
+        rows[index] = row;
+        mtns[index] = mtn;
+    }
+
+    private void swap(int a, int b) {
+        long amount = amounts[a];
+        int row = rows[a];
+        int mtn = mtns[a];
+        set(a, amounts[b], rows[b], mtns[b]);
+        set(b, amount, row, mtn);
+    }
+
+    private boolean containsMtn(int mtn) {
+        for (int slot = hash(mtn); mtnSlotUsed[slot]; slot = (slot + 1) & mtnMask) {
+            if (mtnSlots[slot] == mtn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addMtn(int mtn) {
+        int slot = hash(mtn);
+        while (mtnSlotUsed[slot]) {
+            slot = (slot + 1) & mtnMask;
+        }
+        mtnSlots[slot] = mtn;
+        mtnSlotUsed[slot] = true;
+    }
+
+    private void removeMtn(int mtn) {
+        int slot = hash(mtn);
+        while (!mtnSlotUsed[slot] || mtnSlots[slot] != mtn) {
+            slot = (slot + 1) & mtnMask;
+        }
+        // backward shift deletion keeps every remaining key reachable from its home slot without tombstones
+        int hole = slot;
+        for (int next = (hole + 1) & mtnMask; mtnSlotUsed[next]; next = (next + 1) & mtnMask) {
+            int home = hash(mtnSlots[next]);
+            if (((next - home) & mtnMask) >= ((next - hole) & mtnMask)) {
+                mtnSlots[hole] = mtnSlots[next];
+                hole = next;
+            }
+        }
+        mtnSlotUsed[hole] = false;
+    }
+
+    private int hash(int mtn) {
+        int h = mtn * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mtnMask;
+    }
+}
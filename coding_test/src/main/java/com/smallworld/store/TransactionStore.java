@@ -0,0 +1,490 @@
+package com.smallworld.store;
+
+import com.smallworld.loader.SkippedRows;
+import com.smallworld.loader.TransactionSink;
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column oriented, immutable storage of transactions. Every field lives in its own fixed-width column,
+ * names and issue messages are dictionary encoded and the nullable flags are kept in bitsets, so a row
+ * costs a few dozen bytes instead of a {@link Transaction} with its boxed fields and strings.
+ * <p>
+ * The source repeats a transaction on one row per issue. The store is normalized: it keeps one transaction
+ * row per MTN and an issue table holding the issue fields of every source row, grouped by the transaction
+ * they belong to. Rows reusing an MTN with a different amount, client or age are kept as separate
+ * transactions rather than merged, so no amount is dropped. A row without an issue (no id, marked solved,
+ * no message) adds nothing to the issue table.
+ * <p>
+ * Amounts are kept as cents, see {@link Money}.
+ * <p>
+ * Columns are NIO buffers: wrapped arrays when built on the heap, direct buffers when built off heap and views
+ * of mapped file pages when opened through {@link TransactionStoreFile}. Reading a row is an indexed get on
+ * each column in every case, so scanning an off-heap store allocates nothing per row
+ */
+public final class TransactionStore {
+    public static final short NO_AGE = -1;
+
+    private final int size;
+    private final IntBuffer mtns;
+    private final LongBuffer amounts;
+    private final ShortBuffer senderAges;
+    private final ShortBuffer beneficiaryAges;
+    private final IntBuffer senderIds;
+    private final IntBuffer beneficiaryIds;
+    // the issue table: issues of transaction row n are issueOffsets[n] until issueOffsets[n + 1]
+    private final int issueCount;
+    private final IntBuffer issueOffsets;
+    private final IntBuffer issueIds;
+    private final IntBuffer issueMessageIds;
+    // bitsets as 64-bit words, bit n of word n / 64 flags issue n
+    private final LongBuffer issuePresent;
+    private final LongBuffer issueOpen;
+    private final LongBuffer issueSolved;
+    private final StringDictionary names;
+    private final StringDictionary issueMessages;
+
+    TransactionStore(int size, IntBuffer mtns, LongBuffer amounts, ShortBuffer senderAges,
+                     ShortBuffer beneficiaryAges, IntBuffer senderIds, IntBuffer beneficiaryIds, int issueCount,
+                     IntBuffer issueOffsets, IntBuffer issueIds, IntBuffer issueMessageIds, LongBuffer issuePresent,
+                     LongBuffer issueOpen, LongBuffer issueSolved, StringDictionary names,
+                     StringDictionary issueMessages) {
+        this.size = size;
+        this.mtns = mtns;
+        this.amounts = amounts;
+        this.senderAges = senderAges;
+        this.beneficiaryAges = beneficiaryAges;
+        this.senderIds = senderIds;
+        this.beneficiaryIds = beneficiaryIds;
+        this.issueCount = issueCount;
+        this.issueOffsets = issueOffsets;
+        this.issueIds = issueIds;
+        this.issueMessageIds = issueMessageIds;
+        this.issuePresent = issuePresent;
+        this.issueOpen = issueOpen;
+        this.issueSolved = issueSolved;
+        this.names = names;
+        this.issueMessages = issueMessages;
+    }
+
+    /**
+     * Returns the number of transactions, one per MTN unless rows conflict
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getMtn(int row) {
+        return mtns.get(row);
+    }
+
+    public long getAmountCents(int row) {
+        return amounts.get(row);
+    }
+
+    public int getSenderId(int row) {
+        return senderIds.get(row);
+    }
+
+    public int getBeneficiaryId(int row) {
+        return beneficiaryIds.get(row);
+    }
+
+    public String getSenderFullName(int row) {
+        return names.get(senderIds.get(row));
+    }
+
+    public String getBeneficiaryFullName(int row) {
+        return names.get(beneficiaryIds.get(row));
+    }
+
+    public short getSenderAge(int row) {
+        return senderAges.get(row);
+    }
+
+    public short getBeneficiaryAge(int row) {
+        return beneficiaryAges.get(row);
+    }
+
+    /**
+     * Returns the number of entries in the issue table
+     */
+    public int issueCount() {
+        return issueCount;
+    }
+
+    /**
+     * Returns the first issue of the transaction row; its issues are contiguous in the issue table
+     */
+    public int getFirstIssue(int row) {
+        return issueOffsets.get(row);
+    }
+
+    public int getIssueCount(int row) {
+        return issueOffsets.get(row + 1) - issueOffsets.get(row);
+    }
+
+    /**
+     * Counts the issues of the transaction row that are flagged as not solved
+     */
+    public int getOpenIssueCount(int row) {
+        int open = 0;
+        for (int issue = issueOffsets.get(row), end = issueOffsets.get(row + 1); issue < end; issue++) {
+            if (isSet(issueOpen, issue)) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    public boolean hasIssueId(int issue) {
+        return isSet(issuePresent, issue);
+    }
+
+    public int getIssueId(int issue) {
+        return issueIds.get(issue);
+    }
+
+    /**
+     * Returns whether the issue is flagged as not solved. An issue with no flag at all is neither open nor solved
+     */
+    public boolean isIssueOpen(int issue) {
+        return isSet(issueOpen, issue);
+    }
+
+    public boolean isIssueSolved(int issue) {
+        return isSet(issueSolved, issue);
+    }
+
+    public String getIssueMessage(int issue) {
+        return issueMessages.get(issueMessageIds.get(issue));
+    }
+
+    public int getIssueMessageId(int issue) {
+        return issueMessageIds.get(issue);
+    }
+
+    public StringDictionary getNames() {
+        return names;
+    }
+
+    public StringDictionary getIssueMessages() {
+        return issueMessages;
+    }
+
+    /**
+     * Rebuilds the transaction as a {@link Transaction} carrying its first issue, or no issue when it has none.
+     * Meant for the API boundary only, queries should read the columns
+     */
+    public Transaction get(int row) {
+        Transaction transaction = new Transaction();
+        transaction.setMtn(mtns.get(row));
+        transaction.setAmount(Money.toDouble(amounts.get(row)));
+        transaction.setSenderFullName(getSenderFullName(row));
+        short senderAge = senderAges.get(row);
+        transaction.setSenderAge(senderAge == NO_AGE ? null : (int) senderAge);
+        transaction.setBeneficiaryFullName(getBeneficiaryFullName(row));
+        short beneficiaryAge = beneficiaryAges.get(row);
+        transaction.setBeneficiaryAge(beneficiaryAge == NO_AGE ? null : (int) beneficiaryAge);
+        int issue = issueOffsets.get(row);
+        if (issue == issueOffsets.get(row + 1)) {
+            transaction.setIssueSolved(Boolean.TRUE);
+            return transaction;
+        }
+        transaction.setIssueId(isSet(issuePresent, issue) ? issueIds.get(issue) : null);
+        transaction.setIssueSolved(isSet(issueOpen, issue) ? Boolean.FALSE : isSet(issueSolved, issue) ? Boolean.TRUE : null);
+        transaction.setIssueMessage(getIssueMessage(issue));
+        return transaction;
+    }
+
+    /**
+     * Returns a read only list view of the transactions that materialises each one only when it is accessed
+     */
+    public List<Transaction> asTransactions() {
+        return new TransactionListView();
+    }
+
+    /**
+     * Returns the memory retained by the columns and dictionaries, estimated from their lengths. For an
+     * off-heap store the columns are outside the heap, see {@link #estimatedHeapSizeInBytes}
+     */
+    public long estimatedSizeInBytes() {
+        return estimatedColumnSizeInBytes() + names.estimatedSizeInBytes() + issueMessages.estimatedSizeInBytes();
+    }
+
+    /**
+     * Returns the part of {@link #estimatedSizeInBytes} on the heap: only the dictionaries when the columns are
+     * off heap
+     */
+    public long estimatedHeapSizeInBytes() {
+        return estimatedSizeInBytes() - (isOffHeap() ? estimatedColumnSizeInBytes() : 0);
+    }
+
+    /**
+     * Returns whether the columns are outside the heap, built off heap or mapped from a file
+     */
+    public boolean isOffHeap() {
+        return mtns.isDirect();
+    }
+
+    private long estimatedColumnSizeInBytes() {
+        long bytes = 4L * size * 3 + 8L * size + 2L * size * 2 + 4L * (size + 1) + 4L * issueCount * 2;
+        return bytes + 8L * (issuePresent.capacity() + issueOpen.capacity() + issueSolved.capacity());
+    }
+
+    private static boolean isSet(LongBuffer words, int index) {
+        int word = index >>> 6;
+        return word < words.limit() && (words.get(word) & (1L << index)) != 0;
+    }
+
+    private final class TransactionListView extends AbstractList<Transaction> implements RandomAccess {
+        @Override
+        public Transaction get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return TransactionStore.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Appends source rows, folding each row that repeats the MTN and transaction fields of an earlier one into
+     * that transaction as another issue. An amount that is not a whole number of cents fails the load or skips
+     * the row, see {@link SkippedRows}. Not thread safe
+     */
+    public static final class Builder implements TransactionSink {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final byte ISSUE_PRESENT = 1;
+        private static final byte ISSUE_OPEN = 2;
+        private static final byte ISSUE_SOLVED = 4;
+
+        private int size;
+        private int[] mtns = new int[INITIAL_CAPACITY];
+        private long[] amounts = new long[INITIAL_CAPACITY];
+        private short[] senderAges = new short[INITIAL_CAPACITY];
+        private short[] beneficiaryAges = new short[INITIAL_CAPACITY];
+        private int[] senderIds = new int[INITIAL_CAPACITY];
+        private int[] beneficiaryIds = new int[INITIAL_CAPACITY];
+        private final MtnIndex rowsByMtn = new MtnIndex(INITIAL_CAPACITY);
+        // issues in load order, grouped by transaction when the store is built
+        private int issueCount;
+        private int[] issueRows = new int[INITIAL_CAPACITY];
+        private int[] issueIds = new int[INITIAL_CAPACITY];
+        private int[] issueMessageIds = new int[INITIAL_CAPACITY];
+        private byte[] issueFlags = new byte[INITIAL_CAPACITY];
+        private final StringDictionary.Builder names = new StringDictionary.Builder();
+        private final StringDictionary.Builder issueMessages = new StringDictionary.Builder();
+        private final SkippedRows skippedRows;
+
+        /**
+         * Creates a builder that fails on a row whose amount is not a whole number of cents
+         */
+        public Builder() {
+            this(false);
+        }
+
+        /**
+         * Creates a builder that skips and counts the rows whose amount is not a whole number of cents instead
+         * of failing on them, see {@link SkippedRows}
+         */
+        public Builder(boolean skipInexactAmounts) {
+            skippedRows = new SkippedRows(skipInexactAmounts);
+        }
+
+        /**
+         * Adds a row, failing or skipping it when its amount is not a whole number of cents, see
+         * {@link SkippedRows}
+         */
+        @Override
+        public void accept(Transaction transaction) {
+            if (!skippedRows.accept(transaction)) {
+                return;
+            }
+            int mtn = transaction.getMtn();
+            long amount = Money.toCents(transaction.getAmount());
+            short senderAge = toAge(transaction.getSenderAge());
+            short beneficiaryAge = toAge(transaction.getBeneficiaryAge());
+            int senderId = names.intern(transaction.getSenderFullName());
+            int beneficiaryId = names.intern(transaction.getBeneficiaryFullName());
+            int row = rowsByMtn.get(mtn);
+            if (row == MtnIndex.NO_ROW || amounts[row] != amount || senderIds[row] != senderId
+                    || beneficiaryIds[row] != beneficiaryId || senderAges[row] != senderAge
+                    || beneficiaryAges[row] != beneficiaryAge) {
+                if (size == mtns.length) {
+                    grow();
+                }
+                row = size++;
+                mtns[row] = mtn;
+                amounts[row] = amount;
+                senderAges[row] = senderAge;
+                beneficiaryAges[row] = beneficiaryAge;
+                senderIds[row] = senderId;
+                beneficiaryIds[row] = beneficiaryId;
+                rowsByMtn.put(mtn, row);
+            }
+            addIssue(row, transaction.getIssueId(), transaction.getIssueSolved(), transaction.getIssueMessage());
+        }
+
+        public long getSkippedRows() {
+            return skippedRows.count();
+        }
+
+        public TransactionStore build() {
+            return build(false);
+        }
+
+        /**
+         * Builds the store with its columns in direct buffers, outside the heap and out of the garbage
+         * collector's reach; only the dictionaries stay on the heap. Each column is copied out of the builder's
+         * arrays as it is built, so the load peaks at about the same memory as {@link #build}. The memory is
+         * released when the store is no longer reachable, and counts against {@code -XX:MaxDirectMemorySize}
+         */
+        public TransactionStore buildOffHeap() {
+            return build(true);
+        }
+
+        private TransactionStore build(boolean offHeap) {
+            // counting sort of the issues by transaction row, stable so each transaction keeps its load order
+            int[] offsets = new int[size + 1];
+            for (int issue = 0; issue < issueCount; issue++) {
+                offsets[issueRows[issue] + 1]++;
+            }
+            for (int row = 0; row < size; row++) {
+                offsets[row + 1] += offsets[row];
+            }
+            int[] next = Arrays.copyOf(offsets, size);
+            int[] sortedIds = new int[issueCount];
+            int[] sortedMessageIds = new int[issueCount];
+            BitSet present = new BitSet(issueCount);
+            BitSet open = new BitSet(issueCount);
+            BitSet solved = new BitSet(issueCount);
+            for (int issue = 0; issue < issueCount; issue++) {
+                int position = next[issueRows[issue]]++;
+                sortedIds[position] = issueIds[issue];
+                sortedMessageIds[position] = issueMessageIds[issue];
+                present.set(position, (issueFlags[issue] & ISSUE_PRESENT) != 0);
+                open.set(position, (issueFlags[issue] & ISSUE_OPEN) != 0);
+                solved.set(position, (issueFlags[issue] & ISSUE_SOLVED) != 0);
+            }
+            return new TransactionStore(size,
+                    copy(mtns, size, offHeap),
+                    copy(amounts, size, offHeap),
+                    copy(senderAges, size, offHeap),
+                    copy(beneficiaryAges, size, offHeap),
+                    copy(senderIds, size, offHeap),
+                    copy(beneficiaryIds, size, offHeap),
+                    issueCount,
+                    column(offsets, offHeap),
+                    column(sortedIds, offHeap),
+                    column(sortedMessageIds, offHeap),
+                    column(present.toLongArray(), offHeap),
+                    column(open.toLongArray(), offHeap),
+                    column(solved.toLongArray(), offHeap),
+                    names.build(),
+                    issueMessages.build());
+        }
+
+        /**
+         * Copies the first length values of one of the builder's growing arrays, which the builder may still write to
+         */
+        private static IntBuffer copy(int[] values, int length, boolean offHeap) {
+            if (!offHeap) {
+                return IntBuffer.wrap(Arrays.copyOf(values, length));
+            }
+            return allocateDirect(length, Integer.BYTES).asIntBuffer().put(0, values, 0, length);
+        }
+
+        private static LongBuffer copy(long[] values, int length, boolean offHeap) {
+            if (!offHeap) {
+                return LongBuffer.wrap(Arrays.copyOf(values, length));
+            }
+            return allocateDirect(length, Long.BYTES).asLongBuffer().put(0, values, 0, length);
+        }
+
+        private static ShortBuffer copy(short[] values, int length, boolean offHeap) {
+            if (!offHeap) {
+                return ShortBuffer.wrap(Arrays.copyOf(values, length));
+            }
+            return allocateDirect(length, Short.BYTES).asShortBuffer().put(0, values, 0, length);
+        }
+
+        /**
+         * Turns an array built for the store into a column, wrapping it rather than copying it on the heap
+         */
+        private static IntBuffer column(int[] values, boolean offHeap) {
+            return offHeap ? copy(values, values.length, true) : IntBuffer.wrap(values);
+        }
+
+        private static LongBuffer column(long[] values, boolean offHeap) {
+            return offHeap ? copy(values, values.length, true) : LongBuffer.wrap(values);
+        }
+
+        private static ByteBuffer allocateDirect(int length, int width) {
+            return ByteBuffer.allocateDirect(Math.multiplyExact(length, width)).order(ByteOrder.nativeOrder());
+        }
+
+        private void addIssue(int row, Integer issueId, Boolean issueSolved, String issueMessage) {
+            if (issueId == null && Boolean.TRUE.equals(issueSolved) && issueMessage == null) {
+                return;
+            }
+            if (issueCount == issueRows.length) {
+                growIssues();
+            }
+            int issue = issueCount++;
+            issueRows[issue] = row;
+            issueIds[issue] = issueId == null ? 0 : issueId;
+            issueMessageIds[issue] = issueMessages.intern(issueMessage);
+            byte flags = issueId == null ? 0 : ISSUE_PRESENT;
+            if (Boolean.FALSE.equals(issueSolved)) {
+                flags |= ISSUE_OPEN;
+            } else if (Boolean.TRUE.equals(issueSolved)) {
+                flags |= ISSUE_SOLVED;
+            }
+            issueFlags[issue] = flags;
+        }
+
+        private void grow() {
+            int capacity = mtns.length + (mtns.length >> 1);
+            mtns = Arrays.copyOf(mtns, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            senderAges = Arrays.copyOf(senderAges, capacity);
+            beneficiaryAges = Arrays.copyOf(beneficiaryAges, capacity);
+            senderIds = Arrays.copyOf(senderIds, capacity);
+            beneficiaryIds = Arrays.copyOf(beneficiaryIds, capacity);
+        }
+
+        private void growIssues() {
+            int capacity = issueRows.length + (issueRows.length >> 1);
+            issueRows = Arrays.copyOf(issueRows, capacity);
+            issueIds = Arrays.copyOf(issueIds, capacity);
+            issueMessageIds = Arrays.copyOf(issueMessageIds, capacity);
+            issueFlags = Arrays.copyOf(issueFlags, capacity);
+        }
+
+        private static short toAge(Integer age) {
+            if (age == null) {
+                return NO_AGE;
+            }
+            if (age < 0 || age > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Age out of range: " + age);
+            }
+            return age.shortValue();
+        }
+    }
+}
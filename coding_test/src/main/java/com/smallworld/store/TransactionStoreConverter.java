@@ -0,0 +1,80 @@
+package com.smallworld.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.loader.LoadStatistics;
+import com.smallworld.loader.ParallelTransactionReader;
+import com.smallworld.loader.TransactionSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Converts a JSON export into the binary {@link TransactionStoreFile} format. Used by the mapped storage on
+ * its first load and runnable on its own to convert ahead of deployment:
+ * {@code java -cp <classpath> com.smallworld.store.TransactionStoreConverter transactions.json [transactions.json.bin]}
+ */
+@Slf4j
+public final class TransactionStoreConverter {
+    public static final String EXTENSION = ".bin";
+
+    private TransactionStoreConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: TransactionStoreConverter <transactions.json> [<output.bin>]");
+            System.exit(2);
+        }
+        Path json = Path.of(args[0]);
+        Path binary = args.length == 2 ? Path.of(args[1]) : defaultTarget(json);
+        TransactionStore store = convert(json, binary);
+        System.out.printf("wrote %d transactions to %s (%d bytes)%n", store.size(), binary, Files.size(binary));
+    }
+
+    /**
+     * Returns where the binary copy of a JSON file goes when no location is configured: next to it, with
+     * {@value #EXTENSION} appended
+     */
+    public static Path defaultTarget(Path json) {
+        return json.resolveSibling(json.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Returns where the binary copy of a source goes when no location is configured: next to its file or
+     * directory, with {@value #EXTENSION} appended
+     */
+    public static Path defaultTarget(TransactionSource source) {
+        return defaultTarget(source.location());
+    }
+
+    /**
+     * Parses the JSON file, writes it to the binary target and returns the target opened as a mapped store
+     */
+    public static TransactionStore convert(Path json, Path binary) throws IOException {
+        return convert(TransactionSource.of(json), binary,
+                new ParallelTransactionReader(new ObjectMapper(), 0, ParallelTransactionReader.DEFAULT_SPLIT_SIZE),
+                false);
+    }
+
+    /**
+     * Parses the files of the source, writes them to the binary target and returns the target opened as a
+     * mapped store. The header records the total size and latest modification of the files. Rows whose amount is
+     * not a whole number of cents fail the conversion unless {@code skipInexactAmounts} is set
+     */
+    public static TransactionStore convert(TransactionSource source, Path binary, ParallelTransactionReader reader,
+                                           boolean skipInexactAmounts) throws IOException {
+        TransactionSource.Fingerprint fingerprint = source.fingerprint();
+        if (fingerprint == null) {
+            throw new IOException("cannot read " + source);
+        }
+        TransactionStore.Builder builder = new TransactionStore.Builder(skipInexactAmounts);
+        LoadStatistics statistics = reader.read(source, builder);
+        long start = System.nanoTime();
+        TransactionStoreFile.write(builder.build(), binary, fingerprint.length(), fingerprint.lastModifiedMillis());
+        log.info("parsed {} transactions in {} ms, skipped {} for their amounts, wrote {} in {} ms", statistics.rows(),
+                statistics.elapsedMillis(), builder.getSkippedRows(), binary, (System.nanoTime() - start) / 1_000_000);
+        return TransactionStoreFile.open(binary, false);
+    }
+}
@@ -0,0 +1,359 @@
+package com.smallworld.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary file format for a {@link TransactionStore}, opened with {@link FileChannel#map} so the columns are
+ * read straight from the mapped pages and the page cache is shared by every process mapping the same file.
+ * <p>
+ * Layout, little endian: a {@value #HEADER_SIZE} byte header holding the magic, the schema version, the
+ * transaction and issue counts, the size and modification time of the source file, a CRC32C of the body, a
+ * table of section offsets and lengths, and a CRC32C of the header itself. The body holds one section per
+ * column, each aligned to 8 bytes: the fixed-width transaction columns, the issue table as its per
+ * transaction offsets, fixed-width columns and three flag bitsets as 64-bit words, then the two string
+ * dictionaries as a count, count + 1 byte offsets and the UTF-8 bytes.
+ * <p>
+ * Version 3 stores the normalized transaction and issue tables with amounts as cents in a 64-bit integer
+ * column. Version 2 files held the amounts as doubles and version 1 files one row per issue; both are
+ * rejected, which makes the services convert the source again
+ */
+public final class TransactionStoreFile {
+    public static final int VERSION = 3;
+    static final int HEADER_SIZE = 512;
+
+    private static final long MAGIC = 0x50414e5358544d53L; // "SMTXSNAP" read little endian
+    private static final int MTNS = 0;
+    private static final int AMOUNTS = 1;
+    private static final int SENDER_AGES = 2;
+    private static final int BENEFICIARY_AGES = 3;
+    private static final int SENDER_IDS = 4;
+    private static final int BENEFICIARY_IDS = 5;
+    private static final int ISSUE_OFFSETS = 6;
+    private static final int ISSUE_IDS = 7;
+    private static final int ISSUE_MESSAGE_IDS = 8;
+    private static final int ISSUE_PRESENT = 9;
+    private static final int ISSUE_OPEN = 10;
+    private static final int ISSUE_SOLVED = 11;
+    private static final int NAMES = 12;
+    private static final int ISSUE_MESSAGES = 13;
+    private static final int SECTIONS = 14;
+    // magic, version, section count, rows, issues, source length, source modification time, body checksum
+    private static final int SECTION_TABLE_OFFSET = 56;
+    private static final int HEADER_CHECKSUM_OFFSET = SECTION_TABLE_OFFSET + SECTIONS * 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    // a single mapping cannot exceed 2 GB, the checksum is verified in slices below that
+    private static final long CHECKSUM_SLICE = 1L << 30;
+
+    private TransactionStoreFile() {
+    }
+
+    /**
+     * What the header says about a file, readable without mapping or checking the body
+     */
+    public record Header(int version, int rows, int issues, long sourceLength, long sourceLastModifiedMillis,
+                         long bodyChecksum) {
+
+        /**
+         * Returns whether the file was converted from a source with this size and modification time
+         */
+        public boolean matches(long length, long lastModifiedMillis) {
+            return sourceLength == length && sourceLastModifiedMillis == lastModifiedMillis;
+        }
+    }
+
+    /**
+     * Writes the store to the target through a temporary file moved into place once complete, so a reader
+     * never maps a partially written file. The source size and modification time are recorded in the header
+     */
+    public static void write(TransactionStore store, Path target, long sourceLength, long sourceLastModifiedMillis)
+            throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        long[] sections = new long[SECTIONS * 2];
+        long bodyChecksum;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BodyWriter body = new BodyWriter(channel);
+            int rows = store.size();
+            body.section(sections, MTNS);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(4).putInt(store.getMtn(row));
+            }
+            body.section(sections, AMOUNTS);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(8).putLong(store.getAmountCents(row));
+            }
+            body.section(sections, SENDER_AGES);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(2).putShort(store.getSenderAge(row));
+            }
+            body.section(sections, BENEFICIARY_AGES);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(2).putShort(store.getBeneficiaryAge(row));
+            }
+            body.section(sections, SENDER_IDS);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(4).putInt(store.getSenderId(row));
+            }
+            body.section(sections, BENEFICIARY_IDS);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(4).putInt(store.getBeneficiaryId(row));
+            }
+            int issues = store.issueCount();
+            body.section(sections, ISSUE_OFFSETS);
+            for (int row = 0; row < rows; row++) {
+                body.buffer(4).putInt(store.getFirstIssue(row));
+            }
+            body.buffer(4).putInt(issues);
+            body.section(sections, ISSUE_IDS);
+            for (int issue = 0; issue < issues; issue++) {
+                body.buffer(4).putInt(store.hasIssueId(issue) ? store.getIssueId(issue) : 0);
+            }
+            body.section(sections, ISSUE_MESSAGE_IDS);
+            for (int issue = 0; issue < issues; issue++) {
+                body.buffer(4).putInt(store.getIssueMessageId(issue));
+            }
+            body.section(sections, ISSUE_PRESENT);
+            writeBits(body, store, issues, ISSUE_PRESENT);
+            body.section(sections, ISSUE_OPEN);
+            writeBits(body, store, issues, ISSUE_OPEN);
+            body.section(sections, ISSUE_SOLVED);
+            writeBits(body, store, issues, ISSUE_SOLVED);
+            body.section(sections, NAMES);
+            writeDictionary(body, store.getNames());
+            body.section(sections, ISSUE_MESSAGES);
+            writeDictionary(body, store.getIssueMessages());
+            body.section(sections, SECTIONS);
+            bodyChecksum = body.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).putInt(SECTIONS).putLong(rows).putLong(store.issueCount())
+                    .putLong(sourceLength).putLong(sourceLastModifiedMillis).putLong(bodyChecksum);
+            for (long value : sections) {
+                header.putLong(value);
+            }
+            header.putLong(HEADER_CHECKSUM_OFFSET, checksum(header, HEADER_CHECKSUM_OFFSET));
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads and validates the header only
+     */
+    public static Header readHeader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readHeader(channel, file).header;
+        }
+    }
+
+    /**
+     * Maps the file and returns a store reading its columns from the mapped pages. Only the string
+     * dictionaries are decoded onto the heap. The body checksum costs one sequential read of the file and
+     * can be skipped when the file is trusted
+     */
+    public static TransactionStore open(Path file, boolean verifyChecksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ParsedHeader parsed = readHeader(channel, file);
+            if (verifyChecksum) {
+                long actual = bodyChecksum(channel);
+                if (actual != parsed.header.bodyChecksum()) {
+                    throw new IOException(file + " is corrupt: body checksum mismatch");
+                }
+            }
+            int rows = parsed.header.rows();
+            return new TransactionStore(rows,
+                    map(channel, parsed, MTNS).asIntBuffer(),
+                    map(channel, parsed, AMOUNTS).asLongBuffer(),
+                    map(channel, parsed, SENDER_AGES).asShortBuffer(),
+                    map(channel, parsed, BENEFICIARY_AGES).asShortBuffer(),
+                    map(channel, parsed, SENDER_IDS).asIntBuffer(),
+                    map(channel, parsed, BENEFICIARY_IDS).asIntBuffer(),
+                    parsed.header.issues(),
+                    map(channel, parsed, ISSUE_OFFSETS).asIntBuffer(),
+                    map(channel, parsed, ISSUE_IDS).asIntBuffer(),
+                    map(channel, parsed, ISSUE_MESSAGE_IDS).asIntBuffer(),
+                    map(channel, parsed, ISSUE_PRESENT).asLongBuffer(),
+                    map(channel, parsed, ISSUE_OPEN).asLongBuffer(),
+                    map(channel, parsed, ISSUE_SOLVED).asLongBuffer(),
+                    readDictionary(map(channel, parsed, NAMES)),
+                    readDictionary(map(channel, parsed, ISSUE_MESSAGES)));
+        }
+    }
+
+    private record ParsedHeader(Header header, long[] sections) {
+    }
+
+    private static ParsedHeader readHeader(FileChannel channel, Path file) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException(file + " is not a transaction store file: too short");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read until the header is complete
+        }
+        if (header.getLong(0) != MAGIC) {
+            throw new IOException(file + " is not a transaction store file: bad magic");
+        }
+        if (header.getLong(HEADER_CHECKSUM_OFFSET) != checksum(header, HEADER_CHECKSUM_OFFSET)) {
+            throw new IOException(file + " is corrupt: header checksum mismatch");
+        }
+        int version = header.getInt(8);
+        if (version != VERSION || header.getInt(12) != SECTIONS) {
+            throw new IOException(file + " has schema version " + version + ", expected " + VERSION);
+        }
+        long rows = header.getLong(16);
+        long issues = header.getLong(24);
+        long[] sections = new long[SECTIONS * 2];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = header.getLong(SECTION_TABLE_OFFSET + 8 * i);
+        }
+        for (int section = 0; section < SECTIONS; section++) {
+            if (sections[2 * section] < HEADER_SIZE || sections[2 * section] + sections[2 * section + 1] > channel.size()) {
+                throw new IOException(file + " is corrupt: section " + section + " is out of bounds");
+            }
+        }
+        return new ParsedHeader(new Header(version, Math.toIntExact(rows), Math.toIntExact(issues),
+                header.getLong(32), header.getLong(40), header.getLong(48)), sections);
+    }
+
+    private static ByteBuffer map(FileChannel channel, ParsedHeader parsed, int section) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, parsed.sections[2 * section],
+                parsed.sections[2 * section + 1]);
+        return mapped.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long bodyChecksum(FileChannel channel) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = HEADER_SIZE; position < channel.size(); position += CHECKSUM_SLICE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(CHECKSUM_SLICE, channel.size() - position)));
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(0).limit(length));
+        return crc.getValue();
+    }
+
+    private static void writeBits(BodyWriter body, TransactionStore store, int issues, int section) throws IOException {
+        for (int first = 0; first < issues; first += 64) {
+            long word = 0;
+            for (int issue = first; issue < issues && issue < first + 64; issue++) {
+                boolean set = switch (section) {
+                    case ISSUE_PRESENT -> store.hasIssueId(issue);
+                    case ISSUE_OPEN -> store.isIssueOpen(issue);
+                    default -> store.isIssueSolved(issue);
+                };
+                if (set) {
+                    word |= 1L << issue;
+                }
+            }
+            body.buffer(8).putLong(word);
+        }
+    }
+
+    private static void writeDictionary(BodyWriter body, StringDictionary dictionary) throws IOException {
+        List<String> values = dictionary.values();
+        byte[][] encoded = new byte[values.size()][];
+        body.buffer(4).putInt(values.size());
+        int offset = 0;
+        body.buffer(4).putInt(offset);
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+            offset += encoded[i].length;
+            body.buffer(4).putInt(offset);
+        }
+        for (byte[] value : encoded) {
+            for (int start = 0; start < value.length; start += WRITE_BUFFER_SIZE) {
+                int length = Math.min(WRITE_BUFFER_SIZE, value.length - start);
+                body.buffer(length).put(value, start, length);
+            }
+        }
+    }
+
+    private static StringDictionary readDictionary(ByteBuffer section) {
+        int count = section.getInt(0);
+        int bytesStart = 4 + 4 * (count + 1);
+        StringDictionary.Builder builder = new StringDictionary.Builder();
+        byte[] value = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int start = section.getInt(4 + 4 * i);
+            int length = section.getInt(8 + 4 * i) - start;
+            if (value.length < length) {
+                value = new byte[length];
+            }
+            section.get(bytesStart + start, value, 0, length);
+            builder.intern(new String(value, 0, length, StandardCharsets.UTF_8));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Streams the body through one direct buffer, tracking section boundaries and the running checksum
+     */
+    private static final class BodyWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private long position = HEADER_SIZE;
+        private int currentSection = -1;
+        private long sectionStart;
+
+        BodyWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Closes the current section, pads to 8 bytes and starts the next one
+         */
+        void section(long[] sections, int section) throws IOException {
+            long written = position + buffer.position();
+            if (currentSection >= 0) {
+                sections[2 * currentSection] = sectionStart;
+                sections[2 * currentSection + 1] = written - sectionStart;
+            }
+            while (written % 8 != 0) {
+                buffer(1).put((byte) 0);
+                written++;
+            }
+            currentSection = section;
+            sectionStart = written;
+        }
+
+        ByteBuffer buffer(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        long finish() throws IOException {
+            flush();
+            return crc.getValue();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
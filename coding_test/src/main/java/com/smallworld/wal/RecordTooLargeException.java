@@ -0,0 +1,13 @@
+package com.smallworld.wal;
+
+import java.io.IOException;
+
+/**
+ * Rejects a transaction whose encoded record is larger than the log accepts. Nothing of the append was logged
+ */
+public class RecordTooLargeException extends IOException {
+
+    public RecordTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,634 @@
+package com.smallworld.wal;
+
+import com.smallworld.loader.TransactionSink;
+import com.smallworld.loader.TransactionSource;
+import com.smallworld.model.Transaction;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log of the transactions appended at runtime, so they survive a restart or a reload of the data
+ * they were appended to. Enabled with {@code datasource.wal.enabled=true}.
+ * <p>
+ * Layout, little endian: a {@value #HEADER_SIZE} byte header holding the magic, the format version, the file
+ * kind, the sequence number the records follow and a CRC32C of the header, then one record per transaction: the
+ * payload length, the sequence number, the {@link TransactionRecord} payload and a CRC32C of the three.
+ * <p>
+ * One writer thread writes the appends in groups. Every append queued while the previous group was being forced
+ * to disk joins the next one, up to {@code max-batch} records, so concurrent appends share a single
+ * {@link FileChannel#force}. An append returns once its group is durable. On open, a torn or corrupt record at
+ * the end of the log, left by a crash in the middle of a write, is cut off. A bad record followed by a valid one
+ * is damage rather than a crash, and fails the open instead of dropping the records after it.
+ * <p>
+ * {@link #compact()} folds the log into a checkpoint file next to it, written in the same format, and restarts
+ * the log with the records appended meanwhile. The checkpoint header records the last sequence number it holds,
+ * so log records a crash left behind after a checkpoint was written are skipped on replay
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "datasource.wal.enabled", havingValue = "true")
+public class TransactionLog implements Closeable {
+    public static final String EXTENSION = ".wal";
+    public static final String CHECKPOINT_EXTENSION = ".checkpoint";
+    static final int HEADER_SIZE = 32;
+
+    private static final long MAGIC = 0x4c41575854534d53L; // "SMSTXWAL" read little endian
+    private static final int VERSION = 1;
+    private static final int LOG = 1;
+    private static final int CHECKPOINT = 2;
+    // payload length, sequence number and checksum around every payload
+    private static final int RECORD_OVERHEAD = 16;
+    static final int MAX_PAYLOAD = 1 << 20;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final PendingAppend CLOSE = new PendingAppend(List.of());
+
+    private final Path file;
+    private final Path checkpoint;
+    private final boolean sync;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final LinkedBlockingQueue<PendingAppend> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // held by the writer for every group and by compaction while it swaps the log file
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong groupCommits = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private volatile FileChannel channel;
+    // sequence number and end of the last durable group
+    private volatile Mark durable;
+    private volatile long checkpointSequence;
+    // set once a write failed, the end of the file is unknown from then on
+    private volatile IOException failure;
+    private boolean closed;
+
+    @Autowired
+    public TransactionLog(@Value("${datasource.wal.file-location:}") String location,
+                          @Value("${datasource.json.file-location}") String jsonFileLocation,
+                          @Value("${datasource.wal.sync:true}") boolean sync,
+                          @Value("${datasource.wal.max-batch:1024}") int maxBatch,
+                          @Value("${datasource.wal.max-delay:0ms}") Duration maxDelay) throws IOException {
+        this(location.isEmpty() ? defaultLocation(TransactionSource.of(jsonFileLocation)) : Path.of(location),
+                sync, maxBatch, maxDelay);
+    }
+
+    /**
+     * Opens the log, creating it when missing and cutting off a torn record at its end, and starts its writer.
+     * With sync off the records are handed to the operating system without forcing them to disk, which
+     * survives a crash of the process but not of the machine
+     */
+    public TransactionLog(Path file, boolean sync, int maxBatch, Duration maxDelay) throws IOException {
+        this.file = file;
+        this.checkpoint = file.resolveSibling(file.getFileName() + CHECKPOINT_EXTENSION);
+        this.sync = sync;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = maxDelay.toNanos();
+        if (Files.exists(checkpoint)) {
+            try (FileChannel in = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+                checkpointSequence = readHeader(in, checkpoint, CHECKPOINT);
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            durable = recover();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(this::write, "transaction-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("opened {} at sequence {}, checkpoint at {}", file, durable.sequence, checkpointSequence);
+    }
+
+    /**
+     * Returns where the log of a source goes when no location is configured: next to its file or directory,
+     * with {@value #EXTENSION} appended
+     */
+    public static Path defaultLocation(TransactionSource source) {
+        return source.location().resolveSibling(source.location().getFileName() + EXTENSION);
+    }
+
+    public long append(Transaction transaction) throws IOException {
+        return append(List.of(transaction));
+    }
+
+    /**
+     * Logs the transactions as consecutive records and waits until they are durable. Returns the sequence
+     * number of the last one. A transaction encoding to more than {@value #MAX_PAYLOAD} bytes, which could not
+     * be read back, fails the whole append with a {@link RecordTooLargeException} before anything is logged
+     */
+    public long append(List<Transaction> transactions) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            byte[] payload = TransactionRecord.encode(transaction);
+            if (payload.length > MAX_PAYLOAD) {
+                throw new RecordTooLargeException("Transaction " + transaction.getMtn() + " takes " + payload.length
+                        + " bytes, more than the " + MAX_PAYLOAD + " a log record holds");
+            }
+            payloads.add(payload);
+        }
+        PendingAppend append = new PendingAppend(payloads);
+        // checked together with the close marker, so no append is queued behind it
+        synchronized (pending) {
+            if (closed) {
+                throw new IOException(file + " is closed");
+            }
+            pending.add(append);
+        }
+        try {
+            return append.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for " + file);
+        } catch (ExecutionException e) {
+            throw new IOException("appending to " + file + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Feeds the checkpoint and then the log records following it to the sink and returns the sequence number
+     * of the last one. Appends made while the replay runs may or may not be part of it
+     */
+    public synchronized long replay(TransactionSink sink) throws IOException {
+        long sequence = checkpointSequence;
+        replayCheckpoint(sink);
+        Mark end = durable;
+        RecordReader reader = new RecordReader(channel, end.position);
+        while (reader.next()) {
+            if (reader.sequence > sequence) {
+                sink.accept(TransactionRecord.decode(reader.payload));
+                sequence = reader.sequence;
+            }
+        }
+        reader.expectEnd(file);
+        return sequence;
+    }
+
+    /**
+     * Folds the checkpoint and the durable log records into a new checkpoint, then restarts the log with the
+     * records appended since. Appends wait only while the log file is swapped. Returns the number of
+     * transactions in the new checkpoint, or -1 when the log held nothing to fold
+     */
+    public synchronized int compact() throws IOException {
+        Mark end = durable;
+        if (end.position == HEADER_SIZE) {
+            return -1;
+        }
+        long start = System.nanoTime();
+        Folder folder = new Folder();
+        long previousCheckpoint = checkpointSequence;
+        replayCheckpoint(folder);
+        RecordReader reader = new RecordReader(channel, end.position);
+        while (reader.next()) {
+            if (reader.sequence > previousCheckpoint) {
+                folder.accept(TransactionRecord.decode(reader.payload));
+            }
+        }
+        reader.expectEnd(file);
+
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, CHECKPOINT, end.sequence);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long position = HEADER_SIZE;
+            long sequence = 0;
+            for (Transaction transaction : folder.transactions) {
+                byte[] payload = TransactionRecord.encode(transaction);
+                if (buffer.remaining() < RECORD_OVERHEAD + payload.length) {
+                    position = flush(out, buffer, position);
+                    buffer = ensureCapacity(buffer, RECORD_OVERHEAD + payload.length);
+                }
+                putRecord(buffer, ++sequence, payload);
+            }
+            flush(out, buffer, position);
+            out.force(true);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSequence = end.sequence;
+
+        // a crash from here on leaves the old log in place, its records up to the checkpoint are skipped
+        writeLock.lock();
+        try {
+            Mark latest = durable;
+            Path restarted = file.resolveSibling(file.getFileName() + ".tmp");
+            FileChannel next = FileChannel.open(restarted, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                writeHeader(next, LOG, end.sequence);
+                long tail = latest.position - end.position;
+                for (long copied = 0; copied < tail; ) {
+                    next.position(HEADER_SIZE + copied);
+                    copied += channel.transferTo(end.position + copied, tail - copied, next);
+                }
+                next.force(true);
+                Files.move(restarted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+            channel.close();
+            channel = next;
+            durable = new Mark(latest.sequence, HEADER_SIZE + latest.position - end.position);
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("compacted {} up to sequence {} into {} transactions in {} ms", file, end.sequence,
+                folder.transactions.size(), (System.nanoTime() - start) / 1_000_000);
+        return folder.transactions.size();
+    }
+
+    /**
+     * Returns the size of the log file, what compaction would shrink
+     */
+    public long size() {
+        return durable.position;
+    }
+
+    public TransactionLogStatistics getStatistics() {
+        return new TransactionLogStatistics(durable.sequence, checkpointSequence, appends.get(), groupCommits.get(),
+                bytesWritten.get(), durable.position);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the appends already queued, then stops the writer and closes the file
+     */
+    @PreDestroy
+    @Override
+    public void close() throws IOException {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.add(CLOSE);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write() {
+        List<PendingAppend> group = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingAppend first = pending.take();
+                if (first == CLOSE) {
+                    return;
+                }
+                group.add(first);
+                int records = first.payloads.size();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (records < maxBatch) {
+                    PendingAppend next = maxDelayNanos == 0 ? pending.poll()
+                            : pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        stopping = true;
+                        break;
+                    }
+                    group.add(next);
+                    records += next.payloads.size();
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            buffer = commit(group, buffer);
+            group.clear();
+        }
+    }
+
+    /**
+     * Writes the group as one write followed by one force and completes its appends
+     */
+    private ByteBuffer commit(List<PendingAppend> group, ByteBuffer buffer) {
+        if (group.isEmpty()) {
+            return buffer;
+        }
+        int bytes = 0;
+        for (PendingAppend append : group) {
+            for (byte[] payload : append.payloads) {
+                bytes += RECORD_OVERHEAD + payload.length;
+            }
+        }
+        buffer = ensureCapacity(buffer, bytes);
+        writeLock.lock();
+        try {
+            if (failure == null) {
+                Mark end = durable;
+                long sequence = end.sequence;
+                for (PendingAppend append : group) {
+                    for (byte[] payload : append.payloads) {
+                        putRecord(buffer, ++sequence, payload);
+                    }
+                    append.sequence = sequence;
+                }
+                long position = flush(channel, buffer, end.position);
+                if (sync) {
+                    channel.force(false);
+                }
+                durable = new Mark(sequence, position);
+                appends.addAndGet(group.size());
+                groupCommits.incrementAndGet();
+                bytesWritten.addAndGet(bytes);
+            }
+        } catch (IOException e) {
+            log.error("writing {} appends to {} failed, rejecting appends from now on", group.size(), file, e);
+            failure = e;
+        } finally {
+            writeLock.unlock();
+        }
+        for (PendingAppend append : group) {
+            if (failure != null) {
+                append.result.completeExceptionally(failure);
+            } else {
+                append.result.complete(append.sequence);
+            }
+        }
+        return buffer;
+    }
+
+    private Mark recover() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            // new, or a crash before the header was complete, in which case nothing was acknowledged from it
+            channel.truncate(0);
+            writeHeader(channel, LOG, checkpointSequence);
+            channel.force(true);
+            return new Mark(checkpointSequence, HEADER_SIZE);
+        }
+        long sequence = readHeader(channel, file, LOG);
+        RecordReader reader = new RecordReader(channel, channel.size());
+        while (reader.next()) {
+            sequence = reader.sequence;
+        }
+        if (reader.position < channel.size()) {
+            checkNothingValidFollows(reader.position, reader.sequence);
+            log.warn("{} ends with {} bytes of a torn or corrupt record at {}, dropping them", file,
+                    channel.size() - reader.position, reader.position);
+            channel.truncate(reader.position);
+            channel.force(true);
+        }
+        return new Mark(Math.max(sequence, checkpointSequence), reader.position);
+    }
+
+    /**
+     * Fails when a valid record follows the bad one at the given position. A crash only tears the end of the last
+     * group, so a bad record with records after it means damage in the middle of the log, and cutting it off would
+     * drop acknowledged appends
+     */
+    private void checkNothingValidFollows(long position, long sequence) throws IOException {
+        long tail = channel.size() - position;
+        if (tail > Integer.MAX_VALUE) {
+            throw new IOException(file + " is corrupt: bad record at " + position + " followed by " + tail + " bytes");
+        }
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, tail).order(ByteOrder.LITTLE_ENDIAN);
+        for (int start = 1; start + RECORD_OVERHEAD <= tail; start++) {
+            int length = bytes.getInt(start);
+            if (length < 0 || length > MAX_PAYLOAD || start + RECORD_OVERHEAD + length > tail
+                    || bytes.getLong(start + 4) <= sequence) {
+                continue;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(bytes.slice(start, 12 + length));
+            if (bytes.getInt(start + 12 + length) == (int) crc.getValue()) {
+                throw new IOException(file + " is corrupt: bad record at " + position + " followed by a valid record"
+                        + " at " + (position + start) + ", refusing to drop it");
+            }
+        }
+    }
+
+    private void replayCheckpoint(TransactionSink sink) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(checkpoint, StandardOpenOption.READ)) {
+            readHeader(in, checkpoint, CHECKPOINT);
+            RecordReader reader = new RecordReader(in, in.size());
+            while (reader.next()) {
+                sink.accept(TransactionRecord.decode(reader.payload));
+            }
+            reader.expectEnd(checkpoint);
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, long sequence, byte[] payload) {
+        int start = buffer.position();
+        buffer.putInt(payload.length).putLong(sequence).put(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer.capacity() >= bytes) {
+            return buffer;
+        }
+        return ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeHeader(FileChannel channel, int kind, long sequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).putInt(kind).putLong(sequence);
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 0, header.position());
+        header.putInt((int) crc.getValue()).position(HEADER_SIZE);
+        flush(channel, header, 0);
+    }
+
+    /**
+     * Validates the header and returns the sequence number it records
+     */
+    private static long readHeader(FileChannel channel, Path file, int kind) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // read until the header is complete
+        }
+        if (header.position() < HEADER_SIZE || header.getLong(0) != MAGIC) {
+            throw new IOException(file + " is not a transaction log");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 0, 24);
+        if (header.getInt(24) != (int) crc.getValue()) {
+            throw new IOException(file + " is corrupt: header checksum mismatch");
+        }
+        if (header.getInt(8) != VERSION || header.getInt(12) != kind) {
+            throw new IOException(file + " has version " + header.getInt(8) + " and kind " + header.getInt(12)
+                    + ", expected " + VERSION + " and " + kind);
+        }
+        return header.getLong(16);
+    }
+
+    private record Mark(long sequence, long position) {
+    }
+
+    private static final class PendingAppend {
+        private final List<byte[]> payloads;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private long sequence;
+
+        PendingAppend(List<byte[]> payloads) {
+            this.payloads = payloads;
+        }
+    }
+
+    /**
+     * Reads the records between the header and an end position, stopping at the first one that is cut short,
+     * fails its checksum or does not follow the previous one
+     */
+    private static final class RecordReader {
+        private final FileChannel channel;
+        private final long end;
+        private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN).flip();
+        // end of the last valid record, where the buffer starts
+        private long position = HEADER_SIZE;
+        private long sequence;
+        private ByteBuffer payload;
+
+        RecordReader(FileChannel channel, long end) {
+            this.channel = channel;
+            this.end = end;
+        }
+
+        boolean next() throws IOException {
+            if (!fill(RECORD_OVERHEAD)) {
+                return false;
+            }
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length < 0 || length > MAX_PAYLOAD || !fill(RECORD_OVERHEAD + length)) {
+                return false;
+            }
+            start = buffer.position();
+            long recordSequence = buffer.getLong(start + 4);
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.array(), buffer.arrayOffset() + start, 12 + length);
+            if (buffer.getInt(start + 12 + length) != (int) crc.getValue() || recordSequence <= sequence) {
+                return false;
+            }
+            payload = buffer.slice(start + 12, length).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(start + RECORD_OVERHEAD + length);
+            position += RECORD_OVERHEAD + length;
+            sequence = recordSequence;
+            return true;
+        }
+
+        void expectEnd(Path file) throws IOException {
+            if (position != end) {
+                throw new IOException(file + " is corrupt: bad record at " + position);
+            }
+        }
+
+        /**
+         * Makes sure the buffer holds the given number of bytes from the current position, returns false when
+         * the end comes first
+         */
+        private boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            if (position + bytes > end) {
+                return false;
+            }
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN)
+                        .put(buffer).flip();
+            }
+            buffer.compact();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer, position + buffer.position()) <= 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+
+    /**
+     * Reduces appended transactions to what replaying them needs. An update of an issue is folded into the
+     * transaction that first carried the issue, which then carries the issue as solved with the message of the
+     * update, and updates that would change nothing are dropped. Replayed through
+     * {@link com.smallworld.snapshot.TransactionSnapshot#append} the folded transactions give the same result as
+     * the original ones, whether the issue came with the loaded data or was appended
+     */
+    private static final class Folder implements TransactionSink {
+        private final List<Transaction> transactions = new ArrayList<>();
+        // position of the transaction that first carried each issue id
+        private final Map<Integer, Integer> issues = new HashMap<>();
+
+        @Override
+        public void accept(Transaction transaction) {
+            Integer issueId = transaction.getIssueId();
+            Boolean issueSolved = transaction.getIssueSolved();
+            if (issueId == null || issueSolved == null) {
+                transactions.add(transaction);
+                return;
+            }
+            Integer position = issues.putIfAbsent(issueId, transactions.size());
+            if (position == null) {
+                transactions.add(transaction);
+                return;
+            }
+            Transaction first = transactions.get(position);
+            if (issueSolved && !first.getIssueSolved()) {
+                first.setIssueSolved(Boolean.TRUE);
+                first.setIssueMessage(transaction.getIssueMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.smallworld.wal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacts the {@link TransactionLog} in the background, on a thread of its own, whenever it has grown past
+ * {@code datasource.wal.compaction-threshold}. Checked every {@code datasource.wal.compaction-interval}
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "datasource.wal.enabled", havingValue = "true")
+public class TransactionLogCompactor {
+    private final TransactionLog transactionLog;
+    private final Duration interval;
+    private final DataSize threshold;
+
+    private ScheduledExecutorService executor;
+
+    public TransactionLogCompactor(TransactionLog transactionLog,
+                                   @Value("${datasource.wal.compaction-interval:5m}") Duration interval,
+                                   @Value("${datasource.wal.compaction-threshold:64MB}") DataSize threshold) {
+        this.transactionLog = transactionLog;
+        this.interval = interval;
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transaction-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compactIfDue, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private void compactIfDue() {
+        if (transactionLog.size() < threshold.toBytes()) {
+            return;
+        }
+        try {
+            transactionLog.compact();
+        } catch (IOException | RuntimeException e) {
+            // the log is left as it was, the next run tries again
+            log.error("compacting {} failed", transactionLog.getFile(), e);
+        }
+    }
+}
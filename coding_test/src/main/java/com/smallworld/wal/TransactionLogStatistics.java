@@ -0,0 +1,15 @@
+package com.smallworld.wal;
+
+/**
+ * Counters of a {@link TransactionLog} since it was opened
+ *
+ * @param sequence           sequence number of the last durable record
+ * @param checkpointSequence last sequence number folded into the checkpoint, 0 before the first compaction
+ * @param appends            appends written since the log was opened
+ * @param groupCommits       writes, each followed by one force, those appends took
+ * @param bytesWritten       bytes of records written since the log was opened
+ * @param size               current size of the log file
+ */
+public record TransactionLogStatistics(long sequence, long checkpointSequence, long appends, long groupCommits,
+                                       long bytesWritten, long size) {
+}
@@ -0,0 +1,106 @@
+package com.smallworld.wal;
+
+import com.smallworld.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of one {@link Transaction} in the log: a byte flagging which nullable numbers are set and
+ * whether the issue is solved, the numbers at fixed width, then the three strings as a length, -1 for null,
+ * followed by their UTF-8 bytes. Little endian
+ */
+final class TransactionRecord {
+    private static final int MTN = 1;
+    private static final int AMOUNT = 2;
+    private static final int SENDER_AGE = 4;
+    private static final int BENEFICIARY_AGE = 8;
+    private static final int ISSUE_ID = 16;
+    private static final int ISSUE_SOLVED_SET = 32;
+    private static final int ISSUE_SOLVED = 64;
+    // flags, mtn, amount, both ages, issue id and the three string lengths
+    private static final int FIXED_SIZE = 1 + 4 + 8 + 4 + 4 + 4 + 3 * 4;
+
+    private TransactionRecord() {
+    }
+
+    static byte[] encode(Transaction transaction) {
+        byte[] sender = utf8(transaction.getSenderFullName());
+        byte[] beneficiary = utf8(transaction.getBeneficiaryFullName());
+        byte[] issueMessage = utf8(transaction.getIssueMessage());
+        int size = FIXED_SIZE + length(sender) + length(beneficiary) + length(issueMessage);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        int flags = (transaction.getMtn() != null ? MTN : 0)
+                | (transaction.getAmount() != null ? AMOUNT : 0)
+                | (transaction.getSenderAge() != null ? SENDER_AGE : 0)
+                | (transaction.getBeneficiaryAge() != null ? BENEFICIARY_AGE : 0)
+                | (transaction.getIssueId() != null ? ISSUE_ID : 0)
+                | (transaction.getIssueSolved() != null ? ISSUE_SOLVED_SET : 0)
+                | (Boolean.TRUE.equals(transaction.getIssueSolved()) ? ISSUE_SOLVED : 0);
+        buffer.put((byte) flags)
+                .putInt(orZero(transaction.getMtn()))
+                .putDouble(transaction.getAmount() != null ? transaction.getAmount() : 0.0)
+                .putInt(orZero(transaction.getSenderAge()))
+                .putInt(orZero(transaction.getBeneficiaryAge()))
+                .putInt(orZero(transaction.getIssueId()));
+        putString(buffer, sender);
+        putString(buffer, beneficiary);
+        putString(buffer, issueMessage);
+        return buffer.array();
+    }
+
+    /**
+     * Reads a record from the buffer, which must hold exactly one whose checksum was verified
+     */
+    static Transaction decode(ByteBuffer buffer) {
+        int flags = buffer.get();
+        int mtn = buffer.getInt();
+        double amount = buffer.getDouble();
+        int senderAge = buffer.getInt();
+        int beneficiaryAge = buffer.getInt();
+        int issueId = buffer.getInt();
+        Transaction transaction = new Transaction();
+        transaction.setMtn((flags & MTN) != 0 ? mtn : null);
+        transaction.setAmount((flags & AMOUNT) != 0 ? amount : null);
+        transaction.setSenderAge((flags & SENDER_AGE) != 0 ? senderAge : null);
+        transaction.setBeneficiaryAge((flags & BENEFICIARY_AGE) != 0 ? beneficiaryAge : null);
+        transaction.setIssueId((flags & ISSUE_ID) != 0 ? issueId : null);
+        transaction.setIssueSolved((flags & ISSUE_SOLVED_SET) != 0 ? (flags & ISSUE_SOLVED) != 0 : null);
+        transaction.setSenderFullName(getString(buffer));
+        transaction.setBeneficiaryFullName(getString(buffer));
+        transaction.setIssueMessage(getString(buffer));
+        return transaction;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static int orZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -1,16 +1,25 @@
 package com.smallworld;
 
+import com.smallworld.cache.EvictionPolicy;
+import com.smallworld.cache.QueryCache;
 import com.smallworld.exception.ServiceException;
+import com.smallworld.metrics.QueryMetrics;
 import com.smallworld.model.Transaction;
 import com.smallworld.service.TransactionService;
+import com.smallworld.snapshot.ClientSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -23,56 +32,72 @@ import java.util.Set;
 class TransactionDataFetcherTest {
     @InjectMocks
     private TransactionDataFetcher transactionDataFetcher;
-    @Mock
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     TransactionService transactionService;
+    @Spy
+    QueryCache queryCache = new QueryCache(16, EvictionPolicy.LRU);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    @Spy
+    QueryMetrics queryMetrics = new QueryMetrics(registry, true);
 
     @Test
     void testGetTotalTransactionAmount_WhenTransactionExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
-        double sumTransactionAmount = transactionDataFetcher.getTotalTransactionAmount();
-        Assertions.assertEquals(400.4, sumTransactionAmount);
+        BigDecimal sumTransactionAmount = transactionDataFetcher.getTotalTransactionAmount();
+        Assertions.assertEquals(new BigDecimal("400.40"), sumTransactionAmount);
+    }
+
+    @Test
+    void testGetTotalTransactionAmount_WhenTransactionHasSeveralIssues() {
+        Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactionWithTwoIssues());
+        Assertions.assertEquals(new BigDecimal("150.20"), transactionDataFetcher.getTotalTransactionAmount());
+        Assertions.assertEquals(new BigDecimal("150.20"),
+                transactionDataFetcher.getTotalTransactionAmountSentBy("Tom Shelby"));
+        Assertions.assertEquals(Set.of(3), transactionDataFetcher.getUnsolvedIssueIds());
+        Assertions.assertEquals(List.of("Never gonna give you up"), transactionDataFetcher.getAllSolvedIssueMessages());
+        Assertions.assertEquals(1, transactionDataFetcher.getTop3TransactionsByAmount().size());
     }
 
     @Test
     void testGetTotalTransactionAmount_WhenTransactionDoNotExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getEmptyTransactions());
-        double sumTransactionAmount = transactionDataFetcher.getTotalTransactionAmount();
-        Assertions.assertEquals(0.0, sumTransactionAmount);
+        BigDecimal sumTransactionAmount = transactionDataFetcher.getTotalTransactionAmount();
+        Assertions.assertEquals(new BigDecimal("0.00"), sumTransactionAmount);
     }
 
     @Test
     void testGetTotalTransactionAmountSentBy_WhenTransactionExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
-        double totalTransactionAmountSentBy = transactionDataFetcher.getTotalTransactionAmountSentBy("Tom Shelby");
-        Assertions.assertEquals(250.2, totalTransactionAmountSentBy);
+        BigDecimal totalTransactionAmountSentBy = transactionDataFetcher.getTotalTransactionAmountSentBy("Tom Shelby");
+        Assertions.assertEquals(new BigDecimal("250.20"), totalTransactionAmountSentBy);
     }
 
     @Test
     void testGetTotalTransactionAmountSentBy_WhenTransactionDoesNotExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getEmptyTransactions());
-        double totalTransactionAmountSentBy = transactionDataFetcher.getTotalTransactionAmountSentBy("Tom Shelby");
-        Assertions.assertEquals(0.0, totalTransactionAmountSentBy);
+        BigDecimal totalTransactionAmountSentBy = transactionDataFetcher.getTotalTransactionAmountSentBy("Tom Shelby");
+        Assertions.assertEquals(new BigDecimal("0.00"), totalTransactionAmountSentBy);
     }
 
     @Test
     void testGetTotalTransactionAmountSentBy_WhenTransactionExistAndNoSuchSenderExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
-        double totalTransactionAmountSentBy = transactionDataFetcher.getTotalTransactionAmountSentBy("");
-        Assertions.assertEquals(0.0, totalTransactionAmountSentBy);
+        BigDecimal totalTransactionAmountSentBy = transactionDataFetcher.getTotalTransactionAmountSentBy("");
+        Assertions.assertEquals(new BigDecimal("0.00"), totalTransactionAmountSentBy);
     }
 
     @Test
     void testGetMaxTransactionAmount_WhenTransactionExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
-        double totalTransactionAmountSentBy = transactionDataFetcher.getMaxTransactionAmount();
-        Assertions.assertEquals(150.2, totalTransactionAmountSentBy);
+        BigDecimal totalTransactionAmountSentBy = transactionDataFetcher.getMaxTransactionAmount();
+        Assertions.assertEquals(new BigDecimal("150.20"), totalTransactionAmountSentBy);
     }
 
     @Test
     void testGetMaxTransactionAmount_WhenTransactionDoesNotExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getEmptyTransactions());
-        double totalTransactionAmountSentBy = transactionDataFetcher.getMaxTransactionAmount();
-        Assertions.assertEquals(0.0, totalTransactionAmountSentBy);
+        BigDecimal totalTransactionAmountSentBy = transactionDataFetcher.getMaxTransactionAmount();
+        Assertions.assertEquals(new BigDecimal("0.00"), totalTransactionAmountSentBy);
     }
 
     @Test
@@ -110,6 +135,42 @@ class TransactionDataFetcherTest {
         Assertions.assertFalse(hasOpenComplianceIssue);
     }
 
+    @Test
+    void testHasOpenComplianceIssues_WhenBatchOfClients() {
+        Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
+        List<String> clients = List.of("Tom Shelby", "abc", "unknown", "Arthur Shelby", "nobody");
+
+        Assertions.assertEquals(Map.of("Tom Shelby", true, "abc", false, "unknown", false, "Arthur Shelby", true,
+                "nobody", false), transactionDataFetcher.hasOpenComplianceIssues(clients));
+        Assertions.assertEquals(Map.of("Tom Shelby", new BigDecimal("250.20"), "abc", new BigDecimal("0.00"),
+                        "unknown", new BigDecimal("150.20"), "Arthur Shelby", new BigDecimal("0.00"),
+                        "nobody", new BigDecimal("0.00")),
+                transactionDataFetcher.getTotalTransactionAmountSentBy(clients));
+    }
+
+    @Test
+    void testSummarizeClients_WhenBatchSpansSeveralChunks() {
+        Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
+        List<String> clients = new ArrayList<>();
+        for (int i = 0; i < 2 * TransactionDataFetcher.CLIENT_BATCH_CHUNK + 1; i++) {
+            clients.add(i % 2 == 0 ? "Tom Shelby" : "client " + i);
+        }
+        List<List<ClientSummary>> chunks = new ArrayList<>();
+
+        transactionDataFetcher.summarizeClients(clients, chunks::add);
+
+        Assertions.assertEquals(3, chunks.size());
+        List<ClientSummary> summaries = chunks.stream().flatMap(List::stream).toList();
+        Assertions.assertEquals(clients.size(), summaries.size());
+        for (ClientSummary summary : summaries) {
+            boolean tom = summary.client().equals("Tom Shelby");
+            Assertions.assertEquals(tom, summary.openComplianceIssues());
+            Assertions.assertEquals(new BigDecimal(tom ? "250.20" : "0.00"), summary.totalAmountSent());
+        }
+        Assertions.assertEquals(1, registry.get(QueryMetrics.QUERY_TIMER).tag("query", "summarizeClients").timer()
+                .count());
+    }
+
     @Test
     void testGetTransactionsByBeneficiaryName_WhenTransactionDoesNotExist() {
         List<Transaction> transactions = getTransactions();
@@ -185,6 +246,33 @@ class TransactionDataFetcherTest {
         Assertions.assertEquals(new ArrayList<>(), actualTransactions);
     }
 
+    @Test
+    void testGetTopNTransactionsByAmount_WhenTransactionExist() {
+        List<Transaction> transactions = getTransactions();
+        Mockito.when(transactionService.getAllTransaction()).thenReturn(transactions);
+        List<Object> actualTransactions = transactionDataFetcher.getTopNTransactionsByAmount(1);
+        Assertions.assertEquals(List.of(transactions.get(1)), actualTransactions);
+    }
+
+    @Test
+    void testGetTopNTransactionsByAmount_WhenQueriesAreMeasured() {
+        Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
+        transactionDataFetcher.getTopNTransactionsByAmount(1);
+        transactionDataFetcher.getTopNTransactionsByAmount(5);
+
+        Timer timer = registry.get(QueryMetrics.QUERY_TIMER).tag("query", "getTopNTransactionsByAmount").timer();
+        Assertions.assertEquals(2, timer.count());
+        Assertions.assertEquals(3, registry.get(QueryMetrics.QUERY_RESULTS)
+                .tag("query", "getTopNTransactionsByAmount").summary().totalAmount());
+        Assertions.assertEquals(0, registry.get(QueryMetrics.QUERY_TIMER)
+                .tag("query", "getTop3TransactionsByAmount").timer().count());
+    }
+
+    @Test
+    void testGetTopNTransactionsByAmount_WhenNIsNegative() {
+        Assertions.assertThrows(ServiceException.class, () -> transactionDataFetcher.getTopNTransactionsByAmount(-1));
+    }
+
     @Test
     void testGetTopSender_WhenTransactionExist() {
         Mockito.when(transactionService.getAllTransaction()).thenReturn(getTransactions());
@@ -251,6 +339,24 @@ class TransactionDataFetcherTest {
 
     }
 
+    private List<Transaction> getTransactionWithTwoIssues() {
+        List<Transaction> rows = new ArrayList<>();
+        for (int issueId = 2; issueId <= 3; issueId++) {
+            Transaction transaction = new Transaction();
+            transaction.setMtn(1284564);
+            transaction.setAmount(150.2);
+            transaction.setSenderFullName("Tom Shelby");
+            transaction.setSenderAge(22);
+            transaction.setBeneficiaryFullName("Arthur Shelby");
+            transaction.setBeneficiaryAge(60);
+            transaction.setIssueId(issueId);
+            transaction.setIssueSolved(issueId == 2);
+            transaction.setIssueMessage(issueId == 2 ? "Never gonna give you up" : "Looks like money laundering");
+            rows.add(transaction);
+        }
+        return rows;
+    }
+
     private List<Transaction> getEmptyTransactions() {
         return null;
     }
@@ -0,0 +1,133 @@
+package com.smallworld.cache;
+
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.metrics.QueryMetrics;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.TransactionService;
+import com.smallworld.snapshot.TransactionSnapshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class QueryCacheTest {
+
+    @Test
+    void testGet_WhenGenerationChanges() {
+        TransactionSnapshot snapshot = TransactionSnapshot.of(List.of(transaction(1, 10.0).solved().build()));
+        QueryCache cache = new QueryCache(10, EvictionPolicy.LRU);
+        AtomicInteger computed = new AtomicInteger();
+
+        Assertions.assertEquals(1000, totalSentBy(cache, snapshot, "Tom Shelby", computed));
+        Assertions.assertEquals(1000, totalSentBy(cache, snapshot, "Tom Shelby", computed));
+        Assertions.assertEquals(1, computed.get());
+
+        snapshot.append(transaction(2, 5.0).solved().build());
+        Assertions.assertEquals(1500, totalSentBy(cache, snapshot, "Tom Shelby", computed));
+        Assertions.assertEquals(2, computed.get());
+
+        TransactionSnapshot reloaded = TransactionSnapshot.of(List.of(transaction(1, 10.0).solved().build()))
+                .withGeneration(snapshot.getGeneration() + 1);
+        Assertions.assertEquals(1000, totalSentBy(cache, reloaded, "Tom Shelby", computed));
+        // a reader still on the replaced snapshot is answered without touching the newer results
+        Assertions.assertEquals(1500, totalSentBy(cache, snapshot, "Tom Shelby", computed));
+        Assertions.assertEquals(1000, totalSentBy(cache, reloaded, "Tom Shelby", computed));
+
+        Assertions.assertEquals(new QueryCacheStatistics(2, 4, 0, 2, 1, 10), cache.getStatistics());
+    }
+
+    @Test
+    void testFetcher_WhenClientIsLookedUp() {
+        TransactionSnapshot snapshot = TransactionSnapshot.of(List.of(transaction(1, 10.0).solved().build()));
+        QueryCache cache = new QueryCache(10, EvictionPolicy.LRU);
+        TransactionDataFetcher fetcher = new TransactionDataFetcher(new TransactionService() {
+            @Override
+            public List<Transaction> getAllTransaction() {
+                return snapshot.getTransactions();
+            }
+
+            @Override
+            public TransactionSnapshot getTransactionSnapshot() {
+                return snapshot;
+            }
+        }, cache, QueryMetrics.detached());
+
+        Assertions.assertEquals(new BigDecimal("10.00"), fetcher.getTotalTransactionAmountSentBy("Tom Shelby"));
+        Assertions.assertFalse(fetcher.hasOpenComplianceIssues("Tom Shelby"));
+
+        // answered from the client indexes, so they neither hit nor fill the cache
+        Assertions.assertEquals(new QueryCacheStatistics(0, 0, 0, 0, 0, 10), cache.getStatistics());
+    }
+
+    @Test
+    void testGet_WhenLeastRecentlyReadIsEvicted() {
+        TransactionSnapshot snapshot = TransactionSnapshot.empty();
+        QueryCache cache = new QueryCache(2, EvictionPolicy.LRU);
+        AtomicInteger computed = new AtomicInteger();
+
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "b", computed);
+        read(cache, snapshot, "c", computed);
+        Assertions.assertEquals(3, computed.get());
+        read(cache, snapshot, "b", computed);
+        read(cache, snapshot, "c", computed);
+        Assertions.assertEquals(3, computed.get());
+        read(cache, snapshot, "a", computed);
+        Assertions.assertEquals(4, computed.get());
+        Assertions.assertEquals(2, cache.getStatistics().evictions());
+    }
+
+    @Test
+    void testGet_WhenLeastFrequentlyReadIsEvicted() {
+        TransactionSnapshot snapshot = TransactionSnapshot.empty();
+        QueryCache cache = new QueryCache(2, EvictionPolicy.LFU);
+        AtomicInteger computed = new AtomicInteger();
+
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "b", computed);
+        read(cache, snapshot, "c", computed);
+        Assertions.assertEquals(3, computed.get());
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "c", computed);
+        Assertions.assertEquals(3, computed.get());
+        read(cache, snapshot, "b", computed);
+        Assertions.assertEquals(4, computed.get());
+        Assertions.assertEquals(2, cache.getStatistics().evictions());
+        Assertions.assertEquals(4, cache.getStatistics().hits());
+    }
+
+    @Test
+    void testGet_WhenDisabled() {
+        TransactionSnapshot snapshot = TransactionSnapshot.empty();
+        QueryCache cache = QueryCache.disabled();
+        AtomicInteger computed = new AtomicInteger();
+
+        read(cache, snapshot, "a", computed);
+        read(cache, snapshot, "a", computed);
+        Assertions.assertEquals(2, computed.get());
+        Assertions.assertEquals(new QueryCacheStatistics(0, 2, 0, 0, 0, 0), cache.getStatistics());
+    }
+
+    private static long totalSentBy(QueryCache cache, TransactionSnapshot snapshot, String sender,
+                                      AtomicInteger computed) {
+        return cache.get(snapshot, "totalAmountSentBy", sender, () -> {
+            computed.incrementAndGet();
+            return snapshot.getTotalAmountCentsSentBy(sender);
+        });
+    }
+
+    private static String read(QueryCache cache, TransactionSnapshot snapshot, String argument, AtomicInteger computed) {
+        return cache.get(snapshot, "query", argument, () -> {
+            computed.incrementAndGet();
+            return argument;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.smallworld.controller;
+
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.DataVersion;
+import com.smallworld.service.TransactionService;
+import com.smallworld.snapshot.TransactionSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TransactionQueryControllerTest {
+    private MockMvc mockMvc;
+    private TransactionSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = TransactionSnapshot.of(List.of(transaction(1, 10.5).build())).withGeneration(3);
+        TransactionService transactionService = new TransactionService() {
+            @Override
+            public List<Transaction> getAllTransaction() {
+                return snapshot.getTransactions();
+            }
+
+            @Override
+            public TransactionSnapshot getTransactionSnapshot() {
+                return snapshot;
+            }
+        };
+        mockMvc = MockMvcBuilders.standaloneSetup(new TransactionQueryController(
+                new TransactionDataFetcher(transactionService), transactionService)).build();
+    }
+
+    @Test
+    void testGetMaxTransactionAmount_WhenGenerationIsNew() throws Exception {
+        mockMvc.perform(get("/transactions/max-amount"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + DataVersion.PROCESS_EPOCH + "-3\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(content().string("10.50"));
+    }
+
+    @Test
+    void testGetMaxTransactionAmount_WhenGenerationIsUnchanged() throws Exception {
+        String etag = "\"" + DataVersion.PROCESS_EPOCH + "-3\"";
+        mockMvc.perform(get("/transactions/max-amount").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/transactions/max-amount")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + DataVersion.PROCESS_EPOCH + "-2\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testGetMaxTransactionAmount_WhenGenerationIsFromAnotherProcess() throws Exception {
+        // a restarted process counts generations from the start again
+        String etag = "\"" + UUID.randomUUID() + "-3\"";
+
+        mockMvc.perform(get("/transactions/max-amount").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string("10.50"));
+    }
+
+    @Test
+    void testStreamTransactionsByBeneficiaryName_WhenPagedWithCursor() throws Exception {
+        snapshot.append(transaction(2, 20.0).to("Grace Burgess").solved().build());
+        snapshot.append(transaction(3, 30.0).to("Ada Thorne").solved().build());
+        snapshot.append(transaction(4, 40.0).to("Arthur Shelby").solved().build());
+
+        MvcResult first = mockMvc.perform(get("/transactions/by-beneficiary/stream")
+                        .param("limit", "2").param("fields", "mtn", "amount"))
+                .andReturn();
+        String cursor = first.getResponse().getHeader(TransactionQueryController.NEXT_CURSOR_HEADER);
+        mockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("""
+                        {"beneficiary":"Ada Thorne","transactions":[{"mtn":3,"amount":30.0}]}
+                        {"beneficiary":"Arthur Shelby","transactions":[{"mtn":1,"amount":10.5},{"mtn":4,"amount":40.0}]}
+                        """));
+
+        MvcResult second = mockMvc.perform(get("/transactions/by-beneficiary/stream")
+                        .param("cursor", cursor).param("format", "json").param("fields", "mtn"))
+                .andExpect(header().doesNotExist(TransactionQueryController.NEXT_CURSOR_HEADER))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(second))
+                .andExpect(content().string("""
+                        {"beneficiaries":[{"beneficiary":"Grace Burgess","transactions":[{"mtn":2}]}],\
+                        "nextCursor":null}"""));
+    }
+
+    @Test
+    void testSummarizeClients_WhenStreamed() throws Exception {
+        snapshot.append(transaction(2, 20.05).to("Grace Burgess").solved().build());
+
+        MvcResult result = mockMvc.perform(post("/transactions/clients/summary")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"Tom Shelby\", \"Grace Burgess\", \"Ada Thorne\"]"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("""
+                        {"client":"Tom Shelby","openComplianceIssues":false,"totalAmountSent":30.55}
+                        {"client":"Grace Burgess","openComplianceIssues":false,"totalAmountSent":0.00}
+                        {"client":"Ada Thorne","openComplianceIssues":false,"totalAmountSent":0.00}
+                        """));
+    }
+}
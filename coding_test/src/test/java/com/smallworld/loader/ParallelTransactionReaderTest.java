@@ -0,0 +1,98 @@
+package com.smallworld.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.model.Transaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+class ParallelTransactionReaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRead_WhenNewlineDelimitedFileIsSplit() throws IOException {
+        Path file = directory.resolve("transactions.ndjson");
+        Files.writeString(file, lines(1, 500));
+        List<Transaction> transactions = new ArrayList<>();
+
+        LoadStatistics statistics = new ParallelTransactionReader(new ObjectMapper(), 4, 1000)
+                .read(TransactionSource.of(file), transactions::add);
+
+        Assertions.assertEquals(500, statistics.rows());
+        Assertions.assertEquals(Files.size(file), statistics.bytesRead());
+        assertMtns(1, 500, transactions);
+    }
+
+    @Test
+    void testRead_WhenDirectoryHoldsCompressedAndPlainParts() throws IOException {
+        Files.writeString(directory.resolve("part-0.json"), "[" + lines(1, 10).replace("}\n{", "},{") + "]");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(directory.resolve("part-1.ndjson.gz")))) {
+            output.write(lines(11, 20).getBytes(StandardCharsets.UTF_8));
+        }
+        Files.writeString(directory.resolve("part-2.jsonl"), lines(21, 30));
+        Files.writeString(directory.resolve("notes.txt"), "not transactions");
+        List<Transaction> transactions = new ArrayList<>();
+
+        new ParallelTransactionReader(new ObjectMapper(), 2, 64).read(TransactionSource.of(directory), transactions::add);
+
+        assertMtns(1, 30, transactions);
+    }
+
+    @Test
+    void testRead_WhenLocationIsGlob() throws IOException {
+        Files.writeString(directory.resolve("part-1.ndjson"), lines(6, 10));
+        Files.writeString(directory.resolve("part-0.ndjson"), lines(1, 5));
+        Files.writeString(directory.resolve("other.ndjson"), lines(100, 101));
+        List<Transaction> transactions = new ArrayList<>();
+
+        new ParallelTransactionReader(new ObjectMapper(), 2, 64)
+                .read(TransactionSource.of(directory + "/part-*.ndjson"), transactions::add);
+
+        assertMtns(1, 10, transactions);
+    }
+
+    @Test
+    void testRead_WhenGlobMatchesNothing() {
+        ParallelTransactionReader reader = new ParallelTransactionReader(new ObjectMapper(), 2, 64);
+        Assertions.assertThrows(NoSuchFileException.class,
+                () -> reader.read(TransactionSource.of(directory + "/part-*.ndjson"), transaction -> {
+                }));
+    }
+
+    @Test
+    void testRead_WhenLineIsMalformed() throws IOException {
+        Path file = directory.resolve("transactions.ndjson");
+        Files.writeString(file, lines(1, 50) + "{\"mtn\": \n" + lines(51, 60));
+        ParallelTransactionReader reader = new ParallelTransactionReader(new ObjectMapper(), 2, 200);
+        Assertions.assertThrows(IOException.class, () -> reader.read(TransactionSource.of(file), transaction -> {
+        }));
+    }
+
+    private static String lines(int firstMtn, int lastMtn) {
+        StringBuilder lines = new StringBuilder();
+        for (int mtn = firstMtn; mtn <= lastMtn; mtn++) {
+            lines.append("{\"mtn\": ").append(mtn).append(", \"amount\": ").append(mtn * 1.5)
+                    .append(", \"senderFullName\": \"Sender ").append(mtn % 7)
+                    .append("\", \"beneficiaryFullName\": \"Beneficiary ").append(mtn % 5).append("\"}\n");
+        }
+        return lines.toString();
+    }
+
+    private static void assertMtns(int firstMtn, int lastMtn, List<Transaction> transactions) {
+        Assertions.assertEquals(lastMtn - firstMtn + 1, transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            Assertions.assertEquals(firstMtn + i, transactions.get(i).getMtn());
+        }
+    }
+}
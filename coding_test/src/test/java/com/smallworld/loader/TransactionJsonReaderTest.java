@@ -0,0 +1,62 @@
+package com.smallworld.loader;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.model.Transaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class TransactionJsonReaderTest {
+
+    @Test
+    void testRead_WhenFileHasTransactions() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        List<LoadStatistics> progress = new ArrayList<>();
+        TransactionJsonReader reader = new TransactionJsonReader(new ObjectMapper(), 5, progress::add);
+        File file = new File("src/main/resources/transactions.json");
+
+        LoadStatistics statistics = reader.read(file, transactions::add);
+
+        Assertions.assertEquals(13, statistics.rows());
+        Assertions.assertEquals(13, transactions.size());
+        Assertions.assertEquals(2, progress.size());
+        Assertions.assertEquals(5, progress.get(0).rows());
+        Assertions.assertEquals(file.length(), statistics.totalBytes());
+        Assertions.assertEquals(663458, transactions.get(0).getMtn());
+        Assertions.assertEquals("Tom Shelby", transactions.get(0).getSenderFullName());
+    }
+
+    @Test
+    void testRead_WhenArrayIsEmpty() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        LoadStatistics statistics = new TransactionJsonReader(new ObjectMapper()).read(json("[]"), transactions::add);
+        Assertions.assertEquals(0, statistics.rows());
+        Assertions.assertTrue(transactions.isEmpty());
+    }
+
+    @Test
+    void testRead_WhenContentIsNotAnArray() {
+        TransactionJsonReader reader = new TransactionJsonReader(new ObjectMapper());
+        Assertions.assertThrows(JsonParseException.class, () -> reader.read(json("{\"mtn\": 1}"), transaction -> {
+        }));
+    }
+
+    @Test
+    void testRead_WhenArrayHasNonObjectElement() {
+        TransactionJsonReader reader = new TransactionJsonReader(new ObjectMapper());
+        Assertions.assertThrows(JsonParseException.class, () -> reader.read(json("[{\"mtn\": 1}, 2]"), transaction -> {
+        }));
+    }
+
+    private static InputStream json(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
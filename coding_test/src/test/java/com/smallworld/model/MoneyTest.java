@@ -0,0 +1,44 @@
+package com.smallworld.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+class MoneyTest {
+
+    @Test
+    void testToCents_WhenAmountHasTwoDecimals() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long cents = random.nextLong(1L << 50);
+            BigDecimal amount = BigDecimal.valueOf(cents, Money.SCALE);
+            Assertions.assertEquals(cents, Money.toCents(amount.doubleValue()), amount.toString());
+            Assertions.assertEquals(amount, Money.toBigDecimal(cents));
+        }
+        Assertions.assertEquals(1795, Money.toCents(17.95));
+        Assertions.assertEquals(0, Money.toCents(-0.0));
+    }
+
+    @Test
+    void testToCents_WhenAmountIsNotWholeCents() {
+        Assertions.assertThrows(ArithmeticException.class, () -> Money.toCents(10.005));
+        Assertions.assertThrows(ArithmeticException.class, () -> Money.toCents(0.1 + 0.2));
+        Assertions.assertThrows(ArithmeticException.class, () -> Money.toCents(Double.NaN));
+        Assertions.assertThrows(ArithmeticException.class, () -> Money.toCents(Double.POSITIVE_INFINITY));
+        Assertions.assertThrows(ArithmeticException.class, () -> Money.toCents(1e15));
+        Assertions.assertFalse(Money.isExact(10.005));
+        Assertions.assertTrue(Money.isExact(10.05));
+    }
+
+    @Test
+    void testCeilCents_WhenBoundIsBetweenCents() {
+        Assertions.assertEquals(1010, Money.ceilCents(10.1));
+        Assertions.assertEquals(1011, Money.ceilCents(Math.nextUp(10.1)));
+        Assertions.assertEquals(1011, Money.ceilCents(10.101));
+        Assertions.assertEquals(-1010, Money.ceilCents(-10.1));
+        Assertions.assertEquals(Long.MAX_VALUE, Money.ceilCents(Double.POSITIVE_INFINITY));
+        Assertions.assertEquals(Long.MIN_VALUE, Money.ceilCents(Double.NEGATIVE_INFINITY));
+    }
+}
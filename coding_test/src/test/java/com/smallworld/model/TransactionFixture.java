@@ -0,0 +1,65 @@
+package com.smallworld.model;
+
+/**
+ * Builds the transactions of tests: sent by Tom Shelby to Arthur Shelby, without ages and without an issue unless
+ * set otherwise
+ */
+public final class TransactionFixture {
+    public static final String ISSUE_MESSAGE = "Looks like money laundering";
+
+    private final Transaction transaction = new Transaction();
+
+    private TransactionFixture(int mtn, double amount) {
+        transaction.setMtn(mtn);
+        transaction.setAmount(amount);
+        transaction.setSenderFullName("Tom Shelby");
+        transaction.setBeneficiaryFullName("Arthur Shelby");
+    }
+
+    public static TransactionFixture transaction(int mtn, double amount) {
+        return new TransactionFixture(mtn, amount);
+    }
+
+    public TransactionFixture from(String senderFullName) {
+        transaction.setSenderFullName(senderFullName);
+        return this;
+    }
+
+    public TransactionFixture from(String senderFullName, int senderAge) {
+        transaction.setSenderAge(senderAge);
+        return from(senderFullName);
+    }
+
+    public TransactionFixture to(String beneficiaryFullName) {
+        transaction.setBeneficiaryFullName(beneficiaryFullName);
+        return this;
+    }
+
+    public TransactionFixture to(String beneficiaryFullName, int beneficiaryAge) {
+        transaction.setBeneficiaryAge(beneficiaryAge);
+        return to(beneficiaryFullName);
+    }
+
+    /**
+     * Raises or updates an issue, with {@link #ISSUE_MESSAGE} as its message
+     */
+    public TransactionFixture issue(int issueId, boolean solved) {
+        transaction.setIssueId(issueId);
+        transaction.setIssueSolved(solved);
+        transaction.setIssueMessage(ISSUE_MESSAGE);
+        return this;
+    }
+
+    /**
+     * Flags the transaction as having no open issue without an issue id, as rows without an issue are in the
+     * JSON file
+     */
+    public TransactionFixture solved() {
+        transaction.setIssueSolved(true);
+        return this;
+    }
+
+    public Transaction build() {
+        return transaction;
+    }
+}
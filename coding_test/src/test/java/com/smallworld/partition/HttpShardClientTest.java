@@ -0,0 +1,209 @@
+package com.smallworld.partition;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.controller.ShardController;
+import com.smallworld.controller.TransactionIngestionController;
+import com.smallworld.exception.GlobalExceptionHandler;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.impl.TransactionServiceImpl;
+import com.smallworld.sketch.ClientSketches;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.FilterAggregate;
+import com.smallworld.snapshot.TransactionFilter;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.wal.TransactionLog;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+/**
+ * Calls a worker's {@link ShardController} through {@link HttpShardClient} over a local port, checking every
+ * answer against the same worker read through {@link LocalShardClient}
+ */
+class HttpShardClientTest {
+    private static final String FILE = "src/main/resources/transactions.json";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private TransactionServiceImpl worker;
+    private HttpServer server;
+    private HttpShardClient client;
+    private LocalShardClient local;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        worker = new TransactionServiceImpl();
+        ReflectionTestUtils.setField(worker, "sketchesEnabled", true);
+        ReflectionTestUtils.setField(worker, "jsonFileLocation", FILE);
+        ReflectionTestUtils.invokeMethod(worker, "initTransaction");
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ShardController(worker, 1, 0),
+                        new TransactionIngestionController(worker))
+                .setControllerAdvice(new GlobalExceptionHandler(new SimpleMeterRegistry()))
+                .build();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> forward(mockMvc, exchange));
+        server.start();
+        client = new HttpShardClient(URI.create("http://localhost:" + server.getAddress().getPort()),
+                Duration.ofSeconds(10), mapper);
+        local = new LocalShardClient(worker, Partitioning.NONE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testQueries_WhenAnsweredOverHttp() throws IOException {
+        TransactionFilter filter = TransactionFilter.amountBelow(500).and(TransactionFilter.amountAbove(50))
+                .and(TransactionFilter.receivedBy("Michael Gray").not());
+
+        Assertions.assertEquals(local.aggregates(), client.aggregates());
+        Assertions.assertEquals(local.clientNames(), client.clientNames());
+        Assertions.assertEquals(local.totalAmountCentsBySender(), client.totalAmountCentsBySender());
+        Assertions.assertEquals(local.issues(), client.issues());
+        Assertions.assertEquals(local.issueMtns(List.of(1, 3, 99, 404)), client.issueMtns(List.of(1, 3, 99, 404)));
+        assertSameSketches(local.sketches(), client.sketches());
+        Assertions.assertEquals(mtns(local.topTransactions(3)), mtns(client.topTransactions(3)));
+        Assertions.assertEquals(mtns(local.topTransactions(filter, 2)), mtns(client.topTransactions(filter, 2)));
+        Assertions.assertEquals(local.aggregate(filter), client.aggregate(filter));
+        Assertions.assertEquals(local.summarize(List.of("Tom Shelby", "Nobody")),
+                client.summarize(List.of("Tom Shelby", "Nobody")));
+        Assertions.assertEquals(mtns(local.transactions()), mtns(client.transactions()));
+        BeneficiaryPage first = client.beneficiaryPage(null, 2);
+        assertSamePage(local.beneficiaryPage(null, 2), first);
+        assertSamePage(local.beneficiaryPage(first.nextAfter(), 2), client.beneficiaryPage(first.nextAfter(), 2));
+    }
+
+    @Test
+    void testAppend_WhenSentOverHttp() throws IOException {
+        client.append(List.of(transaction(42, 2000.0).from("Polly Gray").to("Ada Thorne").build()));
+
+        Assertions.assertEquals(List.of(42), mtns(worker.getTransactionSnapshot().getTopTransactions(1)));
+        Assertions.assertEquals(local.aggregates(), client.aggregates());
+    }
+
+    @Test
+    void testErrors_WhenWorkerAnswersWithClientError() {
+        ServiceException negative = Assertions.assertThrows(ServiceException.class, () -> client.topTransactions(-1));
+        // issue 1 was raised on transaction 663458
+        ServiceException wrongOwner = Assertions.assertThrows(ServiceException.class,
+                () -> client.append(List.of(transaction(7, 1.0).issue(1, true).build())));
+
+        Assertions.assertEquals(400, negative.getCode());
+        Assertions.assertEquals("Number of transactions must not be negative", negative.getMessage());
+        Assertions.assertEquals(400, wrongOwner.getCode());
+        Assertions.assertEquals("Issue 1 belongs to transaction 663458, not to transaction 7",
+                wrongOwner.getMessage());
+    }
+
+    @Test
+    void testErrors_WhenWorkerAnswersWithServerError(@TempDir Path directory) throws IOException {
+        // appends fail with 503 once the worker's log is closed
+        TransactionLog closed = new TransactionLog(directory.resolve("transactions.json.wal"), true, 16,
+                Duration.ZERO);
+        closed.close();
+        ReflectionTestUtils.setField(worker, "transactionLog", closed);
+
+        IOException exception = Assertions.assertThrows(IOException.class,
+                () -> client.append(List.of(transaction(42, 1.0).build())));
+
+        Assertions.assertTrue(exception.getMessage().contains("503"), exception.getMessage());
+    }
+
+    @Test
+    void testJson_WhenShardAnswersRoundTrip() throws IOException {
+        TransactionSnapshot snapshot = worker.getTransactionSnapshot();
+        // amountBelow and amountAbove leave one bound infinite
+        TransactionFilter filter = TransactionFilter.amountBelow(-1.5).or(TransactionFilter.amountAbove(1e6))
+                .or(TransactionFilter.sentBy("Tom Shelby").not().and(TransactionFilter.hasOpenIssue()));
+        ShardAggregates aggregates = ShardAggregates.of(Partitioning.NONE, snapshot);
+        FilterAggregate aggregate = snapshot.aggregate(TransactionFilter.all());
+        BeneficiaryPage page = snapshot.getBeneficiaryPage(null, 3);
+        ClientSketches sketches = snapshot.getClientSketches();
+
+        Assertions.assertEquals(filter, roundTrip(filter, TransactionFilter.class));
+        Assertions.assertEquals(aggregates, roundTrip(aggregates, ShardAggregates.class));
+        Assertions.assertEquals(aggregate, roundTrip(aggregate, FilterAggregate.class));
+        Assertions.assertEquals(ShardIssues.of(snapshot), roundTrip(ShardIssues.of(snapshot), ShardIssues.class));
+        assertSamePage(page, roundTrip(page, BeneficiaryPage.class));
+        assertSameSketches(sketches, roundTrip(sketches, ClientSketches.class));
+    }
+
+    private <T> T roundTrip(T value, Class<T> type) throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(value), type);
+    }
+
+    private static void assertSamePage(BeneficiaryPage expected, BeneficiaryPage actual) {
+        Assertions.assertEquals(List.copyOf(expected.transactionsByBeneficiary().keySet()),
+                List.copyOf(actual.transactionsByBeneficiary().keySet()));
+        for (Map.Entry<String, List<Transaction>> beneficiary : expected.transactionsByBeneficiary().entrySet()) {
+            Assertions.assertEquals(mtns(beneficiary.getValue()),
+                    mtns(actual.transactionsByBeneficiary().get(beneficiary.getKey())));
+        }
+        Assertions.assertEquals(expected.hasMore(), actual.hasMore());
+        Assertions.assertEquals(expected.nextAfter(), actual.nextAfter());
+    }
+
+    /**
+     * Compares what the sketches answer, as the order of equal counters in their bytes is not kept
+     */
+    private static void assertSameSketches(ClientSketches expected, ClientSketches actual) {
+        Assertions.assertEquals(expected.getUniqueSenderCount(), actual.getUniqueSenderCount());
+        Assertions.assertEquals(expected.getUniqueBeneficiaryCount(), actual.getUniqueBeneficiaryCount());
+        Assertions.assertEquals(expected.getUniqueClientCount(), actual.getUniqueClientCount());
+        Assertions.assertEquals(expected.getTopSenders(10), actual.getTopSenders(10));
+        Assertions.assertEquals(expected.getMaxAmountErrorCents(), actual.getMaxAmountErrorCents());
+    }
+
+    private static List<Integer> mtns(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getMtn).toList();
+    }
+
+    /**
+     * Hands a request received on the port to the controllers and writes their response back
+     */
+    private static void forward(MockMvc mockMvc, HttpExchange exchange) throws IOException {
+        try (exchange) {
+            MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+                    .request(HttpMethod.valueOf(exchange.getRequestMethod()), exchange.getRequestURI())
+                    .content(exchange.getRequestBody().readAllBytes());
+            exchange.getRequestHeaders().forEach((name, values) -> values.forEach(value -> request.header(name, value)));
+            MockHttpServletResponse response = mockMvc.perform(request).andReturn().getResponse();
+            byte[] body = response.getContentAsByteArray();
+            if (response.getContentType() != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, response.getContentType());
+            }
+            exchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                exchange.getResponseBody().write(body);
+            }
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
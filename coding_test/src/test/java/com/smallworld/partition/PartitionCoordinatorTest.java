@@ -0,0 +1,345 @@
+package com.smallworld.partition;
+
+import com.smallworld.TransactionDataFetcher;
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.DataVersion;
+import com.smallworld.service.TransactionService;
+import com.smallworld.service.impl.TransactionServiceImpl;
+import com.smallworld.snapshot.BeneficiaryPage;
+import com.smallworld.snapshot.TransactionFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class PartitionCoordinatorTest {
+    private static final String FILE = "src/main/resources/transactions.json";
+    private static final int SHARDS = 3;
+
+    private final List<TransactionServiceImpl> workers = new ArrayList<>();
+    private TransactionDataFetcher single;
+    private PartitionCoordinator coordinator;
+    private TransactionDataFetcher partitioned;
+
+    @BeforeEach
+    void setUp() {
+        single = new TransactionDataFetcher(worker(Partitioning.NONE));
+        List<ShardClient> shards = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Partitioning partitioning = new Partitioning(SHARDS, shard);
+            TransactionServiceImpl worker = worker(partitioning);
+            workers.add(worker);
+            shards.add(new LocalShardClient(worker, partitioning));
+        }
+        coordinator = new PartitionCoordinator(shards);
+        partitioned = new TransactionDataFetcher(coordinator);
+    }
+
+    @Test
+    void testQueries_WhenPartitionedOverThreeShards() {
+        Assertions.assertTrue(workers.stream().noneMatch(worker -> worker.getAllTransaction().isEmpty()));
+        Assertions.assertEquals(single.getTotalTransactionAmount(), partitioned.getTotalTransactionAmount());
+        Assertions.assertEquals(single.getMaxTransactionAmount(), partitioned.getMaxTransactionAmount());
+        Assertions.assertEquals(single.countUniqueClients(), partitioned.countUniqueClients());
+        Assertions.assertEquals(single.getTopSender(), partitioned.getTopSender());
+        Assertions.assertEquals(single.getUnsolvedIssueIds(), partitioned.getUnsolvedIssueIds());
+        Assertions.assertEquals(single.getAllSolvedIssueMessages().stream().sorted().toList(),
+                partitioned.getAllSolvedIssueMessages().stream().sorted().toList());
+        Assertions.assertEquals(mtns(single.getTopNTransactionsByAmount(5)),
+                mtns(partitioned.getTopNTransactionsByAmount(5)));
+        List<String> clients = List.of("Tom Shelby", "Grace Burgess", "Arthur Shelby", "Michael Gray", "Nobody");
+        Assertions.assertEquals(single.hasOpenComplianceIssues(clients), partitioned.hasOpenComplianceIssues(clients));
+        Assertions.assertEquals(single.getTotalTransactionAmountSentBy(clients),
+                partitioned.getTotalTransactionAmountSentBy(clients));
+        Assertions.assertEquals(single.getTotalTransactionAmountSentBy("Tom Shelby"),
+                partitioned.getTotalTransactionAmountSentBy("Tom Shelby"));
+        Assertions.assertEquals(single.hasOpenComplianceIssues("Arthur Shelby"),
+                partitioned.hasOpenComplianceIssues("Arthur Shelby"));
+    }
+
+    @Test
+    void testQueries_WhenFilteredOverThreeShards() {
+        List<TransactionFilter> filters = List.of(TransactionFilter.all(), TransactionFilter.hasOpenIssue(),
+                TransactionFilter.sentBy("Tom Shelby").and(TransactionFilter.amountAbove(100)),
+                TransactionFilter.hasIssue().not());
+        for (TransactionFilter filter : filters) {
+            Assertions.assertEquals(single.aggregate(filter), partitioned.aggregate(filter), filter.toString());
+            Assertions.assertEquals(mtns(single.getTopNTransactionsByAmount(filter, 3)),
+                    mtns(partitioned.getTopNTransactionsByAmount(filter, 3)), filter.toString());
+        }
+    }
+
+    @Test
+    void testQueries_WhenAmountsAreNegative(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("transactions.json");
+        // two transactions over three shards leave at least one shard empty
+        Files.writeString(file, """
+                [{"mtn": 1, "amount": -5.5, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"},
+                 {"mtn": 2, "amount": -7.25, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Ada Thorne"}]
+                """);
+        TransactionDataFetcher negativeSingle = new TransactionDataFetcher(
+                worker(file.toString(), Partitioning.NONE, false));
+        List<ShardClient> shards = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Partitioning partitioning = new Partitioning(SHARDS, shard);
+            shards.add(new LocalShardClient(worker(file.toString(), partitioning, false), partitioning));
+        }
+        TransactionDataFetcher negativePartitioned = new TransactionDataFetcher(new PartitionCoordinator(shards));
+
+        Assertions.assertEquals(new BigDecimal("-5.50"), negativePartitioned.getMaxTransactionAmount());
+        Assertions.assertEquals(negativeSingle.getMaxTransactionAmount(),
+                negativePartitioned.getMaxTransactionAmount());
+        List<TransactionFilter> filters = List.of(TransactionFilter.all(), TransactionFilter.amountBelow(-6),
+                TransactionFilter.amountAbove(0));
+        for (TransactionFilter filter : filters) {
+            Assertions.assertEquals(negativeSingle.aggregate(filter), negativePartitioned.aggregate(filter),
+                    filter.toString());
+        }
+        Assertions.assertEquals(new BigDecimal("-7.25"),
+                negativePartitioned.aggregate(TransactionFilter.amountBelow(-6)).maxAmount());
+    }
+
+    @Test
+    void testGetTransactionsByBeneficiaryName_WhenPagedOverThreeShards() {
+        Map<String, Object> expected = single.getTransactionsByBeneficiaryName();
+        List<String> beneficiaries = new ArrayList<>();
+        String after = null;
+        do {
+            BeneficiaryPage page = partitioned.getTransactionsByBeneficiaryName(after, 2);
+            Assertions.assertTrue(page.transactionsByBeneficiary().size() <= 2);
+            page.transactionsByBeneficiary().forEach((beneficiary, transactions) -> {
+                beneficiaries.add(beneficiary);
+                Assertions.assertEquals(sortedMtns(expected.get(beneficiary)), sortedMtns(transactions), beneficiary);
+            });
+            after = page.nextAfter();
+        } while (after != null);
+
+        Assertions.assertEquals(new ArrayList<>(new TreeSet<>(expected.keySet())), beneficiaries);
+    }
+
+    @Test
+    void testQueries_WhenThereIsNoPartialForm() {
+        ServiceException byBeneficiary = Assertions.assertThrows(ServiceException.class,
+                partitioned::getTransactionsByBeneficiaryName);
+        ServiceException filteredPage = Assertions.assertThrows(ServiceException.class,
+                () -> partitioned.getTransactions(TransactionFilter.all(), 0, 10));
+
+        Assertions.assertEquals(501, byBeneficiary.getCode());
+        Assertions.assertEquals(501, filteredPage.getCode());
+    }
+
+    @Test
+    void testGetDataVersion_WhenWorkerRestarts() {
+        List<RestartableShardClient> restartable = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            restartable.add(new RestartableShardClient(workers.get(shard), new Partitioning(SHARDS, shard)));
+        }
+        PartitionCoordinator versioned = new PartitionCoordinator(new ArrayList<>(restartable));
+        DataVersion before = versioned.getDataVersion();
+
+        restartable.get(1).epoch = "restarted";
+        DataVersion after = versioned.getDataVersion();
+
+        Assertions.assertEquals(before.generation(), after.generation());
+        Assertions.assertNotEquals(before.tag(), after.tag());
+        Assertions.assertEquals(before.tag(), new PartitionCoordinator(shards()).getDataVersion().tag());
+        versioned.close();
+    }
+
+    @Test
+    void testGetDataVersion_WhenAggregatesAreReused() {
+        PartitionCoordinator reusing = new PartitionCoordinator(shards(), false, Duration.ofMinutes(10));
+        DataVersion version = reusing.getDataVersion();
+        int mtn = 1;
+
+        workers.get(Partitioning.shardOf(mtn, SHARDS))
+                .append(transaction(mtn, 10.0).from("Polly Gray").to("Ada Thorne").build());
+        Assertions.assertEquals(version, reusing.getDataVersion());
+
+        reusing.append(transaction(2, 10.0).from("Polly Gray").to("Ada Thorne").build());
+        Assertions.assertEquals(version.generation() + 2, reusing.getDataVersion().generation());
+        reusing.close();
+    }
+
+    @Test
+    void testAppendBatch_WhenIssueBelongsToTransactionOnAnotherShard() {
+        // issue 3 was raised on 1284564
+        int owner = 1284564;
+        int mtn = 1;
+        while (Partitioning.shardOf(mtn, SHARDS) == Partitioning.shardOf(owner, SHARDS)) {
+            mtn++;
+        }
+        Transaction update = transaction(mtn, 150.2).to("Arthur Shelby").build();
+        update.setIssueId(3);
+        update.setIssueSolved(true);
+        DataVersion version = coordinator.getDataVersion();
+
+        ServiceException exception = Assertions.assertThrows(ServiceException.class,
+                () -> coordinator.appendBatch(List.of(transaction(2, 10.0).from("Polly Gray").to("Ada Thorne").build(),
+                        update)));
+
+        Assertions.assertEquals(400, exception.getCode());
+        Assertions.assertEquals(version, coordinator.getDataVersion());
+        Assertions.assertTrue(partitioned.getUnsolvedIssueIds().contains(3));
+    }
+
+    @Test
+    void testAppendBatch_WhenRoutedByMtn() {
+        long generation = coordinator.getDataVersion().generation();
+        BigDecimal total = partitioned.getTotalTransactionAmount();
+        List<Transaction> batch = new ArrayList<>();
+        for (int mtn = 1; mtn <= 6; mtn++) {
+            batch.add(transaction(mtn, 1000.25).from("Polly Gray").to("Ada Thorne").build());
+        }
+
+        coordinator.appendBatch(batch);
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Partitioning partitioning = new Partitioning(SHARDS, shard);
+            Assertions.assertTrue(workers.get(shard).getAllTransaction().stream()
+                    .allMatch(transaction -> partitioning.owns(transaction.getMtn())));
+        }
+        Assertions.assertTrue(coordinator.getDataVersion().generation() > generation);
+        Assertions.assertEquals(total.add(new BigDecimal("6001.50")), partitioned.getTotalTransactionAmount());
+        Assertions.assertEquals(Optional.of("Polly Gray"), partitioned.getTopSender());
+        Assertions.assertEquals(new BigDecimal("1000.25"), partitioned.getMaxTransactionAmount());
+        Assertions.assertEquals(single.countUniqueClients() + 2, partitioned.countUniqueClients());
+    }
+
+    @Test
+    void testAppend_WhenWorkerDoesNotOwnMtn() {
+        int mtn = 1;
+        TransactionServiceImpl other = workers.get((Partitioning.shardOf(mtn, SHARDS) + 1) % SHARDS);
+
+        ServiceException exception = Assertions.assertThrows(ServiceException.class,
+                () -> other.append(transaction(mtn, 10.0).from("Polly Gray").to("Ada Thorne").build()));
+
+        Assertions.assertEquals(400, exception.getCode());
+    }
+
+    @Test
+    void testAggregates_WhenWorkersAreListedOutOfOrder() {
+        List<ShardClient> swapped = new ArrayList<>();
+        for (int shard = SHARDS - 1; shard >= 0; shard--) {
+            swapped.add(new LocalShardClient(workers.get(shard), new Partitioning(SHARDS, shard)));
+        }
+        TransactionDataFetcher misconfigured = new TransactionDataFetcher(new PartitionCoordinator(swapped));
+
+        Assertions.assertThrows(ServiceException.class, misconfigured::getTotalTransactionAmount);
+    }
+
+    @Test
+    void testQueries_WhenAnsweredFromSketches() {
+        List<ShardClient> sketched = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Partitioning partitioning = new Partitioning(SHARDS, shard);
+            sketched.add(new LocalShardClient(worker(partitioning, true), partitioning));
+        }
+        PartitionCoordinator approximate = new PartitionCoordinator(sketched, true);
+        TransactionDataFetcher estimated = new TransactionDataFetcher(approximate);
+
+        Assertions.assertEquals(single.countUniqueClients(), estimated.countUniqueClients());
+        Assertions.assertEquals(single.getTopSender(), estimated.getTopSender());
+
+        approximate.appendBatch(List.of(transaction(1, 100_000.0).from("Polly Gray").to("Ada Thorne").build(),
+                transaction(2, 100_000.0).from("Polly Gray").to("Ada Thorne").build()));
+        Assertions.assertEquals(single.countUniqueClients() + 2, estimated.countUniqueClients());
+        Assertions.assertEquals(Optional.of("Polly Gray"), estimated.getTopSender());
+        approximate.close();
+    }
+
+    @Test
+    void testQueries_WhenWorkersKeepNoSketches() {
+        List<ShardClient> exact = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            exact.add(new LocalShardClient(workers.get(shard), new Partitioning(SHARDS, shard)));
+        }
+        TransactionDataFetcher estimated = new TransactionDataFetcher(new PartitionCoordinator(exact, true));
+
+        ServiceException exception = Assertions.assertThrows(ServiceException.class, estimated::countUniqueClients);
+
+        Assertions.assertEquals(409, exception.getCode());
+    }
+
+    @Test
+    void testShardOf_WhenMtnsAreConsecutive() {
+        int[] counts = new int[4];
+        for (int mtn = 0; mtn < 40_000; mtn++) {
+            counts[Partitioning.shardOf(mtn, counts.length)]++;
+        }
+
+        for (int count : counts) {
+            Assertions.assertTrue(Math.abs(count - 10_000) < 500, "shard of " + count + " transactions");
+        }
+        Assertions.assertEquals(0, Partitioning.shardOf(null, counts.length));
+    }
+
+    private static TransactionServiceImpl worker(Partitioning partitioning) {
+        return worker(partitioning, false);
+    }
+
+    private static TransactionServiceImpl worker(Partitioning partitioning, boolean sketches) {
+        return worker(FILE, partitioning, sketches);
+    }
+
+    private static TransactionServiceImpl worker(String file, Partitioning partitioning, boolean sketches) {
+        TransactionServiceImpl worker = new TransactionServiceImpl();
+        ReflectionTestUtils.setField(worker, "sketchesEnabled", sketches);
+        ReflectionTestUtils.setField(worker, "jsonFileLocation", file);
+        ReflectionTestUtils.setField(worker, "shardCount", partitioning.shardCount());
+        ReflectionTestUtils.setField(worker, "shardIndex", partitioning.shardIndex());
+        ReflectionTestUtils.invokeMethod(worker, "initTransaction");
+        return worker;
+    }
+
+    private List<ShardClient> shards() {
+        List<ShardClient> shards = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shards.add(new LocalShardClient(workers.get(shard), new Partitioning(SHARDS, shard)));
+        }
+        return shards;
+    }
+
+    private static List<Integer> sortedMtns(Object transactions) {
+        return ((List<?>) transactions).stream().map(transaction -> ((Transaction) transaction).getMtn()).sorted()
+                .toList();
+    }
+
+    private static List<Integer> mtns(List<Object> transactions) {
+        return transactions.stream().map(transaction -> ((Transaction) transaction).getMtn()).toList();
+    }
+
+    /**
+     * Reports the epoch of a worker process that may have been restarted
+     */
+    private static class RestartableShardClient extends LocalShardClient {
+        private String epoch = DataVersion.PROCESS_EPOCH;
+
+        RestartableShardClient(TransactionService worker, Partitioning partitioning) {
+            super(worker, partitioning);
+        }
+
+        @Override
+        public ShardAggregates aggregates() {
+            ShardAggregates aggregates = super.aggregates();
+            return new ShardAggregates(aggregates.shardCount(), aggregates.shardIndex(), epoch,
+                    aggregates.generation(), aggregates.lastModifiedMillis(), aggregates.transactions(),
+                    aggregates.totalAmountCents(), aggregates.maxAmountCents());
+        }
+    }
+}
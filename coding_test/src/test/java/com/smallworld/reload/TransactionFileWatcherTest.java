@@ -0,0 +1,59 @@
+package com.smallworld.reload;
+
+import com.smallworld.service.ReloadStatistics;
+import com.smallworld.service.ReloadableTransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionFileWatcherTest {
+    @Mock
+    ReloadableTransactionService transactionService;
+    @TempDir
+    Path directory;
+
+    private TransactionFileWatcher watcher;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        watcher.stop();
+    }
+
+    @Test
+    void testPoll_WhenFileChanges() throws IOException {
+        Path file = directory.resolve("transactions.json");
+        Files.writeString(file, "[]");
+        Mockito.when(transactionService.reload())
+                .thenReturn(new ReloadStatistics(2, 0, 0, 1, Instant.now(), null, 0, 0));
+        watcher = new TransactionFileWatcher(transactionService, file.toString(), ReloadMode.POLL,
+                Duration.ofMillis(20), Duration.ofMillis(20));
+        watcher.start();
+
+        Files.writeString(file, "[ ]");
+
+        Mockito.verify(transactionService, Mockito.timeout(5_000)).reload();
+    }
+
+    @Test
+    void testStart_WhenModeIsNone() throws IOException {
+        Path file = directory.resolve("transactions.json");
+        watcher = new TransactionFileWatcher(transactionService, file.toString(), ReloadMode.NONE,
+                Duration.ofMillis(20), Duration.ofMillis(20));
+        watcher.start();
+
+        Assertions.assertDoesNotThrow(watcher::stop);
+        Mockito.verifyNoInteractions(transactionService);
+    }
+}
@@ -0,0 +1,383 @@
+package com.smallworld.service.impl;
+
+import com.smallworld.exception.ServiceException;
+import com.smallworld.model.Transaction;
+import com.smallworld.service.ReloadStatistics;
+import com.smallworld.snapshot.TransactionFilter;
+import com.smallworld.snapshot.TransactionSnapshot;
+import com.smallworld.wal.TransactionLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class TransactionServiceImplTest {
+    private static final String ONE_TRANSACTION = """
+            [{"mtn": 1, "amount": 10.5, "senderFullName": "Tom Shelby", "senderAge": 22,
+              "beneficiaryFullName": "Arthur Shelby", "beneficiaryAge": 60,
+              "issueId": null, "issueSolved": true, "issueMessage": null}]""";
+    private static final String TWO_TRANSACTIONS = """
+            [{"mtn": 1, "amount": 10.5, "senderFullName": "Tom Shelby", "senderAge": 22,
+              "beneficiaryFullName": "Arthur Shelby", "beneficiaryAge": 60,
+              "issueId": null, "issueSolved": true, "issueMessage": null},
+             {"mtn": 2, "amount": 20.0, "senderFullName": "Grace Burgess", "senderAge": 31,
+              "beneficiaryFullName": "Tom Shelby", "beneficiaryAge": 22,
+              "issueId": 7, "issueSolved": false, "issueMessage": "Looks like money laundering"}]""";
+    // amounts of 10^15 cents, as many as fit a long total with less than one more amount to spare
+    private static final double LARGE_AMOUNT = 1e13;
+    private static final int LARGE_AMOUNT_ROWS = 9223;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private final TransactionServiceImpl transactionService = new TransactionServiceImpl();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = directory.resolve("transactions.json");
+        Files.writeString(file, ONE_TRANSACTION);
+        ReflectionTestUtils.setField(transactionService, "jsonFileLocation", file.toString());
+        transactionService.initTransaction();
+    }
+
+    @Test
+    void testReload_WhenFileChanged() throws IOException {
+        Assertions.assertEquals(1, transactionService.getTransactionSnapshot().getGeneration());
+        Files.writeString(file, TWO_TRANSACTIONS);
+
+        ReloadStatistics statistics = transactionService.reload();
+
+        Assertions.assertEquals(2, statistics.generation());
+        Assertions.assertEquals(2, statistics.rows());
+        Assertions.assertEquals(statistics, transactionService.getLastReload());
+        Assertions.assertEquals(2, statistics.parse().rows());
+        Assertions.assertEquals(Files.size(file), statistics.parse().bytesRead());
+        Assertions.assertTrue(statistics.heapUsedBefore() > 0 && statistics.heapUsedAfter() > 0);
+        Assertions.assertEquals(2, transactionService.getAllTransaction().size());
+        Assertions.assertTrue(transactionService.getTransactionSnapshot().hasOpenIssues("Tom Shelby"));
+    }
+
+    @Test
+    void testReload_WhenAmountsAreNotWholeCents() throws IOException {
+        Files.writeString(file, """
+                [{"mtn": 1, "amount": 10.5, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"},
+                 {"mtn": 2, "amount": 10.005, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"}
+                ]""");
+
+        Assertions.assertThrows(ServiceException.class, transactionService::reload);
+
+        Assertions.assertEquals(1, transactionService.getFailedReloads());
+        Assertions.assertEquals(1, transactionService.getTransactionSnapshot().getGeneration());
+        Assertions.assertEquals(0, transactionService.getLastReload().skippedRows());
+    }
+
+    @Test
+    void testReload_WhenInexactAmountsAreSkipped() throws IOException {
+        ReflectionTestUtils.setField(transactionService, "skipInexactAmounts", true);
+        Files.writeString(file, """
+                [{"mtn": 1, "amount": 10.5, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"},
+                 {"mtn": 2, "amount": 10.005, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"},
+                 {"mtn": 3, "amount": 1e300, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"},
+                 {"mtn": 4, "amount": null, "senderFullName": "Tom Shelby", "beneficiaryFullName": "Arthur Shelby"}
+                ]""");
+
+        ReloadStatistics statistics = transactionService.reload();
+
+        Assertions.assertEquals(1, statistics.rows());
+        Assertions.assertEquals(3, statistics.skippedRows());
+        Assertions.assertEquals(4, statistics.parse().rows());
+        Assertions.assertEquals(0, transactionService.getFailedReloads());
+        Assertions.assertEquals(1050, transactionService.getTransactionSnapshot().getTotalAmountCents());
+    }
+
+    @Test
+    void testReload_WhenFileIsInvalid() throws IOException {
+        Files.writeString(file, "[{\"mtn\": 1,");
+
+        Assertions.assertThrows(ServiceException.class, transactionService::reload);
+
+        Assertions.assertEquals(1, transactionService.getFailedReloads());
+        Assertions.assertEquals(1, transactionService.getTransactionSnapshot().getGeneration());
+        Assertions.assertEquals(1, transactionService.getAllTransaction().size());
+    }
+
+    @Test
+    void testAppend_WhenNewTransaction() {
+        transactionService.append(transaction(2, 30.0).from("Grace Burgess").to("Tom Shelby").build());
+
+        TransactionSnapshot snapshot = transactionService.getTransactionSnapshot();
+        Assertions.assertEquals(2, snapshot.getGeneration());
+        Assertions.assertEquals(4050, snapshot.getTotalAmountCents());
+        Assertions.assertEquals(3000, snapshot.getMaxAmountCents());
+        Assertions.assertEquals(3000, snapshot.getTotalAmountCentsSentBy("Grace Burgess"));
+        Assertions.assertEquals(3, snapshot.getUniqueClientCount());
+        Assertions.assertEquals("Grace Burgess", snapshot.getTopSender());
+        Assertions.assertEquals(2, snapshot.getTopTransactions(3).get(0).getMtn());
+        Assertions.assertEquals(1, snapshot.getTransactionsByBeneficiary().get("Tom Shelby").size());
+        Assertions.assertEquals(1, snapshot.getTransactionsByBeneficiary().get("Arthur Shelby").size());
+        Assertions.assertEquals(2, transactionService.getAllTransaction().size());
+    }
+
+    @Test
+    void testAppend_WhenIssueSolved() throws IOException {
+        Files.writeString(file, TWO_TRANSACTIONS);
+        transactionService.reload();
+
+        transactionService.append(transaction(2, 20.0).from("Grace Burgess").to("Tom Shelby").issue(7, true).build());
+
+        TransactionSnapshot snapshot = transactionService.getTransactionSnapshot();
+        Assertions.assertFalse(snapshot.hasOpenIssues("Tom Shelby"));
+        Assertions.assertEquals(Set.of(), snapshot.getUnsolvedIssueIds());
+        Assertions.assertEquals(List.of("Looks like money laundering"), snapshot.getSolvedIssueMessages());
+        Assertions.assertEquals(0, snapshot.aggregate(TransactionFilter.hasOpenIssue()).count());
+        // the issue update is not a new transaction
+        Assertions.assertEquals(3050, snapshot.getTotalAmountCents());
+        Assertions.assertEquals(2, transactionService.getAllTransaction().size());
+    }
+
+    @Test
+    void testAppend_WhenAppendedIssueSolved() {
+        transactionService.append(transaction(3, 10.0).from("John Shelby").to("Michael Gray").issue(11, false).build());
+        Assertions.assertTrue(transactionService.getTransactionSnapshot().hasOpenIssues("John Shelby"));
+
+        transactionService.append(transaction(3, 10.0).from("John Shelby").to("Michael Gray").issue(11, true).build());
+
+        TransactionSnapshot snapshot = transactionService.getTransactionSnapshot();
+        Assertions.assertFalse(snapshot.hasOpenIssues("John Shelby"));
+        Assertions.assertFalse(snapshot.hasOpenIssues("Michael Gray"));
+        Assertions.assertEquals(Set.of(), snapshot.getUnsolvedIssueIds());
+        Assertions.assertEquals(2050, snapshot.getTotalAmountCents());
+    }
+
+    @Test
+    void testAppend_WhenIssueBelongsToAnotherTransaction() {
+        transactionService.append(transaction(3, 10.0).from("John Shelby").to("Michael Gray").issue(11, false).build());
+
+        ServiceException exception = Assertions.assertThrows(ServiceException.class, () -> transactionService
+                .append(transaction(4, 99.0).from("Polly Gray").to("Ada Thorne").issue(11, true).build()));
+
+        Assertions.assertEquals(400, exception.getCode());
+        TransactionSnapshot snapshot = transactionService.getTransactionSnapshot();
+        Assertions.assertTrue(snapshot.hasOpenIssues("John Shelby"));
+        Assertions.assertTrue(snapshot.hasOpenIssues("Michael Gray"));
+        Assertions.assertFalse(snapshot.hasOpenIssues("Polly Gray"));
+        Assertions.assertEquals(Set.of(11), snapshot.getUnsolvedIssueIds());
+        Assertions.assertEquals(2050, snapshot.getTotalAmountCents());
+    }
+
+    @Test
+    void testAppendBatch_WhenIssueRaisedEarlierInBatchBelongsToAnotherTransaction() {
+        List<Transaction> batch = List.of(
+                transaction(3, 10.0).from("John Shelby").to("Michael Gray").issue(11, false).build(),
+                transaction(4, 99.0).from("Polly Gray").to("Ada Thorne").issue(11, true).build());
+
+        ServiceException exception = Assertions.assertThrows(ServiceException.class,
+                () -> transactionService.appendBatch(batch));
+
+        Assertions.assertEquals(400, exception.getCode());
+        Assertions.assertEquals(1, transactionService.getAllTransaction().size());
+    }
+
+    @Test
+    void testAppend_WhenTransactionRepeatedWithNewIssue() throws IOException {
+        Files.writeString(file, TWO_TRANSACTIONS);
+        transactionService.reload();
+        Transaction repeated = transaction(2, 20.0).from("Grace Burgess").to("Tom Shelby").issue(8, false).build();
+        repeated.setSenderAge(31);
+        repeated.setBeneficiaryAge(22);
+
+        transactionService.append(repeated);
+
+        TransactionSnapshot snapshot = transactionService.getTransactionSnapshot();
+        Assertions.assertEquals(Set.of(7, 8), snapshot.getUnsolvedIssueIds());
+        // the new issue belongs to the loaded transaction, its amount is not counted again
+        Assertions.assertEquals(3050, snapshot.getTotalAmountCents());
+        Assertions.assertEquals(2000, snapshot.getTotalAmountCentsSentBy("Grace Burgess"));
+        Assertions.assertEquals(2, transactionService.getAllTransaction().size());
+        Assertions.assertEquals(3, snapshot.getGeneration());
+    }
+
+    @Test
+    void testAppendBatch_WhenConcurrentWriters() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < 4; writer++) {
+                int firstMtn = 100 + writer * 1000;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        transactionService.append(
+                                transaction(firstMtn + i, 1.0).from("Polly Gray").to("Tom Shelby").build());
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        TransactionSnapshot snapshot = transactionService.getTransactionSnapshot();
+        Assertions.assertEquals(4001, snapshot.getTransactions().size());
+        Assertions.assertEquals(401050, snapshot.getTotalAmountCents());
+        Assertions.assertEquals(400000, snapshot.getTotalAmountCentsSentBy("Polly Gray"));
+        Assertions.assertEquals("Polly Gray", snapshot.getTopSender());
+        Assertions.assertEquals(4001, snapshot.getGeneration());
+    }
+
+    @Test
+    void testReload_WhenLogHoldsAppends() throws IOException {
+        Path logFile = directory.resolve("transactions.json.wal");
+        try (TransactionLog transactionLog = new TransactionLog(logFile, true, 16, Duration.ZERO)) {
+            ReflectionTestUtils.setField(transactionService, "transactionLog", transactionLog);
+            transactionService.append(transaction(2, 30.0).from("Grace Burgess").to("Tom Shelby").build());
+            Files.writeString(file, TWO_TRANSACTIONS);
+
+            transactionService.reload();
+
+            // the appended transaction repeats the MTN of a loaded one with another amount, both are kept
+            Assertions.assertEquals(3, transactionService.getAllTransaction().size());
+            Assertions.assertEquals(6050, transactionService.getTransactionSnapshot().getTotalAmountCents());
+        }
+
+        TransactionServiceImpl restarted = new TransactionServiceImpl();
+        try (TransactionLog transactionLog = new TransactionLog(logFile, true, 16, Duration.ZERO)) {
+            ReflectionTestUtils.setField(restarted, "jsonFileLocation", file.toString());
+            ReflectionTestUtils.setField(restarted, "transactionLog", transactionLog);
+            restarted.initTransaction();
+
+            Assertions.assertEquals(3, restarted.getAllTransaction().size());
+            Assertions.assertEquals(5000,
+                    restarted.getTransactionSnapshot().getTotalAmountCentsSentBy("Grace Burgess"));
+        }
+    }
+
+    @Test
+    void testAppend_WhenTotalWouldOverflow() throws IOException {
+        writeLargeAmounts();
+        transactionService.reload();
+        Path logFile = directory.resolve("transactions.json.wal");
+        try (TransactionLog transactionLog = new TransactionLog(logFile, true, 16, Duration.ZERO)) {
+            ReflectionTestUtils.setField(transactionService, "transactionLog", transactionLog);
+            List<Transaction> batch = List.of(transaction(1, 1.0).build(), transaction(2, LARGE_AMOUNT).build());
+
+            ServiceException exception = Assertions.assertThrows(ServiceException.class,
+                    () -> transactionService.append(transaction(2, LARGE_AMOUNT).build()));
+            Assertions.assertThrows(ServiceException.class, () -> transactionService.appendBatch(batch));
+
+            Assertions.assertEquals(400, exception.getCode());
+            Assertions.assertEquals(LARGE_AMOUNT_ROWS, transactionService.getAllTransaction().size());
+            // repeats a loaded transaction, so it adds nothing to the total
+            transactionService.append(transaction(1000, LARGE_AMOUNT).issue(3, false).build());
+        }
+
+        TransactionServiceImpl restarted = new TransactionServiceImpl();
+        try (TransactionLog transactionLog = new TransactionLog(logFile, true, 16, Duration.ZERO)) {
+            ReflectionTestUtils.setField(restarted, "jsonFileLocation", file.toString());
+            ReflectionTestUtils.setField(restarted, "transactionLog", transactionLog);
+            restarted.initTransaction();
+
+            Assertions.assertEquals(LARGE_AMOUNT_ROWS, restarted.getAllTransaction().size());
+            Assertions.assertEquals(Set.of(3), restarted.getTransactionSnapshot().getUnsolvedIssueIds());
+        }
+    }
+
+    @Test
+    void testReload_WhenLoggedAppendOverflowsReloadedTotal() throws IOException {
+        Path logFile = directory.resolve("transactions.json.wal");
+        try (TransactionLog transactionLog = new TransactionLog(logFile, true, 16, Duration.ZERO)) {
+            ReflectionTestUtils.setField(transactionService, "transactionLog", transactionLog);
+            transactionService.append(transaction(2, LARGE_AMOUNT).build());
+            transactionService.append(transaction(3, 1.0).build());
+            writeLargeAmounts();
+
+            ReloadStatistics statistics = transactionService.reload();
+
+            // the first logged transaction no longer fits the total and is skipped, the second one still does
+            Assertions.assertEquals(LARGE_AMOUNT_ROWS + 1, statistics.rows());
+            Assertions.assertEquals(0, transactionService.getFailedReloads());
+        }
+
+        TransactionServiceImpl restarted = new TransactionServiceImpl();
+        try (TransactionLog transactionLog = new TransactionLog(logFile, true, 16, Duration.ZERO)) {
+            ReflectionTestUtils.setField(restarted, "jsonFileLocation", file.toString());
+            ReflectionTestUtils.setField(restarted, "transactionLog", transactionLog);
+            restarted.initTransaction();
+
+            Assertions.assertEquals(LARGE_AMOUNT_ROWS + 1, restarted.getAllTransaction().size());
+            Assertions.assertEquals(LARGE_AMOUNT_ROWS * 1_000_000_000_000_000L + 100,
+                    restarted.getTransactionSnapshot().getTotalAmountCents());
+        }
+    }
+
+    @Test
+    void testAppend_WhenLogRecordIsTooLarge() throws IOException {
+        Transaction oversized = transaction(2, 5.0).from("Grace Burgess").to("Tom Shelby").issue(8, false).build();
+        oversized.setIssueMessage("x".repeat(1 << 20));
+        try (TransactionLog transactionLog = new TransactionLog(directory.resolve("transactions.json.wal"), true, 16,
+                Duration.ZERO)) {
+            ReflectionTestUtils.setField(transactionService, "transactionLog", transactionLog);
+
+            ServiceException exception = Assertions.assertThrows(ServiceException.class,
+                    () -> transactionService.append(oversized));
+
+            Assertions.assertEquals(400, exception.getCode());
+            Assertions.assertEquals(1, transactionService.getAllTransaction().size());
+        }
+    }
+
+    @Test
+    void testAppendBatch_WhenTransactionInvalid() {
+        List<Transaction> batch = List.of(transaction(2, 5.0).from("Grace Burgess").to("Tom Shelby").build(),
+                transaction(3, -1.0).from("Grace Burgess").to("Tom Shelby").build());
+
+        Assertions.assertThrows(ServiceException.class, () -> transactionService.appendBatch(batch));
+
+        Assertions.assertEquals(1, transactionService.getAllTransaction().size());
+    }
+
+    @Test
+    void testAppend_WhenAmountIsNotWholeCents() {
+        ServiceException exception = Assertions.assertThrows(ServiceException.class,
+                () -> transactionService.append(transaction(2, 10.005).from("Grace Burgess").to("Tom Shelby").build()));
+
+        Assertions.assertEquals(400, exception.getCode());
+        Assertions.assertEquals(1, transactionService.getAllTransaction().size());
+    }
+
+    @Test
+    void testAppend_WhenAmountsAreNotExactDoubles() {
+        // 0.1 + 0.2 is 0.30000000000000004 as doubles
+        transactionService.append(transaction(2, 0.1).from("Grace Burgess").to("Tom Shelby").build());
+        transactionService.append(transaction(3, 0.2).from("Grace Burgess").to("Tom Shelby").build());
+
+        Assertions.assertEquals(30,
+                transactionService.getTransactionSnapshot().getTotalAmountCentsSentBy("Grace Burgess"));
+    }
+
+    private void writeLargeAmounts() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < LARGE_AMOUNT_ROWS; i++) {
+            json.append(i == 0 ? "" : ",\n").append("{\"mtn\": ").append(1000 + i).append(", \"amount\": ")
+                    .append(LARGE_AMOUNT).append(", \"senderFullName\": \"Tom Shelby\", ")
+                    .append("\"beneficiaryFullName\": \"Arthur Shelby\"}");
+        }
+        Files.writeString(file, json.append("]"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.smallworld.sketch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+class ClientSketchesTest {
+    private static final double DISTINCT_ERROR = 0.01;
+    private static final double HEAVY_HITTER_ERROR = 0.001;
+
+    @Test
+    void testEstimate_WhenNamesRepeat() {
+        HyperLogLog sketch = HyperLogLog.withRelativeError(DISTINCT_ERROR);
+        Assertions.assertEquals(14, sketch.precision());
+        Assertions.assertEquals(0, sketch.estimate());
+        for (int repeat = 0; repeat < 3; repeat++) {
+            for (int client = 0; client < 200_000; client++) {
+                sketch.add("Client " + client);
+            }
+        }
+
+        // four standard errors
+        Assertions.assertEquals(200_000, sketch.estimate(), 200_000 * 4 * sketch.relativeError());
+    }
+
+    @Test
+    void testMerge_WhenPrecisionsDiffer() {
+        HyperLogLog fine = new HyperLogLog(16);
+        HyperLogLog coarse = new HyperLogLog(12);
+        HyperLogLog expected = new HyperLogLog(12);
+        for (int client = 0; client < 100_000; client++) {
+            // half the clients are on both sides
+            (client % 2 == 0 ? fine : coarse).add("Client " + client);
+            fine.add("Client " + (client / 2));
+            expected.add("Client " + client);
+            expected.add("Client " + (client / 2));
+        }
+
+        fine.merge(coarse);
+
+        Assertions.assertEquals(12, fine.precision());
+        Assertions.assertEquals(expected.estimate(), fine.estimate());
+    }
+
+    @Test
+    void testTopSenders_WhenSendersAreSkewed() {
+        Random random = new Random(3);
+        Map<String, Long> totals = new HashMap<>();
+        ClientSketches sketches = new ClientSketches(DISTINCT_ERROR, HEAVY_HITTER_ERROR);
+        long total = 0;
+        for (int row = 0; row < 500_000; row++) {
+            // a few senders send a large share of the amounts, the long tail one transaction each
+            String sender = row % 10 == 0 ? "Heavy " + random.nextInt(5) : "Sender " + row;
+            long amount = 100 + random.nextInt(10_000);
+            totals.merge(sender, amount, Long::sum);
+            total += amount;
+            sketches.add(sender, "Beneficiary " + random.nextInt(50_000), amount);
+        }
+        String topSender = totals.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow().getKey();
+
+        Assertions.assertEquals(topSender, sketches.getTopSender());
+        Assertions.assertTrue(sketches.getMaxAmountErrorCents() <= total * HEAVY_HITTER_ERROR);
+        for (HeavyHitter hitter : sketches.getTopSenders(5)) {
+            long exact = totals.get(hitter.name());
+            Assertions.assertTrue(hitter.weight() >= exact && hitter.weight() - hitter.error() <= exact, hitter.name());
+        }
+        Assertions.assertEquals(450_005, sketches.getUniqueSenderCount(), 450_005 * 4 * sketches.getDistinctError());
+        Assertions.assertEquals(50_000, sketches.getUniqueBeneficiaryCount(), 50_000 * 4 * sketches.getDistinctError());
+    }
+
+    @Test
+    void testMerge_WhenShardsShareClients() throws IOException {
+        ClientSketches all = new ClientSketches(DISTINCT_ERROR, HEAVY_HITTER_ERROR);
+        List<ClientSketches> shards = List.of(new ClientSketches(DISTINCT_ERROR, HEAVY_HITTER_ERROR),
+                new ClientSketches(DISTINCT_ERROR, HEAVY_HITTER_ERROR),
+                new ClientSketches(DISTINCT_ERROR, HEAVY_HITTER_ERROR));
+        for (int mtn = 0; mtn < 60_000; mtn++) {
+            // one sender sends on every shard and the most in total, the others 100 cents three times
+            String sender = mtn % 1000 == 0 ? "Client 7" : "Client " + (mtn % 20_000);
+            String beneficiary = "Client " + (mtn % 30_000 + 10_000);
+            long amount = sender.equals("Client 7") ? 50_000 : 100;
+            shards.get(mtn % 3).add(sender, beneficiary, amount);
+            all.add(sender, beneficiary, amount);
+        }
+        ObjectMapper mapper = new ObjectMapper();
+
+        ClientSketches merged = mapper.readValue(mapper.writeValueAsBytes(shards.get(0)), ClientSketches.class);
+        for (ClientSketches shard : shards.subList(1, shards.size())) {
+            merged.merge(mapper.readValue(mapper.writeValueAsString(shard), ClientSketches.class));
+        }
+
+        Assertions.assertEquals(all.getUniqueClientCount(), merged.getUniqueClientCount());
+        Assertions.assertEquals(40_000, merged.getUniqueClientCount(), 40_000 * 4 * merged.getDistinctError());
+        Assertions.assertEquals("Client 7", merged.getTopSender());
+        Assertions.assertEquals(all.getTopSender(), merged.getTopSender());
+    }
+
+    @Test
+    void testFromBytes_WhenBytesAreNotSketches() {
+        byte[] bytes = new ClientSketches(DISTINCT_ERROR, HEAVY_HITTER_ERROR).toBytes();
+        bytes[0] = 9;
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ClientSketches.fromBytes(bytes));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ClientSketches.fromBytes(new byte[3]));
+    }
+}
@@ -0,0 +1,92 @@
+package com.smallworld.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.loader.TransactionJsonReader;
+import com.smallworld.model.Money;
+import com.smallworld.model.Transaction;
+import com.smallworld.store.TransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+class ParallelAggregatorTest {
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private TransactionStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        new TransactionJsonReader(new ObjectMapper()).read(new File("src/main/resources/transactions.json"),
+                transactions::add);
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        // the sample repeated with shifted mtns, so rows spread over many small chunks
+        for (int copy = 0; copy < 50; copy++) {
+            for (Transaction transaction : transactions) {
+                Transaction shifted = copyOf(transaction);
+                shifted.setMtn(transaction.getMtn() + copy);
+                shifted.setAmount(Money.toDouble(Money.toCents(transaction.getAmount()) + copy));
+                builder.accept(shifted);
+            }
+        }
+        store = builder.build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void testAggregate_WhenAboveThreshold() {
+        TransactionSnapshot sequential = TransactionSnapshot.of(store);
+        TransactionSnapshot parallel = new ParallelAggregator(pool, 0, 7).aggregate(store);
+
+        Assertions.assertEquals(sequential.getTotalAmountCents(), parallel.getTotalAmountCents());
+        Assertions.assertEquals(sequential.getMaxAmountCents(), parallel.getMaxAmountCents());
+        Assertions.assertEquals(sequential.getUniqueClientCount(), parallel.getUniqueClientCount());
+        for (String name : store.getNames().values()) {
+            Assertions.assertEquals(sequential.getTotalAmountCentsSentBy(name),
+                    parallel.getTotalAmountCentsSentBy(name));
+            Assertions.assertEquals(sequential.hasOpenIssues(name), parallel.hasOpenIssues(name));
+            Assertions.assertEquals(sequential.getTransactionsOfClient(name).size(),
+                    parallel.getTransactionsOfClient(name).size());
+        }
+        Assertions.assertEquals(sequential.getTopSender(), parallel.getTopSender());
+        Assertions.assertEquals(sequential.getUnsolvedIssueIds(), parallel.getUnsolvedIssueIds());
+        Assertions.assertEquals(sequential.getSolvedIssueMessages(), parallel.getSolvedIssueMessages());
+        Assertions.assertEquals(sequential.getTopTransactions(20).stream().map(Transaction::getMtn).toList(),
+                parallel.getTopTransactions(20).stream().map(Transaction::getMtn).toList());
+    }
+
+    @Test
+    void testAggregate_WhenDeterministic() {
+        long total = new ParallelAggregator(pool, 0, 7).aggregate(store).getTotalAmountCents();
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            Assertions.assertEquals(total, new ParallelAggregator(single, 0, 7).aggregate(store).getTotalAmountCents());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    private static Transaction copyOf(Transaction source) {
+        Transaction copy = new Transaction();
+        copy.setMtn(source.getMtn());
+        copy.setAmount(source.getAmount());
+        copy.setSenderFullName(source.getSenderFullName());
+        copy.setSenderAge(source.getSenderAge());
+        copy.setBeneficiaryFullName(source.getBeneficiaryFullName());
+        copy.setBeneficiaryAge(source.getBeneficiaryAge());
+        copy.setIssueId(source.getIssueId());
+        copy.setIssueSolved(source.getIssueSolved());
+        copy.setIssueMessage(source.getIssueMessage());
+        return copy;
+    }
+}
@@ -0,0 +1,141 @@
+package com.smallworld.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.loader.TransactionJsonReader;
+import com.smallworld.model.Transaction;
+import com.smallworld.store.TransactionStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class TransactionFilterTest {
+    private TransactionSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new TransactionJsonReader(new ObjectMapper()).read(new File("src/main/resources/transactions.json"), builder);
+        snapshot = TransactionSnapshot.of(builder.build());
+    }
+
+    @Test
+    void testAggregate_WhenFiltersAreCombined() {
+        // Tom Shelby sent 430.2 and 150.2 with open issues, and 97.66 with a solved one
+        TransactionFilter filter = TransactionFilter.sentBy("Tom Shelby")
+                .and(TransactionFilter.hasOpenIssue())
+                .and(TransactionFilter.amountAbove(150.2).not());
+
+        FilterAggregate aggregate = snapshot.aggregate(filter);
+
+        Assertions.assertEquals(1, aggregate.count());
+        Assertions.assertEquals(new BigDecimal("150.20"), aggregate.totalAmount());
+        Assertions.assertEquals(new BigDecimal("150.20"), aggregate.maxAmount());
+    }
+
+    @Test
+    void testGetTransactions_WhenIssuesAreSolvedOnly() {
+        TransactionFilter solvedOnly = TransactionFilter.hasSolvedIssue().and(TransactionFilter.hasOpenIssue().not());
+
+        List<Integer> mtns = snapshot.getTransactions(solvedOnly, 0, 10).stream().map(Transaction::getMtn).toList();
+
+        // 1284564 and 32612651 also have open issues
+        Assertions.assertEquals(List.of(1651665), mtns);
+    }
+
+    @Test
+    void testAggregate_WhenMatchingIndexAndScan() {
+        List<TransactionFilter> filters = List.of(
+                TransactionFilter.senderAgeBetween(18, 25).or(TransactionFilter.beneficiaryAgeBetween(60, 200)),
+                TransactionFilter.amountBetween(67.8, 666.0),
+                TransactionFilter.involving("Arthur Shelby").or(TransactionFilter.receivedBy("Michael Gray")),
+                TransactionFilter.hasIssue().not(),
+                TransactionFilter.all());
+        for (TransactionFilter filter : filters) {
+            List<Transaction> expected = snapshot.getTransactions().stream()
+                    .filter(transaction -> FilterIndex.test(filter, transaction)).toList();
+            FilterAggregate aggregate = snapshot.aggregate(filter);
+            Assertions.assertEquals(expected.size(), aggregate.count(), filter.toString());
+            Assertions.assertEquals(expected.stream().map(transaction -> BigDecimal.valueOf(transaction.getAmount()))
+                    .reduce(BigDecimal.ZERO, BigDecimal::add).setScale(2), aggregate.totalAmount(), filter.toString());
+        }
+    }
+
+    @Test
+    void testGetTopTransactions_WhenAppendedRowMatches() {
+        snapshot.append(transaction(42, 2000.0).from("Tom Shelby", 22).to("Grace Burgess").issue(500, false).build());
+
+        List<Transaction> top = snapshot.getTopTransactions(TransactionFilter.sentBy("Tom Shelby"), 2);
+
+        Assertions.assertEquals(List.of(42, 663458), top.stream().map(Transaction::getMtn).toList());
+        Assertions.assertEquals(4, snapshot.aggregate(TransactionFilter.sentBy("Tom Shelby")).count());
+    }
+
+    @Test
+    void testAggregate_WhenAppendsSolveLoadedIssues() {
+        Assertions.assertEquals(4, snapshot.aggregate(TransactionFilter.hasOpenIssue()).count());
+
+        snapshot.append(transaction(1284564, 150.2).from("Tom Shelby", 22).to("Arthur Shelby", 60)
+                .issue(3, true).build());
+        // 32612651 keeps its open issue 99
+        snapshot.append(transaction(32612651, 666.0).from("Grace Burgess", 31).to("Michael Gray", 58)
+                .issue(54, true).build());
+
+        Assertions.assertEquals(List.of(663458, 5465465, 32612651), mtns(TransactionFilter.hasOpenIssue()));
+        Assertions.assertEquals(List.of(1284564, 1651665), mtns(TransactionFilter.hasSolvedIssue()
+                .and(TransactionFilter.hasOpenIssue().not())));
+
+        snapshot.append(transaction(32612651, 666.0).from("Grace Burgess", 31).to("Michael Gray", 58)
+                .issue(99, true).build());
+
+        Assertions.assertEquals(2, snapshot.aggregate(TransactionFilter.hasOpenIssue()).count());
+        Assertions.assertEquals(snapshot.getUnsolvedIssueIds().size(),
+                snapshot.aggregate(TransactionFilter.hasOpenIssue()).count());
+    }
+
+    @Test
+    void testAggregate_WhenAppendsRaiseIssuesOnKnownTransactions() {
+        // repeats the loaded 1651665, whose only issue is solved
+        snapshot.append(transaction(1651665, 97.66).from("Tom Shelby", 22).to("Oswald Mosley", 37)
+                .issue(200, false).build());
+        snapshot.append(transaction(42, 2000.0).from("Tom Shelby", 22).to("Grace Burgess", 31)
+                .issue(500, false).build());
+        snapshot.append(transaction(42, 2000.0).from("Tom Shelby", 22).to("Grace Burgess", 31)
+                .issue(500, true).build());
+
+        TransactionFilter openSentByTom = TransactionFilter.sentBy("Tom Shelby").and(TransactionFilter.hasOpenIssue());
+        Assertions.assertEquals(List.of(663458, 1284564, 1651665), mtns(openSentByTom));
+
+        snapshot.append(transaction(42, 2000.0).from("Tom Shelby", 22).to("Grace Burgess", 31)
+                .issue(501, false).build());
+
+        Assertions.assertEquals(List.of(663458, 1284564, 1651665, 42), mtns(openSentByTom));
+        Assertions.assertEquals(4, snapshot.aggregate(openSentByTom).count());
+        Assertions.assertEquals(List.of(42), snapshot.getTopTransactions(openSentByTom, 1).stream()
+                .map(Transaction::getMtn).toList());
+    }
+
+    @Test
+    void testJson_WhenFilterIsSentToWorkers() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        TransactionFilter filter = TransactionFilter.hasOpenIssue()
+                .and(TransactionFilter.senderAgeBetween(18, 25).or(TransactionFilter.receivedBy("Grace Burgess")))
+                .and(TransactionFilter.amountAbove(150.2).not())
+                .and(TransactionFilter.amountAtLeast(10));
+
+        TransactionFilter read = mapper.readValue(mapper.writeValueAsBytes(filter), TransactionFilter.class);
+
+        Assertions.assertEquals(filter, read);
+        Assertions.assertEquals(snapshot.aggregate(filter), snapshot.aggregate(read));
+    }
+
+    private List<Integer> mtns(TransactionFilter filter) {
+        return snapshot.getTransactions(filter, 0, 100).stream().map(Transaction::getMtn).toList();
+    }
+}
@@ -0,0 +1,138 @@
+package com.smallworld.snapshot;
+
+import com.smallworld.model.Transaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class TransactionSnapshotTest {
+    // amounts of 10^15 cents, as many as fit a long total with less than one more amount to spare
+    private static final double LARGE_AMOUNT = 1e13;
+    private static final int LARGE_AMOUNT_ROWS = 9223;
+
+    private TransactionSnapshot full;
+
+    @BeforeEach
+    void setUp() {
+        full = TransactionSnapshot.of(IntStream.range(0, LARGE_AMOUNT_ROWS)
+                .mapToObj(i -> transaction(1000 + i, LARGE_AMOUNT).build()).toList());
+    }
+
+    @Test
+    void testAppend_WhenTotalWouldOverflow() {
+        long total = full.getTotalAmountCents();
+        long generation = full.getGeneration();
+        Transaction overflowing = transaction(1, LARGE_AMOUNT).issue(9, false).build();
+
+        Assertions.assertThrows(ArithmeticException.class, () -> full.append(overflowing));
+
+        Assertions.assertEquals(total, full.getTotalAmountCents());
+        Assertions.assertEquals(generation, full.getGeneration());
+        Assertions.assertEquals(Set.of(), full.getUnsolvedIssueIds());
+        Assertions.assertEquals(Map.of(), full.getIssueMtns(List.of(9)));
+
+        // once a negative amount makes room, the same transaction is a new row rather than a repeat
+        full.append(transaction(2, -LARGE_AMOUNT).build());
+        full.append(overflowing);
+
+        Assertions.assertEquals(LARGE_AMOUNT_ROWS + 2, full.getTransactions().size());
+        Assertions.assertEquals(total, full.getTotalAmountCents());
+        Assertions.assertEquals(Set.of(9), full.getUnsolvedIssueIds());
+    }
+
+    @Test
+    void testCheckTotalAmount_WhenBatchRepeatsTransactions() {
+        // room for three amounts of 10^14 cents
+        List<Transaction> batch = List.of(transaction(1, 1e12).issue(9, false).build(),
+                transaction(1, 1e12).issue(9, true).build(),
+                transaction(1, 1e12).issue(10, false).build(),
+                transaction(1000, LARGE_AMOUNT).issue(11, false).build(),
+                transaction(2, 1e12).build(),
+                transaction(3, 1e12).build());
+
+        full.checkTotalAmount(batch);
+
+        List<Transaction> larger = new ArrayList<>(batch);
+        larger.add(transaction(4, 1e12).build());
+        Assertions.assertThrows(ArithmeticException.class, () -> full.checkTotalAmount(larger));
+        Assertions.assertEquals(LARGE_AMOUNT_ROWS, full.getTransactions().size());
+    }
+
+    @Test
+    void testWithGeneration_WhenSnapshotsAreAppendedTo() {
+        TransactionSnapshot loaded = TransactionSnapshot.of(List.of(transaction(1, 10.0).issue(5, false).build(),
+                transaction(2, 20.0).from("Polly Gray").build()));
+        TransactionSnapshot published = loaded.withGeneration(7);
+
+        published.append(transaction(3, 30.0).from("Ada Thorne").build());
+        published.append(transaction(1, 10.0).issue(5, true).build());
+        TransactionSnapshot republished = published.withGeneration(8);
+
+        Assertions.assertEquals(0, loaded.getGeneration());
+        Assertions.assertEquals(9, published.getGeneration());
+        Assertions.assertEquals(8, republished.getGeneration());
+        Assertions.assertEquals(3, published.getTransactions().size());
+        Assertions.assertEquals(6000, published.getTotalAmountCents());
+        Assertions.assertEquals(Set.of(), published.getUnsolvedIssueIds());
+        Assertions.assertEquals(0, published.aggregate(TransactionFilter.hasOpenIssue()).count());
+        for (TransactionSnapshot unchanged : List.of(loaded, republished)) {
+            Assertions.assertEquals(2, unchanged.getTransactions().size());
+            Assertions.assertEquals(3000, unchanged.getTotalAmountCents());
+            Assertions.assertEquals(Set.of(5), unchanged.getUnsolvedIssueIds());
+            Assertions.assertEquals("Polly Gray", unchanged.getTopSender());
+            Assertions.assertEquals(1, unchanged.aggregate(TransactionFilter.hasOpenIssue()).count());
+        }
+        // the filter index is shared by all three, the issues solved by appends are not
+        Assertions.assertEquals(0, published.aggregate(TransactionFilter.hasOpenIssue()).count());
+    }
+
+    @Test
+    void testReads_WhenAppendsRunConcurrently() throws Exception {
+        int appends = 2000;
+        long loadedTotal = full.getTotalAmountCents();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < appends; i++) {
+                    full.append(transaction(100_000 + i, -1.0).from("Sender " + i % 10).build());
+                }
+            });
+            int rows = LARGE_AMOUNT_ROWS;
+            while (!writer.isDone()) {
+                // a reader racing an append may see one aggregate with the new row and another without it,
+                // but never fewer rows than it saw before nor a row that was not appended
+                int seen = full.getTransactions().size();
+                Assertions.assertTrue(seen >= rows && seen <= LARGE_AMOUNT_ROWS + appends, "rows " + seen);
+                rows = seen;
+                long total = full.getTotalAmountCents();
+                Assertions.assertTrue(total <= loadedTotal && total >= loadedTotal - appends * 100L, "total " + total);
+                long matching = full.aggregate(TransactionFilter.amountBelow(0)).count();
+                Assertions.assertTrue(matching >= 0 && matching <= appends, "matching " + matching);
+                Assertions.assertEquals(3, full.getTopTransactions(3).size());
+                full.getTransactions(TransactionFilter.sentBy("Sender 3"), 0, appends);
+            }
+            writer.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(LARGE_AMOUNT_ROWS + appends, full.getTransactions().size());
+        Assertions.assertEquals(loadedTotal - appends * 100L, full.getTotalAmountCents());
+        Assertions.assertEquals(appends, full.aggregate(TransactionFilter.amountBelow(0)).count());
+        Assertions.assertEquals(appends / 10, full.getTransactions(TransactionFilter.sentBy("Sender 3"), 0, appends)
+                .size());
+        Assertions.assertEquals(-appends / 10 * 100L, full.getTotalAmountCentsSentBy("Sender 3"));
+        Assertions.assertEquals("Tom Shelby", full.getTopSender());
+    }
+}
@@ -0,0 +1,38 @@
+package com.smallworld.store;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ClientRowIndexTest {
+    private static final int NULL = StringDictionary.NULL_ID;
+
+    private final int[] senderIds = {0, 1, 0, 2, NULL};
+    private final int[] beneficiaryIds = {1, 1, 2, 0, 3};
+
+    @Test
+    void testRows_WhenIndexedBySingleColumn() {
+        ClientRowIndex index = ClientRowIndex.of(senderIds, senderIds.length, 4);
+        Assertions.assertArrayEquals(new int[]{0, 2}, index.rows(0));
+        Assertions.assertArrayEquals(new int[]{1}, index.rows(1));
+        Assertions.assertArrayEquals(new int[]{3}, index.rows(2));
+        Assertions.assertEquals(0, index.rowCount(3));
+    }
+
+    @Test
+    void testRows_WhenIndexedByBothColumns() {
+        ClientRowIndex index = ClientRowIndex.of(senderIds, beneficiaryIds, senderIds.length, 4);
+        Assertions.assertArrayEquals(new int[]{0, 2, 3}, index.rows(0));
+        // row 1 is sent by client 1 to itself and is listed once
+        Assertions.assertArrayEquals(new int[]{0, 1}, index.rows(1));
+        Assertions.assertArrayEquals(new int[]{2, 3}, index.rows(2));
+        Assertions.assertArrayEquals(new int[]{4}, index.rows(3));
+        Assertions.assertEquals(3, index.row(2, 1));
+    }
+
+    @Test
+    void testRows_WhenClientIsUnknown() {
+        ClientRowIndex index = ClientRowIndex.of(senderIds, senderIds.length, 4);
+        Assertions.assertEquals(0, index.rows(NULL).length);
+        Assertions.assertEquals(0, index.rowCount(10));
+    }
+}
@@ -0,0 +1,62 @@
+package com.smallworld.store;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+class RowBitmapTest {
+
+    @Test
+    void testOperations_WhenContainersMixArraysAndBitmaps() {
+        SplittableRandom random = new SplittableRandom(7);
+        // dense, sparse and empty chunks on both sides so every container pairing is exercised
+        BitSet first = randomRows(random, new double[]{0.5, 0.01, 0.0, 0.3});
+        BitSet second = randomRows(random, new double[]{0.02, 0.6, 0.4, 0.0});
+        RowBitmap left = RowBitmap.of(first.stream().toArray());
+        RowBitmap right = RowBitmap.of(second.stream().toArray());
+
+        BitSet and = (BitSet) first.clone();
+        and.and(second);
+        BitSet or = (BitSet) first.clone();
+        or.or(second);
+        BitSet andNot = (BitSet) first.clone();
+        andNot.andNot(second);
+
+        Assertions.assertArrayEquals(and.stream().toArray(), left.and(right).toArray());
+        Assertions.assertArrayEquals(or.stream().toArray(), left.or(right).toArray());
+        Assertions.assertArrayEquals(andNot.stream().toArray(), left.andNot(right).toArray());
+        Assertions.assertEquals(or.cardinality(), left.or(right).cardinality());
+    }
+
+    @Test
+    void testSlice_WhenOffsetSpansContainers() {
+        RowBitmap bitmap = RowBitmap.range(65_530, 65_545);
+
+        Assertions.assertArrayEquals(new int[]{65_534, 65_535, 65_536, 65_537}, bitmap.slice(4, 4));
+        Assertions.assertArrayEquals(new int[]{65_544}, bitmap.slice(14, 10));
+        Assertions.assertEquals(0, bitmap.slice(20, 10).length);
+        Assertions.assertTrue(bitmap.contains(65_536));
+        Assertions.assertFalse(bitmap.contains(65_545));
+    }
+
+    @Test
+    void testAdd_WhenRowsAreNotAscending() {
+        RowBitmap.Builder builder = new RowBitmap.Builder();
+        builder.add(5);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.add(5));
+    }
+
+    private static BitSet randomRows(SplittableRandom random, double[] densityPerChunk) {
+        BitSet rows = new BitSet();
+        for (int chunk = 0; chunk < densityPerChunk.length; chunk++) {
+            for (int low = 0; low < 1 << 16; low++) {
+                if (random.nextDouble() < densityPerChunk[chunk]) {
+                    rows.set((chunk << 16) | low);
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,65 @@
+package com.smallworld.store;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+class TopAmountHeapTest {
+
+    @Test
+    void testRowsDescending_WhenRowsAreOfferedInAnyOrder() {
+        Random random = new Random(1);
+        int rows = 5_000;
+        int[] mtns = new int[rows];
+        long[] amounts = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            // every transaction is repeated over one to three issue rows with the same amount
+            boolean repeat = row > 0 && random.nextInt(3) == 0;
+            mtns[row] = repeat ? mtns[row - 1] : row;
+            amounts[row] = repeat ? amounts[row - 1] : random.nextInt(100_000);
+        }
+
+        for (int capacity : new int[]{0, 1, 3, 100, 1000}) {
+            TopAmountHeap heap = new TopAmountHeap(capacity);
+            for (int row = 0; row < rows; row++) {
+                heap.offer(row, mtns[row], amounts[row]);
+            }
+            Assertions.assertArrayEquals(sortedTopRows(mtns, amounts, capacity), heap.rowsDescending());
+        }
+    }
+
+    @Test
+    void testOffer_WhenMtnIsAlreadyKept() {
+        TopAmountHeap heap = new TopAmountHeap(3);
+        Assertions.assertTrue(heap.offer(0, 10, 5000));
+        Assertions.assertFalse(heap.offer(1, 10, 5000));
+        Assertions.assertTrue(heap.offer(2, 11, 2000));
+        Assertions.assertArrayEquals(new int[]{0, 2}, heap.rowsDescending());
+    }
+
+    @Test
+    void testOffer_WhenHeapIsFullAndRowRanksBelowAll() {
+        TopAmountHeap heap = new TopAmountHeap(2);
+        heap.offer(0, 1, 500);
+        heap.offer(1, 2, 700);
+        Assertions.assertFalse(heap.offer(2, 3, 500));
+        Assertions.assertTrue(heap.offer(3, 4, 600));
+        Assertions.assertArrayEquals(new int[]{1, 3}, heap.rowsDescending());
+    }
+
+    private static int[] sortedTopRows(int[] mtns, long[] amounts, int n) {
+        Set<Integer> seen = new HashSet<>();
+        return IntStream.range(0, mtns.length)
+                .filter(row -> seen.add(mtns[row]))
+                .boxed()
+                .sorted(Comparator.<Integer>comparingLong(row -> amounts[row]).reversed())
+                .limit(n)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
@@ -0,0 +1,82 @@
+package com.smallworld.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.loader.TransactionJsonReader;
+import com.smallworld.model.Transaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class TransactionStoreFileTest {
+    @TempDir
+    Path directory;
+
+    private TransactionStore store;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new TransactionJsonReader(new ObjectMapper()).read(new File("src/main/resources/transactions.json"), builder);
+        store = builder.build();
+        file = directory.resolve("transactions.json.bin");
+        TransactionStoreFile.write(store, file, 1234, 5678);
+    }
+
+    @Test
+    void testOpen_WhenFileWasWritten() throws IOException {
+        TransactionStore mapped = TransactionStoreFile.open(file, true);
+
+        Assertions.assertTrue(mapped.isOffHeap());
+        Assertions.assertEquals(store.size(), mapped.size());
+        for (int row = 0; row < store.size(); row++) {
+            Transaction expected = store.get(row);
+            Transaction actual = mapped.get(row);
+            Assertions.assertEquals(expected.getMtn(), actual.getMtn());
+            Assertions.assertEquals(expected.getAmount(), actual.getAmount());
+            Assertions.assertEquals(expected.getSenderFullName(), actual.getSenderFullName());
+            Assertions.assertEquals(expected.getSenderAge(), actual.getSenderAge());
+            Assertions.assertEquals(expected.getBeneficiaryFullName(), actual.getBeneficiaryFullName());
+            Assertions.assertEquals(expected.getBeneficiaryAge(), actual.getBeneficiaryAge());
+            Assertions.assertEquals(expected.getIssueId(), actual.getIssueId());
+            Assertions.assertEquals(expected.getIssueSolved(), actual.getIssueSolved());
+            Assertions.assertEquals(expected.getIssueMessage(), actual.getIssueMessage());
+        }
+        Assertions.assertEquals(store.getNames().values(), mapped.getNames().values());
+    }
+
+    @Test
+    void testReadHeader_WhenFileWasWritten() throws IOException {
+        TransactionStoreFile.Header header = TransactionStoreFile.readHeader(file);
+
+        Assertions.assertEquals(TransactionStoreFile.VERSION, header.version());
+        Assertions.assertEquals(store.size(), header.rows());
+        Assertions.assertTrue(header.matches(1234, 5678));
+        Assertions.assertFalse(header.matches(1234, 5679));
+    }
+
+    @Test
+    void testOpen_WhenFileIsCorrupt() throws IOException {
+        try (RandomAccessFile corrupt = new RandomAccessFile(file.toFile(), "rw")) {
+            corrupt.seek(Files.size(file) - 1);
+            int last = corrupt.read();
+            corrupt.seek(Files.size(file) - 1);
+            corrupt.write(last ^ 0xFF);
+        }
+
+        Assertions.assertThrows(IOException.class, () -> TransactionStoreFile.open(file, true));
+
+        try (RandomAccessFile corrupt = new RandomAccessFile(file.toFile(), "rw")) {
+            corrupt.seek(8);
+            corrupt.write(99);
+        }
+        Assertions.assertThrows(IOException.class, () -> TransactionStoreFile.readHeader(file));
+    }
+}
@@ -0,0 +1,140 @@
+package com.smallworld.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallworld.loader.TransactionJsonReader;
+import com.smallworld.model.Transaction;
+import com.smallworld.snapshot.TransactionSnapshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class TransactionStoreTest {
+    private final List<Transaction> transactions = new ArrayList<>();
+    private TransactionStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        new TransactionJsonReader(new ObjectMapper()).read(new File("src/main/resources/transactions.json"),
+                builder.andThen(transactions::add));
+        store = builder.build();
+    }
+
+    @Test
+    void testGet_WhenRowIsMaterialised() {
+        List<Transaction> firstRows = new ArrayList<>(transactions.stream()
+                .collect(Collectors.toMap(Transaction::getMtn, transaction -> transaction, (first, next) -> first,
+                        LinkedHashMap::new))
+                .values());
+        Assertions.assertEquals(firstRows.size(), store.size());
+        for (int row = 0; row < store.size(); row++) {
+            Transaction expected = firstRows.get(row);
+            Transaction actual = store.get(row);
+            Assertions.assertEquals(expected.getMtn(), actual.getMtn());
+            Assertions.assertEquals(expected.getAmount(), actual.getAmount());
+            Assertions.assertEquals(expected.getSenderFullName(), actual.getSenderFullName());
+            Assertions.assertEquals(expected.getSenderAge(), actual.getSenderAge());
+            Assertions.assertEquals(expected.getBeneficiaryFullName(), actual.getBeneficiaryFullName());
+            Assertions.assertEquals(expected.getBeneficiaryAge(), actual.getBeneficiaryAge());
+            Assertions.assertEquals(expected.getIssueId(), actual.getIssueId());
+            Assertions.assertEquals(expected.getIssueSolved(), actual.getIssueSolved());
+            Assertions.assertEquals(expected.getIssueMessage(), actual.getIssueMessage());
+        }
+    }
+
+    @Test
+    void testIssues_WhenTransactionRepeatsPerIssue() {
+        // the seventh distinct mtn, repeated on three rows for its three issues
+        int row = 6;
+        Assertions.assertEquals(32612651, store.getMtn(row));
+        Assertions.assertEquals(3, store.getIssueCount(row));
+        Assertions.assertEquals(2, store.getOpenIssueCount(row));
+        int firstIssue = store.getFirstIssue(row);
+        Assertions.assertEquals(List.of(54, 78, 99), List.of(store.getIssueId(firstIssue),
+                store.getIssueId(firstIssue + 1), store.getIssueId(firstIssue + 2)));
+        Assertions.assertTrue(store.isIssueSolved(firstIssue + 1));
+        // rows without an issue add nothing to the issue table
+        Assertions.assertEquals(transactions.stream().filter(transaction -> transaction.getIssueId() != null).count(),
+                store.issueCount());
+    }
+
+    @Test
+    void testNames_WhenNamesRepeat() {
+        Assertions.assertTrue(store.getNames().size() < store.size() * 2);
+        Assertions.assertEquals(store.getSenderId(0), store.getNames().idOf("Tom Shelby"));
+        Assertions.assertEquals(StringDictionary.NULL_ID, store.getNames().idOf("nobody"));
+    }
+
+    @Test
+    void testAccept_WhenAmountIsNotWholeCents() {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        transactions.forEach(builder::accept);
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> builder.accept(transaction(42, 0.125).build()));
+        Assertions.assertEquals(0, builder.getSkippedRows());
+    }
+
+    @Test
+    void testAccept_WhenInexactAmountsAreSkipped() {
+        TransactionStore.Builder builder = new TransactionStore.Builder(true);
+        transactions.forEach(builder::accept);
+
+        builder.accept(transaction(42, 0.125).build());
+
+        Assertions.assertEquals(1, builder.getSkippedRows());
+        Assertions.assertEquals(store.size(), builder.build().size());
+    }
+
+    @Test
+    void testBuildOffHeap_WhenRowsHaveIssues() {
+        TransactionStore.Builder builder = new TransactionStore.Builder();
+        transactions.forEach(builder::accept);
+        TransactionStore offHeap = builder.buildOffHeap();
+        Assertions.assertTrue(offHeap.isOffHeap());
+        Assertions.assertFalse(store.isOffHeap());
+        Assertions.assertEquals(store.size(), offHeap.size());
+        Assertions.assertEquals(store.issueCount(), offHeap.issueCount());
+        Assertions.assertTrue(offHeap.estimatedHeapSizeInBytes() < offHeap.estimatedSizeInBytes());
+        for (int row = 0; row < store.size(); row++) {
+            Assertions.assertEquals(store.getMtn(row), offHeap.getMtn(row));
+            Assertions.assertEquals(store.getAmountCents(row), offHeap.getAmountCents(row));
+            Assertions.assertEquals(store.getSenderFullName(row), offHeap.getSenderFullName(row));
+            Assertions.assertEquals(store.getBeneficiaryAge(row), offHeap.getBeneficiaryAge(row));
+            Assertions.assertEquals(store.getIssueCount(row), offHeap.getIssueCount(row));
+            Assertions.assertEquals(store.getOpenIssueCount(row), offHeap.getOpenIssueCount(row));
+        }
+        for (int issue = 0; issue < store.issueCount(); issue++) {
+            Assertions.assertEquals(store.getIssueMessage(issue), offHeap.getIssueMessage(issue));
+        }
+    }
+
+    @Test
+    void testSnapshotOf_WhenBuiltFromColumns() {
+        TransactionSnapshot fromColumns = TransactionSnapshot.of(store);
+        TransactionSnapshot fromRows = TransactionSnapshot.of(transactions);
+        Assertions.assertEquals(fromRows.getTotalAmountCents(), fromColumns.getTotalAmountCents());
+        Assertions.assertEquals(fromRows.getMaxAmountCents(), fromColumns.getMaxAmountCents());
+        for (String name : store.getNames().values()) {
+            Assertions.assertEquals(fromRows.getTotalAmountCentsSentBy(name),
+                    fromColumns.getTotalAmountCentsSentBy(name));
+            Assertions.assertEquals(fromRows.hasOpenIssues(name), fromColumns.hasOpenIssues(name));
+        }
+        Assertions.assertEquals(fromRows.getTopSender(), fromColumns.getTopSender());
+        Assertions.assertEquals(fromRows.getUniqueClientCount(), fromColumns.getUniqueClientCount());
+        Assertions.assertEquals(fromRows.getUnsolvedIssueIds(), fromColumns.getUnsolvedIssueIds());
+        Assertions.assertEquals(fromRows.getSolvedIssueMessages(), fromColumns.getSolvedIssueMessages());
+        Assertions.assertEquals(fromRows.getTransactionsByBeneficiary().keySet(), fromColumns.getTransactionsByBeneficiary().keySet());
+        Assertions.assertEquals(fromRows.getTopTransactions(5).stream().map(Transaction::getMtn).toList(),
+                fromColumns.getTopTransactions(5).stream().map(Transaction::getMtn).toList());
+    }
+}
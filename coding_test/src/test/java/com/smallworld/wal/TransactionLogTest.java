@@ -0,0 +1,252 @@
+package com.smallworld.wal;
+
+import com.smallworld.model.Transaction;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.smallworld.model.TransactionFixture.transaction;
+
+class TransactionLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplay_WhenReopened() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        try (TransactionLog log = open(file)) {
+            Assertions.assertEquals(1, log.append(transaction(1, 10.5).build()));
+            Assertions.assertEquals(3, log.append(List.of(
+                    transaction(2, 20.0).from("Grace Burgess", 31).issue(7, false).build(),
+                    transaction(3, 5.0).build())));
+        }
+
+        try (TransactionLog log = open(file)) {
+            List<Transaction> replayed = new ArrayList<>();
+            Assertions.assertEquals(3, log.replay(replayed::add));
+
+            Assertions.assertEquals(List.of(1, 2, 3), replayed.stream().map(Transaction::getMtn).toList());
+            Transaction withIssue = replayed.get(1);
+            Assertions.assertEquals(20.0, withIssue.getAmount());
+            Assertions.assertEquals("Grace Burgess", withIssue.getSenderFullName());
+            Assertions.assertEquals(31, withIssue.getSenderAge());
+            Assertions.assertNull(withIssue.getBeneficiaryAge());
+            Assertions.assertEquals(7, withIssue.getIssueId());
+            Assertions.assertEquals(Boolean.FALSE, withIssue.getIssueSolved());
+            Assertions.assertEquals("Looks like money laundering", withIssue.getIssueMessage());
+            Assertions.assertNull(replayed.get(0).getIssueMessage());
+            Assertions.assertEquals(4, log.append(transaction(4, 1.0).build()));
+        }
+    }
+
+    @Test
+    void testOpen_WhenLastRecordIsTorn() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        long sizeAfterTwo;
+        try (TransactionLog log = open(file)) {
+            log.append(transaction(1, 10.5).build());
+            log.append(transaction(2, 20.0).build());
+            sizeAfterTwo = log.size();
+            log.append(transaction(3, 30.0).build());
+        }
+        // a crash in the middle of the third write
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(Files.size(file) - 5);
+        }
+
+        try (TransactionLog log = open(file)) {
+            Assertions.assertEquals(sizeAfterTwo, Files.size(file));
+            Assertions.assertEquals(List.of(1, 2), mtns(log));
+            Assertions.assertEquals(3, log.append(transaction(5, 50.0).build()));
+            Assertions.assertEquals(List.of(1, 2, 5), mtns(log));
+        }
+    }
+
+    @Test
+    void testOpen_WhenLastRecordIsCorrupt() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        try (TransactionLog log = open(file)) {
+            log.append(transaction(1, 10.5).build());
+            log.append(transaction(2, 20.0).build());
+        }
+        // a write that reached the disk only partly, its length intact and a payload byte lost
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(Files.size(file) - 10);
+            raf.write(raf.read() ^ 0xff);
+        }
+
+        try (TransactionLog log = open(file)) {
+            Assertions.assertEquals(List.of(1), mtns(log));
+        }
+    }
+
+    @Test
+    void testOpen_WhenCorruptRecordIsFollowedByValidOnes() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        long sizeAfterOne;
+        try (TransactionLog log = open(file)) {
+            log.append(transaction(1, 10.5).build());
+            sizeAfterOne = log.size();
+            log.append(transaction(2, 20.0).build());
+            log.append(transaction(3, 30.0).build());
+        }
+        long size = Files.size(file);
+        // damage inside the second record, the third is intact
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(sizeAfterOne + 20);
+            raf.write(raf.read() ^ 0xff);
+        }
+
+        IOException exception = Assertions.assertThrows(IOException.class, () -> open(file));
+
+        Assertions.assertTrue(exception.getMessage().contains("followed by a valid record"), exception.getMessage());
+        Assertions.assertEquals(size, Files.size(file));
+    }
+
+    @Test
+    void testAppend_WhenRecordIsTooLarge() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        Transaction oversized = transaction(2, 20.0).issue(7, false).build();
+        oversized.setIssueMessage("x".repeat(TransactionLog.MAX_PAYLOAD));
+        try (TransactionLog log = open(file)) {
+            log.append(transaction(1, 10.5).build());
+
+            Assertions.assertThrows(RecordTooLargeException.class,
+                    () -> log.append(List.of(transaction(3, 5.0).build(), oversized)));
+            Assertions.assertEquals(2, log.append(transaction(4, 1.0).build()));
+        }
+
+        try (TransactionLog log = open(file)) {
+            Assertions.assertEquals(List.of(1, 4), mtns(log));
+        }
+    }
+
+    @Test
+    void testOpen_WhenHeaderIsIncomplete() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        Files.write(file, new byte[7]);
+
+        try (TransactionLog log = open(file)) {
+            Assertions.assertEquals(List.of(), mtns(log));
+            Assertions.assertEquals(1, log.append(transaction(1, 10.5).build()));
+        }
+    }
+
+    @Test
+    void testOpen_WhenFileIsNotALog() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        Files.writeString(file, "[{\"mtn\": 1, \"amount\": 10.5, \"senderFullName\": \"Tom Shelby\"}]");
+
+        Assertions.assertThrows(IOException.class, () -> open(file));
+    }
+
+    @Test
+    void testCompact_WhenIssueSolvedLater() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        try (TransactionLog log = open(file)) {
+            log.append(transaction(1, 10.5).issue(7, false).build());
+            log.append(transaction(2, 20.0).build());
+            Transaction solved = transaction(1, 10.5).issue(7, true).build();
+            solved.setIssueMessage("Cleared");
+            log.append(solved);
+            // solving it again changes nothing
+            log.append(transaction(1, 10.5).issue(7, true).build());
+
+            Assertions.assertEquals(2, log.compact());
+            log.append(transaction(3, 30.0).build());
+
+            Assertions.assertEquals(new TransactionLogStatistics(5, 4, 5, 5, log.getStatistics().bytesWritten(),
+                    log.size()), log.getStatistics());
+        }
+
+        try (TransactionLog log = open(file)) {
+            List<Transaction> replayed = new ArrayList<>();
+            Assertions.assertEquals(5, log.replay(replayed::add));
+
+            Assertions.assertEquals(List.of(1, 2, 3), replayed.stream().map(Transaction::getMtn).toList());
+            Assertions.assertEquals(Boolean.TRUE, replayed.get(0).getIssueSolved());
+            Assertions.assertEquals("Cleared", replayed.get(0).getIssueMessage());
+            Assertions.assertEquals(6, log.append(transaction(4, 40.0).build()));
+        }
+    }
+
+    @Test
+    void testReplay_WhenCrashedBeforeLogRestarted() throws IOException {
+        Path file = directory.resolve("transactions.wal");
+        Path beforeCompaction = directory.resolve("before-compaction");
+        try (TransactionLog log = open(file)) {
+            log.append(transaction(1, 10.5).build());
+            log.append(transaction(2, 20.0).build());
+            Files.copy(file, beforeCompaction);
+            log.compact();
+        }
+        // the checkpoint was written but the crash came before the log was restarted
+        Files.move(beforeCompaction, file, StandardCopyOption.REPLACE_EXISTING);
+
+        try (TransactionLog log = open(file)) {
+            Assertions.assertEquals(List.of(1, 2), mtns(log));
+            Assertions.assertEquals(3, log.append(transaction(3, 30.0).build()));
+            Assertions.assertEquals(List.of(1, 2, 3), mtns(log));
+        }
+    }
+
+    @Test
+    void testAppend_WhenConcurrentWriters() throws Exception {
+        Path file = directory.resolve("transactions.wal");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (TransactionLog log = new TransactionLog(file, true, 64, Duration.ofMillis(1))) {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < 8; writer++) {
+                int firstMtn = writer * 100;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        log.append(transaction(firstMtn + i, 1.0).build());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+
+            TransactionLogStatistics statistics = log.getStatistics();
+            Assertions.assertEquals(400, statistics.sequence());
+            Assertions.assertEquals(400, statistics.appends());
+            // appends waiting on the same force share it
+            Assertions.assertTrue(statistics.groupCommits() < 400);
+            Assertions.assertEquals(400, mtns(log).stream().distinct().count());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testAppend_WhenClosed() throws IOException {
+        TransactionLog log = open(directory.resolve("transactions.wal"));
+        log.close();
+
+        Assertions.assertThrows(IOException.class, () -> log.append(transaction(1, 10.5).build()));
+    }
+
+    private static TransactionLog open(Path file) throws IOException {
+        return new TransactionLog(file, true, 16, Duration.ZERO);
+    }
+
+    private static List<Integer> mtns(TransactionLog log) throws IOException {
+        List<Integer> mtns = new ArrayList<>();
+        log.replay(transaction -> mtns.add(transaction.getMtn()));
+        return mtns;
+    }
+}